@@ -0,0 +1,197 @@
+package org.gitlab4j.codereview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.MemberEmailResolver;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.gitlab4j.codereview.mail.MailQueue;
+import org.gitlab4j.codereview.mail.SmtpConnectionPool;
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.gitlab4j.codereview.utils.TemplateService;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs push events end to end through CodeReviewWebHookListener.onPushEvent, against an in-memory H2 database
+ * and a stub GitLab server on a local port that answers the project, user and branch requests with canned JSON.
+ * The review email is rendered and queued to the mail_queue table, the MailQueue is never started so nothing
+ * is sent.
+ *
+ * The "cold" GitLab cache makes every lookup go to the stub server, "warm" caches the project and user. The
+ * benchmark lives in this package because the listener and configuration constructors are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PushEventBenchmark {
+
+    private static final int PROJECT_ID = 15;
+    private static final int UNENROLLED_PROJECT_ID = 16;
+    private static final int USER_ID = 4;
+
+    @Param({ "cold", "warm" })
+    public String gitlabCache;
+
+    private HttpServer gitlabServer;
+    private JdbcConnectionPool dataSource;
+    private Jdbi jdbi;
+    private CodeReviewWebHookListener listener;
+    private final AtomicLong branchNumber = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        gitlabServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        gitlabServer.createContext("/", PushEventBenchmark::handleGitLabRequest);
+        gitlabServer.start();
+        String gitlabUrl = "http://127.0.0.1:" + gitlabServer.getAddress().getPort();
+
+        File configFile = File.createTempFile("simple-cr-bench", ".properties");
+        configFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(configFile, "UTF-8")) {
+            writer.println(CodeReviewConfiguration.GITLAB_API_URL + "=" + gitlabUrl);
+            writer.println(CodeReviewConfiguration.GITLAB_WEB_URL + "=" + gitlabUrl);
+            writer.println(CodeReviewConfiguration.SIMPLE_CR_URL + "=http://simple-cr.example.com");
+            writer.println(CodeReviewConfiguration.SMTP_HOST + "=localhost");
+            writer.println(CodeReviewConfiguration.SMTP_PORT + "=25");
+        }
+
+        CodeReviewConfiguration config = new CodeReviewConfiguration(configFile.getAbsolutePath());
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:push-event-benchmark", "bench", "bench");
+        jdbi = Jdbi.create(dataSource);
+        jdbi.installPlugin(new SqlObjectPlugin());
+        new SchemaMigrator(jdbi).migrate();
+
+        ProjectConfig projectConfig = new ProjectConfig();
+        projectConfig.setProjectId(PROJECT_ID);
+        projectConfig.setEnabled(true);
+        projectConfig.setBranchRegex("feature/.*");
+        projectConfig.setMailToType(MailToType.PROJECT);
+        jdbi.useHandle(handle -> handle.attach(ProjectConfigDAO.class).insert(projectConfig));
+        ProjectConfigRegistry projectConfigRegistry = new ProjectConfigRegistry(jdbi);
+        projectConfigRegistry.reconcile();
+
+        long ttl = ("warm".equals(gitlabCache) ? TimeUnit.HOURS.toMillis(1) : 0);
+        GitLabApiCache gitlabApiCache = new GitLabApiCache(new GitLabApi(gitlabUrl, "bench-token"), 1000, ttl, ttl, ttl, ttl, ttl);
+        MemberEmailResolver memberEmailResolver = new MemberEmailResolver(gitlabApiCache, 2, 1000, ttl);
+        MailQueue mailQueue = new MailQueue(jdbi, new SmtpConnectionPool("localhost", 25, false, null, null, 1, 60000),
+                "noreply@example.com", "Simple-CR", 1, 10, 1, 1000, 1000, 1000);
+        CodeReviewMailer mailer = new CodeReviewMailer(config, gitlabApiCache, memberEmailResolver, new TemplateService(), mailQueue);
+        listener = new CodeReviewWebHookListener(gitlabApiCache, mailer, jdbi, projectConfigRegistry, new RegexMatcher(50), 3);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTables() {
+        try (Handle handle = jdbi.open()) {
+            handle.execute("DELETE FROM push");
+            handle.execute("DELETE FROM mail_queue");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listener.shutdown();
+        gitlabServer.stop(0);
+        dataSource.dispose();
+    }
+
+    /**
+     * A push of a new branch, this goes through every stage and queues a review email.
+     */
+    @Benchmark
+    public void acceptedPush() {
+        listener.onPushEvent(newPushEvent(PROJECT_ID, "feature/bench-" + branchNumber.incrementAndGet()));
+    }
+
+    /**
+     * A push of a branch that already has an unsubmitted push, this stops at the database checks.
+     */
+    @Benchmark
+    public void repeatedPush() {
+        listener.onPushEvent(newPushEvent(PROJECT_ID, "feature/bench-repeated"));
+    }
+
+    /**
+     * A push to a project that is not in Simple-CR, this stops at the local checks.
+     */
+    @Benchmark
+    public void unenrolledProjectPush() {
+        listener.onPushEvent(newPushEvent(UNENROLLED_PROJECT_ID, "feature/bench-unenrolled"));
+    }
+
+    private static PushEvent newPushEvent(int projectId, String branch) {
+        PushEvent event = new PushEvent();
+        event.setProjectId(projectId);
+        event.setUserId(USER_ID);
+        event.setUserEmail("john@example.com");
+        event.setRef("refs/heads/" + branch);
+        event.setBefore("95790bf891e76fee5e1747ab589903a6a1f80f22");
+        event.setAfter("da1560886d4f094c3e6c9ef40349f7d38b5d27d7");
+        return (event);
+    }
+
+    /**
+     * Answers the GitLab API requests made by the push pipeline.
+     */
+    private static void handleGitLabRequest(HttpExchange exchange) throws IOException {
+
+        String path = exchange.getRequestURI().getPath();
+        String json;
+        if (path.matches("/api/v4/projects/\\d+")) {
+            json = "{\"id\":" + PROJECT_ID + ",\"name\":\"diaspora\",\"path\":\"diaspora\",\"web_url\":\"http://gitlab.example.com/mike/diaspora\""
+                    + ",\"namespace\":{\"id\":3,\"name\":\"mike\",\"path\":\"mike\"}}";
+        } else if (path.matches("/api/v4/users/\\d+")) {
+            json = "{\"id\":" + USER_ID + ",\"username\":\"jsmith\",\"name\":\"John Smith\",\"email\":\"john@example.com\",\"state\":\"active\"}";
+        } else if (path.matches("/api/v4/projects/\\d+/repository/branches/.+")) {
+            json = "{\"name\":\"feature\",\"merged\":false,\"protected\":false"
+                    + ",\"commit\":{\"id\":\"da1560886d4f094c3e6c9ef40349f7d38b5d27d7\",\"message\":\"Benchmark\"}}";
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.codereview.utils.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the signing and checking of the code review links, a link is signed for every review email
+ * and checked on every load and submit of the review form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+    private static final int PROJECT_ID = 15;
+    private static final String BRANCH = "feature/jmh-benchmarks";
+    private static final int USER_ID = 4;
+
+    private String validHash;
+
+    @Setup
+    public void setup() {
+        validHash = HashUtils.makeHash(HashUtils.SHORT_HASH, PROJECT_ID, BRANCH, USER_ID);
+    }
+
+    @Benchmark
+    public String makeHash() {
+        return (HashUtils.makeHash(HashUtils.SHORT_HASH, PROJECT_ID, BRANCH, USER_ID));
+    }
+
+    @Benchmark
+    public boolean isValidHash() {
+        return (HashUtils.isValidHash(validHash, HashUtils.SHORT_HASH, PROJECT_ID, BRANCH, USER_ID));
+    }
+
+    @Benchmark
+    public boolean isValidHashMismatch() {
+        return (HashUtils.isValidHash("0123456789", HashUtils.SHORT_HASH, PROJECT_ID, BRANCH, USER_ID));
+    }
+}
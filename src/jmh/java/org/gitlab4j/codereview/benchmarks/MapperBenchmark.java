@@ -0,0 +1,104 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.dao.ProjectConfig.ProjectConfigMapper;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.Push.PushMapper;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PushMapper and ProjectConfigMapper row mapping. Each mapper is run over the same query as a
+ * baseline that reads the rows without mapping them, the difference between the two is the cost of the mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    private static final int NUM_PUSHES = 1000;
+    private static final int NUM_PROJECTS = 100;
+
+    private static final String SELECT_PUSHES = "SELECT id, received, user_id, branch, project_id, before, after"
+            + ", merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id FROM push";
+    private static final String SELECT_PROJECT_CONFIGS = "SELECT * FROM project_config";
+
+    private JdbcConnectionPool dataSource;
+    private Handle handle;
+
+    @Setup
+    public void setup() {
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:mapper-benchmark", "bench", "bench");
+        Jdbi jdbi = Jdbi.create(dataSource);
+        jdbi.installPlugin(new SqlObjectPlugin());
+        new SchemaMigrator(jdbi).migrate();
+
+        handle = jdbi.open();
+        PushDAO pushDao = handle.attach(PushDAO.class);
+        for (int i = 1; i <= NUM_PUSHES; i++) {
+            pushDao.insert(i % 50, i % NUM_PROJECTS, "feature/branch-" + i,
+                    "95790bf891e76fee5e1747ab589903a6a1f80f22", "da1560886d4f094c3e6c9ef40349f7d38b5d27d7");
+        }
+
+        ProjectConfigDAO projectConfigDao = handle.attach(ProjectConfigDAO.class);
+        for (int i = 1; i <= NUM_PROJECTS; i++) {
+            ProjectConfig projectConfig = new ProjectConfig();
+            projectConfig.setProjectId(i);
+            projectConfig.setEnabled(true);
+            projectConfig.setBranchRegex("feature/.*");
+            projectConfig.setMailToType(MailToType.GROUP);
+            projectConfig.setAdditionalMailTo("lead@example.com;qa@example.com");
+            projectConfigDao.insert(projectConfig);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        handle.close();
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public int pushRowsBaseline() {
+        return (handle.createQuery(SELECT_PUSHES).map((rs, ctx) -> rs.getInt(1)).list().size());
+    }
+
+    @Benchmark
+    public List<Push> pushMapper() {
+        return (handle.createQuery(SELECT_PUSHES).map(new PushMapper()).list());
+    }
+
+    @Benchmark
+    public int projectConfigRowsBaseline() {
+        return (handle.createQuery(SELECT_PROJECT_CONFIGS).map((rs, ctx) -> rs.getInt(1)).list().size());
+    }
+
+    @Benchmark
+    public List<ProjectConfig> projectConfigMapper() {
+        return (handle.createQuery(SELECT_PROJECT_CONFIGS).map(new ProjectConfigMapper()).list());
+    }
+}
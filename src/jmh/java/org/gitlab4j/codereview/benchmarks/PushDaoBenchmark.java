@@ -0,0 +1,93 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PushDAO queries made for every push event against an in-memory H2 database at the latest
+ * schema version. This is quick enough to run on every release, PushQueryBenchmark covers the large file
+ * based databases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PushDaoBenchmark {
+
+    private static final int NUM_PROJECTS = 50;
+    private static final int NUM_USERS = 200;
+    private static final int NUM_BRANCHES = 500;
+
+    @Param({ "10000", "100000" })
+    public int rows;
+
+    private JdbcConnectionPool dataSource;
+    private Handle handle;
+    private PushDAO dao;
+
+    @Setup
+    public void setup() {
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:push-dao-benchmark", "bench", "bench");
+        Jdbi jdbi = Jdbi.create(dataSource);
+        jdbi.installPlugin(new SqlObjectPlugin());
+        new SchemaMigrator(jdbi).migrate();
+
+        // Half of the rows have a merge request, the unique key allows only one unsubmitted push per branch
+        // so just the first NUM_BRANCHES of the other half are added
+        handle = jdbi.open();
+        handle.execute("INSERT INTO push (user_id, project_id, branch, before, after, merge_request_id)"
+                + " SELECT MOD(X, " + NUM_USERS + "), MOD(X, " + NUM_PROJECTS + "), CONCAT('feature/branch-', MOD(X, " + NUM_BRANCHES + "))"
+                + ", '95790bf891e76fee5e1747ab589903a6a1f80f22', 'da1560886d4f094c3e6c9ef40349f7d38b5d27d7'"
+                + ", CASE WHEN X < " + (rows / 2) + " THEN 0 ELSE X END FROM SYSTEM_RANGE(1, " + rows + ")"
+                + " WHERE X >= " + (rows / 2) + " OR X <= " + NUM_BRANCHES);
+        dao = handle.attach(PushDAO.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handle.close();
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public List<Push> findPendingReviews() {
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        return (dao.findPendingReviews(i % NUM_USERS, i % NUM_PROJECTS, "feature/branch-" + (i % NUM_BRANCHES)));
+    }
+
+    @Benchmark
+    public List<Push> findUnsubmitted() {
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        return (dao.find(i % NUM_USERS, i % NUM_PROJECTS, "feature/branch-" + (i % NUM_BRANCHES), 0));
+    }
+
+    @Benchmark
+    public List<Push> findByMergeRequest() {
+        int i = ThreadLocalRandom.current().nextInt(rows / 2, rows);
+        return (dao.find(i % NUM_PROJECTS, i));
+    }
+}
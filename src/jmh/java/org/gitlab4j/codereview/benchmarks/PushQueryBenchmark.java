@@ -0,0 +1,186 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PushDAO queries against a file based H2 database holding the specified number of push
+ * rows, with the schema at version 1 (the original push_index only) or at version 4 (the push indexes
+ * added by versions 2 to 4). The query plans are printed when each database is opened.
+ *
+ * The comparison stops at version 4 because version 5 deletes all but the latest unsubmitted push of each
+ * project, user and branch. Two thirds of the synthetic rows are unsubmitted and spread over only a few
+ * thousand branches, so at version 5 the table would hold about a third of the rows and the queries would
+ * no longer be comparing the same data.
+ *
+ * The databases are built under build/jmh-db and reused by later runs, building the 50M row database
+ * takes a while and needs several GB of disk. To run a subset:
+ *
+ *   ./gradlew jmh -PjmhArgs="PushQueryBenchmark -p rows=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PushQueryBenchmark {
+
+    private static final int NUM_PROJECTS = 200;
+    private static final int NUM_USERS = 500;
+    private static final int NUM_BRANCHES = 2000;
+    private static final int INSERT_CHUNK_SIZE = 100000;
+
+    @Param({ "1000000", "10000000", "50000000" })
+    public int rows;
+
+    @Param({ "1", "4" })
+    public String schemaVersion;
+
+    private JdbcConnectionPool dataSource;
+    private Handle handle;
+    private PushDAO dao;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        File dbDir = new File("build/jmh-db");
+        dbDir.mkdirs();
+        String dbName = new File(dbDir, "push-" + rows + "-v" + schemaVersion).getAbsolutePath();
+        boolean exists = new File(dbName + ".mv.db").exists();
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:file:" + dbName, "bench", "bench");
+        Jdbi jdbi = Jdbi.create(dataSource);
+        jdbi.installPlugin(new SqlObjectPlugin());
+
+        // The rows are loaded at version 1 and the later migrations are applied to the populated table,
+        // this is quicker than loading into the new indexes and also shows how long the migration takes
+        SchemaMigrator migrator = new SchemaMigrator(jdbi);
+        handle = jdbi.open();
+        if (!exists) {
+            migrator.migrate(1);
+            populate(handle, rows);
+        }
+
+        long startTime = System.currentTimeMillis();
+        int targetVersion = Integer.parseInt(schemaVersion);
+        if (migrator.getVersion() < targetVersion) {
+            migrator.migrate(targetVersion);
+            System.out.println("Migrated to version " + targetVersion + ", rows=" + rows + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+        }
+
+        dao = handle.attach(PushDAO.class);
+        printPlans();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.close();
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public List<Push> findByUserBranch() {
+        int row = randomRow(1);
+        return (dao.find(userId(row), projectId(row), branch(row)));
+    }
+
+    @Benchmark
+    public List<Push> findByUserBranchMergeRequest() {
+        int row = randomRow(1);
+        return (dao.find(userId(row), projectId(row), branch(row), 0));
+    }
+
+    @Benchmark
+    public List<Push> findPendingReviews() {
+        int row = randomRow(1);
+        return (dao.findPendingReviews(userId(row), projectId(row), branch(row)));
+    }
+
+    @Benchmark
+    public List<Push> findByMergeRequest() {
+        int row = randomRow(3);
+        return (dao.find(projectId(row), row));
+    }
+
+    /**
+     * Every third push has a merge request (whose ID is the row number) and every sixth has been merged,
+     * the project and user are derived from the branch so every (project, branch, user) is consistent.
+     */
+    private static void populate(Handle handle, int rows) {
+
+        long startTime = System.currentTimeMillis();
+        for (int start = 1; start <= rows; start += INSERT_CHUNK_SIZE) {
+
+            int end = Math.min(rows, start + INSERT_CHUNK_SIZE - 1);
+            handle.execute("INSERT INTO push (received, user_id, branch, project_id, before, after, merge_request_id, merge_status)" +
+                    " SELECT DATEADD('SECOND', X, TIMESTAMP '2015-01-01 00:00:00')" +
+                    ", MOD(MOD(X, " + NUM_BRANCHES + "), " + NUM_USERS + ")" +
+                    ", CONCAT('branch-', MOD(X, " + NUM_BRANCHES + "))" +
+                    ", MOD(MOD(X, " + NUM_BRANCHES + "), " + NUM_PROJECTS + ")" +
+                    ", '0000000000000000000000000000000000000000', RAWTOHEX(X)" +
+                    ", CASE WHEN MOD(X, 3) = 0 THEN X ELSE 0 END" +
+                    ", CASE WHEN MOD(X, 6) = 0 THEN 'merged' ELSE NULL END" +
+                    " FROM SYSTEM_RANGE(" + start + ", " + end + ")");
+            System.out.println("Inserted " + end + " of " + rows + " push rows");
+        }
+
+        handle.execute("ANALYZE");
+        System.out.println("Populated push table, rows=" + rows + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+    }
+
+    private void printPlans() {
+
+        int row = randomRow(3);
+        String userBranch = "project_id = " + projectId(row) + " AND branch = '" + branch(row) + "' AND user_id = " + userId(row);
+        printPlan("SELECT * FROM push WHERE " + userBranch + " ORDER BY received DESC");
+        printPlan("SELECT * FROM push WHERE " + userBranch + " AND merge_request_id = 0 ORDER BY received DESC");
+        printPlan("SELECT * FROM push WHERE " + userBranch + " AND merge_request_id > 0 AND merge_status IS NULL ORDER BY received DESC");
+        printPlan("SELECT * FROM push WHERE project_id = " + projectId(row) + " AND merge_request_id = " + row + " ORDER BY received DESC");
+    }
+
+    private void printPlan(String sql) {
+        String plan = handle.createQuery("EXPLAIN " + sql).mapTo(String.class).findOnly();
+        System.out.println("rows=" + rows + ", schemaVersion=" + schemaVersion + "\n" + plan + "\n");
+    }
+
+    private int randomRow(int multipleOf) {
+        int max = rows / multipleOf;
+        return ((ThreadLocalRandom.current().nextInt(max) + 1) * multipleOf);
+    }
+
+    private static int projectId(int row) {
+        return ((row % NUM_BRANCHES) % NUM_PROJECTS);
+    }
+
+    private static int userId(int row) {
+        return ((row % NUM_BRANCHES) % NUM_USERS);
+    }
+
+    private static String branch(int row) {
+        return ("branch-" + (row % NUM_BRANCHES));
+    }
+}
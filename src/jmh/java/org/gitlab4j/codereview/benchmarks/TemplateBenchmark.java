@@ -0,0 +1,72 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.api.models.Author;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.codereview.utils.VelocityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rendering of the email templates that ship in src/main/resources/templates, with the same
+ * data that CodeReviewMailer puts in the Velocity context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    private Map<String, Object> codeReviewData;
+    private Map<String, Object> mergeRequestData;
+
+    @Setup
+    public void setup() {
+
+        codeReviewData = new HashMap<String, Object>();
+        codeReviewData.put("codeReviewLink", "http://simple-cr.example.com/app?p=15&b=feature%2Fjmh&u=4&s=0123456789");
+        codeReviewData.put("gitlabWebUrl", "http://gitlab.example.com");
+        codeReviewData.put("projectName", "diaspora");
+        codeReviewData.put("branch", "feature/jmh");
+        codeReviewData.put("group", "mike");
+
+        Author author = new Author();
+        author.setName("John Smith");
+        MergeRequest mergeRequest = new MergeRequest();
+        mergeRequest.setIid(42);
+        mergeRequest.setTitle("Add the JMH benchmarks");
+        mergeRequest.setAuthor(author);
+
+        mergeRequestData = new HashMap<String, Object>();
+        mergeRequestData.put("gitlabWebUrl", "http://gitlab.example.com");
+        mergeRequestData.put("mergeRequestLink", "http://gitlab.example.com/mike/diaspora/merge_requests/42");
+        mergeRequestData.put("mergeRequest", mergeRequest);
+        mergeRequestData.put("projectName", "diaspora");
+        mergeRequestData.put("branch", "feature/jmh");
+        mergeRequestData.put("group", "mike");
+        mergeRequestData.put("author", author);
+    }
+
+    @Benchmark
+    public String codeReviewEmail() throws Exception {
+        return (VelocityUtils.getTextBody("/templates/code-review.vm", codeReviewData));
+    }
+
+    @Benchmark
+    public String mergeRequestEmail() throws Exception {
+        return (VelocityUtils.getTextBody("/templates/merge-request.vm", mergeRequestData));
+    }
+}
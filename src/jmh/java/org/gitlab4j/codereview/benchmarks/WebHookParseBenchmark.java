@@ -0,0 +1,107 @@
+package org.gitlab4j.codereview.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.api.utils.JacksonJson;
+import org.gitlab4j.api.webhook.Event;
+import org.gitlab4j.codereview.webhook.EventPreParser;
+import org.gitlab4j.codereview.webhook.EventPreParser.EventSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares binding a push payload to an Event, which is what Jersey did for every webhook request, with the
+ * streaming pre-parse that EventPreParser uses to drop the events of projects that are not in Simple-CR.
+ * The payload size and the number of bytes the pre-parse reads are printed when each payload is built.
+ *
+ * Run with the gc profiler to get the allocation per event (gc.alloc.rate.norm):
+ *
+ *   ./gradlew jmh -PjmhArgs="WebHookParseBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebHookParseBenchmark {
+
+    @Param({ "1", "100", "2000" })
+    public int commits;
+
+    private ObjectMapper objectMapper;
+    private JsonFactory jsonFactory;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        objectMapper = new JacksonJson().getObjectMapper();
+        jsonFactory = objectMapper.getFactory();
+        payload = buildPushPayload(commits);
+
+        EventSummary summary = EventPreParser.scan(jsonFactory, payload);
+        System.out.println();
+        System.out.println("commits=" + commits + ", payloadBytes=" + payload.length + ", bytesScanned=" + summary.getBytesScanned());
+    }
+
+    @Benchmark
+    public Event fullBind() throws Exception {
+        return (objectMapper.readValue(payload, Event.class));
+    }
+
+    @Benchmark
+    public EventSummary preParse() throws Exception {
+        return (EventPreParser.scan(jsonFactory, payload));
+    }
+
+    @Benchmark
+    public Event preParseThenBind() throws Exception {
+        EventPreParser.scan(jsonFactory, payload);
+        return (objectMapper.readValue(payload, Event.class));
+    }
+
+    /**
+     * Builds a push payload with the fields of a GitLab push event. The object_kind and project_id come before
+     * the project, the commits and the repository, so the pre-parse stops before it reaches the commits.
+     */
+    private static byte[] buildPushPayload(int numCommits) {
+
+        StringBuilder json = new StringBuilder(512 + numCommits * 600);
+        json.append("{\"object_kind\":\"push\",\"event_name\":\"push\"");
+        json.append(",\"before\":\"95790bf891e76fee5e1747ab589903a6a1f80f22\"");
+        json.append(",\"after\":\"da1560886d4f094c3e6c9ef40349f7d38b5d27d7\"");
+        json.append(",\"ref\":\"refs/heads/feature/streaming-parse\",\"checkout_sha\":\"da1560886d4f094c3e6c9ef40349f7d38b5d27d7\"");
+        json.append(",\"user_id\":4,\"user_name\":\"John Smith\",\"user_username\":\"jsmith\",\"user_email\":\"john@example.com\"");
+        json.append(",\"project_id\":15,\"project\":{\"id\":15,\"name\":\"Diaspora\",\"namespace\":\"Mike\"");
+        json.append(",\"web_url\":\"http://example.com/mike/diaspora\",\"path_with_namespace\":\"mike/diaspora\",\"default_branch\":\"master\"}");
+        json.append(",\"commits\":[");
+        for (int i = 0; i < numCommits; i++) {
+            String id = String.format("%040x", i + 1);
+            json.append(i > 0 ? "," : "");
+            json.append("{\"id\":\"").append(id).append("\",\"message\":\"Update the streaming parser, commit ").append(i).append("\"");
+            json.append(",\"timestamp\":\"2018-06-01T12:00:00+00:00\",\"url\":\"http://example.com/mike/diaspora/commit/").append(id).append("\"");
+            json.append(",\"author\":{\"name\":\"John Smith\",\"email\":\"john@example.com\"}");
+            json.append(",\"added\":[\"src/main/java/New").append(i).append(".java\"]");
+            json.append(",\"modified\":[\"src/main/java/Parser.java\",\"README.md\"],\"removed\":[]}");
+        }
+
+        json.append("],\"total_commits_count\":").append(numCommits);
+        json.append(",\"repository\":{\"name\":\"Diaspora\",\"url\":\"git@example.com:mike/diaspora.git\",\"homepage\":\"http://example.com/mike/diaspora\"}}");
+        return (json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
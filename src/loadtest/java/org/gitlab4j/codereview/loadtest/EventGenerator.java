@@ -0,0 +1,112 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates the synthetic webhook payloads for a scenario. The payloads come from a Random seeded by the
+ * scenario, so a scenario always produces the same stream of events in the same order.
+ *
+ * Pushes are spread over the users and their branches, so a branch is pushed to more than once in a long run
+ * and the repeat pushes exercise the pending push checks. Merge request events are for random branches and
+ * are mostly merged or closed, which is what Simple-CR acts on.
+ */
+public class EventGenerator {
+
+    public static final String PUSH_HOOK = "Push Hook";
+    public static final String MERGE_REQUEST_HOOK = "Merge Request Hook";
+
+    private static final String[] MERGE_STATES = { "merged", "merged", "merged", "closed", "opened" };
+
+    private final Random random;
+    private final int numProjects;
+    private final double unenrolledRatio;
+    private final int numUsers;
+    private final int branchesPerUser;
+    private final int commitsPerPush;
+    private long sequence;
+
+    public EventGenerator(Scenario scenario) {
+        random = new Random(scenario.getSeed());
+        numProjects = scenario.getProjects();
+        unenrolledRatio = scenario.getUnenrolledRatio();
+        numUsers = scenario.getUsers();
+        branchesPerUser = scenario.getBranchesPerUser();
+        commitsPerPush = scenario.getCommitsPerPush();
+    }
+
+    /**
+     * @return the payload of the next push event
+     */
+    public byte[] nextPush() {
+
+        long eventNumber = ++sequence;
+        int projectId = nextProjectId();
+        int userId = 1 + random.nextInt(numUsers);
+        String branch = "feature/user" + userId + "-" + (1 + random.nextInt(branchesPerUser));
+        String before = String.format("%040x", eventNumber * 2);
+        String after = String.format("%040x", eventNumber * 2 + 1);
+
+        StringBuilder json = new StringBuilder(512 + commitsPerPush * 300);
+        json.append("{\"object_kind\":\"push\",\"event_name\":\"push\"");
+        json.append(",\"before\":\"").append(before).append("\",\"after\":\"").append(after).append("\"");
+        json.append(",\"ref\":\"refs/heads/").append(branch).append("\",\"checkout_sha\":\"").append(after).append("\"");
+        json.append(",\"user_id\":").append(userId).append(",\"user_name\":\"User ").append(userId).append("\"");
+        json.append(",\"user_username\":\"user").append(userId).append("\",\"user_email\":\"").append(FakeGitLabServer.getUserEmail(userId)).append("\"");
+        json.append(",\"project_id\":").append(projectId).append(",\"project\":{\"id\":").append(projectId);
+        json.append(",\"name\":\"project-").append(projectId).append("\",\"path_with_namespace\":\"").append(FakeGitLabServer.GROUP);
+        json.append("/project-").append(projectId).append("\",\"default_branch\":\"master\"}");
+        json.append(",\"commits\":[");
+        for (int i = 0; i < commitsPerPush; i++) {
+            String id = String.format("%040x", eventNumber * 1000 + i);
+            json.append(i > 0 ? "," : "");
+            json.append("{\"id\":\"").append(id).append("\",\"message\":\"Load test commit ").append(i).append("\"");
+            json.append(",\"timestamp\":\"2018-06-01T12:00:00+00:00\"");
+            json.append(",\"author\":{\"name\":\"User ").append(userId).append("\",\"email\":\"").append(FakeGitLabServer.getUserEmail(userId)).append("\"}");
+            json.append(",\"added\":[],\"modified\":[\"README.md\"],\"removed\":[]}");
+        }
+
+        json.append("],\"total_commits_count\":").append(commitsPerPush).append("}");
+        return (json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the payload of the next merge request event
+     */
+    public byte[] nextMergeRequest() {
+
+        ++sequence;
+        int projectId = nextProjectId();
+        int userId = 1 + random.nextInt(numUsers);
+        int mergedById = 1 + random.nextInt(numUsers);
+        String branch = "feature/user" + userId + "-" + (1 + random.nextInt(branchesPerUser));
+        int iid = 1 + random.nextInt(1000);
+        String state = MERGE_STATES[random.nextInt(MERGE_STATES.length)];
+
+        StringBuilder json = new StringBuilder(768);
+        json.append("{\"object_kind\":\"merge_request\"");
+        json.append(",\"user\":{\"id\":").append(mergedById).append(",\"name\":\"User ").append(mergedById);
+        json.append("\",\"username\":\"user").append(mergedById).append("\"}");
+        json.append(",\"project\":{\"id\":").append(projectId).append(",\"name\":\"project-").append(projectId).append("\"}");
+        json.append(",\"object_attributes\":{\"id\":").append(projectId * 10000 + iid).append(",\"iid\":").append(iid);
+        json.append(",\"target_branch\":\"master\",\"source_branch\":\"").append(branch).append("\"");
+        json.append(",\"source_project_id\":").append(projectId).append(",\"target_project_id\":").append(projectId);
+        json.append(",\"author_id\":").append(userId).append(",\"assignee_id\":").append(mergedById);
+        json.append(",\"title\":\"Load test merge request ").append(iid).append("\"");
+        json.append(",\"state\":\"").append(state).append("\",\"merge_status\":\"can_be_merged\"");
+        json.append(",\"updated_at\":\"2018-06-01T12:00:00Z\"}}");
+        return (json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Enrolled projects are numbered from 1 to the number of projects, the unenrolled ones follow them.
+     */
+    private int nextProjectId() {
+
+        if (unenrolledRatio > 0.0 && random.nextDouble() < unenrolledRatio) {
+            return (numProjects + 1 + random.nextInt(numProjects));
+        }
+
+        return (1 + random.nextInt(numProjects));
+    }
+}
@@ -0,0 +1,205 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the GitLab REST API that answers the requests Simple-CR makes with generated JSON. Every
+ * request waits for the configured latency plus a random jitter, and the configured fraction of requests is
+ * answered with a 500 error.
+ *
+ * Projects are named "loadtest/project-{id}" and have three members, users are named "user{id}".
+ */
+public class FakeGitLabServer {
+
+    public static final String GROUP = "loadtest";
+    public static final int GROUP_ID = 1;
+    private static final int MEMBERS_PER_PROJECT = 3;
+
+    private static final Pattern PROJECT = Pattern.compile("/api/v4/projects/(\\d+)");
+    private static final Pattern PROJECT_BY_PATH = Pattern.compile("/api/v4/projects/" + GROUP + "%2Fproject-(\\d+)");
+    private static final Pattern PROJECT_HOOKS = Pattern.compile("/api/v4/projects/(\\d+)/hooks");
+    private static final Pattern PROJECT_MEMBERS = Pattern.compile("/api/v4/projects/(\\d+)/members");
+    private static final Pattern GROUP_MEMBERS = Pattern.compile("/api/v4/groups/\\d+/members");
+    private static final Pattern BRANCH = Pattern.compile("/api/v4/projects/(\\d+)/repository/branches/(.+)");
+    private static final Pattern MERGE_REQUEST = Pattern.compile("/api/v4/projects/(\\d+)/merge_requests/(\\d+)");
+    private static final Pattern USER = Pattern.compile("/api/v4/users/(\\d+)");
+    private static final Pattern USERS = Pattern.compile("/api/v4/users");
+    private static final Pattern USERNAME = Pattern.compile("username=user(\\d+)");
+
+    private final int latencyMillis;
+    private final int jitterMillis;
+    private final double errorRate;
+    private final Random random;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong nextHookId = new AtomicLong(1);
+
+    /**
+     * Create and start a FakeGitLabServer on a free local port.
+     *
+     * @param scenario the scenario holding the latency, error rate and thread settings
+     * @throws IOException if the server could not be started
+     */
+    public FakeGitLabServer(Scenario scenario) throws IOException {
+
+        latencyMillis = scenario.getGitLabLatency();
+        jitterMillis = scenario.getGitLabLatencyJitter();
+        errorRate = scenario.getGitLabErrorRate();
+        random = new Random(scenario.getSeed());
+
+        executor = Executors.newFixedThreadPool(scenario.getGitLabThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "fake-gitlab");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return ("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("requests", requests.get());
+        stats.put("injectedErrors", errors.get());
+        stats.put("notFound", notFound.get());
+        return (stats);
+    }
+
+    public static String getUserEmail(int userId) {
+        return ("user" + userId + "@loadtest.example.com");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+
+        requests.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+            }
+        }
+
+        try {
+            int delay = latencyMillis + (jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (errorRate > 0.0 && random.nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            send(exchange, 500, "{\"message\":\"500 Internal Server Error\"}");
+            return;
+        }
+
+        String json = getResponse(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(), exchange.getRequestURI().getRawQuery());
+        if (json == null) {
+            notFound.incrementAndGet();
+            send(exchange, 404, "{\"message\":\"404 Not Found\"}");
+        } else {
+            send(exchange, ("POST".equals(exchange.getRequestMethod()) ? 201 : 200), json);
+        }
+    }
+
+    /**
+     * @return the JSON for the request, or null if the request is not one Simple-CR makes
+     */
+    private String getResponse(String method, String path, String query) throws IOException {
+
+        Matcher matcher;
+        if ("POST".equals(method)) {
+            if (PROJECT_HOOKS.matcher(path).matches()) {
+                return ("{\"id\":" + nextHookId.getAndIncrement() + ",\"push_events\":true,\"merge_requests_events\":true}");
+            }
+
+            return (null);
+        }
+
+        if ((matcher = PROJECT.matcher(path)).matches() || (matcher = PROJECT_BY_PATH.matcher(path)).matches()) {
+            return (projectJson(Integer.parseInt(matcher.group(1))));
+        } else if ((matcher = PROJECT_MEMBERS.matcher(path)).matches()) {
+            return (membersJson(Integer.parseInt(matcher.group(1))));
+        } else if (GROUP_MEMBERS.matcher(path).matches()) {
+            return (membersJson(0));
+        } else if ((matcher = BRANCH.matcher(path)).matches()) {
+            return ("{\"name\":\"" + URLDecoder.decode(matcher.group(2), "UTF-8") + "\",\"merged\":false,\"protected\":false"
+                    + ",\"commit\":{\"id\":\"da1560886d4f094c3e6c9ef40349f7d38b5d27d7\",\"message\":\"Load test commit\"}}");
+        } else if ((matcher = MERGE_REQUEST.matcher(path)).matches()) {
+            return ("{\"id\":" + matcher.group(2) + ",\"iid\":" + matcher.group(2) + ",\"project_id\":" + matcher.group(1)
+                    + ",\"state\":\"merged\",\"merge_status\":\"can_be_merged\",\"assignee\":" + userJson(1) + "}");
+        } else if ((matcher = USER.matcher(path)).matches()) {
+            return (userJson(Integer.parseInt(matcher.group(1))));
+        } else if (USERS.matcher(path).matches() && query != null && (matcher = USERNAME.matcher(query)).find()) {
+            return ("[" + userJson(Integer.parseInt(matcher.group(1))) + "]");
+        }
+
+        return (null);
+    }
+
+    private static String projectJson(int projectId) {
+        return ("{\"id\":" + projectId + ",\"name\":\"project-" + projectId + "\",\"path\":\"project-" + projectId + "\""
+                + ",\"path_with_namespace\":\"" + GROUP + "/project-" + projectId + "\",\"default_branch\":\"master\""
+                + ",\"web_url\":\"http://gitlab.example.com/" + GROUP + "/project-" + projectId + "\""
+                + ",\"namespace\":{\"id\":" + GROUP_ID + ",\"name\":\"" + GROUP + "\",\"path\":\"" + GROUP + "\",\"kind\":\"group\"}}");
+    }
+
+    private static String userJson(int userId) {
+        return ("{\"id\":" + userId + ",\"username\":\"user" + userId + "\",\"name\":\"User " + userId + "\""
+                + ",\"email\":\"" + getUserEmail(userId) + "\",\"state\":\"active\"}");
+    }
+
+    private static String membersJson(int projectId) {
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= MEMBERS_PER_PROJECT; i++) {
+            int userId = projectId * MEMBERS_PER_PROJECT + i;
+            json.append(i > 1 ? "," : "");
+            json.append("{\"id\":").append(userId).append(",\"username\":\"user").append(userId).append("\"");
+            json.append(",\"name\":\"User ").append(userId).append("\",\"state\":\"active\",\"access_level\":30}");
+        }
+
+        return (json.append("]").toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gitlab4j.codereview.CodeReviewServer;
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Runs a load test scenario against a Simple-CR server started in this JVM. The server talks to a FakeGitLabServer
+ * and an SmtpSink, and is sent a stream of push and merge request webhooks at the rates set by the scenario.
+ *
+ * Events are sent on a fixed schedule whether or not earlier requests have finished, and the latency of each
+ * request is measured from the time it was scheduled to be sent, so a server that falls behind shows up as
+ * latency rather than as a lower send rate. The summary is printed and the full results are written as JSON.
+ *
+ * Usage: LoadTest scenario-file results-file
+ */
+public class LoadTest {
+
+    private static final long SERVER_START_TIMEOUT = 60000;
+    private static final long DRAIN_TIMEOUT = 60000;
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final Scenario scenario;
+    private final String serverUrl;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+    private final Map<String, AtomicLong> responses = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong maxSendLagNanos = new AtomicLong();
+
+    private FakeGitLabServer gitlab;
+    private SmtpSink smtpSink;
+    private ResourceSampler resourceSampler;
+    private long measureStartNanos;
+    private long measureEndNanos;
+
+    public LoadTest(Scenario scenario) {
+        this.scenario = scenario;
+        this.serverUrl = "http://127.0.0.1:" + scenario.getServerPort();
+        latencies.put(EventGenerator.PUSH_HOOK, new LatencyHistogram());
+        latencies.put(EventGenerator.MERGE_REQUEST_HOOK, new LatencyHistogram());
+    }
+
+    public static void main(String[] args) {
+
+        if (args.length != 2) {
+            System.err.println("Usage: LoadTest scenario-file results-file");
+            System.exit(1);
+        }
+
+        // Always exit, this runs the shutdown hook that stops the Simple-CR server and ends the stand-in threads
+        try {
+
+            Scenario scenario = Scenario.load(new File(args[0]));
+            LoadTest loadTest = new LoadTest(scenario);
+            Map<String, Object> results = loadTest.run();
+
+            File resultsFile = new File(args[1]);
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            objectMapper.writeValue(resultsFile, results);
+            System.out.println("Results written to " + resultsFile.getAbsolutePath());
+            System.exit(0);
+
+        } catch (Exception e) {
+            System.err.println("Load test failed, error=" + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Starts the stand-ins and the server, runs the scenario and collects the results.
+     *
+     * @return the results of the run
+     * @throws Exception if the server could not be started
+     */
+    public Map<String, Object> run() throws Exception {
+
+        gitlab = new FakeGitLabServer(scenario);
+        smtpSink = new SmtpSink(scenario.getSmtpLatency());
+        startServer();
+        enrollProjects();
+
+        resourceSampler = new ResourceSampler();
+        sendEvents();
+
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+        results.put("scenario", scenario.getName());
+        results.put("settings", scenario.toMap());
+        results.put("client", getClientStats());
+        results.put("resources", resourceSampler.getStats());
+        results.put("gitlab", gitlab.getStats());
+        results.put("smtp", smtpSink.getStats());
+        results.put("server", getServerStats());
+        printSummary(results);
+
+        gitlab.stop();
+        smtpSink.stop();
+        return (results);
+    }
+
+    /**
+     * Writes the Simple-CR config for the scenario and starts the server on a background thread.
+     */
+    private void startServer() throws Exception {
+
+        Map<String, String> serverProperties = new LinkedHashMap<String, String>();
+        serverProperties.put("port", Integer.toString(scenario.getServerPort()));
+        serverProperties.put("path", "/");
+        serverProperties.put("interactive", "false");
+        serverProperties.put("api-token", "loadtest");
+        serverProperties.put("gitlab-api", gitlab.getUrl());
+        serverProperties.put("gitlab-web", "http://gitlab.example.com");
+        serverProperties.put("simple-cr", serverUrl);
+        serverProperties.put("smtp-host", "127.0.0.1");
+        serverProperties.put("smtp-port", Integer.toString(smtpSink.getPort()));
+        serverProperties.put("smtp-enable-starttls", "false");
+        serverProperties.put("db-name", "mem:simple-cr-loadtest;DB_CLOSE_DELAY=-1");
+        serverProperties.putAll(scenario.getServerProperties());
+
+        File configFile = File.createTempFile("simple-cr-loadtest", ".properties");
+        configFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(configFile, "UTF-8")) {
+            serverProperties.forEach((name, value) -> writer.println(name + "=" + value));
+        }
+
+        System.setProperty("simple-cr.config", configFile.getAbsolutePath());
+        Thread serverThread = new Thread(() -> {
+            try {
+                CodeReviewServer.main(new String[0]);
+            } catch (Exception e) {
+                System.err.println("Simple-CR server failed, error=" + e.getMessage());
+                e.printStackTrace();
+            }
+        }, "simple-cr-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                if (request("GET", "/admin/stats", null, null, null) == 200) {
+                    return;
+                }
+            } catch (IOException ignore) {
+            }
+
+            Thread.sleep(250);
+        }
+
+        throw new IllegalStateException("Simple-CR server did not start within " + SERVER_START_TIMEOUT + "ms");
+    }
+
+    /**
+     * Enrolls the scenario's projects through the admin API, the same way they would be enrolled in production.
+     */
+    private void enrollProjects() throws IOException {
+
+        for (int projectId = 1; projectId <= scenario.getProjects(); projectId++) {
+
+            String path = "/admin/" + FakeGitLabServer.GROUP + "/project-" + projectId;
+            byte[] form = "mail_to=project".getBytes(StandardCharsets.UTF_8);
+            int status = request("POST", path, "application/x-www-form-urlencoded", null, form);
+            if (status != 201) {
+                throw new IllegalStateException("Could not enroll project-" + projectId + ", status=" + status);
+            }
+        }
+
+        System.out.println("Enrolled " + scenario.getProjects() + " projects");
+    }
+
+    /**
+     * Sends the push and merge request events on a fixed schedule for the warmup and the measured duration.
+     */
+    private void sendEvents() throws InterruptedException {
+
+        EventGenerator generator = new EventGenerator(scenario);
+        ExecutorService clients = Executors.newFixedThreadPool(scenario.getClientThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-client");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        double pushInterval = (scenario.getPushRate() > 0 ? 1e9 / scenario.getPushRate() : Double.MAX_VALUE);
+        double mergeRequestInterval = (scenario.getMergeRequestRate() > 0 ? 1e9 / scenario.getMergeRequestRate() : Double.MAX_VALUE);
+        long startNanos = System.nanoTime();
+        measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(scenario.getWarmup());
+        measureEndNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(scenario.getDuration());
+        System.out.println("Running scenario " + scenario.getName() + ", warmup=" + scenario.getWarmup() + "s, duration=" + scenario.getDuration() + "s");
+
+        boolean measuring = false;
+        long numPushes = 0;
+        long numMergeRequests = 0;
+        while (true) {
+
+            double nextPush = numPushes * pushInterval;
+            double nextMergeRequest = numMergeRequests * mergeRequestInterval;
+            boolean isPush = (nextPush <= nextMergeRequest);
+            long scheduledNanos = startNanos + (long) Math.min(nextPush, nextMergeRequest);
+            if (scheduledNanos >= measureEndNanos) {
+                break;
+            }
+
+            if (!measuring && scheduledNanos >= measureStartNanos) {
+                resourceSampler.start();
+                measuring = true;
+            }
+
+            byte[] payload = (isPush ? generator.nextPush() : generator.nextMergeRequest());
+            String eventType = (isPush ? EventGenerator.PUSH_HOOK : EventGenerator.MERGE_REQUEST_HOOK);
+            if (isPush) {
+                numPushes++;
+            } else {
+                numMergeRequests++;
+            }
+
+            long waitNanos = scheduledNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+
+            boolean measured = measuring;
+            clients.execute(() -> sendEvent(eventType, payload, scheduledNanos, measured));
+        }
+
+        clients.shutdown();
+        if (!clients.awaitTermination(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            System.err.println("Requests were still in flight after " + DRAIN_TIMEOUT + "ms");
+            clients.shutdownNow();
+        }
+
+        if (measuring) {
+            resourceSampler.stop();
+        }
+    }
+
+    private void sendEvent(String eventType, byte[] payload, long scheduledNanos, boolean measured) {
+
+        long sendLag = System.nanoTime() - scheduledNanos;
+        maxSendLagNanos.accumulateAndGet(sendLag, Math::max);
+
+        String outcome;
+        try {
+            outcome = Integer.toString(request("POST", "/webhook", "application/json", eventType, payload));
+        } catch (IOException e) {
+            outcome = e.getClass().getSimpleName();
+        }
+
+        if (measured) {
+            latencies.get(eventType).record(System.nanoTime() - scheduledNanos);
+            responses.computeIfAbsent(outcome, key -> new AtomicLong()).incrementAndGet();
+            sent.incrementAndGet();
+        }
+    }
+
+    /**
+     * Makes a request to the Simple-CR server and reads the whole response so the connection can be reused.
+     *
+     * @return the HTTP status code
+     */
+    private int request(String method, String path, String contentType, String gitlabEvent, byte[] body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (gitlabEvent != null) {
+            connection.setRequestProperty("X-Gitlab-Event", gitlabEvent);
+        }
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        return (status);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+
+        if (in == null) {
+            return (new byte[0]);
+        }
+
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+
+            return (out.toByteArray());
+        }
+    }
+
+    private Map<String, Object> getClientStats() {
+
+        double seconds = (measureEndNanos - measureStartNanos) / 1e9;
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("sent", sent.get());
+        stats.put("throughputPerSecond", sent.get() / seconds);
+        stats.put("maxSendLagMillis", maxSendLagNanos.get() / 1e6);
+
+        Map<String, Long> responseCounts = new TreeMap<String, Long>();
+        responses.forEach((outcome, count) -> responseCounts.put(outcome, count.get()));
+        stats.put("responses", responseCounts);
+        stats.put("errors", responseCounts.entrySet().stream().filter(entry -> !entry.getKey().startsWith("2")).mapToLong(Map.Entry::getValue).sum());
+
+        Map<String, Object> latencyStats = new LinkedHashMap<String, Object>();
+        latencies.forEach((eventType, histogram) -> {
+            Map<String, Object> eventStats = new LinkedHashMap<String, Object>();
+            eventStats.put("count", histogram.getCount());
+            eventStats.put("p50Millis", histogram.getPercentileMillis(50));
+            eventStats.put("p99Millis", histogram.getPercentileMillis(99));
+            eventStats.put("p999Millis", histogram.getPercentileMillis(99.9));
+            eventStats.put("maxMillis", histogram.getMaxNanos() / 1e6);
+            latencyStats.put(eventType, eventStats);
+        });
+
+        stats.put("latency", latencyStats);
+        return (stats);
+    }
+
+    /**
+     * @return the /admin/stats output of the server, or the error if it could not be fetched
+     */
+    private Object getServerStats() {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + "/admin/stats").openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            return (new ObjectMapper().readValue(readFully(connection.getInputStream()), Map.class));
+        } catch (IOException e) {
+            return ("Could not fetch server stats, error=" + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printSummary(Map<String, Object> results) {
+
+        Map<String, Object> client = (Map<String, Object>) results.get("client");
+        System.out.println();
+        System.out.println("Scenario:   " + results.get("scenario"));
+        System.out.println("Sent:       " + client.get("sent") + String.format(" (%.1f/s)", client.get("throughputPerSecond")));
+        System.out.println("Errors:     " + client.get("errors") + " " + client.get("responses"));
+        ((Map<String, Object>) client.get("latency")).forEach((eventType, stats) -> {
+            Map<String, Object> latency = (Map<String, Object>) stats;
+            System.out.println(String.format("%-19s p50=%sms p99=%sms p999=%sms max=%.1fms", eventType + ":",
+                    latency.get("p50Millis"), latency.get("p99Millis"), latency.get("p999Millis"), latency.get("maxMillis")));
+        });
+
+        System.out.println("Resources:  " + results.get("resources"));
+        System.out.println("GitLab:     " + results.get("gitlab"));
+        System.out.println("SMTP:       " + results.get("smtp"));
+        System.out.println();
+    }
+}
@@ -0,0 +1,108 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the resource usage of the JVM once a second while the load test is measuring. The server, the
+ * stand-ins and the load generator share the JVM, so the numbers are an upper bound for the server alone.
+ */
+public class ResourceSampler {
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    private final ScheduledExecutorService scheduler;
+
+    private long startNanos;
+    private long startCpuNanos;
+    private long startGcCount;
+    private long startGcMillis;
+    private long endNanos;
+    private long endCpuNanos;
+    private long endGcCount;
+    private long endGcMillis;
+
+    private int numSamples;
+    private long maxHeapUsed;
+    private long totalHeapUsed;
+    private int maxThreads;
+
+    public ResourceSampler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resource-sampler");
+            thread.setDaemon(true);
+            return (thread);
+        });
+    }
+
+    public void start() {
+
+        startNanos = System.nanoTime();
+        startCpuNanos = getProcessCpuNanos();
+        startGcCount = getGcCount();
+        startGcMillis = getGcMillis();
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+
+        scheduler.shutdownNow();
+        endNanos = System.nanoTime();
+        endCpuNanos = getProcessCpuNanos();
+        endGcCount = getGcCount();
+        endGcMillis = getGcMillis();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+
+        double elapsedNanos = Math.max(1, endNanos - startNanos);
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("availableProcessors", osBean.getAvailableProcessors());
+        stats.put("cpuSeconds", (endCpuNanos - startCpuNanos) / 1e9);
+        stats.put("avgCpuCores", (endCpuNanos - startCpuNanos) / elapsedNanos);
+        stats.put("maxHeapUsedMb", maxHeapUsed / (1024 * 1024));
+        stats.put("avgHeapUsedMb", numSamples > 0 ? totalHeapUsed / numSamples / (1024 * 1024) : 0);
+        stats.put("maxThreads", maxThreads);
+        stats.put("gcCount", endGcCount - startGcCount);
+        stats.put("gcMillis", endGcMillis - startGcMillis);
+        return (stats);
+    }
+
+    private synchronized void sample() {
+
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+        maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+        totalHeapUsed += heapUsed;
+        maxThreads = Math.max(maxThreads, threadBean.getThreadCount());
+        numSamples++;
+    }
+
+    /**
+     * @return the CPU time used by the process, or -1 if the JVM does not report it
+     */
+    private long getProcessCpuNanos() {
+
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return (((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime());
+        }
+
+        return (-1);
+    }
+
+    private static long getGcCount() {
+        return (ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum());
+    }
+
+    private static long getGcMillis() {
+        return (ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum());
+    }
+}
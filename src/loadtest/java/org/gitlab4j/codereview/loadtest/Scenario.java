@@ -0,0 +1,208 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A load test scenario, loaded from a properties file. The scenario fixes everything that affects a run, the
+ * event rates and mix, the random seed, the behavior of the GitLab and SMTP stand-ins and the Simple-CR server
+ * settings, so the same scenario can be run against different builds and the results compared.
+ *
+ * Any property that starts with "server." is passed on to the Simple-CR server with the prefix removed, for
+ * example "server.webhook-workers=8".
+ */
+public class Scenario {
+
+    public static final String NAME = "name";
+    public static final String SEED = "seed";
+    public static final String DURATION = "duration";
+    public static final String WARMUP = "warmup";
+    public static final String PUSH_RATE = "push-rate";
+    public static final String MERGE_REQUEST_RATE = "merge-request-rate";
+    public static final String CLIENT_THREADS = "client-threads";
+    public static final String PROJECTS = "projects";
+    public static final String UNENROLLED_RATIO = "unenrolled-ratio";
+    public static final String USERS = "users";
+    public static final String BRANCHES_PER_USER = "branches-per-user";
+    public static final String COMMITS_PER_PUSH = "commits-per-push";
+    public static final String SERVER_PORT = "server-port";
+    public static final String GITLAB_LATENCY = "gitlab-latency";
+    public static final String GITLAB_LATENCY_JITTER = "gitlab-latency-jitter";
+    public static final String GITLAB_ERROR_RATE = "gitlab-error-rate";
+    public static final String GITLAB_THREADS = "gitlab-threads";
+    public static final String SMTP_LATENCY = "smtp-latency";
+
+    public static final String SERVER_PROPERTY_PREFIX = "server.";
+
+    private final Properties properties;
+    private final String defaultName;
+
+    private Scenario(Properties properties, String defaultName) {
+        this.properties = properties;
+        this.defaultName = defaultName;
+    }
+
+    /**
+     * Load a Scenario from the specified properties file.
+     *
+     * @param file the scenario file
+     * @return the loaded Scenario
+     * @throws IOException if the file could not be read
+     */
+    public static Scenario load(File file) throws IOException {
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+
+        return (new Scenario(properties, file.getName().replaceAll("\\.properties$", "")));
+    }
+
+    public String getName() {
+        return (properties.getProperty(NAME, defaultName));
+    }
+
+    public long getSeed() {
+        return (getLong(SEED, 1));
+    }
+
+    /**
+     * @return the length of the measured part of the run in seconds
+     */
+    public int getDuration() {
+        return (getInt(DURATION, 60));
+    }
+
+    /**
+     * @return the length of the warmup in seconds, events sent during the warmup are not measured
+     */
+    public int getWarmup() {
+        return (getInt(WARMUP, 10));
+    }
+
+    /**
+     * @return the push events sent per second
+     */
+    public double getPushRate() {
+        return (getDouble(PUSH_RATE, 20.0));
+    }
+
+    /**
+     * @return the merge request events sent per second
+     */
+    public double getMergeRequestRate() {
+        return (getDouble(MERGE_REQUEST_RATE, 5.0));
+    }
+
+    public int getClientThreads() {
+        return (getInt(CLIENT_THREADS, 32));
+    }
+
+    /**
+     * @return the number of projects enrolled in Simple-CR
+     */
+    public int getProjects() {
+        return (getInt(PROJECTS, 10));
+    }
+
+    /**
+     * @return the fraction of events sent for projects that are not enrolled, 0.0 to 1.0
+     */
+    public double getUnenrolledRatio() {
+        return (getDouble(UNENROLLED_RATIO, 0.1));
+    }
+
+    public int getUsers() {
+        return (getInt(USERS, 50));
+    }
+
+    public int getBranchesPerUser() {
+        return (getInt(BRANCHES_PER_USER, 20));
+    }
+
+    public int getCommitsPerPush() {
+        return (getInt(COMMITS_PER_PUSH, 3));
+    }
+
+    public int getServerPort() {
+        return (getInt(SERVER_PORT, 18080));
+    }
+
+    /**
+     * @return the base latency of the GitLab stand-in in milliseconds
+     */
+    public int getGitLabLatency() {
+        return (getInt(GITLAB_LATENCY, 20));
+    }
+
+    /**
+     * @return the random latency added to the base GitLab latency, up to this many milliseconds
+     */
+    public int getGitLabLatencyJitter() {
+        return (getInt(GITLAB_LATENCY_JITTER, 10));
+    }
+
+    /**
+     * @return the fraction of GitLab requests answered with a 500 error, 0.0 to 1.0
+     */
+    public double getGitLabErrorRate() {
+        return (getDouble(GITLAB_ERROR_RATE, 0.0));
+    }
+
+    public int getGitLabThreads() {
+        return (getInt(GITLAB_THREADS, 64));
+    }
+
+    /**
+     * @return the time the SMTP stand-in takes to accept a message in milliseconds
+     */
+    public int getSmtpLatency() {
+        return (getInt(SMTP_LATENCY, 0));
+    }
+
+    /**
+     * @return the Simple-CR server properties set by the scenario, with the "server." prefix removed
+     */
+    public Map<String, String> getServerProperties() {
+
+        Map<String, String> serverProperties = new LinkedHashMap<String, String>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(SERVER_PROPERTY_PREFIX)) {
+                serverProperties.put(name.substring(SERVER_PROPERTY_PREFIX.length()), properties.getProperty(name).trim());
+            }
+        }
+
+        return (serverProperties);
+    }
+
+    /**
+     * @return all the scenario properties, for the results file
+     */
+    public Map<String, String> toMap() {
+
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        properties.stringPropertyNames().stream().sorted().forEach(name -> map.put(name, properties.getProperty(name).trim()));
+        return (map);
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return (value != null ? Integer.parseInt(value.trim()) : defaultValue);
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        return (value != null ? Long.parseLong(value.trim()) : defaultValue);
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        return (value != null ? Double.parseDouble(value.trim()) : defaultValue);
+    }
+}
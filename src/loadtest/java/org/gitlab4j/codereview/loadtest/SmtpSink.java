@@ -0,0 +1,151 @@
+package org.gitlab4j.codereview.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local SMTP server that accepts and discards every message. It speaks just enough SMTP for the MailQueue
+ * senders, there is no STARTTLS or AUTH so the server must run with smtp-enable-starttls=false.
+ */
+public class SmtpSink {
+
+    private final int latencyMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong recipients = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Create and start an SmtpSink on a free local port.
+     *
+     * @param latencyMillis how long to take to accept each message
+     * @throws IOException if the server socket could not be opened
+     */
+    public SmtpSink(int latencyMillis) throws IOException {
+
+        this.latencyMillis = latencyMillis;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "smtp-sink");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        executor.execute(this::acceptConnections);
+    }
+
+    public int getPort() {
+        return (serverSocket.getLocalPort());
+    }
+
+    public void stop() {
+
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignore) {
+        }
+
+        executor.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("connections", connections.get());
+        stats.put("messages", messages.get());
+        stats.put("recipients", recipients.get());
+        return (stats);
+    }
+
+    private void acceptConnections() {
+
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("SMTP sink accept failed, error=" + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+
+        try (Socket s = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                OutputStream out = s.getOutputStream()) {
+
+            reply(out, "220 localhost Simple-CR load test SMTP sink");
+            String line;
+            while ((line = in.readLine()) != null) {
+
+                String command = (line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase());
+                switch (command) {
+                case "EHLO":
+                case "HELO":
+                    reply(out, "250 localhost");
+                    break;
+
+                case "RCPT":
+                    recipients.incrementAndGet();
+                    reply(out, "250 OK");
+                    break;
+
+                case "DATA":
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !".".equals(line)) {
+                    }
+
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+
+                    messages.incrementAndGet();
+                    reply(out, "250 OK");
+                    break;
+
+                case "QUIT":
+                    reply(out, "221 Bye");
+                    return;
+
+                case "MAIL":
+                case "RSET":
+                case "NOOP":
+                    reply(out, "250 OK");
+                    break;
+
+                default:
+                    reply(out, "502 Command not implemented");
+                    break;
+                }
+            }
+
+        } catch (IOException | InterruptedException e) {
+            if (running) {
+                System.err.println("SMTP sink connection failed, error=" + e.getMessage());
+            }
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
@@ -46,11 +46,95 @@ public class CodeReviewConfiguration {
     public static final String DB_NAME = "db-name";
     public static final String DB_USER = "db-user";
     public static final String DB_PASSWORD = "db-password";
+    public static final String DB_POOL = "db-pool";
+    public static final String DB_POOL_MIN_IDLE = "db-pool-min-idle";
+    public static final String DB_POOL_MAX_SIZE = "db-pool-max-size";
+    public static final String DB_POOL_ACQUIRE_TIMEOUT = "db-pool-acquire-timeout";
+    public static final String DB_POOL_VALIDATION_TIMEOUT = "db-pool-validation-timeout";
+    public static final String DB_POOL_TEST_QUERY = "db-pool-test-query";
+    public static final String DB_POOL_LEAK_DETECTION_THRESHOLD = "db-pool-leak-detection-threshold";
+
+    public static final String WEBHOOK_ASYNC = "webhook-async";
+    public static final String WEBHOOK_WORKERS = "webhook-workers";
+    public static final String WEBHOOK_QUEUE_SIZE = "webhook-queue-size";
+    public static final String WEBHOOK_JOURNAL = "webhook-journal";
+    public static final String WEBHOOK_JOURNAL_DIR = "webhook-journal-dir";
+    public static final String WEBHOOK_JOURNAL_SEGMENT_SIZE = "webhook-journal-segment-size";
+    public static final String WEBHOOK_JOURNAL_COMMIT_DELAY = "webhook-journal-commit-delay";
+    public static final String WEBHOOK_COALESCE_WINDOW = "webhook-coalesce-window";
+
+    public static final String GITLAB_CACHE_SIZE = "gitlab-cache-size";
+    public static final String GITLAB_CACHE_PROJECT_TTL = "gitlab-cache-project-ttl";
+    public static final String GITLAB_CACHE_USER_TTL = "gitlab-cache-user-ttl";
+    public static final String GITLAB_CACHE_BRANCH_TTL = "gitlab-cache-branch-ttl";
+    public static final String GITLAB_CACHE_MEMBER_TTL = "gitlab-cache-member-ttl";
+    public static final String GITLAB_CACHE_NOT_FOUND_TTL = "gitlab-cache-not-found-ttl";
+    public static final String REVIEWER_LOOKUP_THREADS = "reviewer-lookup-threads";
+    public static final String PUSH_LOOKUP_THREADS = "push-lookup-threads";
+
+    public static final String TEMPLATE_DIR = "template-dir";
+    public static final String TEMPLATE_CHECK_INTERVAL = "template-check-interval";
+
+    public static final String MAIL_QUEUE_SENDERS = "mail-queue-senders";
+    public static final String MAIL_QUEUE_BATCH_SIZE = "mail-queue-batch-size";
+    public static final String MAIL_QUEUE_MAX_ATTEMPTS = "mail-queue-max-attempts";
+    public static final String MAIL_QUEUE_RETRY_DELAY = "mail-queue-retry-delay";
+    public static final String MAIL_QUEUE_MAX_RETRY_DELAY = "mail-queue-max-retry-delay";
+    public static final String MAIL_QUEUE_POLL_INTERVAL = "mail-queue-poll-interval";
+    public static final String SMTP_IDLE_TIMEOUT = "smtp-idle-timeout";
+
+    public static final String RETENTION_ENABLED = "retention-enabled";
+    public static final String RETENTION_MAX_AGE = "retention-max-age";
+    public static final String RETENTION_HOUR = "retention-hour";
+    public static final String RETENTION_BATCH_SIZE = "retention-batch-size";
+    public static final String RETENTION_BATCH_DELAY = "retention-batch-delay";
+    public static final String RETENTION_ARCHIVE_DIR = "retention-archive-dir";
+    public static final String DB_COMPACT_ON_SHUTDOWN = "db-compact-on-shutdown";
+    public static final String PROJECT_CONFIG_RECONCILE_INTERVAL = "project-config-reconcile-interval";
+    public static final String REGEX_MATCH_BUDGET = "regex-match-budget";
+    public static final String MERGE_STATE_RECONCILE_ENABLED = "merge-state-reconcile-enabled";
+    public static final String MERGE_STATE_RECONCILE_INTERVAL = "merge-state-reconcile-interval";
+    public static final String MERGE_STATE_RECONCILE_BATCH_SIZE = "merge-state-reconcile-batch-size";
+    public static final String MERGE_STATE_RECONCILE_RATE = "merge-state-reconcile-rate";
+
+    public static final String SERVER_MIN_THREADS = "server-min-threads";
+    public static final String SERVER_MAX_THREADS = "server-max-threads";
+    public static final String SERVER_THREAD_IDLE_TIMEOUT = "server-thread-idle-timeout";
+    public static final String SERVER_VIRTUAL_THREADS = "server-virtual-threads";
+    public static final String SERVER_ACCEPTORS = "server-acceptors";
+    public static final String SERVER_SELECTORS = "server-selectors";
+    public static final String SERVER_IDLE_TIMEOUT = "server-idle-timeout";
+    public static final String SERVER_ACCEPT_QUEUE_SIZE = "server-accept-queue-size";
+    public static final String SERVER_REQUEST_HEADER_SIZE = "server-request-header-size";
+    public static final String HTTP2_ENABLED = "http2-enabled";
+    public static final String HTTP2_MAX_CONCURRENT_STREAMS = "http2-max-concurrent-streams";
+    public static final String SSL_KEYSTORE_PATH = "ssl-keystore-path";
+    public static final String SSL_KEYSTORE_TYPE = "ssl-keystore-type";
+    public static final String SSL_KEYSTORE_PASSWORD = "ssl-keystore-password";
+    public static final String SSL_KEY_MANAGER_PASSWORD = "ssl-key-manager-password";
+    public static final String SSL_INCLUDE_PROTOCOLS = "ssl-include-protocols";
+    public static final String SSL_EXCLUDE_PROTOCOLS = "ssl-exclude-protocols";
+    public static final String SSL_INCLUDE_CIPHER_SUITES = "ssl-include-cipher-suites";
+    public static final String SSL_EXCLUDE_CIPHER_SUITES = "ssl-exclude-cipher-suites";
+    public static final String SSL_SESSION_CACHE_SIZE = "ssl-session-cache-size";
+    public static final String SSL_SESSION_TIMEOUT = "ssl-session-timeout";
+    public static final String GZIP_ENABLED = "gzip-enabled";
+    public static final String GZIP_MIN_SIZE = "gzip-min-size";
+    public static final String GZIP_MIME_TYPES = "gzip-mime-types";
+    public static final String ADMIN_TOKEN = "admin-token";
 
     private static final String DEFAULT_DB_USER = "admin";
     private static final String DEFAULT_DB_PASSWORD = "password";
     private static final String DEFAULT_DB_NAME = "file:./dbdata/simple-cr";
 
+    // The connection pool timeouts are in milliseconds
+    private static final String DEFAULT_DB_POOL = "hikari";
+    private static final int DEFAULT_DB_POOL_MIN_IDLE = 2;
+    private static final int DEFAULT_DB_POOL_MAX_SIZE = 10;
+    private static final long DEFAULT_DB_POOL_ACQUIRE_TIMEOUT = 5000;
+    private static final long DEFAULT_DB_POOL_VALIDATION_TIMEOUT = 1000;
+    private static final long DEFAULT_DB_POOL_LEAK_DETECTION_THRESHOLD = 30000;
+
     private static final int DEFAULT_PORT = 8080;
     private static final int DEFAULT_SSL_PORT = -1;
     private static final String DEFAULT_PATH = "/";
@@ -60,6 +144,76 @@ public class CodeReviewConfiguration {
     private static final String DEFAULT_FROM_NAME = "GitLab Code Review";
     private static final String DEFAULT_FROM_EMAIL = "noreply@localhost";
 
+    private static final int DEFAULT_WEBHOOK_WORKERS = 4;
+    private static final int DEFAULT_WEBHOOK_QUEUE_SIZE = 1000;
+    private static final String DEFAULT_WEBHOOK_JOURNAL_DIR = "./dbdata/journal";
+    private static final int DEFAULT_WEBHOOK_JOURNAL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_WEBHOOK_JOURNAL_COMMIT_DELAY = 0;
+
+    // The push coalesce window is in seconds, 0 disables coalescing for projects that do not set their own
+    private static final int DEFAULT_WEBHOOK_COALESCE_WINDOW = 0;
+
+    // The GitLab cache TTLs are in seconds
+    private static final int DEFAULT_GITLAB_CACHE_SIZE = 1000;
+    private static final long DEFAULT_GITLAB_CACHE_PROJECT_TTL = 300;
+    private static final long DEFAULT_GITLAB_CACHE_USER_TTL = 300;
+    private static final long DEFAULT_GITLAB_CACHE_BRANCH_TTL = 30;
+    private static final long DEFAULT_GITLAB_CACHE_MEMBER_TTL = 300;
+    private static final long DEFAULT_GITLAB_CACHE_NOT_FOUND_TTL = 60;
+    private static final int DEFAULT_REVIEWER_LOOKUP_THREADS = 8;
+    private static final int DEFAULT_PUSH_LOOKUP_THREADS = 6;
+    private static final int DEFAULT_TEMPLATE_CHECK_INTERVAL = 10;
+
+    // The mail queue delays and intervals are in seconds
+    private static final int DEFAULT_MAIL_QUEUE_SENDERS = 2;
+    private static final int DEFAULT_MAIL_QUEUE_BATCH_SIZE = 20;
+    private static final int DEFAULT_MAIL_QUEUE_MAX_ATTEMPTS = 8;
+    private static final long DEFAULT_MAIL_QUEUE_RETRY_DELAY = 30;
+    private static final long DEFAULT_MAIL_QUEUE_MAX_RETRY_DELAY = 3600;
+    private static final long DEFAULT_MAIL_QUEUE_POLL_INTERVAL = 5;
+    private static final long DEFAULT_SMTP_IDLE_TIMEOUT = 60;
+
+    // The retention max age is in days and the batch delay is in milliseconds
+    private static final int DEFAULT_RETENTION_MAX_AGE = 180;
+    private static final int DEFAULT_RETENTION_HOUR = 3;
+    private static final int DEFAULT_RETENTION_BATCH_SIZE = 1000;
+    private static final long DEFAULT_RETENTION_BATCH_DELAY = 100;
+    private static final String DEFAULT_RETENTION_ARCHIVE_DIR = "./dbdata/archive";
+
+    // The project config reconcile interval is in seconds
+    private static final long DEFAULT_PROJECT_CONFIG_RECONCILE_INTERVAL = 300;
+
+    // The regex match budget is in milliseconds
+    private static final long DEFAULT_REGEX_MATCH_BUDGET = 50;
+
+    // The merge state reconcile interval is in seconds and the rate is in GitLab requests per second
+    private static final long DEFAULT_MERGE_STATE_RECONCILE_INTERVAL = 3600;
+    private static final int DEFAULT_MERGE_STATE_RECONCILE_BATCH_SIZE = 500;
+    private static final double DEFAULT_MERGE_STATE_RECONCILE_RATE = 5.0;
+
+    // The server timeouts are in milliseconds, -1 acceptors or selectors lets Jetty size them from the number of CPUs
+    // and an accept queue size of 0 uses the OS default
+    private static final int DEFAULT_SERVER_MIN_THREADS = 8;
+    private static final int DEFAULT_SERVER_MAX_THREADS = 200;
+    private static final int DEFAULT_SERVER_THREAD_IDLE_TIMEOUT = 60000;
+    private static final int DEFAULT_SERVER_ACCEPTORS = -1;
+    private static final int DEFAULT_SERVER_SELECTORS = -1;
+    private static final long DEFAULT_SERVER_IDLE_TIMEOUT = 30000;
+    private static final int DEFAULT_SERVER_ACCEPT_QUEUE_SIZE = 0;
+    private static final int DEFAULT_SERVER_REQUEST_HEADER_SIZE = 8192;
+
+    // The SSL session timeout is in seconds, the bundled keystore is used if no keystore path is configured
+    private static final int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 128;
+    private static final String DEFAULT_SSL_KEYSTORE_TYPE = "JKS";
+    private static final String DEFAULT_SSL_KEYSTORE_PASSWORD = "123456";
+    private static final int DEFAULT_SSL_SESSION_CACHE_SIZE = 10000;
+    private static final int DEFAULT_SSL_SESSION_TIMEOUT = 86400;
+
+    // The gzip min size is in bytes, smaller responses are sent as is
+    private static final int DEFAULT_GZIP_MIN_SIZE = 1024;
+    private static final String[] DEFAULT_GZIP_MIME_TYPES = {
+            "application/json", "text/html", "text/plain", "text/css", "application/javascript", "image/svg+xml" };
+
     private List<String> defaultReviewers;
     private PropertiesConfiguration config;
 
@@ -111,6 +265,7 @@ public class CodeReviewConfiguration {
         OptionSpec<Boolean> smtpEnableStartTlsOption = parser.accepts(SMTP_ENABLE_STARTTLS).withOptionalArg().ofType(Boolean.class).defaultsTo(Boolean.TRUE);
         OptionSpec<String> defaultReviewersOption = parser.accepts(DEFAULT_REVIEWERS).withRequiredArg().ofType(String.class);
         OptionSpec<String> defaultTargetBranchesRegexOption = parser.accepts(DEFAULT_TARGET_BRANCHES_REGEX).withRequiredArg().ofType(String.class);
+        OptionSpec<Boolean> webhookAsyncOption = parser.accepts(WEBHOOK_ASYNC).withOptionalArg().ofType(Boolean.class).defaultsTo(Boolean.TRUE);
 
         OptionSet options = parser.parse(args);
         if (options.has(interactiveOption)) {
@@ -177,6 +332,11 @@ public class CodeReviewConfiguration {
             config.setProperty(SMTP_ENABLE_STARTTLS, enableStartTls);
         }
 
+        if (options.has(webhookAsyncOption)) {
+            Boolean webhookAsync = options.valueOf(webhookAsyncOption);
+            config.setProperty(WEBHOOK_ASYNC, webhookAsync);
+        }
+
         String defaultReviewers;
         if (options.has(defaultReviewersOption)) {
             defaultReviewers = options.valueOf(defaultReviewersOption);
@@ -289,4 +449,294 @@ public class CodeReviewConfiguration {
     public String getDbName() {
         return (config.getString(DB_NAME, DEFAULT_DB_NAME));
     }
+
+    public Boolean isWebHookAsync() {
+        return (config.getBoolean(WEBHOOK_ASYNC, Boolean.FALSE));
+    }
+
+    public int getWebHookWorkers() {
+        return (config.getInt(WEBHOOK_WORKERS, DEFAULT_WEBHOOK_WORKERS));
+    }
+
+    public int getWebHookQueueSize() {
+        return (config.getInt(WEBHOOK_QUEUE_SIZE, DEFAULT_WEBHOOK_QUEUE_SIZE));
+    }
+
+    public Boolean isWebHookJournalEnabled() {
+        return (config.getBoolean(WEBHOOK_JOURNAL, Boolean.FALSE));
+    }
+
+    public String getWebHookJournalDir() {
+        return (config.getString(WEBHOOK_JOURNAL_DIR, DEFAULT_WEBHOOK_JOURNAL_DIR));
+    }
+
+    public int getWebHookJournalSegmentSize() {
+        return (config.getInt(WEBHOOK_JOURNAL_SEGMENT_SIZE, DEFAULT_WEBHOOK_JOURNAL_SEGMENT_SIZE));
+    }
+
+    public long getWebHookJournalCommitDelay() {
+        return (config.getLong(WEBHOOK_JOURNAL_COMMIT_DELAY, DEFAULT_WEBHOOK_JOURNAL_COMMIT_DELAY));
+    }
+
+    public int getGitLabCacheSize() {
+        return (config.getInt(GITLAB_CACHE_SIZE, DEFAULT_GITLAB_CACHE_SIZE));
+    }
+
+    public long getGitLabCacheProjectTtl() {
+        return (config.getLong(GITLAB_CACHE_PROJECT_TTL, DEFAULT_GITLAB_CACHE_PROJECT_TTL));
+    }
+
+    public long getGitLabCacheUserTtl() {
+        return (config.getLong(GITLAB_CACHE_USER_TTL, DEFAULT_GITLAB_CACHE_USER_TTL));
+    }
+
+    public long getGitLabCacheBranchTtl() {
+        return (config.getLong(GITLAB_CACHE_BRANCH_TTL, DEFAULT_GITLAB_CACHE_BRANCH_TTL));
+    }
+
+    public long getGitLabCacheMemberTtl() {
+        return (config.getLong(GITLAB_CACHE_MEMBER_TTL, DEFAULT_GITLAB_CACHE_MEMBER_TTL));
+    }
+
+    public long getGitLabCacheNotFoundTtl() {
+        return (config.getLong(GITLAB_CACHE_NOT_FOUND_TTL, DEFAULT_GITLAB_CACHE_NOT_FOUND_TTL));
+    }
+
+    public int getReviewerLookupThreads() {
+        return (config.getInt(REVIEWER_LOOKUP_THREADS, DEFAULT_REVIEWER_LOOKUP_THREADS));
+    }
+
+    public String getTemplateDir() {
+        return (config.getString(TEMPLATE_DIR, null));
+    }
+
+    public int getTemplateCheckInterval() {
+        return (config.getInt(TEMPLATE_CHECK_INTERVAL, DEFAULT_TEMPLATE_CHECK_INTERVAL));
+    }
+
+    public int getMailQueueSenders() {
+        return (config.getInt(MAIL_QUEUE_SENDERS, DEFAULT_MAIL_QUEUE_SENDERS));
+    }
+
+    public int getMailQueueBatchSize() {
+        return (config.getInt(MAIL_QUEUE_BATCH_SIZE, DEFAULT_MAIL_QUEUE_BATCH_SIZE));
+    }
+
+    public int getMailQueueMaxAttempts() {
+        return (config.getInt(MAIL_QUEUE_MAX_ATTEMPTS, DEFAULT_MAIL_QUEUE_MAX_ATTEMPTS));
+    }
+
+    public long getMailQueueRetryDelay() {
+        return (config.getLong(MAIL_QUEUE_RETRY_DELAY, DEFAULT_MAIL_QUEUE_RETRY_DELAY));
+    }
+
+    public long getMailQueueMaxRetryDelay() {
+        return (config.getLong(MAIL_QUEUE_MAX_RETRY_DELAY, DEFAULT_MAIL_QUEUE_MAX_RETRY_DELAY));
+    }
+
+    public long getMailQueuePollInterval() {
+        return (config.getLong(MAIL_QUEUE_POLL_INTERVAL, DEFAULT_MAIL_QUEUE_POLL_INTERVAL));
+    }
+
+    public long getSmtpIdleTimeout() {
+        return (config.getLong(SMTP_IDLE_TIMEOUT, DEFAULT_SMTP_IDLE_TIMEOUT));
+    }
+
+    public String getDbPool() {
+        return (config.getString(DB_POOL, DEFAULT_DB_POOL));
+    }
+
+    public int getDbPoolMinIdle() {
+        return (config.getInt(DB_POOL_MIN_IDLE, DEFAULT_DB_POOL_MIN_IDLE));
+    }
+
+    public int getDbPoolMaxSize() {
+        return (config.getInt(DB_POOL_MAX_SIZE, DEFAULT_DB_POOL_MAX_SIZE));
+    }
+
+    public long getDbPoolAcquireTimeout() {
+        return (config.getLong(DB_POOL_ACQUIRE_TIMEOUT, DEFAULT_DB_POOL_ACQUIRE_TIMEOUT));
+    }
+
+    public long getDbPoolValidationTimeout() {
+        return (config.getLong(DB_POOL_VALIDATION_TIMEOUT, DEFAULT_DB_POOL_VALIDATION_TIMEOUT));
+    }
+
+    public String getDbPoolTestQuery() {
+        return (config.getString(DB_POOL_TEST_QUERY, null));
+    }
+
+    public long getDbPoolLeakDetectionThreshold() {
+        return (config.getLong(DB_POOL_LEAK_DETECTION_THRESHOLD, DEFAULT_DB_POOL_LEAK_DETECTION_THRESHOLD));
+    }
+
+    public Boolean isRetentionEnabled() {
+        return (config.getBoolean(RETENTION_ENABLED, Boolean.FALSE));
+    }
+
+    public int getRetentionMaxAge() {
+        return (config.getInt(RETENTION_MAX_AGE, DEFAULT_RETENTION_MAX_AGE));
+    }
+
+    public int getRetentionHour() {
+        return (config.getInt(RETENTION_HOUR, DEFAULT_RETENTION_HOUR));
+    }
+
+    public int getRetentionBatchSize() {
+        return (config.getInt(RETENTION_BATCH_SIZE, DEFAULT_RETENTION_BATCH_SIZE));
+    }
+
+    public long getRetentionBatchDelay() {
+        return (config.getLong(RETENTION_BATCH_DELAY, DEFAULT_RETENTION_BATCH_DELAY));
+    }
+
+    public String getRetentionArchiveDir() {
+        return (config.getString(RETENTION_ARCHIVE_DIR, DEFAULT_RETENTION_ARCHIVE_DIR));
+    }
+
+    public Boolean isDbCompactOnShutdown() {
+        return (config.getBoolean(DB_COMPACT_ON_SHUTDOWN, Boolean.FALSE));
+    }
+
+    public long getProjectConfigReconcileInterval() {
+        return (config.getLong(PROJECT_CONFIG_RECONCILE_INTERVAL, DEFAULT_PROJECT_CONFIG_RECONCILE_INTERVAL));
+    }
+
+    public long getRegexMatchBudget() {
+        return (config.getLong(REGEX_MATCH_BUDGET, DEFAULT_REGEX_MATCH_BUDGET));
+    }
+
+    public int getPushLookupThreads() {
+        return (config.getInt(PUSH_LOOKUP_THREADS, DEFAULT_PUSH_LOOKUP_THREADS));
+    }
+
+    public int getWebHookCoalesceWindow() {
+        return (config.getInt(WEBHOOK_COALESCE_WINDOW, DEFAULT_WEBHOOK_COALESCE_WINDOW));
+    }
+
+    public Boolean isMergeStateReconcileEnabled() {
+        return (config.getBoolean(MERGE_STATE_RECONCILE_ENABLED, Boolean.FALSE));
+    }
+
+    public long getMergeStateReconcileInterval() {
+        return (config.getLong(MERGE_STATE_RECONCILE_INTERVAL, DEFAULT_MERGE_STATE_RECONCILE_INTERVAL));
+    }
+
+    public int getMergeStateReconcileBatchSize() {
+        return (config.getInt(MERGE_STATE_RECONCILE_BATCH_SIZE, DEFAULT_MERGE_STATE_RECONCILE_BATCH_SIZE));
+    }
+
+    public double getMergeStateReconcileRate() {
+        return (config.getDouble(MERGE_STATE_RECONCILE_RATE, DEFAULT_MERGE_STATE_RECONCILE_RATE));
+    }
+
+    public int getServerMinThreads() {
+        return (config.getInt(SERVER_MIN_THREADS, DEFAULT_SERVER_MIN_THREADS));
+    }
+
+    public int getServerMaxThreads() {
+        return (config.getInt(SERVER_MAX_THREADS, DEFAULT_SERVER_MAX_THREADS));
+    }
+
+    public int getServerThreadIdleTimeout() {
+        return (config.getInt(SERVER_THREAD_IDLE_TIMEOUT, DEFAULT_SERVER_THREAD_IDLE_TIMEOUT));
+    }
+
+    public Boolean isServerVirtualThreads() {
+        return (config.getBoolean(SERVER_VIRTUAL_THREADS, Boolean.FALSE));
+    }
+
+    public int getServerAcceptors() {
+        return (config.getInt(SERVER_ACCEPTORS, DEFAULT_SERVER_ACCEPTORS));
+    }
+
+    public int getServerSelectors() {
+        return (config.getInt(SERVER_SELECTORS, DEFAULT_SERVER_SELECTORS));
+    }
+
+    public long getServerIdleTimeout() {
+        return (config.getLong(SERVER_IDLE_TIMEOUT, DEFAULT_SERVER_IDLE_TIMEOUT));
+    }
+
+    public int getServerAcceptQueueSize() {
+        return (config.getInt(SERVER_ACCEPT_QUEUE_SIZE, DEFAULT_SERVER_ACCEPT_QUEUE_SIZE));
+    }
+
+    public int getServerRequestHeaderSize() {
+        return (config.getInt(SERVER_REQUEST_HEADER_SIZE, DEFAULT_SERVER_REQUEST_HEADER_SIZE));
+    }
+
+    public Boolean isHttp2Enabled() {
+        return (config.getBoolean(HTTP2_ENABLED, Boolean.FALSE));
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return (config.getInt(HTTP2_MAX_CONCURRENT_STREAMS, DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS));
+    }
+
+    public String getSslKeyStorePath() {
+        return (config.getString(SSL_KEYSTORE_PATH, null));
+    }
+
+    public String getSslKeyStoreType() {
+        return (config.getString(SSL_KEYSTORE_TYPE, DEFAULT_SSL_KEYSTORE_TYPE));
+    }
+
+    public String getSslKeyStorePassword() {
+        return (config.getString(SSL_KEYSTORE_PASSWORD, DEFAULT_SSL_KEYSTORE_PASSWORD));
+    }
+
+    public String getSslKeyManagerPassword() {
+        return (config.getString(SSL_KEY_MANAGER_PASSWORD, getSslKeyStorePassword()));
+    }
+
+    public String[] getSslIncludeProtocols() {
+        return (config.getStringArray(SSL_INCLUDE_PROTOCOLS));
+    }
+
+    public String[] getSslExcludeProtocols() {
+        return (config.getStringArray(SSL_EXCLUDE_PROTOCOLS));
+    }
+
+    public String[] getSslIncludeCipherSuites() {
+        return (config.getStringArray(SSL_INCLUDE_CIPHER_SUITES));
+    }
+
+    public String[] getSslExcludeCipherSuites() {
+        return (config.getStringArray(SSL_EXCLUDE_CIPHER_SUITES));
+    }
+
+    public int getSslSessionCacheSize() {
+        return (config.getInt(SSL_SESSION_CACHE_SIZE, DEFAULT_SSL_SESSION_CACHE_SIZE));
+    }
+
+    public int getSslSessionTimeout() {
+        return (config.getInt(SSL_SESSION_TIMEOUT, DEFAULT_SSL_SESSION_TIMEOUT));
+    }
+
+    public Boolean isGzipEnabled() {
+        return (config.getBoolean(GZIP_ENABLED, Boolean.TRUE));
+    }
+
+    public int getGzipMinSize() {
+        return (config.getInt(GZIP_MIN_SIZE, DEFAULT_GZIP_MIN_SIZE));
+    }
+
+    public String[] getGzipMimeTypes() {
+        String[] mimeTypes = config.getStringArray(GZIP_MIME_TYPES);
+        return (mimeTypes.length > 0 ? mimeTypes : DEFAULT_GZIP_MIME_TYPES.clone());
+    }
+
+    /**
+     * Get the token that admin requests must carry as "Authorization: Bearer &lt;token&gt;". There is no
+     * default: when it is not set the project admin endpoints are unauthenticated, and /admin/stats and
+     * /admin/metrics are only served to requests from a loopback address. A reverse proxy on the same host
+     * makes every request look local, so set a token when the server is behind one.
+     *
+     * @return the token that admin requests must carry, or null if none is configured
+     */
+    public String getAdminToken() {
+        String adminToken = config.getString(ADMIN_TOKEN, null);
+        return (adminToken != null && !adminToken.trim().isEmpty() ? adminToken.trim() : null);
+    }
 }
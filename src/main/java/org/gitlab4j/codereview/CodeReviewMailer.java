@@ -1,33 +1,33 @@
 package org.gitlab4j.codereview;
 
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.TreeSet;
 
-import org.apache.commons.mail.DefaultAuthenticator;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+
 import org.apache.commons.mail.EmailException;
-import org.apache.commons.mail.HtmlEmail;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
 import org.gitlab4j.api.models.Author;
-import org.gitlab4j.api.models.Member;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.Project;
 import org.gitlab4j.api.models.User;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.MemberEmailResolver;
 import org.gitlab4j.codereview.dao.ProjectConfig;
 import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.mail.MailQueue;
 import org.gitlab4j.codereview.utils.HashUtils;
 import org.gitlab4j.codereview.utils.StringUtils;
-import org.gitlab4j.codereview.utils.VelocityUtils;
+import org.gitlab4j.codereview.utils.TemplateService;
 
 /**
  * 
@@ -43,11 +43,18 @@ public class CodeReviewMailer {
     private static final String MERGE_REQUEST_SUBJECT = "Code Review/Merge Request";
 
     private CodeReviewConfiguration config;
-    private GitLabApi gitlabApi;
+    private GitLabApiCache gitlabApiCache;
+    private MemberEmailResolver memberEmailResolver;
+    private TemplateService templateService;
+    private MailQueue mailQueue;
 
-    public CodeReviewMailer(CodeReviewConfiguration config, GitLabApi gitlabApi) {
+    public CodeReviewMailer(CodeReviewConfiguration config, GitLabApiCache gitlabApiCache,
+            MemberEmailResolver memberEmailResolver, TemplateService templateService, MailQueue mailQueue) {
         this.config = config;
-        this.gitlabApi = gitlabApi;
+        this.gitlabApiCache = gitlabApiCache;
+        this.memberEmailResolver = memberEmailResolver;
+        this.templateService = templateService;
+        this.mailQueue = mailQueue;
     }
 
     public boolean sendMergeRequestEmail(ProjectConfig projectConfig, MergeRequest mergeRequest) {
@@ -59,7 +66,7 @@ public class CodeReviewMailer {
         Integer projectId = mergeRequest.getProjectId();
         Project project;
         try {
-            project = gitlabApi.getProjectApi().getProject(projectId);
+            project = gitlabApiCache.getProject(projectId);
         } catch (GitLabApiException gle) {
             logger.error("Problem getting project info, httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage(), gle);
             return (false);
@@ -95,10 +102,7 @@ public class CodeReviewMailer {
 
         try {
 
-            Reader reader = new InputStreamReader(CodeReviewMailer.class.getResourceAsStream(MERGE_REQUEST_TEMPLATE));
-            String htmlContent = VelocityUtils.getTextBody(reader, data);
-            reader.close();
-
+            String htmlContent = templateService.render(MERGE_REQUEST_TEMPLATE, data);
             send(reviewers, MERGE_REQUEST_SUBJECT, htmlContent);
             return (true);
 
@@ -108,7 +112,7 @@ public class CodeReviewMailer {
         }
     }
 
-    boolean sendCodeReviewEmail(User user, Project project, String branch) {
+    boolean sendCodeReviewEmail(User user, String email, Project project, String branch) {
 
         if (!isEmailEnabled()) {
             return (false);
@@ -137,12 +141,10 @@ public class CodeReviewMailer {
 
         try {
 
-            Reader reader = new InputStreamReader(CodeReviewMailer.class.getResourceAsStream(CODE_REVIEW_TEMPLATE));
-            String htmlContent = VelocityUtils.getTextBody(reader, data);
+            String htmlContent = templateService.render(CODE_REVIEW_TEMPLATE, data);
             logger.debug("Email body: \n" + htmlContent);
-            reader.close();
 
-            send(user.getEmail(), user.getName(), CODE_REVIEW_SUBJECT, htmlContent);
+            send(email, user.getName(), CODE_REVIEW_SUBJECT, htmlContent);
             return (true);
 
         } catch (Exception e) {
@@ -152,15 +154,23 @@ public class CodeReviewMailer {
     }
 
     void send(String email, String name, String subject, String htmlContent) throws EmailException {
-        EmailAddress emailAddress = new EmailAddress(email, name);
-        sendMail(Arrays.asList(emailAddress), subject, htmlContent);
+
+        try {
+            sendMail(Arrays.asList(new InternetAddress(email, name)), subject, htmlContent);
+        } catch (UnsupportedEncodingException uee) {
+            throw new EmailException(uee);
+        }
     }
 
     void send(Collection<String> emailList, String subject, String htmlContent) throws EmailException {
 
-        List<EmailAddress> toEmailList = new ArrayList<EmailAddress>(emailList.size());
+        List<InternetAddress> toEmailList = new ArrayList<InternetAddress>(emailList.size());
         for (String email : emailList) {
-            toEmailList.add(new EmailAddress(email, null));
+            try {
+                toEmailList.add(new InternetAddress(email));
+            } catch (AddressException ae) {
+                logger.warn("Skipping invalid email address, email=" + email + ", error=" + ae.getMessage());
+            }
         }
 
         sendMail(toEmailList, subject, htmlContent);
@@ -172,47 +182,17 @@ public class CodeReviewMailer {
         return (smtpHost != null && smtpPort > 0);
     }
 
-    private void sendMail(List<EmailAddress> toEmailList, String subject, String htmlContent) throws EmailException {
+    /**
+     * Queues the message for delivery, the message is sent by the MailQueue sender threads so the
+     * caller does not wait on the SMTP server.
+     */
+    private void sendMail(List<InternetAddress> toEmailList, String subject, String htmlContent) throws EmailException {
 
-        String smtpHost = config.getSmtpHost();
-        int smtpPort = config.getSmtpPort();
-        if (smtpHost == null || smtpPort < 1) {
+        if (mailQueue == null) {
             throw new EmailException("SMTP is not configured");
         }
 
-        HtmlEmail email = new HtmlEmail();
-        email.setHostName(smtpHost);
-        email.setSmtpPort(smtpPort);
-
-        if (config.getSmtpEnableStartTls()) {
-            email.setStartTLSEnabled(true);
-        }
-
-        for (EmailAddress toEmail : toEmailList) {
-            email.addTo(toEmail.email, toEmail.name);
-        }
-
-        email.setFrom(config.getFromEmail(), config.getFromName());
-        email.setSubject(subject);
-        String smtpUsername = config.getSmtpUsername();
-        String smtpPassword = config.getSmtpPassword();
-        if (smtpUsername != null && smtpPassword != null) {
-            email.setAuthenticator(new DefaultAuthenticator(smtpUsername, smtpPassword));
-        }
-
-        email.setHtmlMsg(htmlContent);
-        email.send();
-    }
-
-    private class EmailAddress {
-
-        private String email;
-        private String name;
-
-        EmailAddress(String email, String name) {
-            this.email = email;
-            this.name = name;
-        }
+        mailQueue.enqueue(toEmailList, subject, htmlContent);
     }
 
     /**
@@ -226,12 +206,12 @@ public class CodeReviewMailer {
     private Collection<String> getReviewers(ProjectConfig projectConfig, int groupId, Author author) {
 
         TreeSet<String> reviewers = new TreeSet<String>();
-        List<Member> members = null;
         if (MailToType.GROUP.equals(projectConfig.getMailToType())) {
 
             try {
-                members = gitlabApi.getGroupApi().getMembers(groupId);
-                logger.info("GROUP reviewer list, numMembers=" + (members == null ? 0 : members.size()));
+                List<String> memberEmails = memberEmailResolver.getGroupMemberEmails(groupId);
+                reviewers.addAll(memberEmails);
+                logger.info("GROUP reviewer list, numMembers=" + memberEmails.size());
             } catch (GitLabApiException e) {
                 logger.error("Something went wrong while getting group members, error=" + e.getMessage(), e);
             }
@@ -239,24 +219,14 @@ public class CodeReviewMailer {
         } else if (MailToType.PROJECT.equals(projectConfig.getMailToType())) {
 
             try {
-                members = gitlabApi.getProjectApi().getMembers(projectConfig.getProjectId());
-                logger.info("PROJECT reviewer list, numMembers=" + (members == null ? 0 : members.size()));
+                List<String> memberEmails = memberEmailResolver.getProjectMemberEmails(projectConfig.getProjectId());
+                reviewers.addAll(memberEmails);
+                logger.info("PROJECT reviewer list, numMembers=" + memberEmails.size());
             } catch (GitLabApiException e) {
                 logger.error("Something went wrong while getting project members, error=" + e.getMessage(), e);
             }
         }
 
-        if (members != null) {
-            for (Member member : members) {
-                Optional<User> optionalUser = gitlabApi.getUserApi().getOptionalUser(member.getId());
-                if (optionalUser.isPresent()) {
-                    String email = optionalUser.get().getEmail();
-                    if (email != null && email.trim().length() > 0)
-                        reviewers.add(email);
-                }
-            }
-        }
-
         List<String> additionalMailToList = projectConfig.getAdditionalMailToAsList();
         if (additionalMailToList != null) {
             reviewers.addAll(additionalMailToList);
@@ -1,37 +1,78 @@
 package org.gitlab4j.codereview;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.webhook.WebHookManager;
-import org.gitlab4j.codereview.dao.ProjectConfigDAO;
-import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.MemberEmailResolver;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.db.ConnectionPool;
+import org.gitlab4j.codereview.db.MergeStateReconciler;
+import org.gitlab4j.codereview.db.RetentionJob;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.gitlab4j.codereview.metrics.JettyMetrics;
+import org.gitlab4j.codereview.metrics.JvmMetrics;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.metrics.QueryTimingLogger;
+import org.gitlab4j.codereview.mail.MailQueue;
+import org.gitlab4j.codereview.mail.SmtpConnectionPool;
 import org.gitlab4j.codereview.server.DefaultEmbeddedServer;
 import org.gitlab4j.codereview.server.EmbeddedServer;
 import org.gitlab4j.codereview.server.EmbeddedServerWithSsl;
-import org.h2.jdbcx.JdbcConnectionPool;
-import org.jdbi.v3.core.Handle;
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.gitlab4j.codereview.utils.TemplateService;
+import org.gitlab4j.codereview.webhook.EventJournal;
+import org.gitlab4j.codereview.webhook.EventPreParser;
+import org.gitlab4j.codereview.webhook.PushCoalescer;
+import org.gitlab4j.codereview.webhook.WebHookDispatcher;
+import org.gitlab4j.codereview.webhook.WebHookMetrics;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
 
 public class CodeReviewServer {
 
     private static Logger logger = LogManager.getLogger();
 
+    private static final long WEBHOOK_DRAIN_TIMEOUT = 30000;
+    private static final long MAIL_QUEUE_DRAIN_TIMEOUT = 30000;
+
+    // The config file can be pointed elsewhere with -Dsimple-cr.config, the load test harness uses this
+    private static final String CONFIG_FILE_PROPERTY = "simple-cr.config";
+    private static final String DEFAULT_CONFIG_FILE = "simple-cr.properties";
+
     private CodeReviewConfiguration config;
     private EmbeddedServer server;
     private GitLabApi gitlabApi;
-    private JdbcConnectionPool connectionPool;
+    private GitLabApiCache gitlabApiCache;
+    private MemberEmailResolver memberEmailResolver;
+    private TemplateService templateService;
+    private MailQueue mailQueue;
+    private CodeReviewMailer mailer;
+    private ConnectionPool connectionPool;
     private Jdbi jdbi;
+    private RetentionJob retentionJob;
+    private MergeStateReconciler mergeStateReconciler;
+    private ProjectConfigRegistry projectConfigRegistry;
+    private RegexMatcher regexMatcher;
     private WebHookManager webHookManager;
+    private CodeReviewWebHookListener webHookListener;
+    private WebHookDispatcher webHookDispatcher;
+    private PushCoalescer pushCoalescer;
+    private EventJournal eventJournal;
+    private MetricsRegistry metricsRegistry;
 
     private CodeReviewServer() {
 
         try {
-            config = new CodeReviewConfiguration("simple-cr.properties");
+            config = new CodeReviewConfiguration(System.getProperty(CONFIG_FILE_PROPERTY, DEFAULT_CONFIG_FILE));
         } catch (Exception e) {
             config = new CodeReviewConfiguration();
         }
@@ -43,25 +84,100 @@ public class CodeReviewServer {
 
     private void init() throws Exception {
 
+        metricsRegistry = new MetricsRegistry();
+        JvmMetrics.register(metricsRegistry);
+
         gitlabApi = new GitLabApi(config.getGitLabApiUrl(), config.getGitLabApiToken());
+        gitlabApiCache = new GitLabApiCache(gitlabApi, config.getGitLabCacheSize(),
+                TimeUnit.SECONDS.toMillis(config.getGitLabCacheProjectTtl()),
+                TimeUnit.SECONDS.toMillis(config.getGitLabCacheUserTtl()),
+                TimeUnit.SECONDS.toMillis(config.getGitLabCacheBranchTtl()),
+                TimeUnit.SECONDS.toMillis(config.getGitLabCacheMemberTtl()),
+                TimeUnit.SECONDS.toMillis(config.getGitLabCacheNotFoundTtl()));
+        memberEmailResolver = new MemberEmailResolver(gitlabApiCache, config.getReviewerLookupThreads(),
+                config.getGitLabCacheSize(), TimeUnit.SECONDS.toMillis(config.getGitLabCacheMemberTtl()));
+        gitlabApiCache.registerMetrics(metricsRegistry);
+        templateService = new TemplateService(config.getTemplateDir(), config.getTemplateCheckInterval());
+        metricsRegistry.histogram("simplecr_mail_render_seconds", "Time taken to render an email template",
+                templateService.getRenderLatency());
+
+        // Fail fast on an invalid default target branches regex rather than on the first review form that uses it
+        String defaultTargetBranchesRegex = config.getDefaultTargetBranchesRegex();
+        if (defaultTargetBranchesRegex != null && defaultTargetBranchesRegex.trim().length() > 0) {
+            RegexMatcher.compile(defaultTargetBranchesRegex);
+        }
+
+        regexMatcher = new RegexMatcher(config.getRegexMatchBudget());
         initializeDatabase();
+        initializeMailQueue();
+        mailer = new CodeReviewMailer(config, gitlabApiCache, memberEmailResolver, templateService, mailQueue);
 
         if (config.getSslPort() < 1) {
-            server = new DefaultEmbeddedServer(config.getPath(), config.getPort());
+            server = new DefaultEmbeddedServer(config);
         } else {
-            server = new EmbeddedServerWithSsl(config.getPath(), config.getPort(), config.getSslPort());
+            server = new EmbeddedServerWithSsl(config);
         }
         
         webHookManager = new WebHookManager();
+        JettyMetrics.register(metricsRegistry, server.getThreadPool());
 
         server.setAttribute(EmbeddedServer.CONFIG, config);
+        if (config.getAdminToken() == null) {
+            logger.warn("No " + CodeReviewConfiguration.ADMIN_TOKEN + " is configured, the /admin endpoints are unauthenticated and /admin/metrics is only served to localhost");
+        }
+
+        server.setAttribute(EmbeddedServer.METRICS_REGISTRY, metricsRegistry);
+        server.setAttribute(EmbeddedServer.WEBHOOK_METRICS, new WebHookMetrics(metricsRegistry));
         server.setAttribute(EmbeddedServer.GITLAB_API, gitlabApi);
+        server.setAttribute(EmbeddedServer.GITLAB_API_CACHE, gitlabApiCache);
+        server.setAttribute(EmbeddedServer.MEMBER_EMAIL_RESOLVER, memberEmailResolver);
+        server.setAttribute(EmbeddedServer.MAILER, mailer);
+        server.setAttribute(EmbeddedServer.TEMPLATE_SERVICE, templateService);
+        if (mailQueue != null) {
+            server.setAttribute(EmbeddedServer.MAIL_QUEUE, mailQueue);
+        }
+
         server.setAttribute(EmbeddedServer.CONNECTION_POOL, connectionPool);
         server.setAttribute(EmbeddedServer.JDBI, jdbi);
+        server.setAttribute(EmbeddedServer.PROJECT_CONFIG_REGISTRY, projectConfigRegistry);
+        server.setAttribute(EmbeddedServer.REGEX_MATCHER, regexMatcher);
+        if (retentionJob != null) {
+            server.setAttribute(EmbeddedServer.RETENTION_JOB, retentionJob);
+        }
+
+        if (mergeStateReconciler != null) {
+            server.setAttribute(EmbeddedServer.MERGE_STATE_RECONCILER, mergeStateReconciler);
+        }
+
         server.setAttribute(WebHookManager.class.getSimpleName(), webHookManager);
+        server.setAttribute(EmbeddedServer.EVENT_PRE_PARSER, new EventPreParser(projectConfigRegistry));
         
-        CodeReviewWebHookListener handler = new CodeReviewWebHookListener(config, gitlabApi, jdbi);
-        webHookManager.addListener(handler);
+        webHookListener = new CodeReviewWebHookListener(gitlabApiCache, mailer, jdbi,
+                projectConfigRegistry, regexMatcher, config.getPushLookupThreads());
+        webHookManager.addListener(webHookListener);
+        server.setAttribute(EmbeddedServer.PUSH_PIPELINE_STATS, webHookListener.getPipelineStats());
+        server.setAttribute(EmbeddedServer.MERGE_REQUEST_PIPELINE_STATS, webHookListener.getMergeRequestStats());
+        webHookListener.getPipelineStats().registerMetrics(metricsRegistry);
+        webHookListener.getMergeRequestStats().registerMetrics(metricsRegistry);
+
+        // If the webhook journal is enabled, replay any events that were not finished before the last shutdown
+        if (config.isWebHookJournalEnabled()) {
+            eventJournal = new EventJournal(new File(config.getWebHookJournalDir()),
+                    config.getWebHookJournalSegmentSize(), config.getWebHookJournalCommitDelay());
+            replayEvents(eventJournal.open());
+            server.setAttribute(EmbeddedServer.EVENT_JOURNAL, eventJournal);
+        }
+
+        // If async webhook processing is enabled events are queued and processed by a pool of worker threads
+        if (config.isWebHookAsync()) {
+            webHookDispatcher = new WebHookDispatcher(webHookManager, eventJournal, config.getWebHookWorkers(), config.getWebHookQueueSize());
+            server.setAttribute(EmbeddedServer.WEBHOOK_DISPATCHER, webHookDispatcher);
+            logger.info("Async webhook processing enabled, workers=" + config.getWebHookWorkers() + ", queueSize=" + config.getWebHookQueueSize());
+
+            // Pushes can only be held back when they are acknowledged before they are processed
+            pushCoalescer = new PushCoalescer(webHookDispatcher, eventJournal, projectConfigRegistry, config.getWebHookCoalesceWindow());
+            server.setAttribute(EmbeddedServer.PUSH_COALESCER, pushCoalescer);
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
@@ -74,22 +190,143 @@ public class CodeReviewServer {
                 } catch (Exception e) {
                 }
 
+                stopWebHookProcessing();
+                stopMailQueue();
+                stopDatabase();
             }
         });
     }
 
+    /**
+     * Runs the journaled events that were never marked as done through the listeners before the server starts
+     * taking new requests.
+     *
+     * @param pendingEntries the entries recovered from the EventJournal
+     */
+    private void replayEvents(List<EventJournal.Entry> pendingEntries) {
+
+        if (pendingEntries.isEmpty()) {
+            return;
+        }
+
+        logger.info("Replaying unfinished webhook events, numEvents=" + pendingEntries.size());
+        for (EventJournal.Entry entry : pendingEntries) {
+
+            try {
+                webHookManager.handleEvent(entry.getEvent());
+            } catch (Exception e) {
+                logger.error("Problem replaying " + entry.getEvent().getObjectKind() + " event, error=" + e.getMessage(), e);
+            }
+
+            eventJournal.markDone(entry.getPosition());
+        }
+    }
+
+    private void stopWebHookProcessing() {
+
+        if (pushCoalescer != null) {
+            pushCoalescer.shutdown();
+        }
+
+        if (webHookDispatcher != null) {
+            logger.info("Waiting for queued webhook events to be processed");
+            webHookDispatcher.shutdown(WEBHOOK_DRAIN_TIMEOUT);
+        }
+
+        if (eventJournal != null) {
+            eventJournal.close();
+        }
+
+        webHookListener.shutdown();
+    }
+
     private void initializeDatabase() {
 
-        connectionPool = JdbcConnectionPool.create("jdbc:h2:" + config.getDbName(), config.getDbUser(), config.getDbPassword());
-        jdbi = Jdbi.create(connectionPool);
+        connectionPool = ConnectionPool.create(config);
+        jdbi = Jdbi.create(connectionPool.getDataSource());
+        logger.info("Database connection pool created, type=" + config.getDbPool() + ", maxSize=" + config.getDbPoolMaxSize());
         jdbi.installPlugin(new SqlObjectPlugin());
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(new QueryTimingLogger(metricsRegistry));
+
+        SchemaMigrator schemaMigrator = new SchemaMigrator(jdbi);
+        int schemaVersion = schemaMigrator.migrate();
+        logger.info("Database schema is up to date, version=" + schemaVersion);
+
+        projectConfigRegistry = new ProjectConfigRegistry(jdbi);
+        projectConfigRegistry.start(TimeUnit.SECONDS.toMillis(config.getProjectConfigReconcileInterval()));
+        logger.info("Project config registry loaded, numProjects=" + projectConfigRegistry.size());
+
+        if (config.isRetentionEnabled()) {
+            String archiveDir = config.getRetentionArchiveDir();
+            retentionJob = new RetentionJob(jdbi, config.getRetentionMaxAge(), config.getRetentionBatchSize(),
+                    config.getRetentionBatchDelay(), (archiveDir != null && !archiveDir.trim().isEmpty() ? new File(archiveDir) : null));
+            retentionJob.start(config.getRetentionHour());
+        }
+
+        if (config.isMergeStateReconcileEnabled()) {
+            mergeStateReconciler = new MergeStateReconciler(gitlabApi, jdbi,
+                    config.getMergeStateReconcileBatchSize(), config.getMergeStateReconcileRate());
+            mergeStateReconciler.start(TimeUnit.SECONDS.toMillis(config.getMergeStateReconcileInterval()));
+        }
+    }
+
+    /**
+     * Stops the background jobs, compacts the database if configured to and closes the connection pool.
+     */
+    private void stopDatabase() {
+
+        projectConfigRegistry.shutdown();
+        if (retentionJob != null) {
+            retentionJob.shutdown();
+        }
+
+        if (mergeStateReconciler != null) {
+            mergeStateReconciler.shutdown();
+        }
+
+        if (config.isDbCompactOnShutdown()) {
+
+            logger.info("Compacting the database");
+            try {
+                RetentionJob.compact(jdbi);
+            } catch (Exception e) {
+                logger.error("Problem compacting the database, error=" + e.getMessage(), e);
+            }
+        }
+
+        connectionPool.close();
+    }
+
+    /**
+     * Creates and starts the outbound MailQueue, if SMTP is not configured no mail is sent.
+     */
+    private void initializeMailQueue() {
+
+        String smtpHost = config.getSmtpHost();
+        int smtpPort = config.getSmtpPort();
+        if (smtpHost == null || smtpPort < 1) {
+            logger.warn("SMTP is not configured, email notifications are disabled");
+            return;
+        }
+
+        int numSenders = config.getMailQueueSenders();
+        SmtpConnectionPool connectionPool = new SmtpConnectionPool(smtpHost, smtpPort, config.getSmtpEnableStartTls(),
+                config.getSmtpUsername(), config.getSmtpPassword(), numSenders,
+                TimeUnit.SECONDS.toMillis(config.getSmtpIdleTimeout()));
+        mailQueue = new MailQueue(jdbi, connectionPool, config.getFromEmail(), config.getFromName(), numSenders,
+                config.getMailQueueBatchSize(), config.getMailQueueMaxAttempts(),
+                TimeUnit.SECONDS.toMillis(config.getMailQueueRetryDelay()),
+                TimeUnit.SECONDS.toMillis(config.getMailQueueMaxRetryDelay()),
+                TimeUnit.SECONDS.toMillis(config.getMailQueuePollInterval()));
+        mailQueue.registerMetrics(metricsRegistry);
+        mailQueue.start();
+    }
 
-        try (Handle handle = jdbi.open()) {
-            PushDAO pushDao = handle.attach(PushDAO.class);
-            pushDao.createTable();
+    private void stopMailQueue() {
 
-            ProjectConfigDAO projectConfigDao = handle.attach(ProjectConfigDAO.class);
-            projectConfigDao.createTable();
+        if (mailQueue != null) {
+            logger.info("Waiting for mail being sent to finish");
+            mailQueue.shutdown(MAIL_QUEUE_DRAIN_TIMEOUT);
         }
     }
 
@@ -132,6 +369,8 @@ public class CodeReviewServer {
 
             logger.info("Waiting for Simple-CR server to stop");
             server.stop();
+            codeReviewServer.stopWebHookProcessing();
+            codeReviewServer.stopMailQueue();
         }
 
         server.join();
@@ -1,12 +1,18 @@
 package org.gitlab4j.codereview;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Branch;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.Project;
 import org.gitlab4j.api.models.User;
@@ -14,10 +20,13 @@ import org.gitlab4j.api.webhook.MergeRequestEvent;
 import org.gitlab4j.api.webhook.MergeRequestEvent.ObjectAttributes;
 import org.gitlab4j.api.webhook.PushEvent;
 import org.gitlab4j.api.webhook.WebHookListener;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
 import org.gitlab4j.codereview.dao.ProjectConfig;
-import org.gitlab4j.codereview.dao.ProjectConfigDAO;
 import org.gitlab4j.codereview.dao.Push;
 import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.gitlab4j.codereview.webhook.PipelineStats;
 import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
 
@@ -33,26 +42,96 @@ public class CodeReviewWebHookListener implements WebHookListener {
 
     private Logger logger = LogManager.getLogger();
 
-    private CodeReviewConfiguration config;
+    // The stages of push event processing, in the order they are run
+    private static final String STAGE_LOCAL_CHECKS = "localChecks";
+    private static final String STAGE_DATABASE_CHECKS = "databaseChecks";
+    private static final String STAGE_GITLAB_LOOKUPS = "gitlabLookups";
+    private static final String STAGE_RECORD_AND_NOTIFY = "recordAndNotify";
+    private static final String STAGE_UPDATE = "update";
+
+    // The reasons a push event is rejected
+    private static final String REJECTED_INVALID_BRANCH = "invalidBranch";
+    private static final String REJECTED_DELETED_BRANCH = "deletedBranch";
+    private static final String REJECTED_MASTER = "master";
+    private static final String REJECTED_NOT_ENROLLED = "notEnrolled";
+    private static final String REJECTED_BRANCH_REGEX = "branchRegex";
+    private static final String REJECTED_PENDING_REVIEW = "pendingReview";
+    private static final String REJECTED_UNSUBMITTED_PUSH = "unsubmittedPush";
+    private static final String REJECTED_GITLAB_LOOKUP = "gitlabLookupFailed";
+    private static final String REJECTED_CONCURRENT_DUPLICATE = "concurrentDuplicate";
+
+    // The reasons a merge request event is rejected
+    private static final String REJECTED_INVALID_PAYLOAD = "invalidPayload";
+    private static final String REJECTED_NOT_MERGED_OR_CLOSED = "notMergedOrClosed";
+    private static final String REJECTED_NO_PUSH_RECORD = "noPushRecord";
+    private static final String REJECTED_ALREADY_UPDATED = "alreadyUpdated";
+
+    private GitLabApiCache gitlabApiCache;
     private GitLabApi gitlabApi;
+    private CodeReviewMailer mailer;
     private Jdbi jdbi;
-
-    CodeReviewWebHookListener(CodeReviewConfiguration config, GitLabApi gitlabApi, Jdbi jdbi) {
-        this.config = config;
-        this.gitlabApi = gitlabApi;
+    private ProjectConfigRegistry projectConfigRegistry;
+    private RegexMatcher regexMatcher;
+    private ExecutorService lookupExecutor;
+    private PipelineStats pipelineStats;
+    private PipelineStats mergeRequestStats;
+
+    CodeReviewWebHookListener(GitLabApiCache gitlabApiCache, CodeReviewMailer mailer, Jdbi jdbi,
+            ProjectConfigRegistry projectConfigRegistry, RegexMatcher regexMatcher, int numLookupThreads) {
+        this.gitlabApiCache = gitlabApiCache;
+        this.mailer = mailer;
+        this.gitlabApi = gitlabApiCache.getGitLabApi();
         this.jdbi = jdbi;
+        this.projectConfigRegistry = projectConfigRegistry;
+        this.regexMatcher = regexMatcher;
+
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.lookupExecutor = Executors.newFixedThreadPool(Math.max(1, numLookupThreads), runnable -> {
+            Thread thread = new Thread(runnable, "push-lookup-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        this.pipelineStats = new PipelineStats("push-pipeline",
+                new String[] { STAGE_LOCAL_CHECKS, STAGE_DATABASE_CHECKS, STAGE_GITLAB_LOOKUPS, STAGE_RECORD_AND_NOTIFY },
+                new String[] { REJECTED_INVALID_BRANCH, REJECTED_DELETED_BRANCH, REJECTED_MASTER, REJECTED_NOT_ENROLLED,
+                        REJECTED_BRANCH_REGEX, REJECTED_PENDING_REVIEW, REJECTED_UNSUBMITTED_PUSH, REJECTED_GITLAB_LOOKUP,
+                        REJECTED_CONCURRENT_DUPLICATE });
+
+        this.mergeRequestStats = new PipelineStats("merge-request-pipeline",
+                new String[] { STAGE_DATABASE_CHECKS, STAGE_GITLAB_LOOKUPS, STAGE_UPDATE },
+                new String[] { REJECTED_INVALID_PAYLOAD, REJECTED_NOT_MERGED_OR_CLOSED, REJECTED_NO_PUSH_RECORD, REJECTED_ALREADY_UPDATED });
+    }
+
+    /**
+     * Stops the threads used for the GitLab lookups.
+     */
+    void shutdown() {
+        lookupExecutor.shutdownNow();
     }
 
     /**
      * This method is called when a merge request is either created or changes state. We use it to update the Push record
      * for the branch. this allows us t eliminate sending out multiple emails
+     *
+     * The webhook payload is the source of truth, the push record is checked first and GitLab is only called when
+     * the merged by user can't be determined from the payload.
      * 
      * @param mergeRequestEvent
      */
     @Override
     public void onMergeRequestEvent(MergeRequestEvent mergeRequestEvent) {
 
+        long startNanos = System.nanoTime();
+        mergeRequestStats.received();
+
         ObjectAttributes attributes = mergeRequestEvent.getObjectAttributes();
+        if (attributes == null || attributes.getAuthorId() == null || attributes.getTargetProjectId() == null || attributes.getIid() == null) {
+            logger.warn("Merge request notification is missing the merge request attributes, ignoring it");
+            mergeRequestStats.rejected(REJECTED_INVALID_PAYLOAD);
+            return;
+        }
+
         String branchName = attributes.getSourceBranch();
         int userId = attributes.getAuthorId();
         int projectId = attributes.getTargetProjectId();
@@ -65,15 +144,7 @@ public class CodeReviewWebHookListener implements WebHookListener {
 
         // We only operate on merged or closed state changes
         if (!"merged".equals(mergeState) && !"closed".equals(mergeState)) {
-            return;
-        }
-
-        // Make sure the merge request is valid
-        MergeRequest mergeRequest = null;
-        try {
-            mergeRequest = gitlabApi.getMergeRequestApi().getMergeRequest(projectId, attributes.getId());
-        } catch (GitLabApiException gle) {
-            logger.error("Problem getting merge request info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+            mergeRequestStats.rejected(REJECTED_NOT_MERGED_OR_CLOSED);
             return;
         }
 
@@ -87,46 +158,88 @@ public class CodeReviewWebHookListener implements WebHookListener {
             if (pushList == null || pushList.size() == 0) {
                 logger.warn("Could not locate push record for merge request" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName + ", mergeRequestId="
                         + mergeRequestId);
+                mergeRequestStats.stageDone(STAGE_DATABASE_CHECKS, startNanos);
+                mergeRequestStats.rejected(REJECTED_NO_PUSH_RECORD);
                 return;
             }
 
             // Update the Push record for this push if not already updated
             Push push = pushList.get(0);
-            if (!mergeState.equals(push.getMergeState())) {
-
-                int pushId = push.getId();
-
-                // If the MR was merged, get the merged by ID
-                int mergedById = 0;
-                if ("merged".equals(mergeState)) {
-                    User user = mergeRequestEvent.getUser();
-                    if (user != null) {
-                        if (user.getId() != null) {
-                            mergedById = user.getId();
-                        } else if (StringUtils.isNotEmpty(user.getUsername())) {
-                            try {
-                                List<User> users = gitlabApi.getUserApi().findUsers(user.getUsername());
-                                if (users != null && !users.isEmpty())
-                                    mergedById = users.get(0).getId();
-                            } catch (GitLabApiException gle) {
-                                logger.warn("Error trying to determine merged by ID, message=" + gle.getMessage());
-                            }
-                        }
-                    }
-
-                    if (mergedById == 0)
-                        mergedById = (mergeRequest.getAssignee() != null ? mergeRequest.getAssignee().getId() : 0);
+            if (mergeState.equals(push.getMergeState())) {
+                logger.info("Push record already updated, userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName + ", mergeRequestId=" + mergeRequestId
+                        + ", mergedState=" + mergeState + ", mergeStatus=" + mergeStatus);
+                mergeRequestStats.stageDone(STAGE_DATABASE_CHECKS, startNanos);
+                mergeRequestStats.rejected(REJECTED_ALREADY_UPDATED);
+                return;
+            }
+
+            startNanos = mergeRequestStats.stageDone(STAGE_DATABASE_CHECKS, startNanos);
+
+            int mergedById = 0;
+            if ("merged".equals(mergeState)) {
+                mergedById = getMergedById(mergeRequestEvent, projectId, startNanos);
+                startNanos = System.nanoTime();
+            }
+
+            dao.updateMergeStatus(push.getId(), attributes.getUpdatedAt(), mergeStatus, mergeState, mergedById);
+            mergeRequestStats.stageDone(STAGE_UPDATE, startNanos);
+            mergeRequestStats.accepted();
+            logger.info("Updated push record, userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName + ", mergeRequestId=" + mergeRequestId + ", mergedState="
+                    + mergeState + ", mergeStatus=" + mergeStatus);
+        }
+    }
+
+    /**
+     * Determines who merged the merge request. The user in the payload is used if it carries an ID, a user that only
+     * carries a username is resolved through the GitLabApiCache, and if there is no user the assignee is used. Only when
+     * the payload has no assignee ID is the merge request fetched from the GitLab server.
+     *
+     * @return the ID of the user that merged the merge request, or 0 if it could not be determined
+     */
+    private int getMergedById(MergeRequestEvent mergeRequestEvent, int projectId, long startNanos) {
+
+        User user = mergeRequestEvent.getUser();
+        if (user != null && user.getId() != null) {
+            return (user.getId());
+        }
+
+        ObjectAttributes attributes = mergeRequestEvent.getObjectAttributes();
+        int mergedById = 0;
+        boolean calledGitLab = false;
+        if (user != null && StringUtils.isNotEmpty(user.getUsername())) {
+            try {
+                User mergedBy = gitlabApiCache.getUserByUsername(user.getUsername());
+                if (mergedBy != null && mergedBy.getId() != null) {
+                    mergedById = mergedBy.getId();
                 }
+            } catch (GitLabApiException gle) {
+                logger.warn("Error trying to determine merged by ID, message=" + gle.getMessage());
+            }
 
-                dao.updateMergeStatus(pushId, attributes.getUpdatedAt(), mergeStatus, mergeState, mergedById);
-                logger.info("Updated push record, userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName + ", mergeRequestId=" + mergeRequestId + ", mergedState="
-                        + mergeState + ", mergeStatus=" + mergeStatus);
-            } else {
+            calledGitLab = true;
+        }
 
-                logger.info("Push record already updated, userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName + ", mergeRequestId=" + mergeRequestId
-                        + ", mergedState=" + mergeState + ", mergeStatus=" + mergeStatus);
+        if (mergedById == 0 && attributes.getAssigneeId() != null) {
+            mergedById = attributes.getAssigneeId();
+        } else if (mergedById == 0) {
+
+            try {
+                MergeRequest mergeRequest = gitlabApi.getMergeRequestApi().getMergeRequest(projectId, attributes.getIid());
+                if (mergeRequest != null && mergeRequest.getAssignee() != null) {
+                    mergedById = mergeRequest.getAssignee().getId();
+                }
+            } catch (GitLabApiException gle) {
+                logger.warn("Problem getting merge request info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
             }
+
+            calledGitLab = true;
+        }
+
+        if (calledGitLab) {
+            mergeRequestStats.stageDone(STAGE_GITLAB_LOOKUPS, startNanos);
         }
+
+        return (mergedById);
     }
 
     /**
@@ -134,6 +247,9 @@ public class CodeReviewWebHookListener implements WebHookListener {
      * are correct and if so create a Push record and send an email to the user with a link to a code review submittal form.
      * We also make sure that we don't send multiple emails to the user for additional pushes of a branch that is
      * already pending review.
+     *
+     * The checks are run in order of cost: the checks against the event itself and the in-memory project config first,
+     * then the checks against the database, and only then are the project, user and branch loaded from the GitLab server.
      * 
      * @param pushEvent
      */
@@ -145,90 +261,181 @@ public class CodeReviewWebHookListener implements WebHookListener {
         String branchName = pushEvent.getBranch();
         logger.info("A branch has been pushed, userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
 
-        ProjectConfigDAO projectConfigDao = jdbi.onDemand(ProjectConfigDAO.class);
-        ProjectConfig projectConfig = projectConfigDao.find(projectId);
-        if (projectConfig == null) {
-            logger.info("This project is not in the Simple-CR system, projectId=" + projectId);
+        pipelineStats.received();
+        long stageStart = System.nanoTime();
+        String rejection = checkPushEvent(pushEvent);
+        stageStart = pipelineStats.stageDone(STAGE_LOCAL_CHECKS, stageStart);
+        if (rejection != null) {
+            pipelineStats.rejected(rejection);
             return;
         }
 
-        if (StringUtils.isEmpty(branchName)) {
-            logger.warn("branch name is either null or not valid, ref=" + pushEvent.getRef());
-            return;
-        }
+        try (Handle handle = jdbi.open()) {
 
-        if (branchName.equals("master")) {
-            logger.info("No code reviews are done on master.");
-            return;
-        }
+            PushDAO dao = handle.attach(PushDAO.class);
 
-        // If a branchRegex is configured, make sure the branch matches the regex
-        String branchRegex = projectConfig.getBranchRegex();
-        if (branchRegex != null && branchRegex.trim().length() > 0) {
-           if (!branchName.matches(branchRegex)) {
-               logger.info("The pushed branch is not configured to trigger Simple-CR, pushed branch=" +
-                       branchName + ", branchRegex=" + branchRegex);
-               return;
-           }
-        }
+            // Make sure that we DO NOT have a pending code review for this branch
+            List<Push> pushList = dao.findPendingReviews(userId, projectId, branchName);
+            if (pushList != null && pushList.size() > 0) {
+                pipelineStats.stageDone(STAGE_DATABASE_CHECKS, stageStart);
+                pipelineStats.rejected(REJECTED_PENDING_REVIEW);
+                logger.info("The branch is already pending review and merge" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
+                return;
+            }
 
-        Project project = null;
-        try {
-            project = gitlabApi.getProjectApi().getProject(projectId);
-        } catch (GitLabApiException gle) {
-            logger.error("Problem getting project info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
-            return;
+            // Make sure we DO NOT have a push record that has not been submitted for code review
+            pushList = dao.find(userId, projectId, branchName, 0);
+            if (pushList != null && pushList.size() > 0) {
+                pipelineStats.stageDone(STAGE_DATABASE_CHECKS, stageStart);
+                pipelineStats.rejected(REJECTED_UNSUBMITTED_PUSH);
+                logger.info("Branch push notification has already been sent" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
+                return;
+            }
         }
 
+        stageStart = pipelineStats.stageDone(STAGE_DATABASE_CHECKS, stageStart);
+
+        // The project, user and branch lookups are independent of each other, so they are run concurrently
+        CompletableFuture<Project> projectLookup = lookup(() -> gitlabApiCache.getProject(projectId));
+        CompletableFuture<User> userLookup = lookup(() -> gitlabApiCache.getUser(userId));
+        CompletableFuture<Branch> branchLookup = lookup(() -> gitlabApiCache.getBranch(projectId, branchName));
+
+        Project project;
         User user;
         try {
-            user = gitlabApi.getUserApi().getUser(userId);
-            if (StringUtils.isEmpty(user.getEmail()))
-                user.setEmail(pushEvent.getUserEmail());
+            project = getLookupResult(projectLookup, "project");
+            user = getLookupResult(userLookup, "user");
+
+            // Make sure that the branch is still valid (not deleted).
+            getLookupResult(branchLookup, "branch");
         } catch (GitLabApiException gle) {
-            logger.error("Problem getting user info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+            pipelineStats.stageDone(STAGE_GITLAB_LOOKUPS, stageStart);
+            pipelineStats.rejected(REJECTED_GITLAB_LOOKUP);
             return;
         }
 
-        // Make sure that the branch is still valid (not deleted).
-        try {
-            gitlabApi.getRepositoryApi().getBranch(projectId, branchName);
-        } catch (GitLabApiException gle) {
-            logger.error("Problem getting branch info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+        // The User is shared by the GitLabApiCache, so the email from the push event is never written to it
+        String email = user.getEmail();
+        if (StringUtils.isEmpty(email)) {
+            email = pushEvent.getUserEmail();
+        }
+
+        stageStart = pipelineStats.stageDone(STAGE_GITLAB_LOOKUPS, stageStart);
+
+        // Add a Push record for this push event, if a concurrent delivery for the same branch got there first it has
+        // already sent the email, this is counted as a collision
+        boolean inserted;
+        try (Handle handle = jdbi.open()) {
+            inserted = handle.attach(PushDAO.class).insertIfAbsent(userId, projectId, branchName, pushEvent.getBefore(), pushEvent.getAfter());
+        }
+
+        if (!inserted) {
+            pipelineStats.stageDone(STAGE_RECORD_AND_NOTIFY, stageStart);
+            pipelineStats.rejected(REJECTED_CONCURRENT_DUPLICATE);
+            logger.info("Branch push notification was sent by a concurrent push" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
             return;
         }
 
-        // If after is all "0" this indicates that this notification is for the deletion of that branch.
+        mailer.sendCodeReviewEmail(user, email, project, branchName);
+        pipelineStats.stageDone(STAGE_RECORD_AND_NOTIFY, stageStart);
+        pipelineStats.accepted();
+    }
+
+    /**
+     * @return the stats for the push event pipeline
+     */
+    public PipelineStats getPipelineStats() {
+        return (pipelineStats);
+    }
+
+    /**
+     * @return the stats for the merge request event pipeline
+     */
+    public PipelineStats getMergeRequestStats() {
+        return (mergeRequestStats);
+    }
+
+    /**
+     * Runs the checks that need nothing more than the event and the in-memory project config.
+     *
+     * @param pushEvent the push event to check
+     * @return the reason the push was rejected, or null if it passed all the checks
+     */
+    private String checkPushEvent(PushEvent pushEvent) {
+
+        int projectId = pushEvent.getProjectId();
+        String branchName = pushEvent.getBranch();
+        if (StringUtils.isEmpty(branchName)) {
+            logger.warn("branch name is either null or not valid, ref=" + pushEvent.getRef());
+            return (REJECTED_INVALID_BRANCH);
+        }
+
+        // If after is all "0" this indicates that this notification is for the deletion of that branch,
+        // a push that creates or deletes the branch invalidates what we know about the branch
         String after = pushEvent.getAfter();
-        if (StringUtils.containsOnly(after, "0")) {
-            logger.info("The branch has been deleted nothing to do here, before=" + pushEvent.getBefore() + ", after=" + after + ".\n");
-            return;
+        boolean deleted = StringUtils.containsOnly(after, "0");
+        if (deleted || StringUtils.containsOnly(pushEvent.getBefore(), "0")) {
+            gitlabApiCache.invalidateBranch(projectId, branchName);
         }
 
-        try (Handle handle = jdbi.open()) {
+        if (deleted) {
+            logger.info("The branch has been deleted nothing to do here, before=" + pushEvent.getBefore() + ", after=" + after + ".");
+            return (REJECTED_DELETED_BRANCH);
+        }
 
-            PushDAO dao = handle.attach(PushDAO.class);
+        if (branchName.equals("master")) {
+            logger.info("No code reviews are done on master.");
+            return (REJECTED_MASTER);
+        }
 
-            // Make sure that we DO NOT have a pending code review for this branch
-            List<Push> pushList = dao.findPendingReviews(userId, projectId, branchName);
-            if (pushList != null && pushList.size() > 0) {
-                logger.info("The branch is already pending review and merge" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
-                return;
-            }
+        ProjectConfig projectConfig = projectConfigRegistry.get(projectId);
+        if (projectConfig == null) {
+            logger.info("This project is not in the Simple-CR system, projectId=" + projectId);
+            return (REJECTED_NOT_ENROLLED);
+        }
 
-            // Make sure we DO NOT have a push record that has not been submitted for code review
-            pushList = dao.find(userId, projectId, branchName, 0);
-            if (pushList != null && pushList.size() > 0) {
-                logger.info("Branch push notification has already been sent" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
-                return;
+        // If a branchRegex is configured, make sure the branch matches the regex
+        String branchRegex = projectConfig.getBranchRegex();
+        if (branchRegex != null && branchRegex.trim().length() > 0) {
+           if (!regexMatcher.matches(branchRegex, branchName)) {
+               logger.info("The pushed branch is not configured to trigger Simple-CR, pushed branch=" +
+                       branchName + ", branchRegex=" + branchRegex);
+               return (REJECTED_BRANCH_REGEX);
+           }
+        }
+
+        return (null);
+    }
+
+    /**
+     * A GitLab API call that is run by {@link #lookup(GitLabLookup)}.
+     */
+    @FunctionalInterface
+    private interface GitLabLookup<T> {
+        T get() throws GitLabApiException;
+    }
+
+    private <T> CompletableFuture<T> lookup(GitLabLookup<T> lookup) {
+
+        return (CompletableFuture.supplyAsync(() -> {
+            try {
+                return (lookup.get());
+            } catch (GitLabApiException gle) {
+                throw new CompletionException(gle);
             }
+        }, lookupExecutor));
+    }
 
-            // Add a Push record for this push event
-            dao.insert(userId, projectId, branchName, pushEvent.getBefore(), pushEvent.getAfter());
+    private <T> T getLookupResult(CompletableFuture<T> future, String what) throws GitLabApiException {
 
-        }
+        try {
+            return (future.join());
+        } catch (CompletionException ce) {
 
-        CodeReviewMailer mailer = new CodeReviewMailer(config, gitlabApi);
-        mailer.sendCodeReviewEmail(user, project, branchName);
+            Throwable cause = ce.getCause();
+            GitLabApiException gle = (cause instanceof GitLabApiException ? (GitLabApiException) cause : new GitLabApiException(ce));
+            logger.error("Problem getting " + what + " info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+            throw gle;
+        }
     }
 }
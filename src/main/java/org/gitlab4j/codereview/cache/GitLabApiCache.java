@@ -0,0 +1,230 @@
+package org.gitlab4j.codereview.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Branch;
+import org.gitlab4j.api.models.Member;
+import org.gitlab4j.api.models.Project;
+import org.gitlab4j.api.models.User;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.utils.ExpiringLruCache;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * A caching facade in front of GitLabApi for the project, user, branch and member lookups done while
+ * processing webhooks and review requests. Each entity type has its own TTL, the caches are bounded
+ * in size with least recently used eviction, and 404 responses are cached for a short time so that
+ * repeated lookups of missing objects do not go back to the GitLab server.
+ *
+ * Calls that are not cached should be made against the GitLabApi returned by {@link #getGitLabApi()}.
+ */
+public class GitLabApiCache implements StatsProvider {
+
+    private static final int NOT_FOUND = 404;
+
+    private final GitLabApi gitlabApi;
+
+    private final ExpiringLruCache<Integer, Project> projectCache;
+    private final ExpiringLruCache<String, Project> projectByPathCache;
+    private final ExpiringLruCache<Integer, User> userCache;
+    private final ExpiringLruCache<String, User> userByUsernameCache;
+    private final ExpiringLruCache<String, Branch> branchCache;
+    private final ExpiringLruCache<Integer, List<Branch>> projectBranchesCache;
+    private final ExpiringLruCache<Integer, List<Member>> groupMembersCache;
+    private final ExpiringLruCache<Integer, List<Member>> projectMembersCache;
+
+    /**
+     * Create a GitLabApiCache.
+     *
+     * @param gitlabApi the GitLabApi instance used to load cache misses
+     * @param maxSize the maximum number of entries held by each of the entity caches
+     * @param projectTtl the time in milliseconds to cache projects
+     * @param userTtl the time in milliseconds to cache users
+     * @param branchTtl the time in milliseconds to cache branches
+     * @param memberTtl the time in milliseconds to cache group and project member lists
+     * @param notFoundTtl the time in milliseconds to cache a 404 response
+     */
+    public GitLabApiCache(GitLabApi gitlabApi, int maxSize, long projectTtl, long userTtl, long branchTtl, long memberTtl, long notFoundTtl) {
+
+        this.gitlabApi = gitlabApi;
+
+        Predicate<Exception> isNotFound = e -> (e instanceof GitLabApiException && ((GitLabApiException) e).getHttpStatus() == NOT_FOUND);
+        projectCache = new ExpiringLruCache<Integer, Project>("projects", maxSize, projectTtl, notFoundTtl, isNotFound);
+        projectByPathCache = new ExpiringLruCache<String, Project>("projectsByPath", maxSize, projectTtl, notFoundTtl, isNotFound);
+        userCache = new ExpiringLruCache<Integer, User>("users", maxSize, userTtl, notFoundTtl, isNotFound);
+        userByUsernameCache = new ExpiringLruCache<String, User>("usersByUsername", maxSize, userTtl, notFoundTtl, isNotFound);
+        branchCache = new ExpiringLruCache<String, Branch>("branches", maxSize, branchTtl, notFoundTtl, isNotFound);
+        projectBranchesCache = new ExpiringLruCache<Integer, List<Branch>>("projectBranches", maxSize, branchTtl, notFoundTtl, isNotFound);
+        groupMembersCache = new ExpiringLruCache<Integer, List<Member>>("groupMembers", maxSize, memberTtl, notFoundTtl, isNotFound);
+        projectMembersCache = new ExpiringLruCache<Integer, List<Member>>("projectMembers", maxSize, memberTtl, notFoundTtl, isNotFound);
+    }
+
+    /**
+     * @return the underlying GitLabApi instance, for calls that are not cached
+     */
+    public GitLabApi getGitLabApi() {
+        return (gitlabApi);
+    }
+
+    public Project getProject(int projectId) throws GitLabApiException {
+        return (get(projectCache, projectId, id -> gitlabApi.getProjectApi().getProject(id)));
+    }
+
+    public Project getProject(String groupName, String projectName) throws GitLabApiException {
+        return (get(projectByPathCache, groupName + "/" + projectName, path -> gitlabApi.getProjectApi().getProject(groupName, projectName)));
+    }
+
+    public User getUser(int userId) throws GitLabApiException {
+        return (get(userCache, userId, id -> gitlabApi.getUserApi().getUser(id)));
+    }
+
+    /**
+     * Get a user by username, used to resolve the users in webhook payloads that only carry the username.
+     *
+     * @param username the username of the user to get
+     * @return the specified User, or null if there is no user with the username
+     * @throws GitLabApiException if any exception occurs
+     */
+    public User getUserByUsername(String username) throws GitLabApiException {
+        return (get(userByUsernameCache, username, name -> gitlabApi.getUserApi().getUser(name)));
+    }
+
+    /**
+     * Get the user as an Optional instance, any error getting the user results in an empty Optional.
+     *
+     * @param userId the ID of the user to get
+     * @return the specified User as an Optional instance
+     */
+    public Optional<User> getOptionalUser(int userId) {
+
+        try {
+            return (Optional.ofNullable(getUser(userId)));
+        } catch (GitLabApiException gle) {
+            return (Optional.empty());
+        }
+    }
+
+    public Branch getBranch(int projectId, String branchName) throws GitLabApiException {
+        return (get(branchCache, projectId + ":" + branchName, key -> gitlabApi.getRepositoryApi().getBranch(projectId, branchName)));
+    }
+
+    /**
+     * Get all the branches of a project, used to offer the target branches of a code review.
+     *
+     * @param projectId the ID of the project
+     * @return the branches of the project
+     * @throws GitLabApiException if any exception occurs
+     */
+    public List<Branch> getBranches(int projectId) throws GitLabApiException {
+        return (get(projectBranchesCache, projectId, id -> gitlabApi.getRepositoryApi().getBranches(id)));
+    }
+
+    public List<Member> getGroupMembers(int groupId) throws GitLabApiException {
+        return (get(groupMembersCache, groupId, id -> gitlabApi.getGroupApi().getMembers(id)));
+    }
+
+    public List<Member> getProjectMembers(int projectId) throws GitLabApiException {
+        return (get(projectMembersCache, projectId, id -> gitlabApi.getProjectApi().getMembers(id)));
+    }
+
+    /**
+     * Removes the cached state of a branch and the branch list of its project, called when a push creates
+     * or deletes the branch.
+     *
+     * @param projectId the project ID of the branch
+     * @param branchName the name of the branch
+     */
+    public void invalidateBranch(int projectId, String branchName) {
+        branchCache.invalidate(projectId + ":" + branchName);
+        projectBranchesCache.invalidate(projectId);
+    }
+
+    public void invalidateGroupMembers(int groupId) {
+        groupMembersCache.invalidate(groupId);
+    }
+
+    public void invalidateProjectMembers(int projectId) {
+        projectMembersCache.invalidate(projectId);
+    }
+
+    /**
+     * Removes all entries from all the caches.
+     */
+    public void invalidateAll() {
+        projectCache.invalidateAll();
+        projectByPathCache.invalidateAll();
+        userCache.invalidateAll();
+        userByUsernameCache.invalidateAll();
+        branchCache.invalidateAll();
+        projectBranchesCache.invalidateAll();
+        groupMembersCache.invalidateAll();
+        projectMembersCache.invalidateAll();
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("gitlab-api-cache");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        addStats(stats, projectCache);
+        addStats(stats, projectByPathCache);
+        addStats(stats, userCache);
+        addStats(stats, userByUsernameCache);
+        addStats(stats, branchCache);
+        addStats(stats, projectBranchesCache);
+        addStats(stats, groupMembersCache);
+        addStats(stats, projectMembersCache);
+        return (stats);
+    }
+
+    private static void addStats(Map<String, Object> stats, ExpiringLruCache<?, ?> cache) {
+        stats.put(cache.getName(), cache.getStats());
+    }
+
+    /**
+     * Registers the metrics of each of the caches, the load latency of a cache is the latency of the GitLab API
+     * endpoint it is in front of.
+     *
+     * @param registry the MetricsRegistry to register with
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registerMetrics(registry, projectCache);
+        registerMetrics(registry, projectByPathCache);
+        registerMetrics(registry, userCache);
+        registerMetrics(registry, userByUsernameCache);
+        registerMetrics(registry, branchCache);
+        registerMetrics(registry, projectBranchesCache);
+        registerMetrics(registry, groupMembersCache);
+        registerMetrics(registry, projectMembersCache);
+    }
+
+    private static void registerMetrics(MetricsRegistry registry, ExpiringLruCache<?, ?> cache) {
+
+        String endpoint = cache.getName();
+        registry.histogram("simplecr_gitlab_request_seconds", "GitLab API request latency by endpoint", cache.getLoadLatency(), "endpoint", endpoint);
+        registry.counter("simplecr_gitlab_request_failures_total", "Failed GitLab API requests by endpoint", cache::getNumLoadFailures, "endpoint", endpoint);
+        registry.counter("simplecr_gitlab_cache_hits_total", "GitLab cache hits by endpoint", cache::getNumHits, "endpoint", endpoint);
+        registry.counter("simplecr_gitlab_cache_misses_total", "GitLab cache misses by endpoint", cache::getNumMisses, "endpoint", endpoint);
+    }
+
+    private static <K, V> V get(ExpiringLruCache<K, V> cache, K key, ExpiringLruCache.Loader<K, V> loader) throws GitLabApiException {
+
+        try {
+            return (cache.get(key, loader));
+        } catch (GitLabApiException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GitLabApiException(e);
+        }
+    }
+}
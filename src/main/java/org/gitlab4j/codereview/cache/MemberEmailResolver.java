@@ -0,0 +1,178 @@
+package org.gitlab4j.codereview.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Member;
+import org.gitlab4j.api.models.User;
+import org.gitlab4j.codereview.utils.ExpiringLruCache;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * Resolves the email addresses of the members of a group or project. The member list does not
+ * include email addresses, so each member has to be looked up as a user. Those lookups are run in
+ * parallel on a bounded pool of threads (and go through the GitLabApiCache user cache), and the
+ * resulting email list is cached per group or project until it expires or a member change webhook
+ * invalidates it.
+ */
+public class MemberEmailResolver implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private final GitLabApiCache gitlabApiCache;
+    private final ExecutorService executor;
+    private final ExpiringLruCache<String, List<String>> emailCache;
+
+    private final AtomicLong numUserLookups = new AtomicLong();
+    private final AtomicLong numResolves = new AtomicLong();
+    private final AtomicLong totalResolveNanos = new AtomicLong();
+
+    /**
+     * Create a MemberEmailResolver.
+     *
+     * @param gitlabApiCache the GitLabApiCache used to load members and users
+     * @param numThreads the maximum number of concurrent user lookups
+     * @param maxSize the maximum number of groups and projects to cache email lists for
+     * @param ttlMillis the time in milliseconds to cache an email list
+     */
+    public MemberEmailResolver(GitLabApiCache gitlabApiCache, int numThreads, int maxSize, long ttlMillis) {
+
+        this.gitlabApiCache = gitlabApiCache;
+        this.emailCache = new ExpiringLruCache<String, List<String>>("memberEmails", maxSize, ttlMillis, 0, null);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "member-lookup-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return (thread);
+            }
+        });
+    }
+
+    /**
+     * Get the email addresses of the members of the specified group.
+     *
+     * @param groupId the ID of the group
+     * @return the email addresses of the group members, never null
+     * @throws GitLabApiException if the group members could not be loaded
+     */
+    public List<String> getGroupMemberEmails(int groupId) throws GitLabApiException {
+        return (get("group:" + groupId, key -> resolveEmails(gitlabApiCache.getGroupMembers(groupId))));
+    }
+
+    /**
+     * Get the email addresses of the members of the specified project.
+     *
+     * @param projectId the ID of the project
+     * @return the email addresses of the project members, never null
+     * @throws GitLabApiException if the project members could not be loaded
+     */
+    public List<String> getProjectMemberEmails(int projectId) throws GitLabApiException {
+        return (get("project:" + projectId, key -> resolveEmails(gitlabApiCache.getProjectMembers(projectId))));
+    }
+
+    public void invalidateGroup(int groupId) {
+        gitlabApiCache.invalidateGroupMembers(groupId);
+        emailCache.invalidate("group:" + groupId);
+    }
+
+    public void invalidateProject(int projectId) {
+        gitlabApiCache.invalidateProjectMembers(projectId);
+        emailCache.invalidate("project:" + projectId);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("member-email-resolver");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        long resolves = numResolves.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("cache", emailCache.getStats());
+        stats.put("resolves", resolves);
+        stats.put("userLookups", numUserLookups.get());
+        stats.put("avgResolveMillis", resolves > 0 ? totalResolveNanos.get() / resolves / 1000000.0 : 0.0);
+        return (stats);
+    }
+
+    /**
+     * Resolves the email for each member. Members that already carry an email address (the member list
+     * includes it when the API token belongs to an admin) are used as is, the rest are looked up in parallel.
+     * Members without an email address, or whose user lookup fails, are left out and each address is only
+     * listed once.
+     */
+    private List<String> resolveEmails(List<Member> members) {
+
+        if (members == null || members.isEmpty()) {
+            return (Collections.emptyList());
+        }
+
+        long startNanos = System.nanoTime();
+        LinkedHashSet<String> emails = new LinkedHashSet<String>(members.size() * 2);
+        List<CompletableFuture<Optional<User>>> lookups = new ArrayList<CompletableFuture<Optional<User>>>();
+        for (Member member : members) {
+
+            if (isValidEmail(member.getEmail())) {
+                emails.add(member.getEmail());
+            } else {
+                int userId = member.getId();
+                lookups.add(CompletableFuture.supplyAsync(() -> gitlabApiCache.getOptionalUser(userId), executor));
+            }
+        }
+
+        for (CompletableFuture<Optional<User>> lookup : lookups) {
+            Optional<User> optionalUser = lookup.join();
+            if (optionalUser.isPresent() && isValidEmail(optionalUser.get().getEmail())) {
+                emails.add(optionalUser.get().getEmail());
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        numResolves.incrementAndGet();
+        numUserLookups.addAndGet(lookups.size());
+        totalResolveNanos.addAndGet(elapsedNanos);
+        logger.debug("Resolved member emails, numMembers=" + members.size() + ", numLookups=" + lookups.size()
+                + ", elapsedMillis=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+
+        return (Collections.unmodifiableList(new ArrayList<String>(emails)));
+    }
+
+    private static boolean isValidEmail(String email) {
+        return (email != null && email.trim().length() > 0);
+    }
+
+    private List<String> get(String key, ExpiringLruCache.Loader<String, List<String>> loader) throws GitLabApiException {
+
+        try {
+            return (emailCache.get(key, loader));
+        } catch (GitLabApiException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GitLabApiException(e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.gitlab4j.codereview.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.utils.StatsProvider;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * An in-memory copy of the project_config table, keyed by project ID. Lookups read an immutable map through
+ * a volatile reference and never take a lock or touch the database, so the common case of a push from a project
+ * that is not enrolled in Simple-CR costs a single hash lookup.
+ *
+ * Changes are copy-on-write: a new map is built and swapped in under the writer lock. AdminResource refreshes
+ * a project after every add, update or delete, and the whole table is periodically reconciled against the
+ * registry to pick up changes made to the database by other means.
+ *
+ * The ProjectConfig instances held by the registry are shared and must not be modified by callers.
+ */
+public class ProjectConfigRegistry implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private final Jdbi jdbi;
+    private volatile Map<Integer, ProjectConfig> configs = Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong numLookups = new AtomicLong();
+    private final AtomicLong numMisses = new AtomicLong();
+    private final AtomicLong numRefreshes = new AtomicLong();
+    private final AtomicLong numReconciles = new AtomicLong();
+    private final AtomicLong numReconcileChanges = new AtomicLong();
+    private volatile long lastReconcileMillis;
+
+    /**
+     * Create a ProjectConfigRegistry, {@link #reconcile()} or {@link #start(long)} must be called to load it.
+     *
+     * @param jdbi the Jdbi instance for the database holding the project_config table
+     */
+    public ProjectConfigRegistry(Jdbi jdbi) {
+        this.jdbi = jdbi;
+    }
+
+    /**
+     * Loads the registry and schedules the periodic reconciliation.
+     *
+     * @param reconcileIntervalMillis the time between reconciliations, 0 disables them
+     */
+    public synchronized void start(long reconcileIntervalMillis) {
+
+        reconcile();
+        if (scheduler != null || reconcileIntervalMillis <= 0) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "project-config-reconciler");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (Exception e) {
+                logger.error("Problem reconciling project configs, error=" + e.getMessage(), e);
+            }
+        }, reconcileIntervalMillis, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Get the configuration of the specified project.
+     *
+     * @param projectId the ID of the project
+     * @return the ProjectConfig for the project, or null if the project is not in the Simple-CR system
+     */
+    public ProjectConfig get(int projectId) {
+
+        numLookups.incrementAndGet();
+        ProjectConfig projectConfig = configs.get(projectId);
+        if (projectConfig == null) {
+            numMisses.incrementAndGet();
+        }
+
+        return (projectConfig);
+    }
+
+    /**
+     * @return the number of projects in the registry
+     */
+    public int size() {
+        return (configs.size());
+    }
+
+    /**
+     * Reloads the configuration of a single project from the database, called after the project config
+     * has been added, updated or deleted.
+     *
+     * @param projectId the ID of the project to refresh
+     */
+    public void refresh(int projectId) {
+
+        synchronized (this) {
+
+            ProjectConfig projectConfig = jdbi.onDemand(ProjectConfigDAO.class).find(projectId);
+            Map<Integer, ProjectConfig> newConfigs = new HashMap<Integer, ProjectConfig>(configs);
+            if (projectConfig != null) {
+                newConfigs.put(projectId, projectConfig);
+            } else {
+                newConfigs.remove(projectId);
+            }
+
+            configs = Collections.unmodifiableMap(newConfigs);
+        }
+
+        numRefreshes.incrementAndGet();
+    }
+
+    /**
+     * Reloads the whole table and swaps it in, logging the projects that were changed outside of the registry.
+     *
+     * @return the number of projects that were added, changed or removed
+     */
+    public int reconcile() {
+
+        long startTime = System.currentTimeMillis();
+        int numChanges = 0;
+        synchronized (this) {
+
+            // The read and the swap are both done under the lock so that a refresh can never be overwritten
+            // by the results of a table read that started before it
+            List<ProjectConfig> projectConfigs = jdbi.onDemand(ProjectConfigDAO.class).list();
+            Map<Integer, ProjectConfig> oldConfigs = configs;
+            Map<Integer, ProjectConfig> newConfigs = new HashMap<Integer, ProjectConfig>(projectConfigs.size() * 2);
+            for (ProjectConfig projectConfig : projectConfigs) {
+
+                newConfigs.put(projectConfig.getProjectId(), projectConfig);
+                if (!isSame(oldConfigs.get(projectConfig.getProjectId()), projectConfig)) {
+                    numChanges++;
+                }
+            }
+
+            for (Integer projectId : oldConfigs.keySet()) {
+                if (!newConfigs.containsKey(projectId)) {
+                    numChanges++;
+                }
+            }
+
+            configs = Collections.unmodifiableMap(newConfigs);
+        }
+
+        numReconciles.incrementAndGet();
+        numReconcileChanges.addAndGet(numChanges);
+        lastReconcileMillis = System.currentTimeMillis() - startTime;
+        if (numChanges > 0 && numReconciles.get() > 1) {
+            logger.info("Project configs changed outside of Simple-CR were reconciled, numChanges=" + numChanges);
+        }
+
+        return (numChanges);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("project-config-registry");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("size", configs.size());
+        stats.put("lookups", numLookups.get());
+        stats.put("misses", numMisses.get());
+        stats.put("refreshes", numRefreshes.get());
+        stats.put("reconciles", numReconciles.get());
+        stats.put("reconcileChanges", numReconcileChanges.get());
+        stats.put("lastReconcileMillis", lastReconcileMillis);
+        return (stats);
+    }
+
+    private static boolean isSame(ProjectConfig a, ProjectConfig b) {
+
+        if (a == null || b == null) {
+            return (a == b);
+        }
+
+        return (a.getId() == b.getId()
+                && a.getHookId() == b.getHookId()
+                && a.getEnabled() == b.getEnabled()
+                && a.getIncludeDefaultMailTo() == b.getIncludeDefaultMailTo()
+                && Objects.equals(a.getBranchRegex(), b.getBranchRegex())
+                && Objects.equals(a.getTargetBranchRegex(), b.getTargetBranchRegex())
+                && Objects.equals(a.getMailTo(), b.getMailTo())
+                && Objects.equals(a.getAdditionalMailTo(), b.getAdditionalMailTo())
+                && Objects.equals(a.getExcludeMailTo(), b.getExcludeMailTo())
+                && Objects.equals(a.getPushCoalesceWindow(), b.getPushCoalesceWindow()));
+    }
+}
@@ -0,0 +1,18 @@
+package org.gitlab4j.codereview.dao;
+
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+/**
+ * Stores the position a background job has reached, so that a job that is stopped part way through
+ * picks up where it left off.
+ */
+public interface CheckpointDAO {
+
+    @SqlQuery("SELECT position FROM job_checkpoint WHERE name = :name")
+    Long find(@Bind("name") String name);
+
+    @SqlUpdate("MERGE INTO job_checkpoint (name, position, updated) KEY (name) VALUES (:name, :position, CURRENT_TIMESTAMP)")
+    void save(@Bind("name") String name, @Bind("position") long position);
+}
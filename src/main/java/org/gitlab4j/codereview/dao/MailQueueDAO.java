@@ -0,0 +1,66 @@
+package org.gitlab4j.codereview.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.gitlab4j.codereview.dao.QueuedMail.QueuedMailMapper;
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+@RegisterRowMapper(QueuedMailMapper.class)
+public interface MailQueueDAO {
+
+    @SqlUpdate("DROP TABLE IF EXISTS mail_queue; DROP TABLE IF EXISTS mail_dead_letter")
+    void dropTables();
+
+    @SqlUpdate("INSERT INTO mail_queue (mail_to, subject, html_body) VALUES (:mailTo, :subject, :htmlBody)")
+    @GetGeneratedKeys("id")
+    int insert(@BindBean QueuedMail mail);
+
+    @SqlQuery("SELECT * FROM mail_queue WHERE next_attempt <= :now ORDER BY next_attempt, id LIMIT :limit")
+    List<QueuedMail> findDue(@Bind("now") Date now, @Bind("limit") int limit);
+
+    @SqlQuery("SELECT * FROM mail_queue WHERE id = :id")
+    QueuedMail find(@Bind("id") int id);
+
+    @SqlUpdate("UPDATE mail_queue SET attempts = :attempts, next_attempt = :nextAttempt, last_error = :lastError WHERE id = :id")
+    int updateRetry(@Bind("id") int id, @Bind("attempts") int attempts,
+            @Bind("nextAttempt") Date nextAttempt, @Bind("lastError") String lastError);
+
+    @SqlUpdate("DELETE FROM mail_queue WHERE id = :id")
+    int delete(@Bind("id") int id);
+
+    @SqlUpdate("INSERT INTO mail_dead_letter (id, created, mail_to, subject, html_body, attempts, next_attempt, last_error)" +
+            " SELECT id, created, mail_to, subject, html_body, :attempts, next_attempt, :lastError FROM mail_queue WHERE id = :id")
+    int copyToDeadLetter(@Bind("id") int id, @Bind("attempts") int attempts, @Bind("lastError") String lastError);
+
+    /**
+     * Moves a message from the queue to the dead letter table.
+     *
+     * @param id the ID of the message to move
+     * @param attempts the total number of failed delivery attempts
+     * @param lastError the error from the last delivery attempt
+     */
+    @Transaction
+    default void moveToDeadLetter(int id, int attempts, String lastError) {
+        copyToDeadLetter(id, attempts, lastError);
+        delete(id);
+    }
+
+    @SqlQuery("SELECT * FROM mail_dead_letter ORDER BY failed DESC")
+    List<QueuedMail> listDeadLetters();
+
+    @SqlQuery("SELECT COUNT(*) FROM mail_queue")
+    int count();
+
+    @SqlQuery("SELECT COUNT(*) FROM mail_dead_letter")
+    int countDeadLetters();
+
+    @SqlUpdate("")
+    void close();
+}
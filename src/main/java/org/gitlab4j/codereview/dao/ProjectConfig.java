@@ -55,6 +55,7 @@ public class ProjectConfig {
     private String additionalMailTo;
     private String excludeMailTo;
     private boolean includeDefaultMailTo;
+    private Integer pushCoalesceWindow;
 
     @JsonIgnore
     private final JacksonJson jacksonJson = new JacksonJson();
@@ -236,6 +237,20 @@ public class ProjectConfig {
         this.includeDefaultMailTo = includeDefaultMailTo;
     }
 
+    /**
+     * @return the push coalesce window in seconds, null if the server default is used
+     */
+    public Integer getPushCoalesceWindow() {
+        return pushCoalesceWindow;
+    }
+
+    /**
+     * @param pushCoalesceWindow the push coalesce window in seconds, 0 disables coalescing and null uses the server default
+     */
+    public void setPushCoalesceWindow(Integer pushCoalesceWindow) {
+        this.pushCoalesceWindow = pushCoalesceWindow;
+    }
+
     /**
      * Get a String list of additional email addresses to email to.
      * 
@@ -271,6 +286,8 @@ public class ProjectConfig {
             config.additionalMailTo = rs.getString("additional_mail_to");
             config.excludeMailTo = rs.getString("exclude_mail_to");
             config.includeDefaultMailTo = rs.getBoolean("include_default_mail_to");
+            int pushCoalesceWindow = rs.getInt("push_coalesce_window");
+            config.pushCoalesceWindow = (rs.wasNull() ? null : pushCoalesceWindow);
 
             return (config);
         }
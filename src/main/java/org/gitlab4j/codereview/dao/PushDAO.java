@@ -1,10 +1,13 @@
 package org.gitlab4j.codereview.dao;
 
+import java.sql.SQLException;
 import java.util.Date;
 
 import java.util.List;
 
 import org.gitlab4j.codereview.dao.Push.PushMapper;
+import org.h2.api.ErrorCode;
+import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
 import org.jdbi.v3.sqlobject.customizer.*;
 import org.jdbi.v3.sqlobject.statement.*;
 import org.jdbi.v3.sqlobject.config.*;
@@ -12,21 +15,6 @@ import org.jdbi.v3.sqlobject.config.*;
 @RegisterRowMapper(PushMapper.class)
 public interface PushDAO {
 
-    @SqlUpdate("CREATE TABLE IF NOT EXISTS push (" +
-            "  id INT AUTO_INCREMENT(1, 1) PRIMARY KEY" +
-            ", received TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-            ", user_id INT NOT NULL" +
-            ", branch VARCHAR(64) NOT NULL" +
-            ", project_id INT NOT NULL" +
-            ", before VARCHAR(64)" + ", after VARCHAR(64)" +
-            ", merge_request_id INT DEFAULT 0" +
-            ", merge_status_date TIMESTAMP" +            
-            ", merge_state VARCHAR(32)" +
-            ", merge_status VARCHAR(32)" +
-            ", merged_by_id INT);" +
-            "  CREATE INDEX IF NOT EXISTS push_index ON push(user_id, project_id, branch, merge_request_id)")
-    void createTable();
-    
     @SqlUpdate("DROP TABLE IF EXISTS push")
     void dropTable();
 
@@ -35,17 +23,53 @@ public interface PushDAO {
             @Bind("before") String before, @Bind("after") String after);
     @SqlUpdate("INSERT INTO push (user_id, project_id, branch, before, after) values (:userId, :projectId, :branch, :before, :after)")
     int insert(@BindBean Push push);
+
+    /**
+     * Inserts an unsubmitted push unless the user already has one for the branch. This is atomic, the unique
+     * index on unsubmitted_key makes sure that only one of any number of concurrent inserts succeeds.
+     *
+     * @return true if the push was inserted, false if there already is an unsubmitted push for the branch
+     */
+    default boolean insertIfAbsent(int userId, int projectId, String branch, String before, String after) {
+
+        try {
+            return (insert(userId, projectId, branch, before, after) == 1);
+        } catch (UnableToExecuteStatementException e) {
+
+            // A unique index violation, or a conflict with a concurrent uncommitted insert of the same key
+            Throwable cause = e.getCause();
+            int errorCode = (cause instanceof SQLException ? ((SQLException) cause).getErrorCode() : 0);
+            if (errorCode == ErrorCode.DUPLICATE_KEY_1 || errorCode == ErrorCode.CONCURRENT_UPDATE_1) {
+                return (false);
+            }
+
+            throw e;
+        }
+    }
+
     @SqlUpdate("UPDATE push SET merge_status_date = :mergeStatusDate" +
             ", merge_status = :mergeStatus, merge_state = :mergeState, merged_by_id = :mergedById  WHERE id = :id")
     void updateMergeStatus(@Bind("id") int id, 
             @Bind("mergeStatusDate") Date mergeStatusDate, @Bind("mergeStatus") String mergeStatus,
             @Bind("mergeState") String mergeState, @Bind("mergedById") int mergedById);
     
+    /**
+     * Applies the merge states found by the MergeStateReconciler as a single JDBC batch. The lists are zipped
+     * together by position, a row that was updated by a webhook in the meantime is left alone.
+     *
+     * @return the number of rows updated by each statement of the batch
+     */
+    @SqlBatch("UPDATE push SET merge_status_date = :mergeStatusDate" +
+            ", merge_status = :mergeStatus, merge_state = :mergeState, merged_by_id = :mergedById WHERE id = :id AND merge_status IS NULL")
+    int[] updateMergeStatuses(@Bind("id") List<Integer> ids,
+            @Bind("mergeStatusDate") List<Date> mergeStatusDates, @Bind("mergeStatus") List<String> mergeStatuses,
+            @Bind("mergeState") List<String> mergeStates, @Bind("mergedById") List<Integer> mergedByIds);
+
     @SqlUpdate("UPDATE push SET merge_request_id = :mergeRequestId WHERE id = :id")
     void setMergeRequest(@Bind("id") int id, @Bind("mergeRequestId") int mergeRequestId);
 
     @SqlQuery("SELECT id, received, user_id, branch, project_id, before, after"
-            + ", merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id FROM push WHERE id = :id ORDER BY rececived DESC")
+            + ", merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id FROM push WHERE id = :id")
     Push find(@Bind("id") int id);
     
     @SqlQuery("SELECT id, received, user_id, branch, project_id, before, after, merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id" +
@@ -66,6 +90,17 @@ public interface PushDAO {
             " FROM push WHERE project_id = :projectId AND merge_request_id = :mergeRequestId ORDER BY received DESC")
     List<Push> find(@Bind("projectId") int projectId, @Bind("mergeRequestId") int mergeRequestId);
 
+    @SqlQuery("SELECT id, received, user_id, branch, project_id, before, after, merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id" +
+            " FROM push WHERE merge_status_date < :cutoff AND merge_state IN ('merged', 'closed') ORDER BY merge_status_date, id LIMIT :limit")
+    List<Push> findExpired(@Bind("cutoff") Date cutoff, @Bind("limit") int limit);
+
+    @SqlQuery("SELECT id, received, user_id, branch, project_id, before, after, merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id" +
+            " FROM push WHERE id > :afterId AND merge_request_id > 0 AND merge_status IS NULL ORDER BY id LIMIT :limit")
+    List<Push> findPendingMergeStatus(@Bind("afterId") int afterId, @Bind("limit") int limit);
+
+    @SqlUpdate("DELETE FROM push WHERE id IN (<ids>)")
+    int delete(@BindList("ids") List<Integer> ids);
+
     @SqlUpdate("")
     void close();
 }
@@ -0,0 +1,164 @@
+package org.gitlab4j.codereview.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+/**
+ * An outbound email message held in the mail_queue (or mail_dead_letter) table until it is delivered.
+ */
+public class QueuedMail {
+
+    private int id;
+    private Date created;
+    private String mailTo;
+    private String subject;
+    private String htmlBody;
+    private int attempts;
+    private Date nextAttempt;
+    private String lastError;
+
+    public QueuedMail() {
+    }
+
+    public QueuedMail(String mailTo, String subject, String htmlBody) {
+        this.mailTo = mailTo;
+        this.subject = subject;
+        this.htmlBody = htmlBody;
+    }
+
+    /**
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param id the id to set
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the created
+     */
+    public Date getCreated() {
+        return created;
+    }
+
+    /**
+     * @param created the created to set
+     */
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    /**
+     * @return the comma separated list of RFC822 recipient addresses
+     */
+    public String getMailTo() {
+        return mailTo;
+    }
+
+    /**
+     * @param mailTo the comma separated list of RFC822 recipient addresses to set
+     */
+    public void setMailTo(String mailTo) {
+        this.mailTo = mailTo;
+    }
+
+    /**
+     * @return the subject
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @param subject the subject to set
+     */
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    /**
+     * @return the htmlBody
+     */
+    public String getHtmlBody() {
+        return htmlBody;
+    }
+
+    /**
+     * @param htmlBody the htmlBody to set
+     */
+    public void setHtmlBody(String htmlBody) {
+        this.htmlBody = htmlBody;
+    }
+
+    /**
+     * @return the number of failed delivery attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts the number of failed delivery attempts to set
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the time the next delivery attempt is due
+     */
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    /**
+     * @param nextAttempt the time the next delivery attempt is due
+     */
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    /**
+     * @return the error from the last failed delivery attempt
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @param lastError the error from the last failed delivery attempt
+     */
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public static class QueuedMailMapper implements RowMapper<QueuedMail> {
+
+        public QueuedMail map(ResultSet rs, StatementContext context) throws SQLException {
+
+            QueuedMail mail = new QueuedMail();
+            mail.id = rs.getInt("id");
+            Timestamp ts = rs.getTimestamp("created");
+            mail.created = (ts != null ? new Date(ts.getTime()) : null);
+            mail.mailTo = rs.getString("mail_to");
+            mail.subject = rs.getString("subject");
+            mail.htmlBody = rs.getString("html_body");
+            mail.attempts = rs.getInt("attempts");
+            ts = rs.getTimestamp("next_attempt");
+            mail.nextAttempt = (ts != null ? new Date(ts.getTime()) : null);
+            mail.lastError = rs.getString("last_error");
+            return (mail);
+        }
+    }
+}
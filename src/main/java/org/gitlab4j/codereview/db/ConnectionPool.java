@@ -0,0 +1,54 @@
+package org.gitlab4j.codereview.db;
+
+import javax.sql.DataSource;
+
+import org.gitlab4j.codereview.CodeReviewConfiguration;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * A pool of JDBC connections to the Simple-CR database. The implementation is chosen with the
+ * db-pool configuration property, {@link #create(CodeReviewConfiguration)} builds the configured one.
+ */
+public interface ConnectionPool extends StatsProvider {
+
+    public static final String HIKARI = "hikari";
+    public static final String H2 = "h2";
+
+    /**
+     * @return the pooled DataSource that Jdbi is created on
+     */
+    public DataSource getDataSource();
+
+    /**
+     * Closes the pool and all the connections it holds.
+     */
+    public void close();
+
+    @Override
+    public default String getStatsName() {
+        return ("connection-pool");
+    }
+
+    /**
+     * Create the ConnectionPool selected by the configuration.
+     *
+     * @param config the configuration holding the database and pool settings
+     * @return a ConnectionPool connected to the configured database
+     * @throws IllegalArgumentException if the configured pool type is unknown
+     */
+    public static ConnectionPool create(CodeReviewConfiguration config) {
+
+        String jdbcUrl = "jdbc:h2:" + config.getDbName();
+        String poolType = config.getDbPool();
+        if (HIKARI.equalsIgnoreCase(poolType)) {
+            return (new HikariConnectionPool(jdbcUrl, config.getDbUser(), config.getDbPassword(),
+                    config.getDbPoolMinIdle(), config.getDbPoolMaxSize(), config.getDbPoolAcquireTimeout(),
+                    config.getDbPoolValidationTimeout(), config.getDbPoolTestQuery(), config.getDbPoolLeakDetectionThreshold()));
+        } else if (H2.equalsIgnoreCase(poolType)) {
+            return (new H2ConnectionPool(jdbcUrl, config.getDbUser(), config.getDbPassword(),
+                    config.getDbPoolMaxSize(), config.getDbPoolAcquireTimeout()));
+        }
+
+        throw new IllegalArgumentException("Unknown " + CodeReviewConfiguration.DB_POOL + " type: " + poolType);
+    }
+}
@@ -0,0 +1,56 @@
+package org.gitlab4j.codereview.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * A ConnectionPool backed by the simple pool that ships with H2. It has no idle management,
+ * validation or wait time metrics, use the Hikari pool for those.
+ */
+public class H2ConnectionPool implements ConnectionPool {
+
+    private final JdbcConnectionPool connectionPool;
+    private final int maxSize;
+
+    /**
+     * Create an H2ConnectionPool.
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @param user the database user
+     * @param password the database password
+     * @param maxSize the maximum number of connections
+     * @param acquireTimeoutMillis the maximum time to wait for a connection, rounded up to whole seconds
+     */
+    public H2ConnectionPool(String jdbcUrl, String user, String password, int maxSize, long acquireTimeoutMillis) {
+
+        this.maxSize = maxSize;
+        connectionPool = JdbcConnectionPool.create(jdbcUrl, user, password);
+        connectionPool.setMaxConnections(maxSize);
+        connectionPool.setLoginTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(acquireTimeoutMillis + 999)));
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return (connectionPool);
+    }
+
+    @Override
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("type", H2);
+        stats.put("maxSize", maxSize);
+        stats.put("active", connectionPool.getActiveConnections());
+        return (stats);
+    }
+}
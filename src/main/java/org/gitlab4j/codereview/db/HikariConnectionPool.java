@@ -0,0 +1,151 @@
+package org.gitlab4j.codereview.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * A ConnectionPool backed by HikariCP. Besides the pool sizing it supports an acquire timeout,
+ * connection validation and leak detection, and it records how long callers wait for a connection
+ * and how long connections are held so that pool starvation shows up in the stats.
+ */
+public class HikariConnectionPool implements ConnectionPool {
+
+    private static final String POOL_NAME = "simple-cr";
+
+    private final HikariDataSource dataSource;
+    private final long leakDetectionThreshold;
+
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+    private final LatencyHistogram usageHistogram = new LatencyHistogram();
+    private final AtomicLong numTimeouts = new AtomicLong();
+    private final AtomicLong numCreated = new AtomicLong();
+    private final AtomicLong numHeldOverLeakThreshold = new AtomicLong();
+
+    /**
+     * Create a HikariConnectionPool.
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @param user the database user
+     * @param password the database password
+     * @param minIdle the minimum number of idle connections to keep open
+     * @param maxSize the maximum number of connections
+     * @param acquireTimeoutMillis the maximum time to wait for a connection
+     * @param validationTimeoutMillis the maximum time to wait for a connection to be validated
+     * @param testQuery the query used to validate connections, if null the JDBC4 isValid() check is used
+     * @param leakDetectionThresholdMillis the time a connection can be held before it is reported as a possible leak, 0 to disable
+     */
+    public HikariConnectionPool(String jdbcUrl, String user, String password, int minIdle, int maxSize,
+            long acquireTimeoutMillis, long validationTimeoutMillis, String testQuery, long leakDetectionThresholdMillis) {
+
+        this.leakDetectionThreshold = leakDetectionThresholdMillis;
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(POOL_NAME);
+        hikariConfig.setJdbcUrl(jdbcUrl);
+        hikariConfig.setUsername(user);
+        hikariConfig.setPassword(password);
+        hikariConfig.setMinimumIdle(Math.min(minIdle, maxSize));
+        hikariConfig.setMaximumPoolSize(maxSize);
+        hikariConfig.setConnectionTimeout(acquireTimeoutMillis);
+        hikariConfig.setValidationTimeout(validationTimeoutMillis);
+        if (testQuery != null && testQuery.trim().length() > 0) {
+            hikariConfig.setConnectionTestQuery(testQuery);
+        }
+
+        hikariConfig.setLeakDetectionThreshold(leakDetectionThresholdMillis);
+        hikariConfig.setMetricsTrackerFactory(new PoolMetricsTrackerFactory());
+        dataSource = new HikariDataSource(hikariConfig);
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return (dataSource);
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("type", HIKARI);
+        stats.put("minIdle", dataSource.getMinimumIdle());
+        stats.put("maxSize", dataSource.getMaximumPoolSize());
+
+        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+        if (poolMXBean != null) {
+            stats.put("active", poolMXBean.getActiveConnections());
+            stats.put("idle", poolMXBean.getIdleConnections());
+            stats.put("total", poolMXBean.getTotalConnections());
+            stats.put("pending", poolMXBean.getThreadsAwaitingConnection());
+        }
+
+        stats.put("created", numCreated.get());
+        stats.put("timeouts", numTimeouts.get());
+        if (leakDetectionThreshold > 0) {
+            stats.put("heldOverLeakThreshold", numHeldOverLeakThreshold.get());
+        }
+
+        stats.put("wait", waitHistogram.getStats());
+        stats.put("usage", usageHistogram.getStats());
+        return (stats);
+    }
+
+    /**
+     * @return the histogram of the time callers waited to get a connection
+     */
+    public LatencyHistogram getWaitHistogram() {
+        return (waitHistogram);
+    }
+
+    /**
+     * Hikari calls the tracker on every acquire and release, we only do atomic increments here.
+     */
+    private class PoolMetricsTrackerFactory implements MetricsTrackerFactory {
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+
+            return (new IMetricsTracker() {
+
+                @Override
+                public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                    numCreated.incrementAndGet();
+                }
+
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    waitHistogram.record(elapsedAcquiredNanos);
+                }
+
+                @Override
+                public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                    usageHistogram.record(elapsedBorrowedMillis * 1000000);
+                    if (leakDetectionThreshold > 0 && elapsedBorrowedMillis >= leakDetectionThreshold) {
+                        numHeldOverLeakThreshold.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    numTimeouts.incrementAndGet();
+                }
+            });
+        }
+    }
+}
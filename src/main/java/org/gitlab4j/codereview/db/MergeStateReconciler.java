@@ -0,0 +1,408 @@
+package org.gitlab4j.codereview.db;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.api.Constants.MergeRequestState;
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.codereview.dao.CheckpointDAO;
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.utils.StatsProvider;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * Repairs the push records whose merge request was merged or closed without Simple-CR receiving the webhook.
+ * Such a record keeps a NULL merge_status forever and blocks new review emails for the branch.
+ *
+ * Each pass pages through the pending push records in id order. The merge requests of each project in a batch
+ * are listed from GitLab, newest first, a page at a time, until every pending merge request of the project has
+ * been seen or the listing reaches merge requests created before the oldest pending push. This takes one GitLab
+ * request per project and page instead of one per merge request. The merged and closed states found are applied
+ * in a single JDBC batch, in the same transaction that saves the id the pass has reached, so a pass that is
+ * stopped resumes from its last batch.
+ *
+ * GitLab requests are paced to the configured rate. A 429 response backs off and retries the same page.
+ */
+public class MergeStateReconciler implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    public static final String CHECKPOINT_NAME = "merge-state-reconciler";
+
+    // GitLab returns at most 100 merge requests per page
+    private static final int PAGE_SIZE = 100;
+
+    // Stops a project with a very long history from being paged through to the start
+    private static final int MAX_PAGES_PER_PROJECT = 50;
+
+    private static final int MAX_RATE_LIMIT_RETRIES = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int NOT_FOUND = 404;
+
+    private final GitLabApi gitlabApi;
+    private final Jdbi jdbi;
+    private final int batchSize;
+    private final long requestIntervalNanos;
+
+    private final Object runLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+    private long lastRequestNanos;
+
+    private final AtomicLong numPasses = new AtomicLong();
+    private final AtomicLong numRowsScanned = new AtomicLong();
+    private final AtomicLong numRowsUpdated = new AtomicLong();
+    private final AtomicLong numGitLabRequests = new AtomicLong();
+    private final AtomicLong numRateLimited = new AtomicLong();
+    private final AtomicLong numProjectErrors = new AtomicLong();
+    private volatile long checkpoint;
+    private volatile Date lastPassStarted;
+    private volatile long lastPassMillis;
+    private volatile long lastPassRowsScanned;
+    private volatile long lastPassRowsUpdated;
+    private volatile long lastPassMaxLagSeconds;
+    private volatile Date oldestPendingReceived;
+
+    /**
+     * Create a MergeStateReconciler.
+     *
+     * @param gitlabApi the GitLabApi instance used to list the merge requests
+     * @param jdbi the Jdbi instance for the Simple-CR database
+     * @param batchSize the number of pending push records reconciled per batch
+     * @param requestsPerSecond the maximum rate of GitLab requests
+     */
+    public MergeStateReconciler(GitLabApi gitlabApi, Jdbi jdbi, int batchSize, double requestsPerSecond) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be greater than 0");
+        }
+
+        this.gitlabApi = gitlabApi;
+        this.jdbi = jdbi;
+        this.batchSize = batchSize;
+        this.requestIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    /**
+     * Schedules a pass to run at the specified interval, the first pass runs after one interval.
+     *
+     * @param intervalMillis the time between the end of one pass and the start of the next
+     */
+    public synchronized void start(long intervalMillis) {
+
+        if (scheduler != null) {
+            return;
+        }
+
+        stopped = false;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "merge-state-reconciler");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                logger.error("Problem reconciling merge states, error=" + e.getMessage(), e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Merge state reconciler scheduled, intervalMinutes=" + TimeUnit.MILLISECONDS.toMinutes(intervalMillis)
+                + ", batchSize=" + batchSize);
+    }
+
+    /**
+     * Stops the scheduler, a pass that is in progress stops after the batch it is working on.
+     */
+    public synchronized void shutdown() {
+
+        stopped = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Runs a pass over the pending push records, starting from the saved checkpoint.
+     *
+     * @return the number of push records that were updated
+     */
+    public long run() {
+        synchronized (runLock) {
+            return (reconcile());
+        }
+    }
+
+    private long reconcile() {
+
+        long startTime = System.currentTimeMillis();
+        lastPassStarted = new Date(startTime);
+        numPasses.incrementAndGet();
+
+        Long savedCheckpoint = jdbi.onDemand(CheckpointDAO.class).find(CHECKPOINT_NAME);
+        checkpoint = (savedCheckpoint != null ? savedCheckpoint : 0);
+        if (checkpoint > 0) {
+            logger.info("Resuming merge state reconciliation, checkpoint=" + checkpoint);
+        }
+
+        long numScanned = 0;
+        long numUpdated = 0;
+        long maxLagSeconds = 0;
+        Date oldestPending = null;
+        while (!stopped) {
+
+            List<Push> pending = jdbi.onDemand(PushDAO.class).findPendingMergeStatus((int) checkpoint, batchSize);
+            if (pending.isEmpty()) {
+                saveCheckpoint(0);
+                break;
+            }
+
+            numScanned += pending.size();
+            numRowsScanned.addAndGet(pending.size());
+
+            // Group the pending records by project and merge request, a merge request can have more than one push
+            Map<Integer, Map<Integer, List<Push>>> pendingByProject = new LinkedHashMap<Integer, Map<Integer, List<Push>>>();
+            for (Push push : pending) {
+                pendingByProject.computeIfAbsent(push.getProjectId(), id -> new HashMap<Integer, List<Push>>())
+                        .computeIfAbsent(push.getMergeRequestId(), id -> new ArrayList<Push>()).add(push);
+            }
+
+            List<Integer> ids = new ArrayList<Integer>();
+            List<Date> mergeStatusDates = new ArrayList<Date>();
+            List<String> mergeStatuses = new ArrayList<String>();
+            List<String> mergeStates = new ArrayList<String>();
+            List<Integer> mergedByIds = new ArrayList<Integer>();
+            Set<Integer> finishedIds = new HashSet<Integer>();
+            for (Map.Entry<Integer, Map<Integer, List<Push>>> entry : pendingByProject.entrySet()) {
+
+                for (MergeRequest mergeRequest : findFinishedMergeRequests(entry.getKey(), entry.getValue())) {
+
+                    Date mergeStatusDate = (mergeRequest.getUpdatedAt() != null ? mergeRequest.getUpdatedAt() : new Date());
+                    int mergedById = ("merged".equals(mergeRequest.getState()) && mergeRequest.getAssignee() != null
+                            && mergeRequest.getAssignee().getId() != null ? mergeRequest.getAssignee().getId() : 0);
+                    maxLagSeconds = Math.max(maxLagSeconds, TimeUnit.MILLISECONDS.toSeconds(startTime - mergeStatusDate.getTime()));
+                    for (Push push : entry.getValue().get(mergeRequest.getIid())) {
+                        ids.add(push.getId());
+                        finishedIds.add(push.getId());
+                        mergeStatusDates.add(mergeStatusDate);
+                        mergeStatuses.add(mergeRequest.getMergeStatus());
+                        mergeStates.add(mergeRequest.getState());
+                        mergedByIds.add(mergedById);
+                    }
+                }
+
+                // Whatever is left is still open
+                for (List<Push> pushes : entry.getValue().values()) {
+                    for (Push push : pushes) {
+                        if (!finishedIds.contains(push.getId()) && (oldestPending == null || push.getReceived().before(oldestPending))) {
+                            oldestPending = push.getReceived();
+                        }
+                    }
+                }
+            }
+
+            long lastId = pending.get(pending.size() - 1).getId();
+            int batchUpdated = jdbi.inTransaction(handle -> {
+
+                int updated = 0;
+                if (!ids.isEmpty()) {
+                    for (int count : handle.attach(PushDAO.class).updateMergeStatuses(ids, mergeStatusDates, mergeStatuses, mergeStates, mergedByIds)) {
+                        updated += count;
+                    }
+                }
+
+                handle.attach(CheckpointDAO.class).save(CHECKPOINT_NAME, lastId);
+                return (updated);
+            });
+
+            checkpoint = lastId;
+            numUpdated += batchUpdated;
+            numRowsUpdated.addAndGet(batchUpdated);
+            if (pending.size() < batchSize) {
+                saveCheckpoint(0);
+                break;
+            }
+        }
+
+        lastPassMillis = System.currentTimeMillis() - startTime;
+        lastPassRowsScanned = numScanned;
+        lastPassRowsUpdated = numUpdated;
+        lastPassMaxLagSeconds = maxLagSeconds;
+        oldestPendingReceived = oldestPending;
+        logger.info("Merge state reconciliation finished, rowsScanned=" + numScanned + ", rowsUpdated=" + numUpdated
+                + ", maxLagSeconds=" + maxLagSeconds + ", elapsedMillis=" + lastPassMillis + ", stopped=" + stopped);
+        return (numUpdated);
+    }
+
+    /**
+     * Lists the merge requests of a project until all of the pending ones have been seen.
+     *
+     * @return the pending merge requests that have been merged or closed
+     */
+    private List<MergeRequest> findFinishedMergeRequests(int projectId, Map<Integer, List<Push>> pendingByIid) {
+
+        Date oldestReceived = null;
+        for (List<Push> pushes : pendingByIid.values()) {
+            for (Push push : pushes) {
+                if (oldestReceived == null || push.getReceived().before(oldestReceived)) {
+                    oldestReceived = push.getReceived();
+                }
+            }
+        }
+
+        List<MergeRequest> finished = new ArrayList<MergeRequest>();
+        int numRemaining = pendingByIid.size();
+        for (int page = 1; page <= MAX_PAGES_PER_PROJECT && numRemaining > 0 && !stopped; page++) {
+
+            List<MergeRequest> mergeRequests;
+            try {
+                mergeRequests = getMergeRequestsPaced(projectId, page);
+            } catch (GitLabApiException gle) {
+                numProjectErrors.incrementAndGet();
+                if (gle.getHttpStatus() != NOT_FOUND) {
+                    logger.warn("Problem listing merge requests, projectId=" + projectId + ", page=" + page
+                            + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+                }
+
+                break;
+            }
+
+            boolean reachedOldest = false;
+            for (MergeRequest mergeRequest : mergeRequests) {
+
+                if (pendingByIid.containsKey(mergeRequest.getIid())) {
+
+                    numRemaining--;
+                    if ("merged".equals(mergeRequest.getState()) || "closed".equals(mergeRequest.getState())) {
+                        finished.add(mergeRequest);
+                    }
+                }
+
+                // Merge requests are listed newest first, and are always created after the push they are for
+                Date createdAt = mergeRequest.getCreatedAt();
+                if (createdAt != null && oldestReceived != null && createdAt.before(oldestReceived)) {
+                    reachedOldest = true;
+                }
+            }
+
+            if (reachedOldest || mergeRequests.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        return (finished);
+    }
+
+    private List<MergeRequest> getMergeRequestsPaced(int projectId, int page) throws GitLabApiException {
+
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+
+            pace();
+            try {
+                List<MergeRequest> mergeRequests = getMergeRequests(projectId, page);
+                return (mergeRequests != null ? mergeRequests : new ArrayList<MergeRequest>());
+            } catch (GitLabApiException gle) {
+
+                if (gle.getHttpStatus() != TOO_MANY_REQUESTS || attempt >= MAX_RATE_LIMIT_RETRIES || stopped) {
+                    throw gle;
+                }
+
+                numRateLimited.incrementAndGet();
+                logger.info("GitLab rate limit reached, backing off, backoffMillis=" + backoffMillis);
+                sleep(backoffMillis);
+                backoffMillis *= 2;
+            }
+        }
+    }
+
+    /**
+     * Gets a page of the merge requests of a project, newest first.
+     *
+     * @param projectId the ID of the project
+     * @param page the page to get, starting at 1
+     * @return the merge requests on the page
+     * @throws GitLabApiException if any exception occurs
+     */
+    protected List<MergeRequest> getMergeRequests(int projectId, int page) throws GitLabApiException {
+        return (gitlabApi.getMergeRequestApi().getMergeRequests(projectId, MergeRequestState.ALL, page, PAGE_SIZE));
+    }
+
+    /**
+     * Waits until the next GitLab request is allowed by the rate.
+     */
+    private void pace() {
+
+        long waitNanos = lastRequestNanos + requestIntervalNanos - System.nanoTime();
+        if (lastRequestNanos != 0 && waitNanos > 0) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        }
+
+        lastRequestNanos = System.nanoTime();
+        numGitLabRequests.incrementAndGet();
+    }
+
+    private void saveCheckpoint(long position) {
+        jdbi.onDemand(CheckpointDAO.class).save(CHECKPOINT_NAME, position);
+        checkpoint = position;
+    }
+
+    private void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("merge-state-reconciler");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("passes", numPasses.get());
+        stats.put("checkpoint", checkpoint);
+        stats.put("totalRowsScanned", numRowsScanned.get());
+        stats.put("totalRowsUpdated", numRowsUpdated.get());
+        stats.put("gitlabRequests", numGitLabRequests.get());
+        stats.put("rateLimited", numRateLimited.get());
+        stats.put("projectErrors", numProjectErrors.get());
+        stats.put("lastPassStarted", lastPassStarted);
+        stats.put("lastPassMillis", lastPassMillis);
+        stats.put("lastPassRowsScanned", lastPassRowsScanned);
+        stats.put("lastPassRowsUpdated", lastPassRowsUpdated);
+        stats.put("lastPassRowsPerSecond", lastPassMillis > 0 ? lastPassRowsScanned * 1000.0 / lastPassMillis : 0.0);
+        stats.put("lastPassMaxLagSeconds", lastPassMaxLagSeconds);
+        stats.put("oldestPendingReceived", oldestPendingReceived);
+        return (stats);
+    }
+}
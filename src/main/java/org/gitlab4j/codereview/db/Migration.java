@@ -0,0 +1,38 @@
+package org.gitlab4j.codereview.db;
+
+import org.jdbi.v3.core.Handle;
+
+/**
+ * A single, versioned change to the database schema. Migrations are applied in version order by the
+ * SchemaMigrator and each is applied only once. The checksum is recorded when the migration is applied
+ * and checked on every startup, so a migration must never be changed once it has been released.
+ */
+public interface Migration {
+
+    /**
+     * @return the version of the schema after this migration is applied
+     */
+    public int getVersion();
+
+    public String getDescription();
+
+    /**
+     * @return a checksum of the changes this migration makes
+     */
+    public int getChecksum();
+
+    /**
+     * @return true if the migration and the recording of its version are done in a single transaction,
+     * false if the migration manages its own transactions
+     */
+    public default boolean isTransactional() {
+        return (true);
+    }
+
+    /**
+     * Apply the migration.
+     *
+     * @param handle the Handle to apply the migration with
+     */
+    public void apply(Handle handle);
+}
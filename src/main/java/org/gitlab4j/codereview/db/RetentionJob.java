@@ -0,0 +1,367 @@
+package org.gitlab4j.codereview.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.utils.StatsProvider;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * Removes the push records for merge requests that were merged or closed more than a configured number
+ * of days ago. The job runs once a day at the start of the maintenance window hour, expired records are
+ * appended to a gzipped CSV archive file and then deleted, in batches that each run in their own short
+ * transaction with a pause between them so that webhook processing is never blocked for long.
+ *
+ * H2 re-uses the space freed by the deletes but only gives it back to the file system when the database
+ * is compacted, which needs exclusive access to the database. {@link #compact(Jdbi)} is run at shutdown
+ * when db-compact-on-shutdown is enabled.
+ */
+public class RetentionJob implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private static final String ARCHIVE_HEADER = "id,received,user_id,branch,project_id,before,after"
+            + ",merge_request_id,merge_status_date,merge_state,merge_status,merged_by_id";
+
+    private final Jdbi jdbi;
+    private final int maxAgeDays;
+    private final int batchSize;
+    private final long batchDelayMillis;
+    private final File archiveDir;
+
+    private final Object runLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+
+    private final AtomicLong numRuns = new AtomicLong();
+    private final AtomicLong totalArchived = new AtomicLong();
+    private volatile Date lastRunStarted;
+    private volatile long lastRunMillis;
+    private volatile long lastRunArchived;
+    private volatile long lastRunArchiveBytes;
+
+    /**
+     * Create a RetentionJob.
+     *
+     * @param jdbi the Jdbi instance for the Simple-CR database
+     * @param maxAgeDays the number of days after a merge request is merged or closed that its push records are kept
+     * @param batchSize the maximum number of records archived and deleted per transaction
+     * @param batchDelayMillis the pause between batches
+     * @param archiveDir the directory the archive files are written to, if null expired records are deleted without archiving
+     */
+    public RetentionJob(Jdbi jdbi, int maxAgeDays, int batchSize, long batchDelayMillis, File archiveDir) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        this.jdbi = jdbi;
+        this.maxAgeDays = maxAgeDays;
+        this.batchSize = batchSize;
+        this.batchDelayMillis = batchDelayMillis;
+        this.archiveDir = archiveDir;
+    }
+
+    /**
+     * Schedules the job to run every day at the start of the specified hour.
+     *
+     * @param hour the hour of the day (0-23) the maintenance window starts at
+     */
+    public synchronized void start(int hour) {
+
+        if (scheduler != null) {
+            return;
+        }
+
+        stopped = false;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention-job");
+            thread.setDaemon(true);
+            return (thread);
+        });
+
+        long initialDelay = getMillisUntil(hour);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                logger.error("Problem running retention job, error=" + e.getMessage(), e);
+            }
+        }, initialDelay, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+
+        logger.info("Retention job scheduled, maxAgeDays=" + maxAgeDays + ", hour=" + hour
+                + ", firstRunMinutes=" + TimeUnit.MILLISECONDS.toMinutes(initialDelay));
+    }
+
+    /**
+     * Stops the scheduler, a run that is in progress stops after the batch it is working on.
+     */
+    public synchronized void shutdown() {
+
+        stopped = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Archives and deletes the push records that have expired.
+     *
+     * @return the number of records archived and deleted
+     * @throws IOException if the archive file could not be written, no records are deleted after a write failure
+     */
+    public long run() throws IOException {
+        synchronized (runLock) {
+            return (archiveExpired());
+        }
+    }
+
+    private long archiveExpired() throws IOException {
+
+        long startTime = System.currentTimeMillis();
+        Date cutoff = new Date(startTime - TimeUnit.DAYS.toMillis(maxAgeDays));
+        lastRunStarted = new Date(startTime);
+        numRuns.incrementAndGet();
+
+        long numArchived = 0;
+        File archiveFile = null;
+        Writer archive = null;
+        try {
+
+            while (true) {
+
+                int numDeleted;
+                try (Handle handle = jdbi.open()) {
+
+                    PushDAO dao = handle.attach(PushDAO.class);
+                    handle.begin();
+                    List<Push> expired = dao.findExpired(cutoff, batchSize);
+                    if (expired.isEmpty()) {
+                        handle.rollback();
+                        break;
+                    }
+
+                    // The batch is written and flushed to the archive before the delete is committed,
+                    // a failure part way through leaves the records in place to be picked up by the next run
+                    if (archiveDir != null) {
+
+                        if (archive == null) {
+                            archiveFile = newArchiveFile(startTime);
+                            archive = openArchive(archiveFile);
+                        }
+
+                        writeArchive(archive, expired);
+                    }
+
+                    List<Integer> ids = new ArrayList<Integer>(expired.size());
+                    expired.forEach(push -> ids.add(push.getId()));
+                    numDeleted = dao.delete(ids);
+                    handle.commit();
+                }
+
+                numArchived += numDeleted;
+                totalArchived.addAndGet(numDeleted);
+                if (numDeleted < batchSize || stopped) {
+                    break;
+                }
+
+                pause();
+            }
+
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+        }
+
+        lastRunMillis = System.currentTimeMillis() - startTime;
+        lastRunArchived = numArchived;
+        lastRunArchiveBytes = (archiveFile != null ? archiveFile.length() : 0);
+        logger.info("Retention job finished, rowsArchived=" + numArchived + ", archiveFile=" + archiveFile
+                + ", archiveBytes=" + lastRunArchiveBytes + ", elapsedMillis=" + lastRunMillis);
+        return (numArchived);
+    }
+
+    /**
+     * Compacts the database with SHUTDOWN COMPACT. This closes the database, so it can only be called once
+     * everything else using the database has been stopped.
+     *
+     * @param jdbi the Jdbi instance for the database to compact
+     * @return the number of bytes the database file shrank by
+     */
+    public static long compact(Jdbi jdbi) {
+
+        long startTime = System.currentTimeMillis();
+        long bytesBefore;
+        String databasePath;
+        Handle handle = jdbi.open();
+        try (Statement statement = handle.getConnection().createStatement()) {
+            bytesBefore = getDatabaseBytes(handle);
+            databasePath = handle.createQuery("SELECT DATABASE_PATH()").mapTo(String.class).findOnly();
+            statement.execute("SHUTDOWN COMPACT");
+        } catch (SQLException sqle) {
+            throw new IllegalStateException("Could not compact the database", sqle);
+        } finally {
+
+            // The shutdown has already closed the connection, closing the handle only returns it to the pool
+            try {
+                handle.close();
+            } catch (RuntimeException ignore) {
+            }
+        }
+
+        long bytesAfter = (databasePath != null ? new File(databasePath + ".mv.db").length() : bytesBefore);
+        long bytesReclaimed = Math.max(0, bytesBefore - bytesAfter);
+        logger.info("Database compacted, bytesBefore=" + bytesBefore + ", bytesAfter=" + bytesAfter
+                + ", bytesReclaimed=" + bytesReclaimed + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+        return (bytesReclaimed);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("retention-job");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("maxAgeDays", maxAgeDays);
+        stats.put("runs", numRuns.get());
+        stats.put("totalRowsArchived", totalArchived.get());
+        stats.put("lastRunStarted", lastRunStarted);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunRowsArchived", lastRunArchived);
+        stats.put("lastRunArchiveBytes", lastRunArchiveBytes);
+        stats.put("databaseBytes", getDatabaseBytes());
+        return (stats);
+    }
+
+    private void pause() {
+
+        if (batchDelayMillis > 0) {
+            try {
+                Thread.sleep(batchDelayMillis);
+            } catch (InterruptedException ie) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long getDatabaseBytes() {
+        return (jdbi.withHandle(RetentionJob::getDatabaseBytes));
+    }
+
+    /**
+     * The size of the database file as reported by H2, the page count times the page size.
+     */
+    private static long getDatabaseBytes(Handle handle) {
+
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+        handle.createQuery("SELECT name, value FROM INFORMATION_SCHEMA.SETTINGS WHERE name IN ('info.PAGE_COUNT', 'info.PAGE_SIZE')")
+                .map((rs, ctx) -> settings.put(rs.getString("name"), rs.getString("value"))).list();
+
+        try {
+            return (Long.parseLong(settings.get("info.PAGE_COUNT")) * Long.parseLong(settings.get("info.PAGE_SIZE")));
+        } catch (NumberFormatException e) {
+            return (0);
+        }
+    }
+
+    private File newArchiveFile(long startTime) throws IOException {
+
+        if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+            throw new IOException("Could not create archive directory: " + archiveDir);
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startTime));
+        return (new File(archiveDir, "push-archive-" + timestamp + ".csv.gz"));
+    }
+
+    private static Writer openArchive(File archiveFile) throws IOException {
+
+        // Sync flush makes each flushed batch readable even if the file is never closed
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(archiveFile), true), StandardCharsets.UTF_8);
+        writer.write(ARCHIVE_HEADER);
+        writer.write('\n');
+        return (writer);
+    }
+
+    private static void writeArchive(Writer writer, List<Push> pushes) throws IOException {
+
+        for (Push push : pushes) {
+            writer.write(Integer.toString(push.getId()));
+            writeField(writer, push.getReceived());
+            writeField(writer, push.getUserId());
+            writeField(writer, push.getBranch());
+            writeField(writer, push.getProjectId());
+            writeField(writer, push.getBefore());
+            writeField(writer, push.getAfter());
+            writeField(writer, push.getMergeRequestId());
+            writeField(writer, push.getMergeStatusDate());
+            writeField(writer, push.getMergeState());
+            writeField(writer, push.getMergeStatus());
+            writeField(writer, push.getMergedById());
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    private static void writeField(Writer writer, Object value) throws IOException {
+
+        writer.write(',');
+        if (value instanceof Date) {
+            writer.write(Long.toString(((Date) value).getTime()));
+        } else if (value instanceof String) {
+            writer.write('"');
+            writer.write(((String) value).replace("\"", "\"\""));
+            writer.write('"');
+        } else if (value != null) {
+            writer.write(value.toString());
+        }
+    }
+
+    /**
+     * Gets the number of milliseconds until the next start of the specified hour.
+     */
+    private static long getMillisUntil(int hour) {
+
+        Calendar now = Calendar.getInstance();
+        Calendar next = (Calendar) now.clone();
+        next.set(Calendar.HOUR_OF_DAY, Math.max(0, Math.min(23, hour)));
+        next.set(Calendar.MINUTE, 0);
+        next.set(Calendar.SECOND, 0);
+        next.set(Calendar.MILLISECOND, 0);
+        if (!next.after(now)) {
+            next.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        return (next.getTimeInMillis() - now.getTimeInMillis());
+    }
+}
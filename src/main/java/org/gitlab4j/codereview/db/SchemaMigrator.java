@@ -0,0 +1,276 @@
+package org.gitlab4j.codereview.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * Brings the database schema up to date by applying, in order, the migrations that have a version
+ * greater than the version recorded in the schema_version table. Each applied migration is recorded
+ * along with its checksum, and the checksums of the applied migrations are verified before anything
+ * is applied so that a database is never migrated by a set of migrations that differs from the one
+ * that created it.
+ */
+public class SchemaMigrator {
+
+    private static Logger logger = LogManager.getLogger();
+
+    // The number of IDs copied per transaction by the table copy migrations
+    private static final int COPY_CHUNK_SIZE = 50000;
+
+    private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+
+        new SqlMigration(1, "Create the push, project_config and mail queue tables",
+            "CREATE TABLE IF NOT EXISTS push (" +
+                "  id INT AUTO_INCREMENT(1, 1) PRIMARY KEY" +
+                ", received TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ", user_id INT NOT NULL" +
+                ", branch VARCHAR(64) NOT NULL" +
+                ", project_id INT NOT NULL" +
+                ", before VARCHAR(64)" + ", after VARCHAR(64)" +
+                ", merge_request_id INT DEFAULT 0" +
+                ", merge_status_date TIMESTAMP" +
+                ", merge_state VARCHAR(32)" +
+                ", merge_status VARCHAR(32)" +
+                ", merged_by_id INT)",
+            "CREATE INDEX IF NOT EXISTS push_index ON push(user_id, project_id, branch, merge_request_id)",
+            "CREATE TABLE IF NOT EXISTS project_config (" +
+                "  id INT AUTO_INCREMENT(1, 1) PRIMARY KEY" +
+                ", created TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ", project_id INT NOT NULL" +
+                ", hook_id int NOT NULL" +
+                ", enabled BOOLEAN DEFAULT TRUE" +
+                ", branch_regex VARCHAR(256)" +
+                ", target_branch_regex VARCHAR(256)" +
+                ", mail_to VARCHAR(16) DEFAULT 'NONE'" +
+                ", additional_mail_to VARCHAR(1024)" +
+                ", exclude_mail_to VARCHAR(1024)" +
+                ", include_default_mail_to BOOLEAN DEFAULT FALSE)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS project_config_index ON project_config(project_id)",
+            "CREATE TABLE IF NOT EXISTS mail_queue (" +
+                "  id INT AUTO_INCREMENT(1, 1) PRIMARY KEY" +
+                ", created TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ", mail_to VARCHAR(4096) NOT NULL" +
+                ", subject VARCHAR(256)" +
+                ", html_body CLOB" +
+                ", attempts INT DEFAULT 0" +
+                ", next_attempt TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ", last_error VARCHAR(1024))",
+            "CREATE INDEX IF NOT EXISTS mail_queue_next_attempt_index ON mail_queue(next_attempt)",
+            "CREATE TABLE IF NOT EXISTS mail_dead_letter (" +
+                "  id INT PRIMARY KEY" +
+                ", created TIMESTAMP" +
+                ", mail_to VARCHAR(4096) NOT NULL" +
+                ", subject VARCHAR(256)" +
+                ", html_body CLOB" +
+                ", attempts INT" +
+                ", next_attempt TIMESTAMP" +
+                ", last_error VARCHAR(1024)" +
+                ", failed TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+
+        // H2 has no partial indexes. findPendingReviews() seeks on (project_id, branch, user_id) with a range on
+        // merge_request_id > 0 in push_user_branch_index, so only the pushes that have a merge request are read
+        new SqlMigration(2, "Add indexes for the push table queries",
+            "DROP INDEX IF EXISTS push_index",
+            "CREATE INDEX IF NOT EXISTS push_user_branch_index ON push(project_id, branch, user_id, merge_request_id, received DESC)",
+            "CREATE INDEX IF NOT EXISTS push_merge_request_index ON push(project_id, merge_request_id, received DESC)"),
+
+        new TableCopyMigration(3, "Widen push.branch to 255 characters", "push", "push_v3",
+            "id, received, user_id, branch, project_id, before, after, merge_request_id, merge_status_date, merge_state, merge_status, merged_by_id",
+            COPY_CHUNK_SIZE,
+            Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS push_v3 (" +
+                    "  id INT AUTO_INCREMENT(1, 1) PRIMARY KEY" +
+                    ", received TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ", user_id INT NOT NULL" +
+                    ", branch VARCHAR(255) NOT NULL" +
+                    ", project_id INT NOT NULL" +
+                    ", before VARCHAR(64)" + ", after VARCHAR(64)" +
+                    ", merge_request_id INT DEFAULT 0" +
+                    ", merge_status_date TIMESTAMP" +
+                    ", merge_state VARCHAR(32)" +
+                    ", merge_status VARCHAR(32)" +
+                    ", merged_by_id INT)",
+                "CREATE INDEX IF NOT EXISTS push_v3_user_branch_index ON push_v3(project_id, branch, user_id, merge_request_id, received DESC)",
+                "CREATE INDEX IF NOT EXISTS push_v3_merge_request_index ON push_v3(project_id, merge_request_id, received DESC)"),
+            Arrays.asList(
+                "ALTER INDEX IF EXISTS push_v3_user_branch_index RENAME TO push_user_branch_index",
+                "ALTER INDEX IF EXISTS push_v3_merge_request_index RENAME TO push_merge_request_index")),
+
+        // Used by the RetentionJob to find the merged and closed pushes that have expired
+        new SqlMigration(4, "Add an index for the push retention query",
+            "CREATE INDEX IF NOT EXISTS push_merge_status_date_index ON push(merge_status_date)"),
+
+        // A user can only have one unsubmitted push per branch. The key is NULL once the push has a merge request,
+        // and NULLs are not compared by a unique index. Duplicates left by concurrent pushes are removed first,
+        // keeping the latest one, which is the one the review form uses.
+        new SqlMigration(5, "Add a unique key for unsubmitted pushes",
+            "DELETE FROM push p WHERE p.merge_request_id = 0 AND EXISTS (SELECT 1 FROM push q" +
+                " WHERE q.merge_request_id = 0 AND q.project_id = p.project_id AND q.user_id = p.user_id" +
+                " AND q.branch = p.branch AND q.id > p.id)",
+            "ALTER TABLE push ADD COLUMN IF NOT EXISTS unsubmitted_key VARCHAR(300) AS" +
+                " (CASE WHEN merge_request_id = 0 THEN CONCAT(project_id, ':', user_id, ':', branch) ELSE NULL END)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS push_unsubmitted_index ON push(unsubmitted_key)"),
+
+        // NULL uses the server wide webhook-coalesce-window
+        new SqlMigration(6, "Add the per project push coalesce window",
+            "ALTER TABLE project_config ADD COLUMN IF NOT EXISTS push_coalesce_window INT"),
+
+        // Where the background jobs have got to, so they can resume after a restart
+        new SqlMigration(7, "Create the job checkpoint table",
+            "CREATE TABLE IF NOT EXISTS job_checkpoint (" +
+                "  name VARCHAR(64) PRIMARY KEY" +
+                ", position BIGINT NOT NULL" +
+                ", updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP)")
+    ));
+
+    private final Jdbi jdbi;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(Jdbi jdbi) {
+        this(jdbi, MIGRATIONS);
+    }
+
+    public SchemaMigrator(Jdbi jdbi, List<Migration> migrations) {
+
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).getVersion() <= migrations.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Migrations must be in ascending version order, version=" + migrations.get(i).getVersion());
+            }
+        }
+
+        this.jdbi = jdbi;
+        this.migrations = migrations;
+    }
+
+    /**
+     * @return the list of migrations known to this version of Simple-CR, in version order
+     */
+    public static List<Migration> getMigrations() {
+        return (MIGRATIONS);
+    }
+
+    /**
+     * @return the latest schema version known to this migrator
+     */
+    public int getLatestVersion() {
+        return (migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion());
+    }
+
+    /**
+     * Applies all the migrations that have not been applied.
+     *
+     * @return the schema version after the migrations have been applied
+     * @throws IllegalStateException if an applied migration does not match its checksum
+     */
+    public int migrate() {
+        return (migrate(getLatestVersion()));
+    }
+
+    /**
+     * Applies the migrations that have not been applied up to and including the target version.
+     *
+     * @param targetVersion the version to migrate to
+     * @return the schema version after the migrations have been applied
+     * @throws IllegalStateException if an applied migration does not match its checksum
+     */
+    public int migrate(int targetVersion) {
+
+        try (Handle handle = jdbi.open()) {
+
+            int currentVersion = getVersion(handle);
+            validate(handle);
+
+            for (Migration migration : migrations) {
+
+                if (migration.getVersion() <= currentVersion || migration.getVersion() > targetVersion) {
+                    continue;
+                }
+
+                logger.info("Applying schema migration, version=" + migration.getVersion() + ", description=" + migration.getDescription());
+                long startTime = System.currentTimeMillis();
+                if (migration.isTransactional()) {
+                    handle.useTransaction(h -> {
+                        migration.apply(h);
+                        record(h, migration, System.currentTimeMillis() - startTime);
+                    });
+                } else {
+                    migration.apply(handle);
+                    record(handle, migration, System.currentTimeMillis() - startTime);
+                }
+
+                currentVersion = migration.getVersion();
+                logger.info("Applied schema migration, version=" + currentVersion + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+            }
+
+            return (currentVersion);
+        }
+    }
+
+    /**
+     * @return the current schema version, 0 if no migrations have been applied
+     */
+    public int getVersion() {
+        try (Handle handle = jdbi.open()) {
+            return (getVersion(handle));
+        }
+    }
+
+    /**
+     * Checks the recorded checksum of each applied migration against the migration. Versions applied before
+     * checksums were recorded have their checksum filled in.
+     */
+    private void validate(Handle handle) {
+
+        Map<Integer, Migration> migrationsByVersion = new HashMap<Integer, Migration>();
+        for (Migration migration : migrations) {
+            migrationsByVersion.put(migration.getVersion(), migration);
+        }
+
+        List<Map<String, Object>> appliedVersions = handle.createQuery("SELECT version, checksum FROM schema_version ORDER BY version").mapToMap().list();
+        for (Map<String, Object> applied : appliedVersions) {
+
+            int version = ((Number) applied.get("version")).intValue();
+            Number checksum = (Number) applied.get("checksum");
+            Migration migration = migrationsByVersion.get(version);
+            if (migration == null) {
+                logger.warn("Database has a schema version unknown to this release, version=" + version);
+            } else if (checksum == null) {
+                handle.createUpdate("UPDATE schema_version SET checksum = :checksum WHERE version = :version")
+                        .bind("checksum", migration.getChecksum()).bind("version", version).execute();
+            } else if (checksum.intValue() != migration.getChecksum()) {
+                throw new IllegalStateException("Schema migration " + version + " has changed since it was applied, expected checksum="
+                        + checksum + ", actual checksum=" + migration.getChecksum());
+            }
+        }
+    }
+
+    private static void record(Handle handle, Migration migration, long executionMillis) {
+
+        handle.createUpdate("INSERT INTO schema_version (version, description, checksum, execution_millis)" +
+                " VALUES (:version, :description, :checksum, :executionMillis)")
+                .bind("version", migration.getVersion())
+                .bind("description", migration.getDescription())
+                .bind("checksum", migration.getChecksum())
+                .bind("executionMillis", executionMillis)
+                .execute();
+    }
+
+    private static int getVersion(Handle handle) {
+
+        handle.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "  version INT PRIMARY KEY" +
+                ", description VARCHAR(256)" +
+                ", applied TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        handle.execute("ALTER TABLE schema_version ADD COLUMN IF NOT EXISTS checksum INT");
+        handle.execute("ALTER TABLE schema_version ADD COLUMN IF NOT EXISTS execution_millis BIGINT");
+        return (handle.createQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version").mapTo(Integer.class).findOnly());
+    }
+}
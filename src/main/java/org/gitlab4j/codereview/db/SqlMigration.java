@@ -0,0 +1,69 @@
+package org.gitlab4j.codereview.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jdbi.v3.core.Handle;
+
+/**
+ * A Migration made up of a list of SQL statements that are executed in order, the checksum is
+ * calculated from the statements.
+ */
+public class SqlMigration implements Migration {
+
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+
+    public SqlMigration(int version, String description, String... statements) {
+        this.version = version;
+        this.description = description;
+        this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+    }
+
+    @Override
+    public int getVersion() {
+        return (version);
+    }
+
+    @Override
+    public String getDescription() {
+        return (description);
+    }
+
+    @Override
+    public int getChecksum() {
+        return (checksum(statements));
+    }
+
+    public List<String> getStatements() {
+        return (statements);
+    }
+
+    @Override
+    public void apply(Handle handle) {
+        for (String statement : statements) {
+            handle.execute(statement);
+        }
+    }
+
+    /**
+     * Calculates a CRC32 checksum over a list of SQL statements.
+     *
+     * @param statements the statements to calculate the checksum for
+     * @return the checksum of the statements
+     */
+    static int checksum(List<String> statements) {
+
+        CRC32 crc = new CRC32();
+        for (String statement : statements) {
+            crc.update(statement.getBytes(StandardCharsets.UTF_8));
+            crc.update(';');
+        }
+
+        return ((int) crc.getValue());
+    }
+}
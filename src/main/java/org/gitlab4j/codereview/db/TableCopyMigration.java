@@ -0,0 +1,181 @@
+package org.gitlab4j.codereview.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jdbi.v3.core.Handle;
+
+/**
+ * A Migration that changes the layout of a large table by copying it into a new table in chunks and
+ * then swapping the new table in place of the old one. This is used for changes such as widening a
+ * column, which H2 would otherwise do by copying the whole table in a single statement while holding
+ * the table lock.
+ *
+ * Each chunk is a range of IDs copied in its own short transaction. The copy resumes from the highest
+ * ID already in the new table, so a backfill that is interrupted by a restart picks up where it left
+ * off. The final swap copies any rows added since the last chunk, renames the old table to table_old,
+ * drops its indexes, renames the new table to table, runs the swap statements (index renames for example)
+ * and drops table_old last.
+ *
+ * H2 commits each DDL statement on its own, so the swap cannot be done in a transaction. Instead every
+ * step of it leaves the rows in either table or table_old, and when table_old exists apply() finishes the
+ * swap from wherever it was interrupted rather than starting the copy again.
+ *
+ * The table must have an integer "id" primary key, the identity is restarted after the highest copied ID.
+ *
+ * This is an offline migration. It runs from SchemaMigrator at startup, before the server accepts requests,
+ * so the server is down for the whole copy; the chunks make a long copy resumable, not online. It relies on
+ * nothing else writing to the table while it runs: the catch-up before the swap only copies rows with IDs
+ * above the last chunk, so a change to a row that was already copied (its merge_status for example) would
+ * be lost, and the swap needs the old table free of other sessions. Running it against a live server would
+ * need those changes captured, with a trigger or a change log, and a lock held across the swap.
+ */
+public class TableCopyMigration implements Migration {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private static final int PROGRESS_LOG_INTERVAL = 10;
+
+    private final int version;
+    private final String description;
+    private final String table;
+    private final String newTable;
+    private final String columns;
+    private final int chunkSize;
+    private final List<String> createStatements;
+    private final List<String> swapStatements;
+
+    /**
+     * Create a TableCopyMigration.
+     *
+     * @param version the schema version
+     * @param description the description of the migration
+     * @param table the table to migrate
+     * @param newTable the name of the table the rows are copied into, it is renamed to table by the swap
+     * @param columns the comma separated list of columns to copy
+     * @param chunkSize the number of IDs copied in each transaction
+     * @param createStatements the statements that create newTable and its indexes, these must be idempotent
+     * @param swapStatements the statements run after newTable has been renamed to table, these must be idempotent
+     */
+    public TableCopyMigration(int version, String description, String table, String newTable, String columns,
+            int chunkSize, List<String> createStatements, List<String> swapStatements) {
+
+        this.version = version;
+        this.description = description;
+        this.table = table;
+        this.newTable = newTable;
+        this.columns = columns;
+        this.chunkSize = chunkSize;
+        this.createStatements = createStatements;
+        this.swapStatements = swapStatements;
+    }
+
+    @Override
+    public int getVersion() {
+        return (version);
+    }
+
+    @Override
+    public String getDescription() {
+        return (description);
+    }
+
+    @Override
+    public int getChecksum() {
+
+        List<String> parts = new ArrayList<String>(Arrays.asList(table, newTable, columns));
+        parts.addAll(createStatements);
+        parts.addAll(swapStatements);
+        return (SqlMigration.checksum(parts));
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return (false);
+    }
+
+    @Override
+    public void apply(Handle handle) {
+
+        String oldTable = table + "_old";
+        long startTime = System.currentTimeMillis();
+        if (tableExists(handle, oldTable)) {
+            logger.warn("Finishing the interrupted swap of " + newTable + " for " + table);
+        } else {
+            copy(handle, startTime);
+            handle.execute("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        }
+
+        // The indexes of the old table are dropped so that the swap statements can give their names to the new ones
+        List<String> oldIndexes = handle.createQuery("SELECT DISTINCT index_name FROM information_schema.indexes" +
+                " WHERE table_schema = SCHEMA() AND table_name = UPPER(:table) AND primary_key = FALSE")
+                .bind("table", oldTable).mapTo(String.class).list();
+        for (String index : oldIndexes) {
+            handle.execute("DROP INDEX IF EXISTS \"" + index + "\"");
+        }
+
+        if (!tableExists(handle, table)) {
+            handle.execute("ALTER TABLE " + newTable + " RENAME TO " + table);
+        }
+
+        for (String statement : swapStatements) {
+            handle.execute(statement);
+        }
+
+        handle.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + (getMaxId(handle, table) + 1));
+        handle.execute("DROP TABLE " + oldTable);
+
+        logger.info("Swapped " + newTable + " for " + table + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Copies the rows of table into newTable, in chunks up to the highest ID at the start and then any rows
+     * added since in a final transaction.
+     */
+    private void copy(Handle handle, long startTime) {
+
+        for (String statement : createStatements) {
+            handle.execute(statement);
+        }
+
+        long lastId = getMaxId(handle, newTable);
+        long maxId = getMaxId(handle, table);
+        if (lastId > 0) {
+            logger.info("Resuming copy of " + table + " to " + newTable + ", lastId=" + lastId + ", maxId=" + maxId);
+        }
+
+        String copySql = "INSERT INTO " + newTable + " (" + columns + ") SELECT " + columns +
+                " FROM " + table + " WHERE id > :fromId AND id <= :toId";
+        int numChunks = 0;
+        while (lastId < maxId) {
+
+            long fromId = lastId;
+            long toId = Math.min(lastId + chunkSize, maxId);
+            handle.useTransaction(h -> h.createUpdate(copySql).bind("fromId", fromId).bind("toId", toId).execute());
+            lastId = toId;
+
+            if (++numChunks % PROGRESS_LOG_INTERVAL == 0) {
+                logger.info("Copying " + table + " to " + newTable + ", lastId=" + lastId + ", maxId=" + maxId
+                        + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+            }
+        }
+
+        long copiedId = lastId;
+        handle.useTransaction(h -> h.createUpdate("INSERT INTO " + newTable + " (" + columns + ") SELECT " + columns +
+                " FROM " + table + " WHERE id > :fromId").bind("fromId", copiedId).execute());
+        logger.info("Copied " + table + " to " + newTable + ", numChunks=" + numChunks
+                + ", elapsedMillis=" + (System.currentTimeMillis() - startTime));
+    }
+
+    private static long getMaxId(Handle handle, String table) {
+        return (handle.createQuery("SELECT COALESCE(MAX(id), 0) FROM " + table).mapTo(Long.class).findOnly());
+    }
+
+    private static boolean tableExists(Handle handle, String table) {
+        return (handle.createQuery("SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = SCHEMA() AND table_name = UPPER(:table)")
+                .bind("table", table).mapTo(Integer.class).findOnly() > 0);
+    }
+}
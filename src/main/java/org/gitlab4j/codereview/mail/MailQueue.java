@@ -0,0 +1,486 @@
+package org.gitlab4j.codereview.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.HtmlEmail;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.codereview.dao.MailQueueDAO;
+import org.gitlab4j.codereview.dao.QueuedMail;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.gitlab4j.codereview.utils.StatsProvider;
+import org.jdbi.v3.core.Jdbi;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * A persistent outbound mail queue. Messages are written to the mail_queue table and the caller returns
+ * immediately, a poller thread picks up the messages that are due and hands them in batches to a pool
+ * of sender threads. Each batch is sent over a single SMTP connection borrowed from an SmtpConnectionPool,
+ * so the connection setup is shared by all the messages in the batch and by the batches that follow.
+ *
+ * A message that fails with a transient error is retried with exponential backoff. Messages that fail
+ * with a permanent (5xx) error, or that have used up their attempts, are moved to the mail_dead_letter
+ * table. Because the queue lives in the database, messages that have not been sent survive a restart.
+ */
+public class MailQueue implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final MailQueueDAO dao;
+    private final SmtpConnectionPool connectionPool;
+    private final String fromEmail;
+    private final String fromName;
+    private final int numSenders;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final long maxRetryDelayMillis;
+    private final long pollIntervalMillis;
+
+    private final ThreadPoolExecutor senders;
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    private final Object signal = new Object();
+    private boolean signaled;
+    private volatile boolean running;
+    private Thread poller;
+
+    private final AtomicLong numEnqueued = new AtomicLong();
+    private final AtomicLong numSent = new AtomicLong();
+    private final AtomicLong numFailedAttempts = new AtomicLong();
+    private final AtomicLong numRetries = new AtomicLong();
+    private final AtomicLong numDeadLettered = new AtomicLong();
+    private final AtomicLong numBatches = new AtomicLong();
+    private final AtomicLong totalSendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final AtomicLong totalDeliveryMillis = new AtomicLong();
+
+    /**
+     * Create a MailQueue, {@link #start()} must be called before any messages are sent.
+     *
+     * @param jdbi the Jdbi instance for the database holding the queue
+     * @param connectionPool the pool of SMTP connections to send with
+     * @param fromEmail the from email address
+     * @param fromName the from name
+     * @param numSenders the number of sender threads
+     * @param batchSize the maximum number of messages sent over a connection per batch
+     * @param maxAttempts the number of attempts before a message is moved to the dead letter table
+     * @param retryDelayMillis the delay before the first retry, doubled for each retry after that
+     * @param maxRetryDelayMillis the maximum delay between retries
+     * @param pollIntervalMillis the maximum time between checks for messages that are due
+     */
+    public MailQueue(Jdbi jdbi, SmtpConnectionPool connectionPool, String fromEmail, String fromName, int numSenders,
+            int batchSize, int maxAttempts, long retryDelayMillis, long maxRetryDelayMillis, long pollIntervalMillis) {
+
+        if (numSenders < 1) {
+            throw new IllegalArgumentException("numSenders must be greater than 0");
+        }
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        this.dao = jdbi.onDemand(MailQueueDAO.class);
+        this.connectionPool = connectionPool;
+        this.fromEmail = fromEmail;
+        this.fromName = fromName;
+        this.numSenders = numSenders;
+        this.batchSize = batchSize;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = retryDelayMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.senders = new ThreadPoolExecutor(numSenders, numSenders, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new SenderThreadFactory());
+    }
+
+    /**
+     * Starts the poller thread, any messages left in the queue from a previous run are sent.
+     */
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+
+        running = true;
+        poller = new Thread(this::poll, "mail-queue-poller");
+        poller.setDaemon(true);
+        poller.start();
+        logger.info("Mail queue started, senders=" + numSenders + ", batchSize=" + batchSize + ", queueDepth=" + getQueueDepth());
+    }
+
+    /**
+     * Stops polling for messages and waits for the batches being sent to finish. Messages that have
+     * not been sent stay in the queue and are sent on the next start.
+     *
+     * @param timeoutMillis the maximum amount of time to wait for the batches being sent
+     */
+    public void shutdown(long timeoutMillis) {
+
+        synchronized (this) {
+            running = false;
+        }
+
+        signal();
+        senders.shutdown();
+        try {
+            if (poller != null) {
+                poller.join(timeoutMillis);
+            }
+
+            if (!senders.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out waiting for mail senders to finish, inFlight=" + inFlight.size());
+                senders.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        connectionPool.close();
+    }
+
+    /**
+     * Add a message to the queue.
+     *
+     * @param toList the recipients of the message
+     * @param subject the subject of the message
+     * @param htmlBody the HTML content of the message
+     * @return the ID of the queued message
+     * @throws EmailException if the recipient list is empty
+     */
+    public int enqueue(Collection<InternetAddress> toList, String subject, String htmlBody) throws EmailException {
+
+        if (toList == null || toList.isEmpty()) {
+            throw new EmailException("No recipients were provided");
+        }
+
+        String mailTo = InternetAddress.toString(toList.toArray(new InternetAddress[toList.size()]));
+        int id = dao.insert(new QueuedMail(mailTo, subject, htmlBody));
+        numEnqueued.incrementAndGet();
+        logger.debug("Queued email, id=" + id + ", numRecipients=" + toList.size());
+        signal();
+        return (id);
+    }
+
+    /**
+     * @return the number of messages in the queue, including the ones being sent
+     */
+    public int getQueueDepth() {
+        return (dao.count());
+    }
+
+    /**
+     * @return the number of messages in the dead letter table
+     */
+    public int getNumDeadLetters() {
+        return (dao.countDeadLetters());
+    }
+
+    /**
+     * Registers the mail queue counters, the queue depth and the send latency.
+     *
+     * @param registry the MetricsRegistry to register with
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.counter("simplecr_mail_enqueued_total", "Emails added to the mail queue", numEnqueued::get);
+        registry.counter("simplecr_mail_sent_total", "Emails sent", numSent::get);
+        registry.counter("simplecr_mail_failed_attempts_total", "Failed email send attempts", numFailedAttempts::get);
+        registry.counter("simplecr_mail_dead_lettered_total", "Emails moved to the dead letter table", numDeadLettered::get);
+        registry.gauge("simplecr_mail_queue_depth", "Emails waiting in the mail queue", this::getQueueDepth);
+        registry.histogram("simplecr_mail_send_seconds", "Time taken to send an email to the SMTP server", sendLatency);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("mail-queue");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        long sent = numSent.get();
+        long attempts = sent + numFailedAttempts.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("senders", numSenders);
+        stats.put("batchSize", batchSize);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("inFlight", inFlight.size());
+        stats.put("deadLetters", getNumDeadLetters());
+        stats.put("enqueued", numEnqueued.get());
+        stats.put("sent", sent);
+        stats.put("batches", numBatches.get());
+        stats.put("failedAttempts", numFailedAttempts.get());
+        stats.put("retries", numRetries.get());
+        stats.put("deadLettered", numDeadLettered.get());
+        stats.put("failureRate", attempts > 0 ? (double) numFailedAttempts.get() / attempts : 0.0);
+        stats.put("avgSendMillis", sent > 0 ? totalSendNanos.get() / sent / 1000000.0 : 0.0);
+        stats.put("maxSendMillis", maxSendNanos.get() / 1000000.0);
+        stats.put("avgDeliveryMillis", sent > 0 ? totalDeliveryMillis.get() / sent : 0);
+        stats.put("connections", connectionPool.getStats());
+        return (stats);
+    }
+
+    private void signal() {
+        synchronized (signal) {
+            signaled = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void poll() {
+
+        while (running) {
+
+            try {
+                dispatchDueMessages();
+            } catch (Exception e) {
+                logger.error("Problem polling the mail queue, error=" + e.getMessage(), e);
+            }
+
+            synchronized (signal) {
+                try {
+                    if (!signaled && running) {
+                        signal.wait(pollIntervalMillis);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                signaled = false;
+            }
+        }
+    }
+
+    /**
+     * Reads the messages that are due and are not already being sent and hands them to the senders in
+     * batches. No more than numSenders * batchSize messages are in flight at any time.
+     */
+    private void dispatchDueMessages() {
+
+        int capacity = numSenders * batchSize - inFlight.size();
+        if (capacity <= 0) {
+            return;
+        }
+
+        // Messages already in flight may still be in the table, read enough rows to skip past them
+        List<QueuedMail> dueMessages = dao.findDue(new Date(), capacity + inFlight.size());
+        List<QueuedMail> batch = new ArrayList<QueuedMail>(batchSize);
+        for (QueuedMail mail : dueMessages) {
+
+            if (capacity <= 0) {
+                break;
+            }
+
+            if (!inFlight.add(mail.getId())) {
+                continue;
+            }
+
+            capacity--;
+            batch.add(mail);
+            if (batch.size() == batchSize) {
+                submit(batch);
+                batch = new ArrayList<QueuedMail>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+    }
+
+    private void submit(List<QueuedMail> batch) {
+        numBatches.incrementAndGet();
+        senders.execute(() -> sendBatch(batch));
+    }
+
+    /**
+     * Sends a batch of messages over a single connection. If a connection cannot be opened all the
+     * remaining messages in the batch are failed with that error, if a connection is lost part way
+     * through a new one is borrowed for the next message.
+     */
+    private void sendBatch(List<QueuedMail> batch) {
+
+        Transport transport = null;
+        try {
+
+            for (int i = 0; i < batch.size(); i++) {
+
+                QueuedMail mail = batch.get(i);
+                long startNanos = System.nanoTime();
+                try {
+
+                    MimeMessage message = buildMessage(mail);
+                    if (transport == null) {
+                        try {
+                            transport = connectionPool.borrow();
+                        } catch (MessagingException me) {
+                            logger.warn("Could not connect to SMTP server, error=" + me.getMessage());
+                            for (int j = i; j < batch.size(); j++) {
+                                onFailure(batch.get(j), me, false);
+                            }
+
+                            return;
+                        }
+                    }
+
+                    transport.sendMessage(message, message.getAllRecipients());
+                    onSent(mail, startNanos);
+
+                } catch (MessagingException | EmailException e) {
+
+                    onFailure(mail, e, isPermanentFailure(e));
+                    if (transport != null && !transport.isConnected()) {
+                        connectionPool.discard(transport);
+                        transport = null;
+                    }
+                }
+            }
+
+        } catch (RuntimeException re) {
+            logger.error("Problem sending mail batch, error=" + re.getMessage(), re);
+        } finally {
+            connectionPool.release(transport);
+            for (QueuedMail mail : batch) {
+                inFlight.remove(mail.getId());
+            }
+
+            signal();
+        }
+    }
+
+    private MimeMessage buildMessage(QueuedMail mail) throws EmailException, AddressException {
+
+        HtmlEmail email = new HtmlEmail();
+        email.setMailSession(connectionPool.getSession());
+        email.setFrom(fromEmail, fromName);
+        email.setTo(Arrays.asList(InternetAddress.parse(mail.getMailTo())));
+        email.setSubject(mail.getSubject());
+        email.setHtmlMsg(mail.getHtmlBody());
+        email.buildMimeMessage();
+        return (email.getMimeMessage());
+    }
+
+    private void onSent(QueuedMail mail, long startNanos) {
+
+        long sendNanos = System.nanoTime() - startNanos;
+        dao.delete(mail.getId());
+        numSent.incrementAndGet();
+        totalSendNanos.addAndGet(sendNanos);
+        sendLatency.record(sendNanos);
+        updateMax(maxSendNanos, sendNanos);
+        if (mail.getCreated() != null) {
+            totalDeliveryMillis.addAndGet(System.currentTimeMillis() - mail.getCreated().getTime());
+        }
+    }
+
+    private void onFailure(QueuedMail mail, Exception e, boolean isPermanent) {
+
+        numFailedAttempts.incrementAndGet();
+        int attempts = mail.getAttempts() + 1;
+        String error = getErrorMessage(e);
+        if (isPermanent || attempts >= maxAttempts) {
+            dao.moveToDeadLetter(mail.getId(), attempts, error);
+            numDeadLettered.incrementAndGet();
+            logger.error("Giving up on email, id=" + mail.getId() + ", attempts=" + attempts + ", error=" + error);
+        } else {
+            long delay = getRetryDelay(attempts);
+            dao.updateRetry(mail.getId(), attempts, new Date(System.currentTimeMillis() + delay), error);
+            numRetries.incrementAndGet();
+            logger.warn("Email send failed, will retry, id=" + mail.getId() + ", attempts=" + attempts
+                    + ", retryDelayMillis=" + delay + ", error=" + error);
+        }
+    }
+
+    /**
+     * @param attempts the number of failed attempts so far
+     * @return the delay before the next attempt, retryDelayMillis doubled for each failed attempt after the first
+     */
+    long getRetryDelay(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        return (Math.min(maxRetryDelayMillis, retryDelayMillis << shift));
+    }
+
+    /**
+     * A message is not retried if it cannot be built or if the SMTP server rejected it with a 5xx reply.
+     */
+    private static boolean isPermanentFailure(Exception e) {
+
+        if (e instanceof EmailException || e instanceof AddressException) {
+            return (true);
+        }
+
+        Exception next = e;
+        while (next != null) {
+
+            if (next instanceof SMTPSendFailedException) {
+                return (((SMTPSendFailedException) next).getReturnCode() >= 500);
+            } else if (next instanceof SMTPAddressFailedException) {
+                return (((SMTPAddressFailedException) next).getReturnCode() >= 500);
+            }
+
+            next = (next instanceof MessagingException ? ((MessagingException) next).getNextException() : null);
+        }
+
+        return (false);
+    }
+
+    private static String getErrorMessage(Exception e) {
+
+        String message = e.getMessage();
+        if (message == null) {
+            message = e.getClass().getSimpleName();
+        }
+
+        return (message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    private static class SenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mail-sender-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return (thread);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.gitlab4j.codereview.mail;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds connected SMTP Transport instances so that the connection setup (TCP connect, EHLO, STARTTLS
+ * and AUTH) is paid once and shared by many messages. A borrowed Transport is returned with
+ * {@link #release(Transport)}, idle connections are reused in LIFO order and closed once they have
+ * been idle longer than the configured time, since most SMTP servers drop idle clients.
+ */
+public class SmtpConnectionPool {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 60000;
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int maxIdle;
+    private final long maxIdleMillis;
+
+    private final Deque<IdleTransport> idleTransports = new ArrayDeque<IdleTransport>();
+    private boolean closed;
+
+    private final AtomicLong numOpened = new AtomicLong();
+    private final AtomicLong numReused = new AtomicLong();
+    private final AtomicLong numClosed = new AtomicLong();
+    private final AtomicLong numConnectFailures = new AtomicLong();
+
+    /**
+     * Create an SmtpConnectionPool.
+     *
+     * @param host the SMTP server host
+     * @param port the SMTP server port
+     * @param enableStartTls if true STARTTLS is required
+     * @param username the SMTP username, may be null
+     * @param password the SMTP password, may be null
+     * @param maxIdle the maximum number of idle connections to hold on to
+     * @param maxIdleMillis the time in milliseconds an idle connection is kept before it is closed
+     */
+    public SmtpConnectionPool(String host, int port, boolean enableStartTls, String username, String password, int maxIdle, long maxIdleMillis) {
+
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxIdle = maxIdle;
+        this.maxIdleMillis = maxIdleMillis;
+
+        Properties props = new Properties();
+        props.setProperty("mail.smtp.host", host);
+        props.setProperty("mail.smtp.port", Integer.toString(port));
+        props.setProperty("mail.smtp.connectiontimeout", Integer.toString(CONNECT_TIMEOUT));
+        props.setProperty("mail.smtp.timeout", Integer.toString(READ_TIMEOUT));
+        props.setProperty("mail.smtp.writetimeout", Integer.toString(READ_TIMEOUT));
+        if (enableStartTls) {
+            props.setProperty("mail.smtp.starttls.enable", "true");
+            props.setProperty("mail.smtp.starttls.required", "true");
+        }
+
+        if (username != null && password != null) {
+            props.setProperty("mail.smtp.auth", "true");
+        }
+
+        session = Session.getInstance(props);
+    }
+
+    /**
+     * @return the javax.mail Session the pooled connections are created from
+     */
+    public Session getSession() {
+        return (session);
+    }
+
+    /**
+     * Get a connected Transport, reusing an idle connection if one is available.
+     *
+     * @return a connected Transport
+     * @throws MessagingException if a new connection could not be opened
+     */
+    public Transport borrow() throws MessagingException {
+
+        long now = System.currentTimeMillis();
+        while (true) {
+
+            IdleTransport idle;
+            synchronized (idleTransports) {
+                if (closed) {
+                    throw new MessagingException("SMTP connection pool is closed");
+                }
+
+                idle = idleTransports.pollFirst();
+            }
+
+            if (idle == null) {
+                break;
+            }
+
+            if (now - idle.releasedAt < maxIdleMillis && idle.transport.isConnected()) {
+                numReused.incrementAndGet();
+                return (idle.transport);
+            }
+
+            close(idle.transport);
+        }
+
+        Transport transport = session.getTransport("smtp");
+        try {
+            transport.connect(host, port, username, password);
+        } catch (MessagingException me) {
+            numConnectFailures.incrementAndGet();
+            throw me;
+        }
+
+        numOpened.incrementAndGet();
+        logger.debug("Opened SMTP connection, host=" + host + ", port=" + port);
+        return (transport);
+    }
+
+    /**
+     * Return a borrowed Transport to the pool. Transports that are no longer connected, or that are not
+     * needed because the pool already holds the maximum number of idle connections, are closed.
+     *
+     * @param transport the Transport to return
+     */
+    public void release(Transport transport) {
+
+        if (transport == null) {
+            return;
+        }
+
+        if (transport.isConnected()) {
+            synchronized (idleTransports) {
+                if (!closed && idleTransports.size() < maxIdle) {
+                    idleTransports.offerFirst(new IdleTransport(transport));
+                    return;
+                }
+            }
+        }
+
+        close(transport);
+    }
+
+    /**
+     * Closes a borrowed Transport that failed, rather than returning it to the pool.
+     *
+     * @param transport the Transport to discard
+     */
+    public void discard(Transport transport) {
+        if (transport != null) {
+            close(transport);
+        }
+    }
+
+    /**
+     * Closes all the idle connections, the pool cannot be used after it is closed.
+     */
+    public void close() {
+
+        synchronized (idleTransports) {
+            closed = true;
+            for (IdleTransport idle : idleTransports) {
+                close(idle.transport);
+            }
+
+            idleTransports.clear();
+        }
+    }
+
+    public int getNumIdle() {
+        synchronized (idleTransports) {
+            return (idleTransports.size());
+        }
+    }
+
+    public long getNumOpened() {
+        return (numOpened.get());
+    }
+
+    public long getNumReused() {
+        return (numReused.get());
+    }
+
+    /**
+     * @return a snapshot of the connection pool stats as name/value pairs
+     */
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("idle", getNumIdle());
+        stats.put("maxIdle", maxIdle);
+        stats.put("opened", numOpened.get());
+        stats.put("reused", numReused.get());
+        stats.put("closed", numClosed.get());
+        stats.put("connectFailures", numConnectFailures.get());
+        return (stats);
+    }
+
+    private void close(Transport transport) {
+
+        numClosed.incrementAndGet();
+        try {
+            transport.close();
+        } catch (MessagingException me) {
+            logger.debug("Problem closing SMTP connection, error=" + me.getMessage());
+        }
+    }
+
+    private static class IdleTransport {
+
+        private final Transport transport;
+        private final long releasedAt;
+
+        IdleTransport(Transport transport) {
+            this.transport = transport;
+            this.releasedAt = System.currentTimeMillis();
+        }
+    }
+}
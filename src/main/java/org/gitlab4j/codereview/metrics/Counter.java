@@ -0,0 +1,27 @@
+package org.gitlab4j.codereview.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count. Counters are created up front by the MetricsRegistry and held by the
+ * code that updates them, incrementing one does not allocate and does not contend with other threads.
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return (count.sum());
+    }
+}
@@ -0,0 +1,26 @@
+package org.gitlab4j.codereview.metrics;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Registers the metrics of the Jetty request thread pool.
+ */
+public class JettyMetrics {
+
+    private JettyMetrics() {
+    }
+
+    public static void register(MetricsRegistry registry, ThreadPool threadPool) {
+
+        registry.gauge("jetty_threads", "Threads in the Jetty pool", threadPool::getThreads);
+        registry.gauge("jetty_threads_idle", "Idle threads in the Jetty pool", threadPool::getIdleThreads);
+        registry.gauge("jetty_threads_low", "1 if the Jetty pool is low on threads", () -> (threadPool.isLowOnThreads() ? 1 : 0));
+        if (threadPool instanceof QueuedThreadPool) {
+            QueuedThreadPool queuedThreadPool = (QueuedThreadPool) threadPool;
+            registry.gauge("jetty_threads_busy", "Busy threads in the Jetty pool", queuedThreadPool::getBusyThreads);
+            registry.gauge("jetty_threads_max", "Max threads in the Jetty pool", queuedThreadPool::getMaxThreads);
+            registry.gauge("jetty_queue_size", "Jobs waiting for a Jetty thread", queuedThreadPool::getQueueSize);
+        }
+    }
+}
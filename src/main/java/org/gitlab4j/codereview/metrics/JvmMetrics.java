@@ -0,0 +1,48 @@
+package org.gitlab4j.codereview.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Registers the JVM memory, thread, garbage collection and process metrics. All of them are read from the
+ * platform MXBeans when the metrics are scraped.
+ */
+public class JvmMetrics {
+
+    private JvmMetrics() {
+    }
+
+    public static void register(MetricsRegistry registry) {
+
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        registry.gauge("jvm_memory_bytes_used", "Used JVM memory in bytes", () -> memoryBean.getHeapMemoryUsage().getUsed(), "area", "heap");
+        registry.gauge("jvm_memory_bytes_used", "Used JVM memory in bytes", () -> memoryBean.getNonHeapMemoryUsage().getUsed(), "area", "nonheap");
+        registry.gauge("jvm_memory_bytes_max", "Max JVM memory in bytes", () -> memoryBean.getHeapMemoryUsage().getMax(), "area", "heap");
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        registry.gauge("jvm_threads_current", "Current JVM thread count", threadBean::getThreadCount);
+        registry.gauge("jvm_threads_daemon", "Daemon JVM thread count", threadBean::getDaemonThreadCount);
+        registry.gauge("jvm_threads_peak", "Peak JVM thread count", threadBean::getPeakThreadCount);
+
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            registry.counter("jvm_gc_collections_total", "Garbage collections by collector", gcBean::getCollectionCount, "gc", gcBean.getName());
+            registry.counter("jvm_gc_collection_seconds_total", "Time spent in garbage collection by collector",
+                    () -> gcBean.getCollectionTime() / 1000.0, "gc", gcBean.getName());
+        }
+
+        RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
+        registry.gauge("process_start_time_seconds", "Start time of the process since the epoch in seconds", () -> runtimeBean.getStartTime() / 1000.0);
+        registry.gauge("process_uptime_seconds", "Uptime of the process in seconds", () -> runtimeBean.getUptime() / 1000.0);
+
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        registry.gauge("process_available_processors", "Processors available to the JVM", osBean::getAvailableProcessors);
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean sunOsBean = (com.sun.management.OperatingSystemMXBean) osBean;
+            registry.counter("process_cpu_seconds_total", "CPU time used by the process in seconds", () -> sunOsBean.getProcessCpuTime() / 1e9);
+        }
+    }
+}
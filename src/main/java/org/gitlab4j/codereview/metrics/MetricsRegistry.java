@@ -0,0 +1,274 @@
+package org.gitlab4j.codereview.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * Holds the counters, gauges and latency histograms that are exposed in the Prometheus text format by the
+ * /admin/metrics endpoint.
+ *
+ * Metrics are registered when the components that own them are created, registering returns the Counter or
+ * LatencyHistogram to update so the hot path never looks anything up. Gauges, and counters that are already
+ * kept by a component, are registered as functions that are only called when the metrics are scraped.
+ */
+public class MetricsRegistry {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String HISTOGRAM = "histogram";
+
+    private final Map<String, Family> families = new LinkedHashMap<String, Family>();
+
+    /**
+     * Register a Counter.
+     *
+     * @param name the metric name, should end with "_total"
+     * @param help the help text for the metric
+     * @param labels the label names and values, in pairs
+     * @return the Counter to increment, if the counter is already registered the existing Counter is returned
+     */
+    public synchronized Counter counter(String name, String help, String... labels) {
+
+        Family family = getFamily(name, help, COUNTER);
+        String formattedLabels = formatLabels(labels);
+        for (Series series : family.series) {
+            if (series.labels.equals(formattedLabels) && series.counter != null) {
+                return (series.counter);
+            }
+        }
+
+        Counter counter = new Counter();
+        family.series.add(new Series(formattedLabels, counter, null, null));
+        return (counter);
+    }
+
+    /**
+     * Register a counter whose value is kept elsewhere, the value is read when the metrics are scraped.
+     *
+     * @param name the metric name, should end with "_total"
+     * @param help the help text for the metric
+     * @param value supplies the current count
+     * @param labels the label names and values, in pairs
+     */
+    public synchronized void counter(String name, String help, DoubleSupplier value, String... labels) {
+        getFamily(name, help, COUNTER).series.add(new Series(formatLabels(labels), null, value, null));
+    }
+
+    /**
+     * Register a gauge, the value is read when the metrics are scraped.
+     *
+     * @param name the metric name
+     * @param help the help text for the metric
+     * @param value supplies the current value
+     * @param labels the label names and values, in pairs
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        getFamily(name, help, GAUGE).series.add(new Series(formatLabels(labels), null, value, null));
+    }
+
+    /**
+     * Create and register a LatencyHistogram with the default bucket boundaries.
+     *
+     * @param name the metric name, should end with "_seconds"
+     * @param help the help text for the metric
+     * @param labels the label names and values, in pairs
+     * @return the LatencyHistogram to record to
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram(name, help, histogram, labels);
+        return (histogram);
+    }
+
+    /**
+     * Register a LatencyHistogram that is owned by a component.
+     *
+     * @param name the metric name, should end with "_seconds"
+     * @param help the help text for the metric
+     * @param histogram the histogram to expose
+     * @param labels the label names and values, in pairs
+     */
+    public synchronized void histogram(String name, String help, LatencyHistogram histogram, String... labels) {
+        getFamily(name, help, HISTOGRAM).series.add(new Series(formatLabels(labels), null, null, histogram));
+    }
+
+    /**
+     * Writes all the registered metrics in the Prometheus text exposition format.
+     *
+     * @param writer the Writer to write to
+     * @throws IOException if any error occurs writing the metrics
+     */
+    public void write(Writer writer) throws IOException {
+
+        List<Family> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Family>(families.values());
+        }
+
+        for (Family family : snapshot) {
+
+            writer.write("# HELP " + family.name + " " + escapeHelp(family.help) + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type + "\n");
+            for (Series series : family.series) {
+                if (series.histogram != null) {
+                    writeHistogram(writer, family.name, series);
+                } else {
+                    double value = (series.counter != null ? series.counter.get() : series.value.getAsDouble());
+                    writer.write(family.name + series.labels + " " + formatValue(value) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the numeric values reported by the StatsProvider instances as a single untyped metric, labelled
+     * with the provider and the path of the value in its stats. Histogram buckets are skipped, the histograms
+     * that matter are registered as real histograms.
+     *
+     * @param writer the Writer to write to
+     * @param name the metric name
+     * @param statsProviders the StatsProvider instances to write the stats of
+     * @throws IOException if any error occurs writing the metrics
+     */
+    public static void writeStats(Writer writer, String name, Collection<StatsProvider> statsProviders) throws IOException {
+
+        writer.write("# HELP " + name + " The values reported by /admin/stats, by provider and stat\n");
+        writer.write("# TYPE " + name + " untyped\n");
+        for (StatsProvider statsProvider : statsProviders) {
+            writeStats(writer, name, statsProvider.getStatsName(), "", statsProvider.getStats());
+        }
+    }
+
+    private static void writeStats(Writer writer, String name, String provider, String path, Map<?, ?> stats) throws IOException {
+
+        for (Map.Entry<?, ?> entry : stats.entrySet()) {
+
+            String key = String.valueOf(entry.getKey());
+            if ("buckets".equals(key)) {
+                continue;
+            }
+
+            String statPath = (path.isEmpty() ? key : path + "." + key);
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                writeStats(writer, name, provider, statPath, (Map<?, ?>) value);
+            } else if (value instanceof Number || value instanceof Boolean) {
+                double number = (value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : ((Number) value).doubleValue());
+                writer.write(name + formatLabels(new String[] { "provider", provider, "stat", statPath }) + " " + formatValue(number) + "\n");
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, Series series) throws IOException {
+
+        LatencyHistogram histogram = series.histogram;
+        long[] bounds = histogram.getBoundsNanos();
+        long[] counts = histogram.getBucketCounts();
+        String labelPrefix = (series.labels.isEmpty() ? "{" : series.labels.substring(0, series.labels.length() - 1) + ",");
+
+        // Prometheus buckets are cumulative, the count is taken from the buckets so the two always agree
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            writer.write(name + "_bucket" + labelPrefix + "le=\"" + formatValue(bounds[i] / 1e9) + "\"} " + cumulative + "\n");
+        }
+
+        cumulative += counts[bounds.length];
+        writer.write(name + "_bucket" + labelPrefix + "le=\"+Inf\"} " + cumulative + "\n");
+        writer.write(name + "_sum" + series.labels + " " + formatValue(histogram.getTotalNanos() / 1e9) + "\n");
+        writer.write(name + "_count" + series.labels + " " + cumulative + "\n");
+    }
+
+    private Family getFamily(String name, String help, String type) {
+
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+
+        return (family);
+    }
+
+    private static String formatLabels(String[] labels) {
+
+        if (labels == null || labels.length == 0) {
+            return ("");
+        }
+
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be provided as name/value pairs");
+        }
+
+        StringBuilder formatted = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            formatted.append(i > 0 ? "," : "").append(labels[i]).append("=\"").append(escapeLabelValue(labels[i + 1])).append("\"");
+        }
+
+        return (formatted.append("}").toString());
+    }
+
+    private static String escapeLabelValue(String value) {
+        return (value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+    }
+
+    private static String escapeHelp(String help) {
+        return (help.replace("\\", "\\\\").replace("\n", "\\n"));
+    }
+
+    private static String formatValue(double value) {
+
+        if (Double.isNaN(value)) {
+            return ("NaN");
+        } else if (Double.isInfinite(value)) {
+            return (value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return (Long.toString((long) value));
+        }
+
+        return (Double.toString(value));
+    }
+
+    private static class Family {
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<Series> series = new CopyOnWriteArrayList<Series>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static class Series {
+
+        private final String labels;
+        private final Counter counter;
+        private final DoubleSupplier value;
+        private final LatencyHistogram histogram;
+
+        private Series(String labels, Counter counter, DoubleSupplier value, LatencyHistogram histogram) {
+            this.labels = labels;
+            this.counter = counter;
+            this.value = value;
+            this.histogram = histogram;
+        }
+    }
+}
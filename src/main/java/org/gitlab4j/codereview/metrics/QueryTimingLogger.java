@@ -0,0 +1,72 @@
+package org.gitlab4j.codereview.metrics;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.jdbi.v3.core.extension.ExtensionMethod;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+
+/**
+ * A Jdbi SqlLogger that records the time taken by each SQL Object method, for example PushDAO.find,
+ * in its own histogram. Statements that are not run through a SQL Object are recorded as dao="none".
+ * Statements that fail are recorded too, with the time up to the failure.
+ *
+ * The time is taken from the execution and completion moments that Jdbi sets on the StatementContext, these
+ * come from Instant.now() so they have millisecond resolution on Java 8 and microsecond resolution on later JVMs.
+ *
+ * The histogram for a method is registered the first time the method runs, after that the lookup is keyed by
+ * the Method instance.
+ */
+public class QueryTimingLogger implements SqlLogger {
+
+    private static final String METRIC_NAME = "simplecr_db_query_seconds";
+    private static final String METRIC_HELP = "Database query latency by DAO method";
+
+    private final MetricsRegistry registry;
+    private final ConcurrentHashMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<Method, LatencyHistogram>();
+    private final LatencyHistogram otherQueries;
+
+    public QueryTimingLogger(MetricsRegistry registry) {
+        this.registry = registry;
+        this.otherQueries = registry.histogram(METRIC_NAME, METRIC_HELP, "dao", "none", "method", "none");
+    }
+
+    @Override
+    public void logAfterExecution(StatementContext context) {
+        record(context, context.getCompletionMoment());
+    }
+
+    @Override
+    public void logException(StatementContext context, SQLException ex) {
+        record(context, context.getExceptionMoment());
+    }
+
+    private void record(StatementContext context, Instant endMoment) {
+
+        Instant executionMoment = context.getExecutionMoment();
+        if (executionMoment == null || endMoment == null) {
+            return;
+        }
+
+        long elapsedNanos = Duration.between(executionMoment, endMoment).toNanos();
+        ExtensionMethod extensionMethod = context.getExtensionMethod();
+        if (extensionMethod == null) {
+            otherQueries.record(elapsedNanos);
+            return;
+        }
+
+        Method method = extensionMethod.getMethod();
+        LatencyHistogram histogram = histograms.get(method);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(method, m -> registry.histogram(METRIC_NAME, METRIC_HELP,
+                    "dao", extensionMethod.getType().getSimpleName(), "method", m.getName()));
+        }
+
+        histogram.record(elapsedNanos);
+    }
+}
@@ -1,7 +1,19 @@
 
 package org.gitlab4j.codereview.resources;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -15,7 +27,9 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
@@ -28,10 +42,15 @@ import org.gitlab4j.api.models.Project;
 import org.gitlab4j.api.models.ProjectHook;
 import org.gitlab4j.codereview.CodeReviewConfiguration;
 import org.gitlab4j.codereview.beans.AppResponse;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
 import org.gitlab4j.codereview.dao.ProjectConfig;
 import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
 import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
 import org.gitlab4j.codereview.server.EmbeddedServer;
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.gitlab4j.codereview.utils.StatsProvider;
 import org.gitlab4j.codereview.utils.StringUtils;
 import org.jdbi.v3.core.Jdbi;
 
@@ -51,8 +70,58 @@ public class AdminResource {
     @Context
     HttpServletRequest request;
     @Context
+    Request restRequest;
+    @Context
     UriInfo uriInfo;
 
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response stats() {
+
+        checkStatsAuthentication();
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        for (StatsProvider statsProvider : getStatsProviders()) {
+            stats.put(statsProvider.getStatsName(), statsProvider.getStats());
+        }
+
+        return (AppResponse.getDataResponse(true, stats));
+    }
+
+    @GET
+    @Path("/metrics")
+    public Response metrics() throws IOException {
+
+        checkStatsAuthentication();
+
+        MetricsRegistry metricsRegistry = (MetricsRegistry) servletContext.getAttribute(EmbeddedServer.METRICS_REGISTRY);
+        StringWriter writer = new StringWriter(16384);
+        if (metricsRegistry != null) {
+            metricsRegistry.write(writer);
+        }
+
+        MetricsRegistry.writeStats(writer, "simplecr_stat", getStatsProviders());
+        return (Response.ok(writer.toString()).type(MetricsRegistry.CONTENT_TYPE).build());
+    }
+
+    /**
+     * @return all the StatsProvider instances attached to the servlet context
+     */
+    private List<StatsProvider> getStatsProviders() {
+
+        List<StatsProvider> statsProviders = new ArrayList<StatsProvider>();
+        Enumeration<String> names = servletContext.getAttributeNames();
+        while (names.hasMoreElements()) {
+            Object attribute = servletContext.getAttribute(names.nextElement());
+            if (attribute instanceof StatsProvider) {
+                statsProviders.add((StatsProvider) attribute);
+            }
+        }
+
+        return (statsProviders);
+    }
+
     @GET
     @Path("/{groupName}/{projectName}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -61,12 +130,10 @@ public class AdminResource {
         checkAuthentication();
         logger.info("List code review setup for project, group=" + groupName + ", project=" + projectName);
 
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
-
         // Get the specified project
         Project project;
         try {
-            project = getProject(gitlabApi, groupName, projectName);
+            project = getProject(groupName, projectName);
         } catch (ResponseException re) {
             logger.error("Problem getting project info, error=" + re.getMessage());
             return (AppResponse.getMessageResponse(false, "Could not load project info from GitLab server"));
@@ -79,26 +146,36 @@ public class AdminResource {
         if (projectConfig == null) {
             return (AppResponse.getMessageResponse(true, "Project not configured in Simple-CR."));
         }
-        
-        return (AppResponse.getDataResponse(true, projectConfig));
+
+        EntityTag entityTag = EntityTags.of(projectConfig.getId(), projectConfig.getCreated(), projectConfig.getEnabled(),
+                projectConfig.getProjectId(), projectConfig.getHookId(), projectConfig.getBranchRegex(), projectConfig.getTargetBranchRegex(),
+                projectConfig.getMailTo(), projectConfig.getAdditionalMailTo(), projectConfig.getExcludeMailTo(),
+                projectConfig.getIncludeDefaultMailTo(), projectConfig.getPushCoalesceWindow());
+        Response notModified = EntityTags.notModified(restRequest, entityTag);
+        if (notModified != null) {
+            return (notModified);
+        }
+
+        return (EntityTags.tag(AppResponse.getDataResponse(true, projectConfig), entityTag));
     }
 
     @POST
     @Path("/{groupName}/{projectName}")
     public Response add(@PathParam("groupName") String groupName, @PathParam("projectName") String projectName,
             @DefaultValue("true") @FormParam("enabled") boolean enabled, @FormParam("branch_regex") String branchRegex,
-            @DefaultValue("project") @FormParam("mail_to") String mailTo, @FormParam("additional_mail_to") String additionalMailTo,
+            @FormParam("target_branch_regex") String targetBranchRegex, @DefaultValue("project") @FormParam("mail_to") String mailTo, @FormParam("additional_mail_to") String additionalMailTo,
             @FormParam("exclude_mail_to") String excludeMailTo,
-            @DefaultValue("false") @FormParam("include_default_mail_to") boolean includeDefaultMailTo) {
+            @DefaultValue("false") @FormParam("include_default_mail_to") boolean includeDefaultMailTo,
+            @FormParam("push_coalesce_window") String pushCoalesceWindow) {
 
         checkAuthentication();
         logger.info("Add code review setup for project, group=" + groupName + ", project=" + projectName);
 
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
+        GitLabApi gitlabApi = getGitLabApiCache().getGitLabApi();
         CodeReviewConfiguration config = (CodeReviewConfiguration) servletContext.getAttribute(EmbeddedServer.CONFIG);
 
         // Get the specified project
-        Project project = getProject(gitlabApi, groupName, projectName);
+        Project project = getProject(groupName, projectName);
 
         // See if we already have this project in the system
         int projectId = project.getId();
@@ -115,6 +192,10 @@ public class AdminResource {
             throw (new ResponseException(Status.BAD_REQUEST, "Invalid mail_to[" + mailTo + "]"));
         }
 
+        validateRegex("branch_regex", branchRegex);
+        validateRegex("target_branch_regex", targetBranchRegex);
+        Integer pushCoalesceWindowSeconds = parseCoalesceWindow(pushCoalesceWindow);
+
         // Build the Url to the simple-cr webhook
         String webhookUrl = StringUtils.buildUrlString(config.getSimpleCrUrl(), config.getPath(), "webhook");
 
@@ -133,10 +214,12 @@ public class AdminResource {
             projectConfig.setHookId(projectHook.getId());
             projectConfig.setEnabled(enabled);
             projectConfig.setBranchRegex(branchRegex);
+            projectConfig.setTargetBranchesRegex(targetBranchRegex);
             projectConfig.setMailToType(mailToType);
             projectConfig.setAdditionalMailTo(additionalMailTo);
             projectConfig.setExcludeMailTo(excludeMailTo);
             projectConfig.setIncludeDefaultMailTo(includeDefaultMailTo);
+            projectConfig.setPushCoalesceWindow(pushCoalesceWindowSeconds);
             int numInserted = dao.insert(projectConfig);
             if (numInserted != 1) {
                 throw (new ResponseException(Status.INTERNAL_SERVER_ERROR, "Problem creating project configuration."));
@@ -146,6 +229,7 @@ public class AdminResource {
             throw (new ResponseException(Status.INTERNAL_SERVER_ERROR, e.getMessage()));
         }
 
+        getProjectConfigRegistry().refresh(projectId);
         URI createdUri = uriInfo.getRequestUri();
         logger.info("Created project config for " + groupName + "/" + projectName + ", location=" + createdUri.toString());
         return (Response.created(createdUri).build());
@@ -155,15 +239,15 @@ public class AdminResource {
     @Path("/{groupName}/{projectName}")
     @Produces(MediaType.TEXT_PLAIN)
     public Response update(@PathParam("groupName") String groupName, @PathParam("projectName") String projectName, @FormParam("enabled") Boolean enabled,
-            @FormParam("branch_regex") String branchRegex, @FormParam("mail_to") String mailTo, @FormParam("additional_mail_to") String additionalMailTo,
-            @FormParam("exclude_mail_to") String excludeMailTo, @FormParam("include_default_mail_to") Boolean includeDefaultMailTo) {
+            @FormParam("branch_regex") String branchRegex, @FormParam("target_branch_regex") String targetBranchRegex, @FormParam("mail_to") String mailTo, @FormParam("additional_mail_to") String additionalMailTo,
+            @FormParam("exclude_mail_to") String excludeMailTo, @FormParam("include_default_mail_to") Boolean includeDefaultMailTo,
+            @FormParam("push_coalesce_window") String pushCoalesceWindow) {
 
         checkAuthentication();
         logger.info("Update code review setup for project, group=" + groupName + ", project=" + projectName);
 
         // Get the specified project
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
-        Project project = getProject(gitlabApi, groupName, projectName);
+        Project project = getProject(groupName, projectName);
 
         // Make sure we have this project in the system
         int projectId = project.getId();
@@ -176,6 +260,10 @@ public class AdminResource {
             throw (new ResponseException(Response.Status.NOT_FOUND, message));
         }
 
+        validateRegex("branch_regex", branchRegex);
+        validateRegex("target_branch_regex", targetBranchRegex);
+        Integer pushCoalesceWindowSeconds = parseCoalesceWindow(pushCoalesceWindow);
+
         MailToType mailToType = null;
         if (mailTo != null && mailTo.trim().length() > 0) {
             mailToType = MailToType.findByString(mailTo);
@@ -199,6 +287,15 @@ public class AdminResource {
             projectConfig.setBranchRegex(branchRegex);
         }
 
+        if (targetBranchRegex != null) {
+
+            if (targetBranchRegex.trim().isEmpty()) {
+                targetBranchRegex = null;
+            }
+
+            projectConfig.setTargetBranchesRegex(targetBranchRegex);
+        }
+
         if (additionalMailTo != null) {
 
             if (additionalMailTo.trim().isEmpty()) {
@@ -221,11 +318,18 @@ public class AdminResource {
             projectConfig.setIncludeDefaultMailTo(includeDefaultMailTo);
         }
 
+        // An empty push_coalesce_window goes back to using the server default
+        if (pushCoalesceWindow != null) {
+            projectConfig.setPushCoalesceWindow(pushCoalesceWindowSeconds);
+        }
+
         int numUpdated = dao.update(projectConfig);
         if (numUpdated != 1) {
             throw (new ResponseException(Status.INTERNAL_SERVER_ERROR, "Problem updating project configuration."));
         }
 
+        getProjectConfigRegistry().refresh(projectId);
+
         String message = "Updated project config for " + groupName + "/" + projectName;
         logger.info(message);
         return (Response.ok().entity(message).type(MediaType.TEXT_PLAIN).build());
@@ -240,8 +344,8 @@ public class AdminResource {
         logger.info("Delete code review setup for project, group=" + groupName + ", project=" + projectName);
 
         // Get the specified project
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
-        Project project = getProject(gitlabApi, groupName, projectName);
+        GitLabApi gitlabApi = getGitLabApiCache().getGitLabApi();
+        Project project = getProject(groupName, projectName);
 
         // Make sure we have this project in the system
         int projectId = project.getId();
@@ -266,30 +370,125 @@ public class AdminResource {
             throw (new ResponseException(Status.INTERNAL_SERVER_ERROR, "Problem deleting project configuration."));
         }
 
+        getProjectConfigRegistry().refresh(projectId);
+
         String message = "Deleted project config for " + groupName + "/" + projectName;
         logger.info(message);
         return (Response.ok().entity(message).type(MediaType.TEXT_PLAIN).build());
     }
 
-    private Project getProject(GitLabApi gitlabApi, String groupName, String projectName) {
+    /**
+     * Makes sure the regex compiles so that an invalid regex is rejected before it is stored.
+     */
+    private static void validateRegex(String name, String regex) {
+
+        if (regex == null || regex.trim().isEmpty()) {
+            return;
+        }
+
+        try {
+            RegexMatcher.compile(regex);
+        } catch (PatternSyntaxException pse) {
+            throw (new ResponseException(Status.BAD_REQUEST, "Invalid " + name + "[" + regex + "], " + pse.getDescription()));
+        }
+    }
+
+    /**
+     * Parses the push coalesce window, an empty value means the server default is used.
+     */
+    private static Integer parseCoalesceWindow(String pushCoalesceWindow) {
+
+        if (pushCoalesceWindow == null || pushCoalesceWindow.trim().isEmpty()) {
+            return (null);
+        }
 
         try {
-            return (gitlabApi.getProjectApi().getProject(groupName, projectName));
+            int windowSeconds = Integer.parseInt(pushCoalesceWindow.trim());
+            if (windowSeconds >= 0) {
+                return (windowSeconds);
+            }
+        } catch (NumberFormatException nfe) {
+        }
+
+        throw (new ResponseException(Status.BAD_REQUEST, "Invalid push_coalesce_window[" + pushCoalesceWindow + "], must be a number of seconds"));
+    }
+
+    private Project getProject(String groupName, String projectName) {
+
+        try {
+            return (getGitLabApiCache().getProject(groupName, projectName));
         } catch (GitLabApiException gle) {
             logger.error("Problem getting project info, httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
             throw (new ResponseException(gle));
         }
     }
 
+    private GitLabApiCache getGitLabApiCache() {
+        return ((GitLabApiCache) servletContext.getAttribute(EmbeddedServer.GITLAB_API_CACHE));
+    }
+
+    private ProjectConfigRegistry getProjectConfigRegistry() {
+        return ((ProjectConfigRegistry) servletContext.getAttribute(EmbeddedServer.PROJECT_CONFIG_REGISTRY));
+    }
+
     private ProjectConfigDAO getProjectConfigDAO() {
         Jdbi jdbi = (Jdbi) servletContext.getAttribute(EmbeddedServer.JDBI);
         return (jdbi.onDemand(ProjectConfigDAO.class));
     }
 
     /**
-     * TODO
+     * If an admin-token is configured the request must carry it as "Authorization: Bearer &lt;token&gt;", otherwise
+     * the project admin endpoints are open to anyone that can reach the server.
+     *
+     * @throws ResponseException with a 401 status if the token is missing or does not match
      */
     private void checkAuthentication() {
 
+        String adminToken = getAdminToken();
+        if (adminToken == null) {
+            return;
+        }
+
+        String authorization = request.getHeader("Authorization");
+        String token = (authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : "");
+        if (!MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected unauthenticated admin request, path=" + request.getRequestURI() + ", remoteAddr=" + request.getRemoteAddr());
+            throw (new ResponseException(Status.UNAUTHORIZED, "Missing or invalid admin token"));
+        }
+    }
+
+    /**
+     * The stats and metrics require the admin-token when one is configured. When none is configured they are
+     * only served to requests from a loopback address, so that a scraper on the same host still works.
+     *
+     * @throws ResponseException with a 401 status if the token is missing or does not match, or a 403 status
+     * if no token is configured and the request is not from a loopback address
+     */
+    private void checkStatsAuthentication() {
+
+        if (getAdminToken() != null) {
+            checkAuthentication();
+            return;
+        }
+
+        if (!isLoopbackAddress(request.getRemoteAddr())) {
+            logger.warn("Rejected non-local stats request, path=" + request.getRequestURI() + ", remoteAddr=" + request.getRemoteAddr());
+            throw (new ResponseException(Status.FORBIDDEN, "Stats are only available from localhost unless an admin token is configured"));
+        }
+    }
+
+    private String getAdminToken() {
+        CodeReviewConfiguration config = (CodeReviewConfiguration) servletContext.getAttribute(EmbeddedServer.CONFIG);
+        return (config != null ? config.getAdminToken() : null);
+    }
+
+    private static boolean isLoopbackAddress(String remoteAddr) {
+
+        // The remote address is an IP literal, so this does not do a DNS lookup
+        try {
+            return (remoteAddr != null && InetAddress.getByName(remoteAddr).isLoopbackAddress());
+        } catch (UnknownHostException uhe) {
+            return (false);
+        }
     }
 }
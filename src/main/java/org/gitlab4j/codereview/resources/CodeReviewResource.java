@@ -1,7 +1,8 @@
 
 package org.gitlab4j.codereview.resources;
 
-import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.servlet.ServletContext;
@@ -14,7 +15,9 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -22,19 +25,23 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Branch;
 import org.gitlab4j.api.models.MergeRequest;
 import org.gitlab4j.api.models.Project;
 import org.gitlab4j.api.models.User;
 import org.gitlab4j.codereview.CodeReviewConfiguration;
 import org.gitlab4j.codereview.CodeReviewMailer;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
 import org.gitlab4j.codereview.beans.AppResponse;
 import org.gitlab4j.codereview.beans.CodeReviewInfo;
 import org.gitlab4j.codereview.dao.ProjectConfig;
-import org.gitlab4j.codereview.dao.ProjectConfigDAO;
 import org.gitlab4j.codereview.dao.Push;
 import org.gitlab4j.codereview.dao.PushDAO;
 import org.gitlab4j.codereview.server.EmbeddedServer;
 import org.gitlab4j.codereview.utils.HashUtils;
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.gitlab4j.codereview.utils.StringUtils;
 import org.jdbi.v3.core.Jdbi;
 
 /**
@@ -51,7 +58,13 @@ public class CodeReviewResource {
     ServletContext servletContext;
     @Context
     HttpServletRequest request;
+    @Context
+    Request restRequest;
 
+    /**
+     * Redirects to the review form at /app, which loads its CSS and JavaScript with relative URLs and reads the
+     * review parameters from the query string, the same as the link in the code review email.
+     */
     @GET
     @Path("/{projectId}/{branchName}/{userId}/{signature}")
     @Produces(MediaType.TEXT_HTML)
@@ -65,8 +78,9 @@ public class CodeReviewResource {
             return (Response.status(Status.BAD_REQUEST).entity("Bad code review request").type("text/plain").build());
         }
 
-        InputStream htmlIn = CodeReviewResource.class.getResourceAsStream("/index.html");
-        return (Response.ok().entity(htmlIn).type(MediaType.TEXT_HTML).build());
+        String formUrl = request.getContextPath() + "/app/?p=" + projectId + "&b=" + StringUtils.urlEncodeString(branchName)
+                + "&u=" + userId + "&s=" + signature;
+        return (Response.seeOther(URI.create(formUrl)).build());
     }
 
     @GET
@@ -90,12 +104,12 @@ public class CodeReviewResource {
             return (AppResponse.getMessageResponse(false, "Bad code review data request"));
         }
 
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
-        CodeReviewConfiguration config = (CodeReviewConfiguration) servletContext.getAttribute(EmbeddedServer.CONFIG);
+        GitLabApiCache gitlabApiCache = (GitLabApiCache) servletContext.getAttribute(EmbeddedServer.GITLAB_API_CACHE);
+        GitLabApi gitlabApi = gitlabApiCache.getGitLabApi();
 
         Project project;
         try {
-            project = gitlabApi.getProjectApi().getProject(projectId);
+            project = gitlabApiCache.getProject(projectId);
         } catch (GitLabApiException gle) {
             logger.error("Problem getting project info" + ", httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
             return (AppResponse.getMessageResponse(false, "Could not load project info for code review"));
@@ -108,7 +122,7 @@ public class CodeReviewResource {
 
         User user;
         try {
-            user = gitlabApi.getUserApi().getUser(userId);
+            user = gitlabApiCache.getUser(userId);
         } catch (GitLabApiException gle) {
             logger.error("Problem getting user info, httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
             return (AppResponse.getMessageResponse(false, "Could not load project info for code review"));
@@ -119,16 +133,24 @@ public class CodeReviewResource {
             return (AppResponse.getMessageResponse(false, "Could not load user info for code review"));
         }
 
+        // A client that already has the current version gets a 304 before the merge request lookup is made
+        CodeReviewConfiguration config = (CodeReviewConfiguration) servletContext.getAttribute(EmbeddedServer.CONFIG);
+        PushDAO dao = getPushDAO();
+        List<String> targetBranches = getTargetBranches(gitlabApiCache, projectId, branchName, config);
+        EntityTag entityTag = getLoadEntityTag(dao.find(userId, projectId, branchName), project, user, branchName, targetBranches, config.getGitLabWebUrl());
+        Response notModified = EntityTags.notModified(restRequest, entityTag);
+        if (notModified != null) {
+            return (notModified);
+        }
+
         // We default the status to success, with an empty statusText message
         AppResponse.Status status = AppResponse.Status.OK;
         String statusText = null;
 
         // Make sure that we don't have a pending code review for this branch
-        PushDAO dao = getPushDAO();
         List<Push> pushList = dao.findPendingReviews(userId, projectId, branchName);
         String title = null;
         String description = null;
-        List<String> targetBranches = null;
         if (pushList != null && pushList.size() > 0) {
 
             logger.info("This branch is already pending review" + ", userId=" + userId + ", projectId=" + projectId + ", branch=" + branchName);
@@ -163,13 +185,15 @@ public class CodeReviewResource {
             }
         }
 
+        String targetBranch = (targetBranches == null || targetBranches.isEmpty() || targetBranches.contains("master") ? "master" : targetBranches.get(0));
+
         CodeReviewInfo codeReviewInfo = new CodeReviewInfo();
         codeReviewInfo.setGroup(project.getNamespace().getName());
         codeReviewInfo.setProjectId(projectId);
         codeReviewInfo.setProjectName(project.getName());
         codeReviewInfo.setProjectUrl(project.getWebUrl());
         codeReviewInfo.setSourceBranch(branchName);
-        codeReviewInfo.setTargetBranch("master");
+        codeReviewInfo.setTargetBranch(targetBranch);
         codeReviewInfo.setUserId(userId);
         codeReviewInfo.setName(user.getName());
         codeReviewInfo.setEmail(user.getEmail());
@@ -177,7 +201,20 @@ public class CodeReviewResource {
         codeReviewInfo.setTargetBranches(targetBranches);
         codeReviewInfo.setTitle(title);
         codeReviewInfo.setDescription(description);
-        return (AppResponse.getResponse(status, statusText, codeReviewInfo));
+        return (EntityTags.tag(AppResponse.getResponse(status, statusText, codeReviewInfo), entityTag));
+    }
+
+    /**
+     * The load response is built from the Push records for the branch and the project, user and target branch
+     * list held by the GitLabApiCache, so the tag covers all of them. A change made in GitLab is seen once the
+     * cached entry expires, at most the project, user or branch cache TTL later. The title and description of a
+     * pending merge request are not part of the tag, a change to them is only seen when the Push records change.
+     */
+    static EntityTag getLoadEntityTag(List<Push> pushes, Project project, User user, String branchName, List<String> targetBranches, String gitlabWebUrl) {
+
+        StringBuilder pushState = EntityTags.appendPushState(new StringBuilder(), pushes);
+        return (EntityTags.of(project.getId(), project.getNamespace().getName(), project.getName(), project.getWebUrl(), branchName,
+                user.getId(), user.getName(), user.getEmail(), pushState, targetBranches, gitlabWebUrl));
     }
 
     @POST
@@ -193,11 +230,12 @@ public class CodeReviewResource {
                 + ", targetBranch=" + targetBranch + ", title=" + title + ", description=" + description);
 
         ServletContext servletContext = request.getServletContext();
-        GitLabApi gitlabApi = (GitLabApi) servletContext.getAttribute(EmbeddedServer.GITLAB_API);
+        GitLabApiCache gitlabApiCache = (GitLabApiCache) servletContext.getAttribute(EmbeddedServer.GITLAB_API_CACHE);
+        GitLabApi gitlabApi = gitlabApiCache.getGitLabApi();
 
         // Make sure we have this project in the system and it is enabled
-        ProjectConfigDAO projectConfigDao = getProjectConfigDAO();
-        ProjectConfig projectConfig = projectConfigDao.find(targetProjectId);
+        ProjectConfigRegistry projectConfigRegistry = (ProjectConfigRegistry) servletContext.getAttribute(EmbeddedServer.PROJECT_CONFIG_REGISTRY);
+        ProjectConfig projectConfig = projectConfigRegistry.get(targetProjectId);
         if (projectConfig == null) {
             logger.info("The target project is not in the simple-cr system, targetProjectId=" + targetProjectId);
             String message = "The specified project was not found in simple-cr the system.";
@@ -229,8 +267,7 @@ public class CodeReviewResource {
         // Update the Push record
         dao.setMergeRequest(pushList.get(0).getId(), mergeRequest.getIid());
 
-        CodeReviewConfiguration config = (CodeReviewConfiguration) servletContext.getAttribute(EmbeddedServer.CONFIG);
-        CodeReviewMailer mailer = new CodeReviewMailer(config, gitlabApi);
+        CodeReviewMailer mailer = (CodeReviewMailer) servletContext.getAttribute(EmbeddedServer.MAILER);
         mailer.sendMergeRequestEmail(projectConfig, mergeRequest);
 
         return (AppResponse.getMessageResponse(true, "Your request for code review and merge has been submitted."));
@@ -249,9 +286,41 @@ public class CodeReviewResource {
         return (0);
     }
 
-    private ProjectConfigDAO getProjectConfigDAO() {
-        Jdbi jdbi = (Jdbi) servletContext.getAttribute(EmbeddedServer.JDBI);
-        return (jdbi.onDemand(ProjectConfigDAO.class));
+    /**
+     * Gets the names of the project branches that match the target branch regex of the project, or the default
+     * target branches regex if the project does not have one.
+     *
+     * @return the matching branch names, or null if no target branch regex is configured
+     */
+    private List<String> getTargetBranches(GitLabApiCache gitlabApiCache, int projectId, String sourceBranch, CodeReviewConfiguration config) {
+
+        ProjectConfigRegistry projectConfigRegistry = (ProjectConfigRegistry) servletContext.getAttribute(EmbeddedServer.PROJECT_CONFIG_REGISTRY);
+        ProjectConfig projectConfig = projectConfigRegistry.get(projectId);
+        String targetBranchRegex = (projectConfig != null ? projectConfig.getTargetBranchRegex() : null);
+        if (targetBranchRegex == null || targetBranchRegex.trim().isEmpty()) {
+            targetBranchRegex = config.getDefaultTargetBranchesRegex();
+            if (targetBranchRegex == null || targetBranchRegex.trim().isEmpty()) {
+                return (null);
+            }
+        }
+
+        List<Branch> branches;
+        try {
+            branches = gitlabApiCache.getBranches(projectId);
+        } catch (GitLabApiException gle) {
+            logger.warn("Problem getting project branches, httpStatus=" + gle.getHttpStatus() + ", error=" + gle.getMessage());
+            return (null);
+        }
+
+        List<String> branchNames = new ArrayList<String>(branches.size());
+        for (Branch branch : branches) {
+            if (!branch.getName().equals(sourceBranch)) {
+                branchNames.add(branch.getName());
+            }
+        }
+
+        RegexMatcher regexMatcher = (RegexMatcher) servletContext.getAttribute(EmbeddedServer.REGEX_MATCHER);
+        return (regexMatcher.filter(targetBranchRegex, branchNames));
     }
 
     private PushDAO getPushDAO() {
@@ -1,6 +1,9 @@
 
 package org.gitlab4j.codereview.resources;
 
+import java.io.IOException;
+import java.util.Map;
+
 import javax.servlet.ServletContext;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -11,12 +14,22 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.gitlab4j.api.GitLabApiException;
 import org.gitlab4j.api.webhook.Event;
 import org.gitlab4j.api.webhook.IssueEvent;
 import org.gitlab4j.api.webhook.MergeRequestEvent;
 import org.gitlab4j.api.webhook.PushEvent;
 import org.gitlab4j.api.webhook.WebHookManager;
+import org.gitlab4j.codereview.cache.MemberEmailResolver;
+import org.gitlab4j.codereview.server.EmbeddedServer;
+import org.gitlab4j.codereview.webhook.EventJournal;
+import org.gitlab4j.codereview.webhook.EventPreParser;
+import org.gitlab4j.codereview.webhook.EventPreParser.EventSummary;
+import org.gitlab4j.codereview.webhook.PushCoalescer;
+import org.gitlab4j.codereview.webhook.WebHookDispatcher;
+import org.gitlab4j.codereview.webhook.WebHookMetrics;
 
 /**
  * CodeReviewWebHookResource
@@ -28,17 +41,94 @@ import org.gitlab4j.api.webhook.WebHookManager;
 @Path("/webhook")
 public class CodeReviewWebHookResource {
 
+    private static Logger logger = LogManager.getLogger();
+
+    // The number of seconds GitLab is asked to wait before retrying when the webhook queue is full
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    /**
+     * Receives the events sent by the project webhooks. The payload is pre-parsed so that events from projects
+     * that are not in Simple-CR, and events we don't handle, are acknowledged without being bound to an Event.
+     *
+     * @param payload the webhook payload
+     * @return the response to send back to the GitLab server
+     */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.TEXT_PLAIN)
-    public Response processEvent(Event event) {
+    public Response processEvent(byte[] payload) {
+
+        EventPreParser preParser = getEventPreParser();
+        Event event;
+        try {
+
+            EventSummary summary = preParser.preParse(payload);
+            if (summary.getIgnoreReason() != null) {
+                recordEvent(summary.getObjectKind(), EventPreParser.IGNORED_NOT_ENROLLED.equals(summary.getIgnoreReason())
+                        ? WebHookMetrics.IGNORED_NOT_ENROLLED : WebHookMetrics.IGNORED_UNHANDLED_KIND);
+                return (Response.ok().entity("Ignored " + summary.getObjectKind() + " event, reason=" + summary.getIgnoreReason())
+                        .type(MediaType.TEXT_PLAIN).build());
+            }
+
+            event = preParser.bind(payload);
+
+        } catch (IOException ioe) {
+            logger.warn("Problem parsing webhook payload, size=" + payload.length + ", error=" + ioe.getMessage());
+            recordEvent(null, WebHookMetrics.INVALID);
+            return (Response.status(Status.BAD_REQUEST).entity("Invalid webhook payload").type(MediaType.TEXT_PLAIN).build());
+        }
+
+        return (dispatchEvent(event));
+    }
+
+    private Response dispatchEvent(Event event) {
+
+        // If the journal is enabled the event must be on disk before we acknowledge it
+        EventJournal journal = getEventJournal();
+        long journalPosition = EventJournal.NO_POSITION;
+        if (journal != null) {
+            try {
+                journalPosition = journal.append(event);
+            } catch (IOException ioe) {
+                logger.error("Problem journaling " + event.getObjectKind() + " event, error=" + ioe.getMessage(), ioe);
+                recordEvent(event.getObjectKind(), WebHookMetrics.JOURNAL_FAILED);
+                return (Response.status(Status.INTERNAL_SERVER_ERROR).entity("Could not journal event").type(MediaType.TEXT_PLAIN).build());
+            }
+        }
+
+        // If async processing is enabled, queue the event and acknowledge it right away
+        WebHookDispatcher dispatcher = getWebHookDispatcher();
+        if (dispatcher != null) {
+
+            // Pushes that follow each other closely on the same branch are collapsed into one
+            PushCoalescer coalescer = getPushCoalescer();
+            if (coalescer != null && event instanceof PushEvent && coalescer.offer((PushEvent) event, journalPosition)) {
+                recordEvent(event.getObjectKind(), WebHookMetrics.COALESCED);
+                return (Response.accepted().entity("Coalesced " + event.getObjectKind() + " event").type(MediaType.TEXT_PLAIN).build());
+            }
+
+            if (dispatcher.submit(event, journalPosition)) {
+                recordEvent(event.getObjectKind(), WebHookMetrics.QUEUED);
+                return (Response.accepted().entity("Queued " + event.getObjectKind() + " event").type(MediaType.TEXT_PLAIN).build());
+            }
+
+            recordEvent(event.getObjectKind(), WebHookMetrics.QUEUE_FULL);
+            return (Response.status(Status.SERVICE_UNAVAILABLE).header("Retry-After", RETRY_AFTER_SECONDS)
+                    .entity("Webhook queue is full, try again later").type(MediaType.TEXT_PLAIN).build());
+        }
 
         try {
             getWebHookManager().handleEvent(event);
+            recordEvent(event.getObjectKind(), WebHookMetrics.PROCESSED);
             return Response.ok().entity("Processed " + event.getObjectKind() + " event").type(MediaType.TEXT_PLAIN).build();
         } catch (GitLabApiException gae) {
+            recordEvent(event.getObjectKind(), WebHookMetrics.FAILED);
             String errorMessage = gae.getMessage();
             return (Response.status(Status.INTERNAL_SERVER_ERROR).entity(errorMessage).type(MediaType.TEXT_PLAIN).build());
+        } finally {
+            if (journal != null) {
+                journal.markDone(journalPosition);
+            }
         }
     }
 
@@ -47,7 +137,7 @@ public class CodeReviewWebHookResource {
     @Produces(MediaType.TEXT_PLAIN)
     @Path("/issue")
     public Response issueEventHandler(IssueEvent event) {
-        return (processEvent(event));
+        return (dispatchEvent(event));
     }
 
     @POST
@@ -55,7 +145,7 @@ public class CodeReviewWebHookResource {
     @Produces(MediaType.TEXT_PLAIN)
     @Path("/merge-request")
     public Response mergeRequestEventHandler(MergeRequestEvent event) {
-        return (processEvent(event));
+        return (dispatchEvent(event));
     }
 
     @POST
@@ -63,7 +153,59 @@ public class CodeReviewWebHookResource {
     @Produces(MediaType.TEXT_PLAIN)
     @Path("/push")
     public Response pushEventHandler(PushEvent event) {
-        return (processEvent(event));
+        return (dispatchEvent(event));
+    }
+
+    /**
+     * Receives the member events sent by a GitLab system hook or group hook. These are used to invalidate the
+     * cached member email lists that reviewers are selected from.
+     *
+     * @param event the system hook payload
+     * @return the response to send back to the GitLab server
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/system")
+    public Response systemEventHandler(Map<String, Object> event) {
+
+        String eventName = (String) event.get("event_name");
+        MemberEmailResolver memberEmailResolver = (MemberEmailResolver) servletContext.getAttribute(EmbeddedServer.MEMBER_EMAIL_RESOLVER);
+        if (eventName == null || memberEmailResolver == null) {
+            return (Response.ok().entity("Ignored event").type(MediaType.TEXT_PLAIN).build());
+        }
+
+        switch (eventName) {
+        case "user_add_to_team":
+        case "user_remove_from_team":
+        case "user_update_for_team":
+            Integer projectId = getInteger(event, "project_id");
+            if (projectId != null) {
+                logger.info("Project membership changed, invalidating member emails, projectId=" + projectId);
+                memberEmailResolver.invalidateProject(projectId);
+            }
+            break;
+
+        case "user_add_to_group":
+        case "user_remove_from_group":
+        case "user_update_for_group":
+            Integer groupId = getInteger(event, "group_id");
+            if (groupId != null) {
+                logger.info("Group membership changed, invalidating member emails, groupId=" + groupId);
+                memberEmailResolver.invalidateGroup(groupId);
+            }
+            break;
+
+        default:
+            return (Response.ok().entity("Ignored " + eventName + " event").type(MediaType.TEXT_PLAIN).build());
+        }
+
+        return (Response.ok().entity("Processed " + eventName + " event").type(MediaType.TEXT_PLAIN).build());
+    }
+
+    private static Integer getInteger(Map<String, Object> event, String name) {
+        Object value = event.get(name);
+        return (value instanceof Number ? ((Number) value).intValue() : null);
     }
 
     @Context
@@ -72,4 +214,27 @@ public class CodeReviewWebHookResource {
     private WebHookManager getWebHookManager() {
         return ((WebHookManager) servletContext.getAttribute(WebHookManager.class.getSimpleName()));
     }
+
+    private EventJournal getEventJournal() {
+        return ((EventJournal) servletContext.getAttribute(EmbeddedServer.EVENT_JOURNAL));
+    }
+
+    private WebHookDispatcher getWebHookDispatcher() {
+        return ((WebHookDispatcher) servletContext.getAttribute(EmbeddedServer.WEBHOOK_DISPATCHER));
+    }
+
+    private EventPreParser getEventPreParser() {
+        return ((EventPreParser) servletContext.getAttribute(EmbeddedServer.EVENT_PRE_PARSER));
+    }
+
+    private PushCoalescer getPushCoalescer() {
+        return ((PushCoalescer) servletContext.getAttribute(EmbeddedServer.PUSH_COALESCER));
+    }
+
+    private void recordEvent(String objectKind, String outcome) {
+        WebHookMetrics webHookMetrics = (WebHookMetrics) servletContext.getAttribute(EmbeddedServer.WEBHOOK_METRICS);
+        if (webHookMetrics != null) {
+            webHookMetrics.record(objectKind, outcome);
+        }
+    }
 }
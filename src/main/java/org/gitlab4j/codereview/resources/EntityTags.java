@@ -0,0 +1,73 @@
+package org.gitlab4j.codereview.resources;
+
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.utils.HashUtils;
+
+/**
+ * Builds strong ETags for the JSON resources from the state that a response is built from. The tag can be
+ * computed and checked against If-None-Match before any of the work of building the response is done.
+ */
+class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param parts the values the response depends on
+     * @return a strong EntityTag that changes when any of the parts changes
+     */
+    static EntityTag of(Object... parts) {
+
+        StringBuilder state = new StringBuilder();
+        for (Object part : parts) {
+            state.append(part).append('|');
+        }
+
+        return (new EntityTag(HashUtils.getMD5Hash(state.toString())));
+    }
+
+    /**
+     * Appends the parts of each Push that change as it goes through review, for use with {@link #of(Object...)}.
+     *
+     * @param state the StringBuilder to append to
+     * @param pushes the Push records
+     * @return the StringBuilder
+     */
+    static StringBuilder appendPushState(StringBuilder state, List<Push> pushes) {
+
+        if (pushes != null) {
+            for (Push push : pushes) {
+                state.append(push.getId()).append(',').append(push.getMergeRequestId()).append(',')
+                        .append(push.getMergeState()).append(',').append(push.getMergeStatus()).append(';');
+            }
+        }
+
+        return (state);
+    }
+
+    /**
+     * @param request the request to evaluate If-None-Match for
+     * @param entityTag the current EntityTag of the resource
+     * @return a 304 Not Modified response if the client has the current version, otherwise null
+     */
+    static Response notModified(Request request, EntityTag entityTag) {
+        ResponseBuilder builder = request.evaluatePreconditions(entityTag);
+        return (builder != null ? builder.build() : null);
+    }
+
+    /**
+     * @param response the response to tag
+     * @param entityTag the EntityTag of the response entity
+     * @return the response with the ETag header set
+     */
+    static Response tag(Response response, EntityTag entityTag) {
+        return (Response.fromResponse(response).tag(entityTag).build());
+    }
+}
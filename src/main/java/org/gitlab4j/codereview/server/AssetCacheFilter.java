@@ -0,0 +1,51 @@
+package org.gitlab4j.codereview.server;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sets the Cache-Control header for the /app assets. The asset build writes each asset under a name that holds
+ * a hash of its content, so a fingerprinted asset never changes and browsers may cache it forever. Anything
+ * else, index.html included, has to be revalidated with its ETag before a cached copy is used.
+ */
+public class AssetCacheFilter implements Filter {
+
+    public static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    public static final String REVALIDATE = "no-cache";
+
+    // Matches names like css/bootstrap.0e430441e9.css, the hash is the first 10 hex digits of a SHA-256
+    private static final Pattern FINGERPRINTED = Pattern.compile(".*\\.[0-9a-f]{10}\\.[A-Za-z0-9]+$");
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+
+        String path = ((HttpServletRequest) request).getRequestURI();
+        ((HttpServletResponse) response).setHeader("Cache-Control", isFingerprinted(path) ? IMMUTABLE : REVALIDATE);
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * @param path the request path
+     * @return true if the path is of an asset with a content hash in its name
+     */
+    public static boolean isFingerprinted(String path) {
+        return (path != null && FINGERPRINTED.matcher(path).matches());
+    }
+}
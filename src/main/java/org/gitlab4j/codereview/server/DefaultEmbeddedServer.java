@@ -10,18 +10,21 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.gitlab4j.codereview.CodeReviewConfiguration;
 
 public class DefaultEmbeddedServer implements EmbeddedServer {
 
     private Server server;
     private WebAppContext servletContext;
 
-    public DefaultEmbeddedServer(String contextPath, int port) throws Exception {
+    public DefaultEmbeddedServer(CodeReviewConfiguration config) throws Exception {
 
-        server = new Server();
-        ServerConnector connector = new ServerConnector(server);
-        connector.setPort(port);
+        String contextPath = config.getPath();
+        server = JettyFactory.createServer(config);
+        ServerConnector connector = JettyFactory.createConnector(server, config, config.getPort(),
+                JettyFactory.createPlainConnectionFactories(config, JettyFactory.createHttpConfiguration(config)));
 
         server.setConnectors(new Connector[] { connector });
 
@@ -41,7 +44,7 @@ public class DefaultEmbeddedServer implements EmbeddedServer {
         URL location = protectionDomain.getCodeSource().getLocation();
         servletContext.setWar(location.toExternalForm());
 
-        server.setHandler(servletContext);
+        server.setHandler(JettyFactory.createGzipHandler(config, servletContext));
     }
 
     @Override
@@ -63,4 +66,9 @@ public class DefaultEmbeddedServer implements EmbeddedServer {
     public void setAttribute(String name, Object value) {
         servletContext.setAttribute(name, value);
     }
+
+    @Override
+    public ThreadPool getThreadPool() {
+        return (server.getThreadPool());
+    }
 }
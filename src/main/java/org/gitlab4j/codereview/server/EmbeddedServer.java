@@ -1,12 +1,31 @@
 package org.gitlab4j.codereview.server;
 
+import org.eclipse.jetty.util.thread.ThreadPool;
+
 public interface EmbeddedServer {
 
     public static final String GITLAB_API = "gitlab-api";
+    public static final String GITLAB_API_CACHE = "gitlab-api-cache";
+    public static final String MEMBER_EMAIL_RESOLVER = "member-email-resolver";
+    public static final String MAILER = "mailer";
+    public static final String TEMPLATE_SERVICE = "template-service";
+    public static final String MAIL_QUEUE = "mail-queue";
     public static final String CONFIG = "config";
     public static final String CONNECTION_POOL = "connection-pool";
     public static final String JDBI = "jdbi";
+    public static final String RETENTION_JOB = "retention-job";
+    public static final String MERGE_STATE_RECONCILER = "merge-state-reconciler";
+    public static final String PROJECT_CONFIG_REGISTRY = "project-config-registry";
+    public static final String REGEX_MATCHER = "regex-matcher";
+    public static final String PUSH_PIPELINE_STATS = "push-pipeline-stats";
+    public static final String MERGE_REQUEST_PIPELINE_STATS = "merge-request-pipeline-stats";
     public static final String WEBHOOK_MANAGER = "webhook-manager";
+    public static final String WEBHOOK_DISPATCHER = "webhook-dispatcher";
+    public static final String EVENT_PRE_PARSER = "event-pre-parser";
+    public static final String PUSH_COALESCER = "push-coalescer";
+    public static final String EVENT_JOURNAL = "event-journal";
+    public static final String METRICS_REGISTRY = "metrics-registry";
+    public static final String WEBHOOK_METRICS = "webhook-metrics";
 
     public abstract void start() throws Exception;
 
@@ -15,4 +34,6 @@ public interface EmbeddedServer {
     public abstract void join() throws Exception;
 
     public void setAttribute(String name, Object value);
-}
\ No newline at end of file
+
+    public ThreadPool getThreadPool();
+}
\ No newline at end of file
@@ -3,6 +3,11 @@ package org.gitlab4j.codereview.server;
 import java.net.URL;
 import java.security.ProtectionDomain;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -15,28 +20,44 @@ import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.gitlab4j.codereview.CodeReviewConfiguration;
 
 public class EmbeddedServerWithSsl implements EmbeddedServer {
 
+    private static Logger logger = LogManager.getLogger();
+
     private Server server;
     private WebAppContext servletContext;
 
-    public EmbeddedServerWithSsl(String contextPath, int port, int sslPort) throws Exception {
+    public EmbeddedServerWithSsl(CodeReviewConfiguration config) throws Exception {
 
-        Server server = new Server();
-        ServerConnector connector = new ServerConnector(server);
-        connector.setPort(port);
+        String contextPath = config.getPath();
+        server = JettyFactory.createServer(config);
+        ServerConnector connector = JettyFactory.createConnector(server, config, config.getPort(),
+                JettyFactory.createPlainConnectionFactories(config, JettyFactory.createHttpConfiguration(config)));
 
-        HttpConfiguration https = new HttpConfiguration();
+        HttpConfiguration https = JettyFactory.createHttpConfiguration(config);
         https.addCustomizer(new SecureRequestCustomizer());
 
-        SslContextFactory sslContextFactory = new SslContextFactory();
-        sslContextFactory.setKeyStorePath(EmbeddedServerWithSsl.class.getResource("/keystore.jks").toExternalForm());
-        sslContextFactory.setKeyStorePassword("123456");
-        sslContextFactory.setKeyManagerPassword("123456");
-        ServerConnector sslConnector = new ServerConnector(server, new SslConnectionFactory(sslContextFactory, "http/1.1"), new HttpConnectionFactory(https));
-        sslConnector.setPort(sslPort);
+        SslContextFactory sslContextFactory = createSslContextFactory(config);
+        HttpConnectionFactory http1 = new HttpConnectionFactory(https);
+        ServerConnector sslConnector;
+        ALPNServerConnectionFactory alpn = (config.isHttp2Enabled() ? createAlpnConnectionFactory(http1) : null);
+        if (alpn != null) {
+
+            // HTTP/2 over TLS is negotiated with ALPN, clients that do not support it get HTTP/1.1
+            HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(https);
+            h2.setMaxConcurrentStreams(config.getHttp2MaxConcurrentStreams());
+            sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+            sslContextFactory.setUseCipherSuitesOrder(true);
+            sslConnector = JettyFactory.createConnector(server, config, config.getSslPort(),
+                    new SslConnectionFactory(sslContextFactory, alpn.getProtocol()), alpn, h2, http1);
+        } else {
+            sslConnector = JettyFactory.createConnector(server, config, config.getSslPort(),
+                    new SslConnectionFactory(sslContextFactory, http1.getProtocol()), http1);
+        }
 
         server.setConnectors(new Connector[] { connector, sslConnector });
 
@@ -56,7 +77,7 @@ public class EmbeddedServerWithSsl implements EmbeddedServer {
         URL location = protectionDomain.getCodeSource().getLocation();
         servletContext.setWar(location.toExternalForm());
 
-        server.setHandler(servletContext);        
+        server.setHandler(JettyFactory.createGzipHandler(config, servletContext));        
     }
 
     @Override
@@ -78,4 +99,74 @@ public class EmbeddedServerWithSsl implements EmbeddedServer {
     public void setAttribute(String name, Object value) {
         servletContext.setAttribute(name, value);
     }
+
+    @Override
+    public ThreadPool getThreadPool() {
+        return (server.getThreadPool());
+    }
+
+    /**
+     * Create the SslContextFactory for the configured keystore, protocols, cipher suites and session cache.
+     * The session cache lets clients that reconnect, such as GitLab delivering webhooks, resume their TLS
+     * session instead of doing a full handshake.
+     *
+     * @param config the configuration holding the SSL settings
+     * @return the SslContextFactory for the SSL connector
+     */
+    private static SslContextFactory createSslContextFactory(CodeReviewConfiguration config) {
+
+        String keyStorePath = config.getSslKeyStorePath();
+        if (keyStorePath == null || keyStorePath.trim().isEmpty()) {
+            keyStorePath = EmbeddedServerWithSsl.class.getResource("/keystore.jks").toExternalForm();
+        }
+
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath(keyStorePath);
+        sslContextFactory.setKeyStoreType(config.getSslKeyStoreType());
+        sslContextFactory.setKeyStorePassword(config.getSslKeyStorePassword());
+        sslContextFactory.setKeyManagerPassword(config.getSslKeyManagerPassword());
+        sslContextFactory.setSslSessionCacheSize(config.getSslSessionCacheSize());
+        sslContextFactory.setSslSessionTimeout(config.getSslSessionTimeout());
+
+        String[] protocols = config.getSslIncludeProtocols();
+        if (protocols.length > 0) {
+            sslContextFactory.setIncludeProtocols(protocols);
+        }
+
+        protocols = config.getSslExcludeProtocols();
+        if (protocols.length > 0) {
+            sslContextFactory.addExcludeProtocols(protocols);
+        }
+
+        String[] cipherSuites = config.getSslIncludeCipherSuites();
+        if (cipherSuites.length > 0) {
+            sslContextFactory.setIncludeCipherSuites(cipherSuites);
+        }
+
+        cipherSuites = config.getSslExcludeCipherSuites();
+        if (cipherSuites.length > 0) {
+            sslContextFactory.addExcludeCipherSuites(cipherSuites);
+        }
+
+        return (sslContextFactory);
+    }
+
+    /**
+     * ALPN needs a provider on the classpath that works with the running JVM, jetty-alpn-java-server for
+     * Java 9 and later.
+     *
+     * @param http1 the connection factory for the protocol to use when the client does not negotiate one
+     * @return the ALPNServerConnectionFactory, or null if no ALPN provider is available
+     */
+    private static ALPNServerConnectionFactory createAlpnConnectionFactory(HttpConnectionFactory http1) {
+
+        try {
+            ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+            alpn.setDefaultProtocol(http1.getProtocol());
+            return (alpn);
+        } catch (IllegalStateException ise) {
+            logger.warn("ALPN is not available, HTTPS will only support HTTP/1.1, error=" + ise.getMessage());
+            return (null);
+        }
+    }
 }
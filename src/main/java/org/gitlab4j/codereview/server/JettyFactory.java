@@ -0,0 +1,127 @@
+package org.gitlab4j.codereview.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.gitlab4j.codereview.CodeReviewConfiguration;
+
+/**
+ * Builds the Jetty Server, thread pool and connectors from the server-* configuration properties so that
+ * DefaultEmbeddedServer and EmbeddedServerWithSsl are tuned the same way.
+ */
+class JettyFactory {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private JettyFactory() {
+    }
+
+    /**
+     * Create a Server with the configured thread pool. If virtual threads are enabled but the JVM does not
+     * support them a warning is logged and the QueuedThreadPool is used.
+     *
+     * @param config the configuration holding the server settings
+     * @return a Server without any connectors
+     */
+    static Server createServer(CodeReviewConfiguration config) {
+
+        ThreadPool threadPool;
+        if (config.isServerVirtualThreads() && VirtualThreadPool.isSupported()) {
+            threadPool = new VirtualThreadPool();
+            logger.info("Server requests will be handled on virtual threads");
+        } else {
+
+            if (config.isServerVirtualThreads()) {
+                logger.warn("Virtual threads are not supported by Java " + System.getProperty("java.version")
+                        + ", using a pool of platform threads");
+            }
+
+            QueuedThreadPool queuedThreadPool = new QueuedThreadPool(config.getServerMaxThreads(),
+                    config.getServerMinThreads(), config.getServerThreadIdleTimeout());
+            queuedThreadPool.setName("jetty-qtp");
+            threadPool = queuedThreadPool;
+            logger.info("Server thread pool created, minThreads=" + config.getServerMinThreads() + ", maxThreads=" + config.getServerMaxThreads());
+        }
+
+        return (new Server(threadPool));
+    }
+
+    /**
+     * @param config the configuration holding the server settings
+     * @return an HttpConfiguration with the configured request header size
+     */
+    static HttpConfiguration createHttpConfiguration(CodeReviewConfiguration config) {
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setRequestHeaderSize(config.getServerRequestHeaderSize());
+        return (httpConfig);
+    }
+
+    /**
+     * Create the connection factories for a plain text connector, HTTP/1.1 and if HTTP/2 is enabled h2c, which
+     * clients can use either with prior knowledge or by upgrading an HTTP/1.1 connection.
+     *
+     * @param config the configuration holding the server settings
+     * @param httpConfig the HttpConfiguration to use for both protocols
+     * @return the connection factories for the connector
+     */
+    static ConnectionFactory[] createPlainConnectionFactories(CodeReviewConfiguration config, HttpConfiguration httpConfig) {
+
+        HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfig);
+        if (!config.isHttp2Enabled()) {
+            return (new ConnectionFactory[] { http1 });
+        }
+
+        HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(httpConfig);
+        h2c.setMaxConcurrentStreams(config.getHttp2MaxConcurrentStreams());
+        return (new ConnectionFactory[] { http1, h2c });
+    }
+
+    /**
+     * Create a ServerConnector with the configured acceptors, selectors, idle timeout and accept queue size.
+     *
+     * @param server the Server the connector is for
+     * @param config the configuration holding the server settings
+     * @param port the port to listen on
+     * @param factories the connection factories of the connector
+     * @return the ServerConnector
+     */
+    static ServerConnector createConnector(Server server, CodeReviewConfiguration config, int port, ConnectionFactory... factories) {
+
+        ServerConnector connector = new ServerConnector(server, config.getServerAcceptors(), config.getServerSelectors(), factories);
+        connector.setPort(port);
+        connector.setIdleTimeout(config.getServerIdleTimeout());
+        connector.setAcceptQueueSize(config.getServerAcceptQueueSize());
+        return (connector);
+    }
+
+    /**
+     * Wraps the handler with a GzipHandler that compresses responses of the configured MIME types that are
+     * at least the configured size. Responses that are already encoded, such as the precompressed /app
+     * assets, are sent as they are.
+     *
+     * @param config the configuration holding the gzip settings
+     * @param handler the handler whose responses are compressed
+     * @return the GzipHandler, or the handler itself if gzip is disabled
+     */
+    static Handler createGzipHandler(CodeReviewConfiguration config, Handler handler) {
+
+        if (!config.isGzipEnabled()) {
+            return (handler);
+        }
+
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(config.getGzipMinSize());
+        gzipHandler.setIncludedMimeTypes(config.getGzipMimeTypes());
+        gzipHandler.setHandler(handler);
+        return (gzipHandler);
+    }
+}
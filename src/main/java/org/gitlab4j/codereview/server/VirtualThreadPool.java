@@ -0,0 +1,118 @@
+package org.gitlab4j.codereview.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A Jetty ThreadPool that runs every task on a new virtual thread. A request that blocks on GitLab or SMTP
+ * parks its virtual thread instead of holding one of a fixed number of platform threads, so the number of
+ * requests in flight is no longer capped by the size of the pool.
+ *
+ * Virtual threads need JDK 21 or later while Simple-CR is built for Java 8, the virtual thread factory is
+ * therefore looked up by reflection, use {@link #isSupported()} to check that it is available.
+ */
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool {
+
+    private static final ThreadFactory FACTORY = createFactory();
+
+    private final AtomicInteger numThreads = new AtomicInteger();
+    private volatile CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return (FACTORY != null);
+    }
+
+    public VirtualThreadPool() {
+
+        if (FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later, running on " + System.getProperty("java.version"));
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+
+        if (!isRunning() && !isStarting()) {
+            throw new RejectedExecutionException("VirtualThreadPool is not running");
+        }
+
+        Thread thread = FACTORY.newThread(() -> {
+            numThreads.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                numThreads.decrementAndGet();
+            }
+        });
+
+        thread.start();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        stopped = new CountDownLatch(1);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        stopped.countDown();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return the number of virtual threads running a task
+     */
+    @Override
+    public int getThreads() {
+        return (numThreads.get());
+    }
+
+    /**
+     * Virtual threads are created for each task and are never idle.
+     */
+    @Override
+    public int getIdleThreads() {
+        return (0);
+    }
+
+    /**
+     * A new virtual thread is always available, the pool is never low on threads.
+     */
+    @Override
+    public boolean isLowOnThreads() {
+        return (false);
+    }
+
+    /**
+     * Looks up Thread.ofVirtual().name("jetty-vt-", 0).factory().
+     *
+     * @return the virtual thread factory, or null if the JVM does not support virtual threads
+     */
+    private static ThreadFactory createFactory() {
+
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "jetty-vt-", 0L);
+            return ((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            return (null);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.gitlab4j.codereview.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A size bounded, least recently used cache whose entries expire a fixed time after they are loaded.
+ *
+ * Failed loads can also be cached (negative caching) for the exceptions accepted by the provided
+ * predicate, a cached failure is rethrown until it expires. Concurrent misses for the same key are
+ * de-duplicated, only the first caller runs the loader and the others wait for and share its result.
+ *
+ * Invalidating a key also detaches any load of it that is in flight, that load's result is still returned
+ * to the callers waiting for it but is not cached, and the next get() loads the key again.
+ *
+ * @param <K> the type of the cache keys
+ * @param <V> the type of the cached values
+ */
+public class ExpiringLruCache<K, V> {
+
+    /**
+     * Loads the value for a key on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Predicate<Exception> isCacheableFailure;
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<CacheEntry<V>>> inFlight = new ConcurrentHashMap<K, CompletableFuture<CacheEntry<V>>>();
+
+    private final AtomicLong numHits = new AtomicLong();
+    private final AtomicLong numNegativeHits = new AtomicLong();
+    private final AtomicLong numMisses = new AtomicLong();
+    private final AtomicLong numSharedLoads = new AtomicLong();
+    private final AtomicLong numEvictions = new AtomicLong();
+    private final AtomicLong numLoadFailures = new AtomicLong();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    /**
+     * Create an ExpiringLruCache.
+     *
+     * @param name the name of the cache, used for reporting stats
+     * @param maxSize the maximum number of entries held by the cache
+     * @param ttlMillis the time in milliseconds a loaded value is kept, 0 disables caching of values
+     * @param negativeTtlMillis the time in milliseconds a cacheable failure is kept, 0 disables negative caching
+     * @param isCacheableFailure returns true for the load exceptions that should be cached, may be null
+     */
+    public ExpiringLruCache(String name, int maxSize, long ttlMillis, long negativeTtlMillis, Predicate<Exception> isCacheableFailure) {
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.isCacheableFailure = isCacheableFailure;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxSize) {
+                    numEvictions.incrementAndGet();
+                    return (true);
+                }
+
+                return (false);
+            }
+        };
+    }
+
+    /**
+     * Get the value for the key, loading it with the provided loader if it is not cached or has expired.
+     *
+     * @param key the key to get the value for
+     * @param loader loads the value on a miss
+     * @return the cached or loaded value
+     * @throws Exception the exception thrown by the loader, or the cached failure
+     */
+    public V get(K key, Loader<K, V> loader) throws Exception {
+
+        CacheEntry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry != null) {
+
+            if (entry.failure != null) {
+                numNegativeHits.incrementAndGet();
+            } else {
+                numHits.incrementAndGet();
+            }
+
+            return (entry.getValue());
+        }
+
+        numMisses.incrementAndGet();
+
+        // Only one caller loads a missing key, everybody else waits on the same future
+        CompletableFuture<CacheEntry<V>> future = new CompletableFuture<CacheEntry<V>>();
+        CompletableFuture<CacheEntry<V>> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            numSharedLoads.incrementAndGet();
+            return (awaitLoad(existing).getValue());
+        }
+
+        try {
+            entry = load(key, loader, future);
+            future.complete(entry);
+        } catch (RuntimeException re) {
+            future.completeExceptionally(re);
+            throw re;
+        } finally {
+            inFlight.remove(key, future);
+        }
+
+        return (entry.getValue());
+    }
+
+    /**
+     * Removes the entry for the key from the cache, a load of the key that is in flight will not be cached.
+     *
+     * @param key the key to remove
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the entries from the cache, the loads that are in flight will not be cached.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            inFlight.clear();
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache, including any that have expired but not yet been removed
+     */
+    public int size() {
+        synchronized (entries) {
+            return (entries.size());
+        }
+    }
+
+    public String getName() {
+        return (name);
+    }
+
+    public long getNumHits() {
+        return (numHits.get());
+    }
+
+    public long getNumMisses() {
+        return (numMisses.get());
+    }
+
+    public long getNumLoadFailures() {
+        return (numLoadFailures.get());
+    }
+
+    /**
+     * @return the histogram of the time taken by the loader, for a cache in front of a remote API this is the API latency
+     */
+    public LatencyHistogram getLoadLatency() {
+        return (loadLatency);
+    }
+
+    /**
+     * @return a snapshot of the cache stats as name/value pairs
+     */
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("size", size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", numHits.get());
+        stats.put("negativeHits", numNegativeHits.get());
+        stats.put("misses", numMisses.get());
+        stats.put("sharedLoads", numSharedLoads.get());
+        stats.put("evictions", numEvictions.get());
+        stats.put("loadFailures", numLoadFailures.get());
+        stats.put("load", loadLatency.getStats());
+        return (stats);
+    }
+
+    private CacheEntry<V> load(K key, Loader<K, V> loader, CompletableFuture<CacheEntry<V>> future) {
+
+        CacheEntry<V> entry;
+        long ttl;
+        long startNanos = System.nanoTime();
+        try {
+            entry = new CacheEntry<V>(loader.load(key), null);
+            ttl = ttlMillis;
+        } catch (Exception e) {
+            entry = new CacheEntry<V>(null, e);
+            ttl = (isCacheableFailure != null && isCacheableFailure.test(e) ? negativeTtlMillis : 0);
+            numLoadFailures.incrementAndGet();
+        }
+
+        loadLatency.record(System.nanoTime() - startNanos);
+
+        if (ttl > 0) {
+            entry.expiresAt = System.currentTimeMillis() + ttl;
+            synchronized (entries) {
+                // The key was invalidated while it was loading if the future is no longer in flight
+                if (inFlight.get(key) == future) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+
+        return (entry);
+    }
+
+    private CacheEntry<V> awaitLoad(CompletableFuture<CacheEntry<V>> future) throws Exception {
+
+        try {
+            return (future.get());
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+
+            throw ee;
+        }
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final Exception failure;
+        private long expiresAt;
+
+        CacheEntry(V value, Exception failure) {
+            this.value = value;
+            this.failure = failure;
+        }
+
+        boolean isExpired() {
+            return (System.currentTimeMillis() >= expiresAt);
+        }
+
+        V getValue() throws Exception {
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            return (value);
+        }
+    }
+}
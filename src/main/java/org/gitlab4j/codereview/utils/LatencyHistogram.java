@@ -0,0 +1,165 @@
+package org.gitlab4j.codereview.utils;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies with fixed bucket boundaries. Recording is a couple of atomic
+ * increments so it is cheap enough to use on every call, percentiles are reported as the upper bound
+ * of the bucket the percentile falls in.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The default bucket upper bounds in microseconds, from 50us to 10s.
+     */
+    private static final long[] DEFAULT_BOUNDS_MICROS = {
+        50, 100, 250, 500,
+        1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+        1000000, 2500000, 5000000, 10000000
+    };
+
+    private final long[] boundsNanos;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS_MICROS);
+    }
+
+    /**
+     * Create a LatencyHistogram with the specified bucket boundaries.
+     *
+     * @param boundsMicros the bucket upper bounds in microseconds, in ascending order
+     */
+    public LatencyHistogram(long[] boundsMicros) {
+
+        boundsNanos = new long[boundsMicros.length];
+        for (int i = 0; i < boundsMicros.length; i++) {
+            boundsNanos[i] = boundsMicros[i] * 1000;
+        }
+
+        // The extra bucket holds everything over the largest bound
+        bucketCounts = new AtomicLongArray(boundsNanos.length + 1);
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return (count.get());
+    }
+
+    public long getTotalNanos() {
+        return (totalNanos.get());
+    }
+
+    public long getMaxNanos() {
+        return (maxNanos.get());
+    }
+
+    /**
+     * @return the bucket upper bounds in nanoseconds, the last bucket (not included) has no upper bound
+     */
+    public long[] getBoundsNanos() {
+        return (boundsNanos.clone());
+    }
+
+    /**
+     * @return a snapshot of the bucket counts, the last element is the count over the largest bound
+     */
+    public long[] getBucketCounts() {
+
+        long[] counts = new long[bucketCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts.get(i);
+        }
+
+        return (counts);
+    }
+
+    /**
+     * Get the upper bound of the bucket the specified percentile falls in.
+     *
+     * @param percentile the percentile to get, 0.0 to 100.0
+     * @return the upper bound of the bucket in milliseconds, or the max recorded latency for the overflow bucket
+     */
+    public double getPercentileMillis(double percentile) {
+
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        if (total == 0) {
+            return (0.0);
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < boundsNanos.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (boundsNanos[i] / 1000000.0);
+            }
+        }
+
+        return (maxNanos.get() / 1000000.0);
+    }
+
+    /**
+     * @return a snapshot of the histogram as name/value pairs, the buckets are keyed by their upper bound in milliseconds
+     */
+    public Map<String, Object> getStats() {
+
+        long n = count.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("count", n);
+        stats.put("avgMillis", n > 0 ? totalNanos.get() / n / 1000000.0 : 0.0);
+        stats.put("maxMillis", maxNanos.get() / 1000000.0);
+        stats.put("p50Millis", getPercentileMillis(50));
+        stats.put("p95Millis", getPercentileMillis(95));
+        stats.put("p99Millis", getPercentileMillis(99));
+
+        Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+        long[] counts = getBucketCounts();
+        for (int i = 0; i < boundsNanos.length; i++) {
+            buckets.put("le" + formatMillis(boundsNanos[i]), counts[i]);
+        }
+
+        buckets.put("gt" + formatMillis(boundsNanos[boundsNanos.length - 1]), counts[boundsNanos.length]);
+        stats.put("buckets", buckets);
+        return (stats);
+    }
+
+    private static String formatMillis(long nanos) {
+        return (BigDecimal.valueOf(nanos, 6).stripTrailingZeros().toPlainString() + "ms");
+    }
+}
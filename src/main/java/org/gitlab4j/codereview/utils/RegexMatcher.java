@@ -0,0 +1,205 @@
+package org.gitlab4j.codereview.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Matches branch names against the configured branch regexes. Each regex is compiled once and the Pattern
+ * is cached by its source text, so a Pattern is only compiled again when the regex is changed.
+ *
+ * Every match has a time budget. The input is wrapped in a CharSequence that checks the deadline as the
+ * regex engine reads it, a regex that backtracks for longer than the budget is abandoned and treated as
+ * not matching, so a pathological regex entered by an admin cannot tie up a webhook worker.
+ */
+public class RegexMatcher implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    // The cache is cleared if it grows past this, it only holds the regexes of the configured projects
+    private static final int MAX_CACHED_PATTERNS = 1000;
+
+    private final long budgetNanos;
+    private final ConcurrentHashMap<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+
+    private final AtomicLong numCompiles = new AtomicLong();
+    private final AtomicLong numCacheHits = new AtomicLong();
+    private final AtomicLong numTimeouts = new AtomicLong();
+    private final LatencyHistogram matchLatency = new LatencyHistogram();
+
+    /**
+     * Create a RegexMatcher.
+     *
+     * @param budgetMillis the maximum time a single match may take
+     */
+    public RegexMatcher(long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * Compiles the regex, used to reject an invalid regex before it is stored.
+     *
+     * @param regex the regex to compile
+     * @return the compiled Pattern
+     * @throws PatternSyntaxException if the regex is not valid
+     */
+    public static Pattern compile(String regex) throws PatternSyntaxException {
+        return (Pattern.compile(regex));
+    }
+
+    /**
+     * Get the compiled Pattern for the regex, compiling it if it is not already cached.
+     *
+     * @param regex the regex to get the Pattern for
+     * @return the compiled Pattern
+     * @throws PatternSyntaxException if the regex is not valid
+     */
+    public Pattern getPattern(String regex) throws PatternSyntaxException {
+
+        Pattern pattern = patterns.get(regex);
+        if (pattern != null) {
+            numCacheHits.incrementAndGet();
+            return (pattern);
+        }
+
+        pattern = compile(regex);
+        numCompiles.incrementAndGet();
+        if (patterns.size() >= MAX_CACHED_PATTERNS) {
+            patterns.clear();
+        }
+
+        patterns.put(regex, pattern);
+        return (pattern);
+    }
+
+    /**
+     * Checks if the whole of the input matches the regex. A regex that is not valid, or a match that runs
+     * over the time budget, does not match.
+     *
+     * @param regex the regex to match against
+     * @param input the String to match
+     * @return true if the input matches the regex
+     */
+    public boolean matches(String regex, String input) {
+
+        Pattern pattern;
+        try {
+            pattern = getPattern(regex);
+        } catch (PatternSyntaxException pse) {
+            logger.warn("Invalid regex, regex=" + regex + ", error=" + pse.getDescription());
+            return (false);
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            return (pattern.matcher(new BudgetedCharSequence(input, startNanos + budgetNanos)).matches());
+        } catch (BudgetExceededException bee) {
+            numTimeouts.incrementAndGet();
+            logger.warn("Regex match ran over its budget and was abandoned, regex=" + regex
+                    + ", inputLength=" + input.length() + ", budgetMillis=" + TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+            return (false);
+        } finally {
+            matchLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Get the inputs that match the regex, in the order they were provided.
+     *
+     * @param regex the regex to match against
+     * @param inputs the Strings to match
+     * @return the inputs that match the regex
+     */
+    public List<String> filter(String regex, List<String> inputs) {
+
+        List<String> matched = new ArrayList<String>();
+        for (String input : inputs) {
+            if (matches(regex, input)) {
+                matched.add(input);
+            }
+        }
+
+        return (matched);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("regex-matcher");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("cachedPatterns", patterns.size());
+        stats.put("compiles", numCompiles.get());
+        stats.put("cacheHits", numCacheHits.get());
+        stats.put("timeouts", numTimeouts.get());
+        stats.put("matchLatency", matchLatency.getStats());
+        return (stats);
+    }
+
+    /**
+     * Thrown by BudgetedCharSequence when the deadline has passed, it carries no stack trace.
+     */
+    private static class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A CharSequence that throws a BudgetExceededException once its deadline has passed. The clock is only
+     * read every CHECK_INTERVAL reads, a match that finishes quickly never reads it at all.
+     */
+    private static class BudgetedCharSequence implements CharSequence {
+
+        private static final int CHECK_INTERVAL = 1024;
+
+        private final CharSequence chars;
+        private final long deadlineNanos;
+        private int numReads;
+
+        BudgetedCharSequence(CharSequence chars, long deadlineNanos) {
+            this.chars = chars;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public char charAt(int index) {
+
+            if (++numReads % CHECK_INTERVAL == 0 && System.nanoTime() - deadlineNanos > 0) {
+                throw new BudgetExceededException();
+            }
+
+            return (chars.charAt(index));
+        }
+
+        @Override
+        public int length() {
+            return (chars.length());
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return (new BudgetedCharSequence(chars.subSequence(start, end), deadlineNanos));
+        }
+
+        @Override
+        public String toString() {
+            return (chars.toString());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.gitlab4j.codereview.utils;
+
+import java.util.Map;
+
+/**
+ * Implemented by the server components that collect runtime statistics. Any StatsProvider
+ * set as a servlet context attribute is included in the output of the /admin/stats endpoint.
+ */
+public interface StatsProvider {
+
+    /**
+     * @return the name the stats are reported under
+     */
+    public String getStatsName();
+
+    /**
+     * @return a snapshot of the current stats as name/value pairs
+     */
+    public Map<String, Object> getStats();
+}
@@ -0,0 +1,188 @@
+package org.gitlab4j.codereview.utils;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+
+/**
+ * Renders Velocity templates using a single, shared VelocityEngine. The engine is initialized once
+ * and each template is parsed once and held in the resource manager cache, rendering is done into
+ * a per-thread buffer that is reused between calls.
+ *
+ * Templates are loaded from the classpath. If a template directory is provided it is searched first,
+ * and templates in it are checked for modification at the given interval, a changed template is
+ * re-parsed and replaces the cached copy.
+ */
+public class TemplateService implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    // Buffers larger than this are not held on to between renders
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final VelocityEngine engine;
+    private final long initNanos;
+    private final ThreadLocal<StringWriter> buffers = ThreadLocal.withInitial(StringWriter::new);
+    private final com.sun.management.ThreadMXBean allocationMXBean;
+
+    private final AtomicLong numRenders = new AtomicLong();
+    private final AtomicLong totalRenderNanos = new AtomicLong();
+    private final AtomicLong maxRenderNanos = new AtomicLong();
+    private final AtomicLong firstRenderNanos = new AtomicLong(-1);
+    private final AtomicLong totalAllocatedBytes = new AtomicLong();
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+
+    /**
+     * Create a TemplateService that loads templates from the classpath only.
+     */
+    public TemplateService() {
+        this(null, 0);
+    }
+
+    /**
+     * Create a TemplateService.
+     *
+     * @param templateDir a directory searched for templates before the classpath, may be null
+     * @param modificationCheckInterval the number of seconds between checks for changed templates in templateDir
+     */
+    public TemplateService(String templateDir, int modificationCheckInterval) {
+
+        long startNanos = System.nanoTime();
+        engine = new VelocityEngine();
+        if (templateDir != null && new File(templateDir).isDirectory()) {
+            engine.setProperty("resource.loader", "file, class");
+            engine.setProperty("file.resource.loader.path", templateDir);
+            engine.setProperty("file.resource.loader.cache", "true");
+            engine.setProperty("file.resource.loader.modificationCheckInterval", Integer.toString(modificationCheckInterval));
+            logger.info("Loading templates from " + templateDir + ", modificationCheckInterval=" + modificationCheckInterval);
+        } else {
+            engine.setProperty("resource.loader", "class");
+        }
+
+        engine.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+        engine.setProperty("class.resource.loader.cache", "true");
+        engine.init();
+        initNanos = System.nanoTime() - startNanos;
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        } else {
+            allocationMXBean = null;
+        }
+    }
+
+    /**
+     * Merges the provided parameters with the named template, returning the results as a String.
+     *
+     * @param templateName the name of the template, for example "/templates/code-review.vm"
+     * @param params the parameters to merge with the template
+     * @return the expanded template as a String
+     * @throws Exception if the template cannot be loaded or merged
+     */
+    public String render(String templateName, Map<String, Object> params) throws Exception {
+
+        long startAllocated = getAllocatedBytes();
+        long startNanos = System.nanoTime();
+
+        Template template = engine.getTemplate(templateName);
+        StringWriter writer = getBuffer();
+        template.merge(new VelocityContext(params), writer);
+        String result = writer.toString();
+
+        recordRender(startNanos, startAllocated);
+        return (result);
+    }
+
+    /**
+     * Reads a Velocity template, merges the parameters, returning the results as a String. The template
+     * is parsed on every call, use {@link #render(String, Map)} for templates that are used repeatedly.
+     *
+     * @param reader the Reader to read the template from
+     * @param params the parameters to merge with the template
+     * @return the expanded template as a String
+     */
+    public String evaluate(Reader reader, Map<String, Object> params) {
+
+        StringWriter writer = getBuffer();
+        engine.evaluate(new VelocityContext(params), writer, "TemplateService", reader);
+        return (writer.toString());
+    }
+
+    /**
+     * @return the histogram of the time taken by {@link #render(String, Map)}
+     */
+    public LatencyHistogram getRenderLatency() {
+        return (renderLatency);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("template-service");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        long renders = numRenders.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("initMillis", initNanos / 1000000.0);
+        stats.put("firstRenderMillis", firstRenderNanos.get() < 0 ? 0.0 : firstRenderNanos.get() / 1000000.0);
+        stats.put("renders", renders);
+        stats.put("avgRenderMillis", renders > 0 ? totalRenderNanos.get() / renders / 1000000.0 : 0.0);
+        stats.put("maxRenderMillis", maxRenderNanos.get() / 1000000.0);
+        if (allocationMXBean != null) {
+            stats.put("avgAllocatedBytes", renders > 0 ? totalAllocatedBytes.get() / renders : 0);
+        }
+
+        return (stats);
+    }
+
+    private StringWriter getBuffer() {
+
+        StringWriter writer = buffers.get();
+        if (writer.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            writer = new StringWriter();
+            buffers.set(writer);
+        } else {
+            writer.getBuffer().setLength(0);
+        }
+
+        return (writer);
+    }
+
+    private long getAllocatedBytes() {
+        return (allocationMXBean != null ? allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0);
+    }
+
+    private void recordRender(long startNanos, long startAllocated) {
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        firstRenderNanos.compareAndSet(-1, elapsedNanos);
+        numRenders.incrementAndGet();
+        totalRenderNanos.addAndGet(elapsedNanos);
+        renderLatency.record(elapsedNanos);
+        if (allocationMXBean != null) {
+            totalAllocatedBytes.addAndGet(getAllocatedBytes() - startAllocated);
+        }
+
+        long max;
+        while (elapsedNanos > (max = maxRenderNanos.get())) {
+            if (maxRenderNanos.compareAndSet(max, elapsedNanos)) {
+                break;
+            }
+        }
+    }
+}
@@ -1,58 +1,45 @@
 package org.gitlab4j.codereview.utils;
 
 import java.io.Reader;
-import java.io.StringWriter;
 import java.util.Map;
 
-import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-
 public class VelocityUtils {
 
+    /**
+     * Holds the shared TemplateService, it is created on first use so the VelocityEngine is only initialized once.
+     */
+    private static class TemplateServiceHolder {
+        private static final TemplateService INSTANCE = new TemplateService();
+    }
+
+    /**
+     * @return the shared TemplateService used by the static methods of this class
+     */
+    public static TemplateService getTemplateService() {
+        return (TemplateServiceHolder.INSTANCE);
+    }
+
     /**
      * Merges the provided parameters with a Velocity template, returning the results as a String.
-     * 
+     *
      * @param template
      * @param params
      * @return the expanded Velocity template as a String
      * @throws Exception
      */
     public static String getTextBody(String template, Map<String, Object> params) throws Exception {
-
-        VelocityEngine ve = new VelocityEngine();
-        ve.setProperty("resource.loader", "class");
-        ve.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
-        ve.init();
-
-        StringWriter sw = new StringWriter();
-        VelocityContext context = new VelocityContext(params);
-
-        Template tplt = ve.getTemplate(template);
-        tplt.merge(context, sw);
-
-        return sw.toString();
+        return (getTemplateService().render(template, params));
     }
 
     /**
      * Reads a Velocity template, merges the parameters, returning the results as a String.
-     * 
+     *
      * @param reader
      * @param params
      * @return the expanded Velocity template as a String
      * @throws Exception
      */
     public static String getTextBody(Reader reader, Map<String, Object> params) throws Exception {
-
-        VelocityEngine ve = new VelocityEngine();
-        ve.setProperty("resource.loader", "class");
-        ve.setProperty("class.resource.loader.class", "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
-        ve.init();
-
-        StringWriter sw = new StringWriter();
-        VelocityContext context = new VelocityContext(params);
-        ve.evaluate(context, sw, "TemplateService", reader);
-
-        return sw.toString();
+        return (getTemplateService().evaluate(reader, params));
     }
 }
@@ -0,0 +1,528 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.api.utils.JacksonJson;
+import org.gitlab4j.api.webhook.Event;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An append-only, memory-mapped journal of received webhook events. Every event is appended and
+ * forced to disk before the webhook request is acknowledged, and marked as done once the listeners
+ * have processed it. Events that were never marked as done are returned by {@link #open()} so they
+ * can be replayed when the server restarts.
+ *
+ * The journal is made up of fixed size segment files. Appends are made durable using group commit,
+ * a single committer thread forces the mapped segments to disk and releases all the appenders whose
+ * records were covered by that force, so the cost of the fsync is shared by every event in a burst.
+ *
+ * Each record is laid out as follows:
+ * <pre>
+ *   int  length of the payload (0 marks the end of the records in a segment)
+ *   byte state (PENDING or DONE)
+ *   long sequence number
+ *   int  CRC32 of the payload
+ *   byte[length] the event as JSON
+ * </pre>
+ *
+ * Marking an entry as done is not forced to disk, if the server fails before the next commit the
+ * entry will be replayed, so listeners must tolerate seeing an event more than once.
+ */
+public class EventJournal implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    /** The position returned for events that are not journaled. */
+    public static final long NO_POSITION = -1L;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4;
+    private static final int STATE_OFFSET = 4;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long commitDelayMillis;
+    private final ObjectMapper objectMapper;
+
+    private final Object writeLock = new Object();
+    private final Object commitLock = new Object();
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private Set<Segment> dirtySegments = new HashSet<Segment>();
+    private Segment currentSegment;
+    private volatile long lastSequence;
+    private long committedSequence;
+    private volatile boolean closed;
+    private Thread committer;
+
+    private final AtomicLong numAppended = new AtomicLong();
+    private final AtomicLong numDone = new AtomicLong();
+    private final AtomicLong numReplayed = new AtomicLong();
+    private final AtomicLong numCommits = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+
+    /**
+     * Create an EventJournal.
+     *
+     * @param directory the directory holding the journal segment files
+     * @param segmentSize the size in bytes of each segment file
+     * @param commitDelayMillis the time the committer waits to gather more appends before forcing, 0 to force right away
+     */
+    public EventJournal(File directory, int segmentSize, long commitDelayMillis) {
+
+        if (segmentSize < HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("segmentSize is too small");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitDelayMillis = commitDelayMillis;
+        this.objectMapper = new JacksonJson().getObjectMapper();
+    }
+
+    /**
+     * Opens the journal, recovering any events that were not marked as done and starting the committer thread.
+     * Appends always go to a new segment, so a record torn by a crash is never written over.
+     *
+     * @return the list of unfinished entries in the order they were received
+     * @throws IOException if the journal cannot be read or created
+     */
+    public List<Entry> open() throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory: " + directory.getAbsolutePath());
+        }
+
+        List<Entry> pendingEntries = new ArrayList<Entry>();
+        int lastSegmentNumber = 0;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        Arrays.sort(files);
+        for (File file : files) {
+
+            int segmentNumber = getSegmentNumber(file);
+            lastSegmentNumber = Math.max(lastSegmentNumber, segmentNumber);
+
+            Segment segment = new Segment(segmentNumber, file);
+            List<Entry> entries = segment.recover();
+            if (entries.isEmpty()) {
+                segment.delete();
+            } else {
+                segments.put(segmentNumber, segment);
+                pendingEntries.addAll(entries);
+            }
+        }
+
+        for (Entry entry : pendingEntries) {
+            lastSequence = Math.max(lastSequence, entry.sequence);
+        }
+
+        committedSequence = lastSequence;
+        currentSegment = newSegment(lastSegmentNumber + 1);
+
+        committer = new Thread(this::runCommitter, "event-journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+
+        numReplayed.addAndGet(pendingEntries.size());
+        logger.info("Opened event journal, directory=" + directory.getAbsolutePath() + ", pendingEvents=" + pendingEntries.size());
+        return (pendingEntries);
+    }
+
+    /**
+     * Appends the event to the journal, returning once the record has been forced to disk.
+     *
+     * @param event the event to append
+     * @return the position of the record, used to mark it as done
+     * @throws IOException if the event could not be made durable
+     */
+    public long append(Event event) throws IOException {
+
+        byte[] payload = objectMapper.writeValueAsBytes(event);
+        if (HEADER_SIZE + payload.length > segmentSize - 4) {
+            throw new IOException("Event is too large for the journal, size=" + payload.length);
+        }
+
+        long sequence;
+        long position;
+        synchronized (writeLock) {
+
+            if (closed) {
+                throw new IOException("The event journal is closed");
+            }
+
+            if (!currentSegment.hasRoomFor(payload.length)) {
+                rollSegment();
+            }
+
+            sequence = lastSequence + 1;
+            position = currentSegment.write(sequence, payload);
+            dirtySegments.add(currentSegment);
+            lastSequence = sequence;
+        }
+
+        numAppended.incrementAndGet();
+        awaitCommit(sequence);
+        return (position);
+    }
+
+    /**
+     * Marks the record at the specified position as done so that it will not be replayed. Segments that
+     * no longer contain any pending records are deleted.
+     *
+     * @param position the position returned by {@link #append(Event)} or held by a replayed {@link Entry}
+     */
+    public void markDone(long position) {
+
+        if (position == NO_POSITION) {
+            return;
+        }
+
+        int segmentNumber = (int) (position >>> 32);
+        int offset = (int) position;
+        synchronized (writeLock) {
+
+            Segment segment = segments.get(segmentNumber);
+            if (segment == null || !segment.markDone(offset)) {
+                return;
+            }
+
+            numDone.incrementAndGet();
+            if (segment != currentSegment && segment.numPending == 0) {
+                segments.remove(segmentNumber);
+                dirtySegments.remove(segment);
+                segment.delete();
+            }
+        }
+    }
+
+    /**
+     * Stops the committer thread after forcing any outstanding appends to disk.
+     */
+    public void close() {
+
+        synchronized (commitLock) {
+            closed = true;
+            commitLock.notifyAll();
+        }
+
+        if (committer != null) {
+            try {
+                committer.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * @return the number of records that have not been marked as done
+     */
+    public int getNumPending() {
+
+        int numPending = 0;
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                numPending += segment.numPending;
+            }
+        }
+
+        return (numPending);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("event-journal");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        int numSegments;
+        synchronized (writeLock) {
+            numSegments = segments.size();
+        }
+
+        long commits = numCommits.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("appended", numAppended.get());
+        stats.put("done", numDone.get());
+        stats.put("replayed", numReplayed.get());
+        stats.put("pending", getNumPending());
+        stats.put("segments", numSegments);
+        stats.put("commits", commits);
+        stats.put("avgEventsPerCommit", commits > 0 ? (double) numAppended.get() / commits : 0.0);
+        stats.put("avgCommitMillis", commits > 0 ? totalCommitNanos.get() / commits / 1000000.0 : 0.0);
+        return (stats);
+    }
+
+    private void awaitCommit(long sequence) throws IOException {
+
+        synchronized (commitLock) {
+
+            commitLock.notifyAll();
+            while (committedSequence < sequence) {
+
+                if (closed) {
+                    throw new IOException("The event journal was closed before the event was committed");
+                }
+
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the event journal commit");
+                }
+            }
+        }
+    }
+
+    /**
+     * The committer loop, each pass forces every segment written to since the previous pass and then
+     * releases all the appenders up to the last sequence number that was written before the force.
+     */
+    private void runCommitter() {
+
+        while (true) {
+
+            synchronized (commitLock) {
+                while (!closed && committedSequence >= lastSequence) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+
+                if (closed && committedSequence >= lastSequence) {
+                    return;
+                }
+            }
+
+            if (commitDelayMillis > 0) {
+                try {
+                    Thread.sleep(commitDelayMillis);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+
+            long targetSequence;
+            Set<Segment> segmentsToForce;
+            synchronized (writeLock) {
+                targetSequence = lastSequence;
+                segmentsToForce = dirtySegments;
+                dirtySegments = new HashSet<Segment>();
+            }
+
+            long startNanos = System.nanoTime();
+            for (Segment segment : segmentsToForce) {
+                segment.buffer.force();
+            }
+
+            totalCommitNanos.addAndGet(System.nanoTime() - startNanos);
+            numCommits.incrementAndGet();
+
+            synchronized (commitLock) {
+                committedSequence = targetSequence;
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+
+        Segment previousSegment = currentSegment;
+        currentSegment = newSegment(previousSegment.number + 1);
+        if (previousSegment.numPending == 0) {
+            segments.remove(previousSegment.number);
+            previousSegment.delete();
+        }
+    }
+
+    private Segment newSegment(int segmentNumber) throws IOException {
+        File file = new File(directory, String.format("%s%010d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        Segment segment = new Segment(segmentNumber, file);
+        segment.create();
+        segments.put(segmentNumber, segment);
+        return (segment);
+    }
+
+    private static int getSegmentNumber(File file) {
+        String name = file.getName();
+        return (Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return ((int) crc.getValue());
+    }
+
+    /**
+     * A journal entry recovered at startup that had not been marked as done.
+     */
+    public static class Entry {
+
+        private final long position;
+        private final long sequence;
+        private final Event event;
+
+        Entry(long position, long sequence, Event event) {
+            this.position = position;
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        public long getPosition() {
+            return (position);
+        }
+
+        public long getSequence() {
+            return (sequence);
+        }
+
+        public Event getEvent() {
+            return (event);
+        }
+    }
+
+    private class Segment {
+
+        private final int number;
+        private final File file;
+        private MappedByteBuffer buffer;
+        private int writeOffset;
+        private int numPending;
+
+        Segment(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+
+        void create() throws IOException {
+            map(segmentSize);
+            writeOffset = 0;
+        }
+
+        /**
+         * Scans the segment, stopping at the first empty or corrupt record, and returns the pending entries.
+         */
+        List<Entry> recover() throws IOException {
+
+            map((int) file.length());
+            List<Entry> entries = new ArrayList<Entry>();
+            int offset = 0;
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+
+                byte state = buffer.get(offset + STATE_OFFSET);
+                long sequence = buffer.getLong(offset + 5);
+                int expectedCrc = buffer.getInt(offset + 13);
+                byte[] payload = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    payload[i] = buffer.get(offset + HEADER_SIZE + i);
+                }
+
+                if (crc(payload) != expectedCrc) {
+                    logger.warn("Found a corrupt journal record, segment=" + file.getName() + ", offset=" + offset);
+                    break;
+                }
+
+                if (state == PENDING) {
+                    try {
+                        Event event = objectMapper.readValue(payload, Event.class);
+                        entries.add(new Entry(((long) number << 32) | offset, sequence, event));
+                        numPending++;
+                    } catch (IOException ioe) {
+                        logger.warn("Could not read journaled event, segment=" + file.getName() + ", offset=" + offset + ", error=" + ioe.getMessage());
+                    }
+                }
+
+                offset += HEADER_SIZE + length;
+            }
+
+            writeOffset = offset;
+            return (entries);
+        }
+
+        boolean hasRoomFor(int payloadLength) {
+            // Always leave room for the 0 length end marker
+            return (writeOffset + HEADER_SIZE + payloadLength + 4 <= buffer.capacity());
+        }
+
+        long write(long sequence, byte[] payload) {
+
+            int offset = writeOffset;
+            buffer.put(offset + STATE_OFFSET, PENDING);
+            buffer.putLong(offset + 5, sequence);
+            buffer.putInt(offset + 13, crc(payload));
+            for (int i = 0; i < payload.length; i++) {
+                buffer.put(offset + HEADER_SIZE + i, payload[i]);
+            }
+
+            // The length is written last so a partially written record is never seen as valid
+            buffer.putInt(offset, payload.length);
+            writeOffset = offset + HEADER_SIZE + payload.length;
+            numPending++;
+            return (((long) number << 32) | offset);
+        }
+
+        boolean markDone(int offset) {
+
+            if (offset < 0 || offset >= writeOffset || buffer.get(offset + STATE_OFFSET) != PENDING) {
+                return (false);
+            }
+
+            buffer.put(offset + STATE_OFFSET, DONE);
+            numPending--;
+            return (true);
+        }
+
+        void delete() {
+            // The mapping stays valid until the buffer is collected, so a concurrent force() is harmless
+            if (!file.delete()) {
+                logger.warn("Could not delete journal segment, file=" + file.getAbsolutePath());
+            }
+        }
+
+        private void map(int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gitlab4j.api.utils.JacksonJson;
+import org.gitlab4j.api.webhook.Event;
+import org.gitlab4j.api.webhook.MergeRequestEvent;
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads just enough of a webhook payload to decide whether the event needs to be processed. The payload
+ * is scanned with the Jackson streaming parser for the object_kind and the ID of the project, skipping
+ * over everything else, and the scan stops as soon as both are known. GitLab sends these fields ahead of
+ * the commits of a push, so an event from a project that is not in Simple-CR, or of a kind we don't handle,
+ * is dropped without reading the commits or building any of the event objects.
+ *
+ * Only the events that pass are bound to an Event with the same ObjectMapper configuration that Jersey uses.
+ */
+public class EventPreParser implements StatsProvider {
+
+    public static final String IGNORED_UNHANDLED_KIND = "unhandledKind";
+    public static final String IGNORED_NOT_ENROLLED = "notEnrolled";
+
+    private final ProjectConfigRegistry projectConfigRegistry;
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    private final AtomicLong numEvents = new AtomicLong();
+    private final AtomicLong numMalformed = new AtomicLong();
+    private final AtomicLong numUnhandledKind = new AtomicLong();
+    private final AtomicLong numNotEnrolled = new AtomicLong();
+    private final AtomicLong numBound = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesScanned = new AtomicLong();
+    private final LatencyHistogram preParseLatency = new LatencyHistogram();
+    private final LatencyHistogram bindLatency = new LatencyHistogram();
+
+    /**
+     * Create an EventPreParser.
+     *
+     * @param projectConfigRegistry used to check that the project of an event is in Simple-CR
+     */
+    public EventPreParser(ProjectConfigRegistry projectConfigRegistry) {
+        this.projectConfigRegistry = projectConfigRegistry;
+        this.objectMapper = new JacksonJson().getObjectMapper();
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Scans the payload for the object_kind and project ID, and decides if the event should be ignored.
+     *
+     * @param payload the webhook payload
+     * @return the EventSummary of the payload
+     * @throws IOException if the payload is not valid JSON
+     */
+    public EventSummary preParse(byte[] payload) throws IOException {
+
+        numEvents.incrementAndGet();
+        bytesReceived.addAndGet(payload.length);
+        long startNanos = System.nanoTime();
+        EventSummary summary;
+        try {
+            summary = scan(jsonFactory, payload);
+        } catch (IOException ioe) {
+            numMalformed.incrementAndGet();
+            throw (ioe);
+        } finally {
+            preParseLatency.record(System.nanoTime() - startNanos);
+        }
+
+        bytesScanned.addAndGet(summary.bytesScanned);
+        if (!PushEvent.OBJECT_KIND.equals(summary.objectKind) && !MergeRequestEvent.OBJECT_KIND.equals(summary.objectKind)) {
+            summary.ignoreReason = IGNORED_UNHANDLED_KIND;
+            numUnhandledKind.incrementAndGet();
+        } else if (summary.projectId == null || projectConfigRegistry.get(summary.projectId) == null) {
+            summary.ignoreReason = IGNORED_NOT_ENROLLED;
+            numNotEnrolled.incrementAndGet();
+        }
+
+        return (summary);
+    }
+
+    /**
+     * Binds the whole payload to an Event.
+     *
+     * @param payload the webhook payload
+     * @return the Event
+     * @throws IOException if the payload could not be bound
+     */
+    public Event bind(byte[] payload) throws IOException {
+
+        long startNanos = System.nanoTime();
+        try {
+            Event event = objectMapper.readValue(payload, Event.class);
+            numBound.incrementAndGet();
+            return (event);
+        } catch (IOException ioe) {
+            numMalformed.incrementAndGet();
+            throw (ioe);
+        } finally {
+            bindLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Scans the payload for the object_kind and the project ID. For a push the project ID is the top level
+     * project_id, for a merge request it is the target_project_id of the object_attributes, the same IDs
+     * that CodeReviewWebHookListener uses.
+     *
+     * @param jsonFactory the JsonFactory to create the parser with
+     * @param payload the webhook payload
+     * @return the EventSummary of the payload
+     * @throws IOException if the payload is not valid JSON
+     */
+    public static EventSummary scan(JsonFactory jsonFactory, byte[] payload) throws IOException {
+
+        EventSummary summary = new EventSummary();
+        Integer pushProjectId = null;
+        Integer mergeRequestProjectId = null;
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                summary.bytesScanned = parser.getCurrentLocation().getByteOffset();
+                return (summary);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("object_kind".equals(name) && token == JsonToken.VALUE_STRING) {
+                    summary.objectKind = parser.getText();
+                } else if ("project_id".equals(name) && token == JsonToken.VALUE_NUMBER_INT) {
+                    pushProjectId = parser.getIntValue();
+                } else if ("object_attributes".equals(name) && token == JsonToken.START_OBJECT) {
+                    mergeRequestProjectId = scanObjectForInt(parser, "target_project_id");
+                } else {
+                    parser.skipChildren();
+                }
+
+                if (summary.objectKind != null) {
+
+                    if (PushEvent.OBJECT_KIND.equals(summary.objectKind)) {
+                        summary.projectId = pushProjectId;
+                    } else if (MergeRequestEvent.OBJECT_KIND.equals(summary.objectKind)) {
+                        summary.projectId = mergeRequestProjectId;
+                    } else {
+                        break;
+                    }
+
+                    if (summary.projectId != null) {
+                        break;
+                    }
+                }
+            }
+
+            summary.bytesScanned = parser.getCurrentLocation().getByteOffset();
+        }
+
+        return (summary);
+    }
+
+    /**
+     * Reads the fields of the current object looking for an int field, the rest of the object is skipped.
+     */
+    private static Integer scanObjectForInt(JsonParser parser, String fieldName) throws IOException {
+
+        Integer value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (value == null && fieldName.equals(name) && token == JsonToken.VALUE_NUMBER_INT) {
+                value = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return (value);
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("event-pre-parser");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> ignored = new LinkedHashMap<String, Object>();
+        ignored.put(IGNORED_UNHANDLED_KIND, numUnhandledKind.get());
+        ignored.put(IGNORED_NOT_ENROLLED, numNotEnrolled.get());
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("events", numEvents.get());
+        stats.put("malformed", numMalformed.get());
+        stats.put("ignored", ignored);
+        stats.put("bound", numBound.get());
+        stats.put("bytesReceived", bytesReceived.get());
+        stats.put("bytesScanned", bytesScanned.get());
+        stats.put("preParseLatency", preParseLatency.getStats());
+        stats.put("bindLatency", bindLatency.getStats());
+        return (stats);
+    }
+
+    /**
+     * What the pre-parse found out about a payload.
+     */
+    public static class EventSummary {
+
+        private String objectKind;
+        private Integer projectId;
+        private long bytesScanned;
+        private String ignoreReason;
+
+        /**
+         * @return the object_kind of the event, null if it was not found
+         */
+        public String getObjectKind() {
+            return (objectKind);
+        }
+
+        /**
+         * @return the ID of the project the event is for, null if it was not found
+         */
+        public Integer getProjectId() {
+            return (projectId);
+        }
+
+        /**
+         * @return the number of bytes of the payload read before the scan stopped
+         */
+        public long getBytesScanned() {
+            return (bytesScanned);
+        }
+
+        /**
+         * @return the reason the event should be ignored, null if it should be processed
+         */
+        public String getIgnoreReason() {
+            return (ignoreReason);
+        }
+    }
+}
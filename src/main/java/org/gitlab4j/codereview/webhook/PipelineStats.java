@@ -0,0 +1,121 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * Counts the events that pass through a staged processing pipeline. The time spent in each stage is
+ * recorded in a LatencyHistogram and each rejection is counted by its reason, so that it can be seen
+ * where events are dropped and which stages the time is going to.
+ *
+ * The stages and rejection reasons are fixed when the PipelineStats is created, they are reported in
+ * the order they were provided.
+ */
+public class PipelineStats implements StatsProvider {
+
+    private final String name;
+    private final Map<String, LatencyHistogram> stages = new LinkedHashMap<String, LatencyHistogram>();
+    private final Map<String, AtomicLong> rejections = new LinkedHashMap<String, AtomicLong>();
+    private final AtomicLong numEvents = new AtomicLong();
+    private final AtomicLong numAccepted = new AtomicLong();
+
+    /**
+     * Create a PipelineStats.
+     *
+     * @param name the name the stats are reported under
+     * @param stageNames the names of the pipeline stages
+     * @param reasons the reasons an event can be rejected for
+     */
+    public PipelineStats(String name, String[] stageNames, String[] reasons) {
+
+        this.name = name;
+        for (String stageName : stageNames) {
+            stages.put(stageName, new LatencyHistogram());
+        }
+
+        for (String reason : reasons) {
+            rejections.put(reason, new AtomicLong());
+        }
+    }
+
+    /**
+     * Counts an event entering the pipeline.
+     */
+    public void received() {
+        numEvents.incrementAndGet();
+    }
+
+    /**
+     * Counts an event that made it through all of the stages.
+     */
+    public void accepted() {
+        numAccepted.incrementAndGet();
+    }
+
+    /**
+     * Counts an event rejected for the specified reason.
+     *
+     * @param reason the reason the event was rejected, one of the reasons provided to the constructor
+     */
+    public void rejected(String reason) {
+        rejections.get(reason).incrementAndGet();
+    }
+
+    /**
+     * Records the time an event spent in a stage.
+     *
+     * @param stageName the name of the stage
+     * @param startNanos the System.nanoTime() at the start of the stage
+     * @return the System.nanoTime() at the end of the stage, so it can be used as the start of the next one
+     */
+    public long stageDone(String stageName, long startNanos) {
+
+        long nowNanos = System.nanoTime();
+        stages.get(stageName).record(nowNanos - startNanos);
+        return (nowNanos);
+    }
+
+    /**
+     * Registers the pipeline counters and the stage histograms, the metric names are made from the stats name,
+     * for example simplecr_push_pipeline_stage_seconds.
+     *
+     * @param registry the MetricsRegistry to register with
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+
+        String prefix = "simplecr_" + name.replace('-', '_');
+        registry.counter(prefix + "_events_total", "Events received by the " + name, numEvents::get);
+        registry.counter(prefix + "_accepted_total", "Events that made it through the " + name, numAccepted::get);
+        rejections.forEach((reason, count) ->
+                registry.counter(prefix + "_rejected_total", "Events rejected by the " + name + " by reason", count::get, "reason", reason));
+        stages.forEach((stageName, histogram) ->
+                registry.histogram(prefix + "_stage_seconds", "Time spent in each stage of the " + name, histogram, "stage", stageName));
+    }
+
+    @Override
+    public String getStatsName() {
+        return (name);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> rejected = new LinkedHashMap<String, Object>();
+        rejections.forEach((reason, count) -> rejected.put(reason, count.get()));
+
+        Map<String, Object> stageStats = new LinkedHashMap<String, Object>();
+        stages.forEach((stageName, histogram) -> stageStats.put(stageName, histogram.getStats()));
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("events", numEvents.get());
+        stats.put("accepted", numAccepted.get());
+        stats.put("rejected", rejected);
+        stats.put("stages", stageStats);
+        return (stats);
+    }
+}
@@ -0,0 +1,299 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * Collapses the pushes of a branch that arrive in quick succession into a single push. The first push
+ * from a user to a branch of a project opens a window, the pushes that arrive for the same project, branch
+ * and user while the window is open are merged into it, and when the window closes the merged push is
+ * handed to the WebHookDispatcher. The merged push keeps the before SHA of the first push and carries the
+ * after SHA of the latest one, so the listener sees one push covering all of the commits.
+ *
+ * The window is fixed from the first push, so a push is never held for longer than the window however
+ * often the branch is pushed. The window size comes from the project's ProjectConfig, falling back to the
+ * server default when the project does not set one, a window of 0 passes the pushes straight through.
+ *
+ * When a push is merged into a pending one its journal entry is marked as done, so after a crash only the
+ * latest push of a window is replayed.
+ *
+ * The pushes have already been acknowledged, so GitLab will not deliver them again. If the dispatcher's queue
+ * is full when a window closes, the journal entry of the merged push is left pending and the push is put back
+ * and retried with a backoff, pushes that arrive meanwhile are merged into it. Once the coalescer is shut down
+ * a push that can't be queued is processed on the calling thread.
+ */
+public class PushCoalescer implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    private final WebHookDispatcher dispatcher;
+    private final EventJournal eventJournal;
+    private final ProjectConfigRegistry projectConfigRegistry;
+    private final int defaultWindowSeconds;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, PendingPush> pendingPushes = new ConcurrentHashMap<String, PendingPush>();
+
+    private final AtomicLong numOffered = new AtomicLong();
+    private final AtomicLong numPassedThrough = new AtomicLong();
+    private final AtomicLong numCoalesced = new AtomicLong();
+    private final AtomicLong numFlushed = new AtomicLong();
+    private final AtomicLong numRetried = new AtomicLong();
+    private final AtomicLong numProcessedInline = new AtomicLong();
+
+    /**
+     * Create a PushCoalescer.
+     *
+     * @param dispatcher the WebHookDispatcher the pushes are handed to
+     * @param eventJournal the EventJournal the pushes were journaled to, may be null
+     * @param projectConfigRegistry used to look up the window of each project
+     * @param defaultWindowSeconds the window used for projects that do not set their own
+     */
+    public PushCoalescer(WebHookDispatcher dispatcher, EventJournal eventJournal,
+            ProjectConfigRegistry projectConfigRegistry, int defaultWindowSeconds) {
+
+        this.dispatcher = dispatcher;
+        this.eventJournal = eventJournal;
+        this.projectConfigRegistry = projectConfigRegistry;
+        this.defaultWindowSeconds = defaultWindowSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-coalescer");
+            thread.setDaemon(true);
+            return (thread);
+        });
+    }
+
+    /**
+     * Get the coalesce window of the specified project.
+     *
+     * @param projectId the ID of the project
+     * @return the window in seconds, 0 if pushes to the project are not coalesced
+     */
+    public int getWindowSeconds(Integer projectId) {
+
+        ProjectConfig projectConfig = (projectId != null ? projectConfigRegistry.get(projectId) : null);
+        if (projectConfig == null || !projectConfig.getEnabled()) {
+            return (0);
+        }
+
+        Integer windowSeconds = projectConfig.getPushCoalesceWindow();
+        return (windowSeconds != null ? windowSeconds : defaultWindowSeconds);
+    }
+
+    /**
+     * Offer a push for coalescing. If the project has no window, or the push can't be keyed, it is
+     * not taken and the caller should dispatch it as usual.
+     *
+     * @param event the push event
+     * @param journalPosition the position of the event in the EventJournal
+     * @return true if the push was taken, false if the caller should dispatch it
+     */
+    public boolean offer(PushEvent event, long journalPosition) {
+
+        numOffered.incrementAndGet();
+        int windowSeconds = getWindowSeconds(event.getProjectId());
+        if (windowSeconds <= 0 || event.getUserId() == null || event.getRef() == null) {
+            numPassedThrough.incrementAndGet();
+            return (false);
+        }
+
+        String key = event.getProjectId() + ":" + event.getUserId() + ":" + event.getRef();
+        boolean[] opened = new boolean[1];
+        pendingPushes.compute(key, (k, pending) -> {
+
+            if (pending == null) {
+                opened[0] = true;
+                return (new PendingPush(event, journalPosition));
+            }
+
+            pending.merge(event, journalPosition);
+            return (pending);
+        });
+
+        if (opened[0]) {
+            try {
+                scheduler.schedule(() -> flush(key), windowSeconds, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // The scheduler has been shut down, push it through now
+                flush(key);
+            }
+        } else {
+            numCoalesced.incrementAndGet();
+        }
+
+        return (true);
+    }
+
+    /**
+     * @return the number of windows that are currently open
+     */
+    public int getPendingCount() {
+        return (pendingPushes.size());
+    }
+
+    /**
+     * Stops the timer and hands all of the pending pushes to the dispatcher without waiting for their
+     * windows to close, a push that the dispatcher can't queue is processed on the calling thread. Must be
+     * called before the dispatcher is shut down.
+     */
+    public void shutdown() {
+
+        scheduler.shutdownNow();
+        if (!pendingPushes.isEmpty()) {
+            logger.info("Flushing coalesced pushes, numPending=" + pendingPushes.size());
+        }
+
+        // A flush that was running on the timer thread may put its push back after the keys were listed
+        while (!pendingPushes.isEmpty()) {
+            for (String key : new ArrayList<String>(pendingPushes.keySet())) {
+                flush(key);
+            }
+        }
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("push-coalescer");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("defaultWindowSeconds", defaultWindowSeconds);
+        stats.put("pending", pendingPushes.size());
+        stats.put("offered", numOffered.get());
+        stats.put("passedThrough", numPassedThrough.get());
+        stats.put("coalesced", numCoalesced.get());
+        stats.put("flushed", numFlushed.get());
+        stats.put("retried", numRetried.get());
+        stats.put("processedInline", numProcessedInline.get());
+        return (stats);
+    }
+
+    private void flush(String key) {
+
+        PendingPush pending = pendingPushes.remove(key);
+        if (pending == null) {
+            return;
+        }
+
+        numFlushed.incrementAndGet();
+        if (dispatcher.submitAcknowledged(pending.event, pending.journalPosition)) {
+            if (pending.numPushes > 1) {
+                logger.info("Dispatching coalesced push, key=" + key + ", numPushes=" + pending.numPushes
+                        + ", before=" + pending.event.getBefore() + ", after=" + pending.event.getAfter());
+            }
+
+            return;
+        }
+
+        if (!scheduler.isShutdown() && requeue(key, pending)) {
+            return;
+        }
+
+        // Nothing is left to retry the push, so process it now rather than lose it
+        numProcessedInline.incrementAndGet();
+        logger.warn("Webhook queue is saturated, processing coalesced push inline, key=" + key + ", numPushes=" + pending.numPushes);
+        dispatcher.process(pending.event, pending.journalPosition);
+    }
+
+    /**
+     * Puts a push that the dispatcher rejected back to be flushed again. If a new window has been opened for the
+     * key the push is merged into it, otherwise a retry is scheduled with a backoff.
+     *
+     * @param key the key of the push
+     * @param pending the push that was rejected
+     * @return true if the push will be flushed later, false if it must be processed now
+     */
+    private boolean requeue(String key, PendingPush pending) {
+
+        boolean[] merged = new boolean[1];
+        pendingPushes.compute(key, (k, newer) -> {
+
+            if (newer == null) {
+                return (pending);
+            }
+
+            newer.mergeEarlier(pending);
+            merged[0] = true;
+            return (newer);
+        });
+
+        numRetried.incrementAndGet();
+        if (merged[0]) {
+            return (true);
+        }
+
+        long delayMillis = Math.min(RETRY_DELAY_MILLIS << Math.min(pending.numRetries, 10), MAX_RETRY_DELAY_MILLIS);
+        pending.numRetries++;
+        logger.warn("Webhook queue is saturated, retrying coalesced push, key=" + key + ", numPushes=" + pending.numPushes
+                + ", delayMillis=" + delayMillis);
+        try {
+            scheduler.schedule(() -> flush(key), delayMillis, TimeUnit.MILLISECONDS);
+            return (true);
+        } catch (RejectedExecutionException ree) {
+            // The scheduler was shut down after the check, unless shutdown() has already taken the push it is ours to process
+            return (!pendingPushes.remove(key, pending));
+        }
+    }
+
+    /**
+     * A window that is open for a project, user and branch. Only modified inside ConcurrentHashMap.compute(),
+     * except for the retry count which is only used by the flush that owns the push.
+     */
+    private class PendingPush {
+
+        private String before;
+        private PushEvent event;
+        private long journalPosition;
+        private int numPushes;
+        private int numRetries;
+
+        PendingPush(PushEvent event, long journalPosition) {
+            this.before = event.getBefore();
+            this.event = event;
+            this.journalPosition = journalPosition;
+            this.numPushes = 1;
+        }
+
+        void merge(PushEvent newEvent, long newJournalPosition) {
+
+            if (eventJournal != null) {
+                eventJournal.markDone(journalPosition);
+            }
+
+            newEvent.setBefore(before);
+            event = newEvent;
+            journalPosition = newJournalPosition;
+            numPushes++;
+        }
+
+        void mergeEarlier(PendingPush earlier) {
+
+            if (eventJournal != null) {
+                eventJournal.markDone(earlier.journalPosition);
+            }
+
+            before = earlier.before;
+            event.setBefore(before);
+            numPushes += earlier.numPushes;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gitlab4j.api.webhook.Event;
+import org.gitlab4j.api.webhook.WebHookManager;
+import org.gitlab4j.codereview.utils.StatsProvider;
+
+/**
+ * This class decouples the receipt of a webhook event from its processing. Events are placed on a
+ * bounded queue and handed to the WebHookManager by a fixed size pool of worker threads, allowing the
+ * webhook request to be acknowledged without waiting on GitLab API calls, database access or SMTP.
+ *
+ * When the queue is full the event is rejected and the caller is expected to respond with a
+ * backpressure status so that GitLab retries the delivery.
+ *
+ * If an EventJournal is provided, journaled events are marked as done once they have been processed
+ * or rejected.
+ */
+public class WebHookDispatcher implements StatsProvider {
+
+    private static Logger logger = LogManager.getLogger();
+
+    private final WebHookManager webHookManager;
+    private final EventJournal eventJournal;
+    private final ThreadPoolExecutor executor;
+    private final int numWorkers;
+    private final int queueSize;
+
+    private final AtomicLong numAccepted = new AtomicLong();
+    private final AtomicLong numRejected = new AtomicLong();
+    private final AtomicLong numProcessed = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+    private final AtomicLong maxProcessingNanos = new AtomicLong();
+
+    public WebHookDispatcher(WebHookManager webHookManager, int numWorkers, int queueSize) {
+        this(webHookManager, null, numWorkers, queueSize);
+    }
+
+    public WebHookDispatcher(WebHookManager webHookManager, EventJournal eventJournal, int numWorkers, int queueSize) {
+
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("numWorkers must be greater than 0");
+        }
+
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be greater than 0");
+        }
+
+        this.webHookManager = webHookManager;
+        this.eventJournal = eventJournal;
+        this.numWorkers = numWorkers;
+        this.queueSize = queueSize;
+        this.executor = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue the event for processing by the worker pool.
+     *
+     * @param event the webhook event to process
+     * @return true if the event was queued, false if the queue is full or the dispatcher has been shut down
+     */
+    public boolean submit(Event event) {
+        return (submit(event, EventJournal.NO_POSITION));
+    }
+
+    /**
+     * Queue a journaled event for processing by the worker pool. If the event is rejected it is marked
+     * as done in the journal, it is up to GitLab to deliver it again.
+     *
+     * @param event the webhook event to process
+     * @param journalPosition the position of the event in the EventJournal
+     * @return true if the event was queued, false if the queue is full or the dispatcher has been shut down
+     */
+    public boolean submit(Event event, long journalPosition) {
+        return (submit(event, journalPosition, true));
+    }
+
+    /**
+     * Queue a journaled event that has already been acknowledged, so GitLab will not deliver it again. If the
+     * event is rejected its journal entry is left pending, it is up to the caller to submit it again later or
+     * to hand it to {@link #process(Event, long)}.
+     *
+     * @param event the webhook event to process
+     * @param journalPosition the position of the event in the EventJournal
+     * @return true if the event was queued, false if the queue is full or the dispatcher has been shut down
+     */
+    public boolean submitAcknowledged(Event event, long journalPosition) {
+        return (submit(event, journalPosition, false));
+    }
+
+    /**
+     * Process a journaled event on the calling thread, for an acknowledged event that could not be queued
+     * and can't wait to be submitted again.
+     *
+     * @param event the webhook event to process
+     * @param journalPosition the position of the event in the EventJournal
+     */
+    public void process(Event event, long journalPosition) {
+        new EventTask(event, journalPosition).run();
+    }
+
+    private boolean submit(Event event, long journalPosition, boolean markDoneOnReject) {
+
+        try {
+            executor.execute(new EventTask(event, journalPosition));
+            numAccepted.incrementAndGet();
+            return (true);
+        } catch (RejectedExecutionException ree) {
+            if (markDoneOnReject) {
+                markDone(journalPosition);
+            }
+
+            numRejected.incrementAndGet();
+            logger.warn("Webhook queue is saturated, rejected " + event.getObjectKind() + " event, queueDepth=" + getQueueDepth());
+            return (false);
+        }
+    }
+
+    /**
+     * Stops accepting new events and waits for the queued events to be processed.
+     *
+     * @param timeoutMillis the maximum amount of time to wait for the queue to drain
+     */
+    public void shutdown(long timeoutMillis) {
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out waiting for webhook queue to drain, queueDepth=" + getQueueDepth());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of events waiting to be processed
+     */
+    public int getQueueDepth() {
+        return (executor.getQueue().size());
+    }
+
+    @Override
+    public String getStatsName() {
+        return ("webhook-dispatcher");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        long processed = numProcessed.get() + numFailed.get();
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("workers", numWorkers);
+        stats.put("activeWorkers", executor.getActiveCount());
+        stats.put("queueSize", queueSize);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("accepted", numAccepted.get());
+        stats.put("rejected", numRejected.get());
+        stats.put("processed", numProcessed.get());
+        stats.put("failed", numFailed.get());
+        stats.put("avgWaitMillis", processed > 0 ? nanosToMillis(totalWaitNanos.get() / processed) : 0.0);
+        stats.put("maxWaitMillis", nanosToMillis(maxWaitNanos.get()));
+        stats.put("avgProcessingMillis", processed > 0 ? nanosToMillis(totalProcessingNanos.get() / processed) : 0.0);
+        stats.put("maxProcessingMillis", nanosToMillis(maxProcessingNanos.get()));
+        return (stats);
+    }
+
+    private void markDone(long journalPosition) {
+        if (eventJournal != null) {
+            eventJournal.markDone(journalPosition);
+        }
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return (nanos / 1000000.0);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Wraps an event so we can track how long it sat in the queue and how long it took to process.
+     */
+    private class EventTask implements Runnable {
+
+        private final Event event;
+        private final long journalPosition;
+        private final long queuedNanos;
+
+        EventTask(Event event, long journalPosition) {
+            this.event = event;
+            this.journalPosition = journalPosition;
+            this.queuedNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+
+            long startNanos = System.nanoTime();
+            long waitNanos = startNanos - queuedNanos;
+            totalWaitNanos.addAndGet(waitNanos);
+            updateMax(maxWaitNanos, waitNanos);
+
+            try {
+                webHookManager.handleEvent(event);
+                numProcessed.incrementAndGet();
+            } catch (Exception e) {
+                numFailed.incrementAndGet();
+                logger.error("Problem processing " + event.getObjectKind() + " event, error=" + e.getMessage(), e);
+            } finally {
+                markDone(journalPosition);
+                long processingNanos = System.nanoTime() - startNanos;
+                totalProcessingNanos.addAndGet(processingNanos);
+                updateMax(maxProcessingNanos, processingNanos);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return (new Thread(runnable, "webhook-worker-" + threadNumber.getAndIncrement()));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.gitlab4j.codereview.webhook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gitlab4j.codereview.metrics.Counter;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+
+/**
+ * Counts the webhook requests by event kind and by what was done with them. A counter is registered up front
+ * for every kind and outcome, so counting a request is two map lookups with existing keys and an increment.
+ */
+public class WebHookMetrics {
+
+    public static final String KIND_PUSH = "push";
+    public static final String KIND_MERGE_REQUEST = "merge_request";
+    public static final String KIND_ISSUE = "issue";
+    public static final String KIND_OTHER = "other";
+
+    public static final String IGNORED_UNHANDLED_KIND = "ignored_unhandled_kind";
+    public static final String IGNORED_NOT_ENROLLED = "ignored_not_enrolled";
+    public static final String INVALID = "invalid";
+    public static final String JOURNAL_FAILED = "journal_failed";
+    public static final String COALESCED = "coalesced";
+    public static final String QUEUED = "queued";
+    public static final String QUEUE_FULL = "queue_full";
+    public static final String PROCESSED = "processed";
+    public static final String FAILED = "failed";
+
+    private static final String[] KINDS = { KIND_PUSH, KIND_MERGE_REQUEST, KIND_ISSUE, KIND_OTHER };
+    private static final String[] OUTCOMES = { IGNORED_UNHANDLED_KIND, IGNORED_NOT_ENROLLED, INVALID, JOURNAL_FAILED,
+            COALESCED, QUEUED, QUEUE_FULL, PROCESSED, FAILED };
+
+    private final Map<String, Map<String, Counter>> counters = new HashMap<String, Map<String, Counter>>();
+
+    public WebHookMetrics(MetricsRegistry registry) {
+
+        for (String kind : KINDS) {
+            Map<String, Counter> kindCounters = new HashMap<String, Counter>();
+            for (String outcome : OUTCOMES) {
+                kindCounters.put(outcome, registry.counter("simplecr_webhook_events_total",
+                        "Webhook requests by event kind and outcome", "kind", kind, "outcome", outcome));
+            }
+
+            counters.put(kind, kindCounters);
+        }
+    }
+
+    /**
+     * Counts a webhook request.
+     *
+     * @param objectKind the object_kind of the event, kinds that are not tracked are counted as "other"
+     * @param outcome what was done with the event, one of the outcome constants
+     */
+    public void record(String objectKind, String outcome) {
+
+        Map<String, Counter> kindCounters = (objectKind != null ? counters.get(objectKind) : null);
+        if (kindCounters == null) {
+            kindCounters = counters.get(KIND_OTHER);
+        }
+
+        kindCounters.get(outcome).increment();
+    }
+}
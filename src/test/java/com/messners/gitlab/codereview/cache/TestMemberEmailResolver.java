@@ -0,0 +1,174 @@
+package com.messners.gitlab.codereview.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Member;
+import org.gitlab4j.api.models.User;
+import org.gitlab4j.codereview.cache.GitLabApiCache;
+import org.gitlab4j.codereview.cache.MemberEmailResolver;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestMemberEmailResolver {
+
+    private MemberEmailResolver resolver;
+
+    @After
+    public void shutdown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void testUsersAreLookedUpInParallel() throws Exception {
+
+        // Each lookup waits for all four to have started, so they only complete if they run concurrently
+        CountDownLatch allStarted = new CountDownLatch(4);
+        FakeGitLabApiCache gitlabApiCache = new FakeGitLabApiCache() {
+            @Override
+            public User getUser(int userId) throws GitLabApiException {
+                allStarted.countDown();
+                try {
+                    if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new GitLabApiException("User lookups did not run in parallel");
+                    }
+                } catch (InterruptedException ie) {
+                    throw new GitLabApiException(ie);
+                }
+
+                return (super.getUser(userId));
+            }
+        };
+
+        gitlabApiCache.addGroup(10, member(1, null), member(2, null), member(3, null), member(4, null));
+        resolver = new MemberEmailResolver(gitlabApiCache, 4, 10, 60000);
+        List<String> emails = resolver.getGroupMemberEmails(10);
+        assertEquals(Arrays.asList("user1@example.com", "user2@example.com", "user3@example.com", "user4@example.com"), emails);
+        assertEquals(4L, resolver.getStats().get("userLookups"));
+    }
+
+    @Test
+    public void testGroupEmailsAreCached() throws Exception {
+
+        FakeGitLabApiCache gitlabApiCache = new FakeGitLabApiCache();
+        gitlabApiCache.addGroup(10, member(1, null), member(2, "second@example.com"));
+        gitlabApiCache.addGroup(20, member(3, null));
+        resolver = new MemberEmailResolver(gitlabApiCache, 2, 10, 60000);
+
+        List<String> emails = resolver.getGroupMemberEmails(10);
+        assertSame(emails, resolver.getGroupMemberEmails(10));
+        assertEquals(1, gitlabApiCache.memberLoads.get());
+        assertEquals(1, gitlabApiCache.userLoads.get());
+
+        // Another group has its own entry, and an invalidated group is loaded again
+        assertEquals(Arrays.asList("user3@example.com"), resolver.getGroupMemberEmails(20));
+        assertEquals(2, gitlabApiCache.memberLoads.get());
+        resolver.invalidateGroup(10);
+        assertEquals(emails, resolver.getGroupMemberEmails(10));
+        assertEquals(3, gitlabApiCache.memberLoads.get());
+    }
+
+    @Test
+    public void testMembersWithoutEmailAreExcludedAndAddressesAreListedOnce() throws Exception {
+
+        FakeGitLabApiCache gitlabApiCache = new FakeGitLabApiCache();
+        gitlabApiCache.users.put(5, user(5, " "));
+        gitlabApiCache.users.put(6, user(6, "shared@example.com"));
+        gitlabApiCache.addGroup(10, member(1, "shared@example.com"), member(2, ""), member(5, null), member(6, null),
+                member(7, "user7@example.com"), member(1, "shared@example.com"));
+        resolver = new MemberEmailResolver(gitlabApiCache, 2, 10, 60000);
+
+        assertEquals(Arrays.asList("shared@example.com", "user7@example.com", "user2@example.com"), resolver.getGroupMemberEmails(10));
+    }
+
+    @Test
+    public void testLookupFailures() throws Exception {
+
+        FakeGitLabApiCache gitlabApiCache = new FakeGitLabApiCache();
+        gitlabApiCache.failingUsers.put(2, true);
+        gitlabApiCache.addGroup(10, member(1, null), member(2, null));
+        resolver = new MemberEmailResolver(gitlabApiCache, 2, 10, 60000);
+
+        // A member whose user lookup fails is left out, the rest of the group is still resolved
+        assertEquals(Arrays.asList("user1@example.com"), resolver.getGroupMemberEmails(10));
+
+        // A group whose member list cannot be loaded fails, and the failure is not cached
+        try {
+            resolver.getGroupMemberEmails(99);
+            fail("Expected a GitLabApiException for the unknown group");
+        } catch (GitLabApiException expected) {
+        }
+
+        gitlabApiCache.addGroup(99, member(3, null));
+        assertEquals(Arrays.asList("user3@example.com"), resolver.getGroupMemberEmails(99));
+    }
+
+    private static Member member(int id, String email) {
+        Member member = new Member();
+        member.setId(id);
+        member.setEmail(email);
+        return (member);
+    }
+
+    private static User user(int id, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        return (user);
+    }
+
+    /**
+     * Serves the group members and users from maps and counts the loads, user N has the email userN@example.com
+     * unless it is in the users map.
+     */
+    private static class FakeGitLabApiCache extends GitLabApiCache {
+
+        final Map<Integer, List<Member>> groups = new HashMap<Integer, List<Member>>();
+        final Map<Integer, User> users = new HashMap<Integer, User>();
+        final Map<Integer, Boolean> failingUsers = new HashMap<Integer, Boolean>();
+        final AtomicInteger memberLoads = new AtomicInteger();
+        final AtomicInteger userLoads = new AtomicInteger();
+
+        FakeGitLabApiCache() {
+            super(null, 10, 60000, 60000, 60000, 60000, 60000);
+        }
+
+        void addGroup(int groupId, Member... members) {
+            groups.put(groupId, Arrays.asList(members));
+        }
+
+        @Override
+        public List<Member> getGroupMembers(int groupId) throws GitLabApiException {
+
+            memberLoads.incrementAndGet();
+            List<Member> members = groups.get(groupId);
+            if (members == null) {
+                throw new GitLabApiException("404 Group Not Found");
+            }
+
+            return (members);
+        }
+
+        @Override
+        public User getUser(int userId) throws GitLabApiException {
+
+            userLoads.incrementAndGet();
+            if (failingUsers.containsKey(userId)) {
+                throw new GitLabApiException("500 Internal Server Error");
+            }
+
+            User user = users.get(userId);
+            return (user != null ? user : user(userId, "user" + userId + "@example.com"));
+        }
+    }
+}
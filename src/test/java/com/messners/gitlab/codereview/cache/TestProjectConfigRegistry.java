@@ -0,0 +1,59 @@
+package com.messners.gitlab.codereview.cache;
+
+import static org.junit.Assert.*;
+
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.messners.gitlab.codereview.db.DatabaseRule;
+
+public class TestProjectConfigRegistry {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("registry-test");
+
+    @Test
+    public void testRefreshAndReconcile() {
+
+        Jdbi jdbi = database.getJdbi();
+        try (Handle handle = jdbi.open()) {
+
+            ProjectConfigDAO dao = handle.attach(ProjectConfigDAO.class);
+            dao.insert(newProjectConfig(1234, "feature/.*"));
+
+            ProjectConfigRegistry registry = new ProjectConfigRegistry(jdbi);
+            registry.start(0);
+            assertEquals(1, registry.size());
+            assertEquals("feature/.*", registry.get(1234).getBranchRegex());
+            assertNull(registry.get(5678));
+
+            // A change made through the admin API is picked up by a refresh of the project
+            dao.insert(newProjectConfig(5678, null));
+            registry.refresh(5678);
+            assertNotNull(registry.get(5678));
+
+            // Changes made directly to the table are picked up by the reconcile
+            handle.execute("UPDATE project_config SET branch_regex = 'release/.*' WHERE project_id = 1234");
+            dao.delete(5678);
+            assertEquals(2, registry.reconcile());
+            assertEquals("release/.*", registry.get(1234).getBranchRegex());
+            assertNull(registry.get(5678));
+            assertEquals(0, registry.reconcile());
+        }
+    }
+
+    private static ProjectConfig newProjectConfig(int projectId, String branchRegex) {
+        ProjectConfig projectConfig = new ProjectConfig();
+        projectConfig.setProjectId(projectId);
+        projectConfig.setMailToType(MailToType.PROJECT);
+        projectConfig.setEnabled(true);
+        projectConfig.setBranchRegex(branchRegex);
+        return (projectConfig);
+    }
+}
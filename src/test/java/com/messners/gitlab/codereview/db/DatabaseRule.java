@@ -0,0 +1,65 @@
+package com.messners.gitlab.codereview.db;
+
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.junit.rules.ExternalResource;
+
+/**
+ * A JUnit rule that gives each test an in-memory H2 database with the SQL Object plugin installed, migrated
+ * to the latest schema unless asked not to. All the objects are dropped and the pool disposed after the test.
+ *
+ * <pre>
+ * &#64;Rule
+ * public DatabaseRule database = new DatabaseRule("push-test");
+ * </pre>
+ */
+public class DatabaseRule extends ExternalResource {
+
+    private final String name;
+    private final boolean migrate;
+    private JdbcConnectionPool dataSource;
+    private Jdbi jdbi;
+
+    /**
+     * @param name the name of the in-memory database
+     */
+    public DatabaseRule(String name) {
+        this(name, true);
+    }
+
+    /**
+     * @param name the name of the in-memory database
+     * @param migrate true to apply all the schema migrations before the test
+     */
+    public DatabaseRule(String name, boolean migrate) {
+        this.name = name;
+        this.migrate = migrate;
+    }
+
+    @Override
+    protected void before() {
+
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:" + name, "admin", "!nimda!");
+        jdbi = Jdbi.create(dataSource);
+        jdbi.installPlugin(new SqlObjectPlugin());
+        if (migrate) {
+            new SchemaMigrator(jdbi).migrate();
+        }
+    }
+
+    @Override
+    protected void after() {
+
+        try {
+            jdbi.useHandle(handle -> handle.execute("DROP ALL OBJECTS"));
+        } finally {
+            dataSource.dispose();
+        }
+    }
+
+    public Jdbi getJdbi() {
+        return (jdbi);
+    }
+}
@@ -0,0 +1,41 @@
+package com.messners.gitlab.codereview.db;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.gitlab4j.codereview.db.HikariConnectionPool;
+import org.junit.Test;
+
+public class TestHikariConnectionPool {
+
+    @Test
+    public void testAcquireTimeoutIsCounted() throws SQLException {
+
+        HikariConnectionPool pool = new HikariConnectionPool("jdbc:h2:mem:pool-test", "admin", "!nimda!", 1, 1, 250, 250, null, 0);
+        try (Connection connection = pool.getDataSource().getConnection()) {
+
+            assertTrue(connection.isValid(1));
+            Connection starved = null;
+            try {
+                starved = pool.getDataSource().getConnection();
+                fail("Expected the second getConnection() to time out");
+            } catch (SQLException expected) {
+            } finally {
+                if (starved != null) {
+                    starved.close();
+                }
+            }
+
+            Map<String, Object> stats = pool.getStats();
+            assertEquals(1, stats.get("active"));
+            assertEquals(1L, stats.get("timeouts"));
+        } finally {
+            pool.close();
+        }
+
+        assertTrue(pool.getWaitHistogram().getCount() >= 1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.messners.gitlab.codereview.db;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.Assignee;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.codereview.dao.CheckpointDAO;
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.MergeStateReconciler;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestMergeStateReconciler {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("reconciler-test");
+
+    @Test
+    public void testMissedMergeStatesAreApplied() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        try (Handle handle = jdbi.open()) {
+
+            PushDAO dao = handle.attach(PushDAO.class);
+            for (int i = 1; i <= 10; i++) {
+                dao.insert(417, (i <= 6 ? 123 : 456), "branch-" + i, "0000000000", "01234567890");
+                dao.setMergeRequest(i, i);
+            }
+
+            // The webhook for merge request 3 was received
+            dao.updateMergeStatus(3, new Date(), "can_be_merged", "merged", 417);
+
+            // Merge requests 1, 2 and 7 were finished without Simple-CR hearing about it
+            List<Integer> listedProjects = new ArrayList<Integer>();
+            MergeStateReconciler reconciler = new MergeStateReconciler(null, jdbi, 4, 1000) {
+                @Override
+                protected List<MergeRequest> getMergeRequests(int projectId, int page) throws GitLabApiException {
+
+                    listedProjects.add(projectId);
+                    List<MergeRequest> mergeRequests = new ArrayList<MergeRequest>();
+                    for (int iid = (projectId == 123 ? 6 : 10); iid >= (projectId == 123 ? 1 : 7); iid--) {
+                        String state = (iid == 1 || iid == 7 ? "merged" : iid <= 3 ? "closed" : "opened");
+                        mergeRequests.add(newMergeRequest(iid, state));
+                    }
+
+                    return (mergeRequests);
+                }
+            };
+
+            assertEquals(3, reconciler.run());
+
+            // One listing per project per batch, batches of 4 over the 9 pending records
+            assertEquals(4, listedProjects.size());
+
+            Push push = dao.find(1);
+            assertEquals("merged", push.getMergeState());
+            assertEquals(99, push.getMergedById());
+            assertEquals("closed", dao.find(2).getMergeState());
+            assertEquals("merged", dao.find(7).getMergeState());
+            assertNull(dao.find(4).getMergeStatus());
+            assertEquals(Long.valueOf(0), handle.attach(CheckpointDAO.class).find(MergeStateReconciler.CHECKPOINT_NAME));
+
+            assertEquals(0, reconciler.run());
+        }
+    }
+
+    private static MergeRequest newMergeRequest(int iid, String state) {
+
+        MergeRequest mergeRequest = new MergeRequest();
+        mergeRequest.setIid(iid);
+        mergeRequest.setState(state);
+        mergeRequest.setMergeStatus("can_be_merged");
+        mergeRequest.setUpdatedAt(new Date());
+        if ("merged".equals(state)) {
+            Assignee assignee = new Assignee();
+            assignee.setId(99);
+            mergeRequest.setAssignee(assignee);
+        }
+
+        return (mergeRequest);
+    }
+}
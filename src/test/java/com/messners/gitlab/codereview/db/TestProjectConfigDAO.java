@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import org.gitlab4j.codereview.dao.ProjectConfig;
 import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
 import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
@@ -29,8 +30,8 @@ public class TestProjectConfigDAO {
         try (Handle handle = jdbi.open()) {
 
             ProjectConfigDAO dao = handle.attach(ProjectConfigDAO.class);
-            dao.dropTable();
-            dao.createTable();
+            handle.execute("DROP ALL OBJECTS");
+            new SchemaMigrator(jdbi).migrate();
             ProjectConfig projectConfig = new ProjectConfig();
             projectConfig.setProjectId(1234);
             projectConfig.setMailToType(MailToType.PROJECT);
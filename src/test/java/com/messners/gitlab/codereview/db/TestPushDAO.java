@@ -2,10 +2,16 @@ package com.messners.gitlab.codereview.db;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.gitlab4j.codereview.dao.Push;
 import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.SchemaMigrator;
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
@@ -23,8 +29,8 @@ public class TestPushDAO {
         try (Handle handle = jdbi.open()) {
             PushDAO dao = handle.attach(PushDAO.class);
             List<Push> pushList = null;
-            dao.dropTable();
-            dao.createTable();
+            handle.execute("DROP ALL OBJECTS");
+            new SchemaMigrator(jdbi).migrate();
             dao.insert(417, 123, "new-feature", "0000000000", "01234567890");
             pushList = dao.find(417, 123, "new-feature");
             for (Push push : pushList) {
@@ -33,4 +39,54 @@ public class TestPushDAO {
             assertNotNull(pushList);
         }
     }
+
+    @Test
+    public void testConcurrentUnsubmittedPushesAreDeduplicated() throws Exception {
+
+        int numThreads = 16;
+        int numRounds = 20;
+        JdbcConnectionPool ds = JdbcConnectionPool.create("jdbc:h2:mem:push-dedup-test", "admin", "!nimda!");
+        ds.setMaxConnections(numThreads + 1);
+        Jdbi jdbi = Jdbi.create(ds);
+        jdbi.installPlugin(new SqlObjectPlugin());
+        new SchemaMigrator(jdbi).migrate();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+
+            PushDAO dao = jdbi.onDemand(PushDAO.class);
+            for (int round = 0; round < numRounds; round++) {
+
+                String branch = "force-pushed-" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+                for (int i = 0; i < numThreads; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return (dao.insertIfAbsent(417, 123, branch, "0000000000", "01234567890"));
+                    }));
+                }
+
+                start.countDown();
+                int numInserted = 0;
+                for (Future<Boolean> result : results) {
+                    numInserted += (result.get() ? 1 : 0);
+                }
+
+                assertEquals(1, numInserted);
+                assertEquals(1, dao.find(417, 123, branch, 0).size());
+            }
+
+            // Once the push has a merge request another push to the branch can be recorded
+            Push push = dao.find(417, 123, "force-pushed-0", 0).get(0);
+            dao.setMergeRequest(push.getId(), 55);
+            assertTrue(dao.insertIfAbsent(417, 123, "force-pushed-0", "01234567890", "12345678901"));
+            assertFalse(dao.insertIfAbsent(417, 123, "force-pushed-0", "01234567890", "12345678901"));
+
+        } finally {
+            executor.shutdownNow();
+            jdbi.useHandle(handle -> handle.execute("DROP ALL OBJECTS"));
+            ds.dispose();
+        }
+    }
 }
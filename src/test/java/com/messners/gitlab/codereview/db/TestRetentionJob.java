@@ -0,0 +1,76 @@
+package com.messners.gitlab.codereview.db;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.RetentionJob;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestRetentionJob {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("retention-test");
+
+    @Test
+    public void testExpiredPushesAreArchivedAndDeleted() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        File archiveDir = new File("./build/tmp/retention-test");
+        try (Handle handle = jdbi.open()) {
+
+            PushDAO dao = handle.attach(PushDAO.class);
+            Date expired = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(40));
+            Date recent = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(5));
+            for (int i = 1; i <= 10; i++) {
+                dao.insert(417, 123, "branch-" + i, "0000000000", "01234567890");
+                dao.setMergeRequest(i, i);
+                if (i <= 5) {
+                    dao.updateMergeStatus(i, expired, "can_be_merged", (i % 2 == 0 ? "merged" : "closed"), 417);
+                } else if (i <= 7) {
+                    dao.updateMergeStatus(i, recent, "can_be_merged", "merged", 417);
+                }
+            }
+
+            RetentionJob retentionJob = new RetentionJob(jdbi, 30, 2, 0, archiveDir);
+            assertEquals(5, retentionJob.run());
+            assertEquals(0, retentionJob.run());
+
+            assertEquals(5, (int) handle.createQuery("SELECT COUNT(*) FROM push").mapTo(Integer.class).findOnly());
+            assertEquals(0, (int) handle.createQuery("SELECT COUNT(*) FROM push WHERE id <= 5").mapTo(Integer.class).findOnly());
+
+            File[] archiveFiles = archiveDir.listFiles((dir, name) -> name.endsWith(".csv.gz"));
+            assertEquals(1, archiveFiles.length);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(archiveFiles[0])), StandardCharsets.UTF_8))) {
+                List<String> lines = reader.lines().collect(Collectors.toList());
+                assertEquals(6, lines.size());
+                assertTrue(lines.get(0).startsWith("id,"));
+                assertTrue(lines.get(1), lines.get(1).contains("\"branch-1\""));
+            }
+
+        } finally {
+            File[] files = archiveDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+
+            archiveDir.delete();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.messners.gitlab.codereview.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.gitlab4j.codereview.dao.Push;
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.db.Migration;
+import org.gitlab4j.codereview.db.SchemaMigrator;
+import org.gitlab4j.codereview.db.SqlMigration;
+import org.gitlab4j.codereview.db.TableCopyMigration;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestSchemaMigrator {
+
+    // Each test runs its own migrations
+    @Rule
+    public DatabaseRule database = new DatabaseRule("schema-test", false);
+
+    @Test
+    public void testPushQueriesUseIndexes() {
+
+        Jdbi jdbi = database.getJdbi();
+        try (Handle handle = jdbi.open()) {
+
+            SchemaMigrator migrator = new SchemaMigrator(jdbi);
+            assertEquals(migrator.getLatestVersion(), migrator.migrate());
+            assertEquals(migrator.getLatestVersion(), migrator.migrate());
+
+            PushDAO dao = handle.attach(PushDAO.class);
+            dao.insert(417, 123, "new-feature", "0000000000", "01234567890");
+            Push push = dao.find(417, 123, "new-feature").get(0);
+            dao.setMergeRequest(push.getId(), 55);
+            assertEquals(1, dao.findPendingReviews(417, 123, "new-feature").size());
+
+            dao.updateMergeStatus(push.getId(), new Date(), "merged", "merged", 417);
+            assertEquals(0, dao.findPendingReviews(417, 123, "new-feature").size());
+
+            assertPlanUses(handle, "push_merge_request_index",
+                    "SELECT * FROM push WHERE project_id = 123 AND merge_request_id = 55 ORDER BY received DESC");
+            assertPlanUses(handle, "PUSH_USER_BRANCH_INDEX",
+                    "SELECT * FROM push WHERE project_id = 123 AND branch = 'new-feature' AND user_id = 417"
+                    + " AND merge_request_id > 0 AND merge_status IS NULL ORDER BY received DESC");
+            assertPlanUses(handle, "push_user_branch_index",
+                    "SELECT * FROM push WHERE project_id = 123 AND branch = 'new-feature' AND user_id = 417 AND merge_request_id = 0 ORDER BY received DESC");
+        }
+    }
+
+    @Test
+    public void testTableCopyKeepsRowsAndWidensBranch() {
+
+        Jdbi jdbi = database.getJdbi();
+
+        // The migration runs before any other handle is open, as it does at startup
+        SchemaMigrator migrator = new SchemaMigrator(jdbi);
+        assertEquals(2, migrator.migrate(2));
+        jdbi.useHandle(handle -> handle.execute("INSERT INTO push (user_id, project_id, branch, merge_request_id)" +
+                " SELECT MOD(X, 10), 123, CONCAT('branch-', X), MOD(X, 3) FROM SYSTEM_RANGE(1, 60000)"));
+        assertEquals(migrator.getLatestVersion(), migrator.migrate());
+
+        try (Handle handle = jdbi.open()) {
+
+            assertEquals(60000, (int) handle.createQuery("SELECT COUNT(*) FROM push").mapTo(Integer.class).findOnly());
+
+            String longBranch = String.join("", Collections.nCopies(8, "feature/long-branch-name-"));
+            PushDAO dao = handle.attach(PushDAO.class);
+            dao.insert(417, 123, longBranch, "0000000000", "01234567890");
+            Push push = dao.find(417, 123, longBranch).get(0);
+            assertEquals(60001, push.getId());
+
+            assertPlanUses(handle, "push_merge_request_index",
+                    "SELECT * FROM push WHERE project_id = 123 AND merge_request_id = 55 ORDER BY received DESC");
+        }
+    }
+
+    @Test
+    public void testFailedSwapIsFinished() {
+
+        Jdbi jdbi = database.getJdbi();
+        SchemaMigrator migrator = new SchemaMigrator(jdbi, getItemMigrations());
+        assertEquals(1, migrator.migrate(1));
+        jdbi.useHandle(handle -> {
+            handle.execute("INSERT INTO item (name) SELECT CONCAT('item-', X) FROM SYSTEM_RANGE(1, 25)");
+            handle.execute("CREATE TABLE swap_failure (id INT)");
+        });
+
+        // The last swap statement fails, after item has been renamed to item_old and item_v2 to item
+        try {
+            migrator.migrate();
+            fail("Expected the swap to fail");
+        } catch (UnableToExecuteStatementException expected) {
+        }
+
+        assertEquals(1, migrator.getVersion());
+        jdbi.useHandle(handle -> handle.execute("DROP TABLE swap_failure"));
+        assertEquals(2, migrator.migrate());
+        assertItemsSwapped(jdbi);
+    }
+
+    @Test
+    public void testSwapInterruptedBetweenRenamesIsFinished() {
+
+        Jdbi jdbi = database.getJdbi();
+        SchemaMigrator migrator = new SchemaMigrator(jdbi, getItemMigrations());
+        assertEquals(1, migrator.migrate(1));
+
+        // The state left by a crash after item has been copied and renamed to item_old, there is no item table
+        jdbi.useHandle(handle -> {
+            handle.execute("INSERT INTO item (name) SELECT CONCAT('item-', X) FROM SYSTEM_RANGE(1, 25)");
+            handle.execute("CREATE TABLE item_v2 (id INT AUTO_INCREMENT(1, 1) PRIMARY KEY, name VARCHAR(64))");
+            handle.execute("CREATE INDEX item_v2_name_index ON item_v2(name)");
+            handle.execute("INSERT INTO item_v2 (id, name) SELECT id, name FROM item");
+            handle.execute("ALTER TABLE item RENAME TO item_old");
+        });
+
+        assertEquals(2, migrator.migrate());
+        assertItemsSwapped(jdbi);
+    }
+
+    @Test
+    public void testChangedMigrationIsRejected() {
+
+        Jdbi jdbi = database.getJdbi();
+        Migration original = new SqlMigration(1, "Create a table", "CREATE TABLE IF NOT EXISTS t (id INT PRIMARY KEY)");
+        assertEquals(1, new SchemaMigrator(jdbi, Arrays.asList(original)).migrate());
+
+        Migration changed = new SqlMigration(1, "Create a table", "CREATE TABLE IF NOT EXISTS t (id BIGINT PRIMARY KEY)");
+        try {
+            new SchemaMigrator(jdbi, Arrays.asList(changed)).migrate();
+            fail("Expected an IllegalStateException for the changed migration");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * A table created with a name of up to 8 characters and a TableCopyMigration that widens the name. The
+     * last swap statement fails while the swap_failure table exists.
+     */
+    private static List<Migration> getItemMigrations() {
+
+        return (Arrays.asList(
+            new SqlMigration(1, "Create the item table",
+                "CREATE TABLE IF NOT EXISTS item (id INT AUTO_INCREMENT(1, 1) PRIMARY KEY, name VARCHAR(8))",
+                "CREATE INDEX IF NOT EXISTS item_name_index ON item(name)"),
+            new TableCopyMigration(2, "Widen item.name", "item", "item_v2", "id, name", 10,
+                Arrays.asList(
+                    "CREATE TABLE IF NOT EXISTS item_v2 (id INT AUTO_INCREMENT(1, 1) PRIMARY KEY, name VARCHAR(64))",
+                    "CREATE INDEX IF NOT EXISTS item_v2_name_index ON item_v2(name)"),
+                Arrays.asList(
+                    "ALTER INDEX IF EXISTS item_v2_name_index RENAME TO item_name_index",
+                    "CREATE TABLE swap_failure (id INT)"))));
+    }
+
+    private static void assertItemsSwapped(Jdbi jdbi) {
+
+        try (Handle handle = jdbi.open()) {
+
+            assertEquals(25, (int) handle.createQuery("SELECT COUNT(*) FROM item").mapTo(Integer.class).findOnly());
+            assertEquals(0, (int) handle.createQuery("SELECT COUNT(*) FROM information_schema.tables"
+                    + " WHERE table_name IN ('ITEM_OLD', 'ITEM_V2')").mapTo(Integer.class).findOnly());
+
+            handle.execute("INSERT INTO item (name) VALUES ('a name longer than 8')");
+            assertEquals(26, (int) handle.createQuery("SELECT MAX(id) FROM item").mapTo(Integer.class).findOnly());
+            assertPlanUses(handle, "item_name_index", "SELECT * FROM item WHERE name = 'item-1'");
+        }
+    }
+
+    /**
+     * Checks that the index condition (the comment H2 puts in the plan) contains the expected text.
+     */
+    private static void assertPlanUses(Handle handle, String expected, String sql) {
+        String plan = handle.createQuery("EXPLAIN " + sql).mapTo(String.class).findOnly();
+        String indexCondition = plan.substring(plan.indexOf("/*"), plan.indexOf("*/"));
+        assertTrue(plan, indexCondition.toUpperCase().contains(expected.toUpperCase()));
+    }
+}
@@ -0,0 +1,199 @@
+package com.messners.gitlab.codereview.mail;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.mail.internet.InternetAddress;
+
+import org.gitlab4j.codereview.dao.MailQueueDAO;
+import org.gitlab4j.codereview.dao.QueuedMail;
+import org.gitlab4j.codereview.mail.MailQueue;
+import org.gitlab4j.codereview.mail.SmtpConnectionPool;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.messners.gitlab.codereview.db.DatabaseRule;
+
+public class TestMailQueue {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("mail-queue-test");
+
+    private Jdbi jdbi;
+    private MailQueueDAO dao;
+    private SmtpStandIn smtpServer;
+
+    @Before
+    public void setup() throws IOException {
+
+        jdbi = database.getJdbi();
+        dao = jdbi.onDemand(MailQueueDAO.class);
+        smtpServer = new SmtpStandIn();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        smtpServer.close();
+    }
+
+    @Test
+    public void testBatchesShareConnection() throws Exception {
+
+        MailQueue mailQueue = createMailQueue(1, 10);
+        for (int i = 0; i < 10; i++) {
+            mailQueue.enqueue(Arrays.asList(new InternetAddress("reviewer" + i + "@example.com")), "Message " + i, "<p>" + i + "</p>");
+        }
+
+        assertEquals(10, mailQueue.getQueueDepth());
+        mailQueue.start();
+        waitFor(() -> smtpServer.messages.size() == 10 && mailQueue.getQueueDepth() == 0);
+        mailQueue.shutdown(5000);
+
+        assertEquals(1, smtpServer.numConnections.get());
+        assertEquals(0, mailQueue.getNumDeadLetters());
+        assertTrue(smtpServer.messages.get(0).contains("Subject: Message 0"));
+    }
+
+    @Test
+    public void testRetryAndDeadLetter() throws Exception {
+
+        smtpServer.numTransientFailures.set(2);
+        MailQueue mailQueue = createMailQueue(2, 5);
+        mailQueue.start();
+        mailQueue.enqueue(Arrays.asList(new InternetAddress("author@example.com")), "Transient", "<p>retry me</p>");
+        int rejectedId = mailQueue.enqueue(Arrays.asList(new InternetAddress("author@example.com")), "Permanent", "<p>reject me</p>");
+
+        waitFor(() -> mailQueue.getQueueDepth() == 0);
+        mailQueue.shutdown(5000);
+
+        assertEquals(1, smtpServer.messages.size());
+        assertTrue(smtpServer.messages.get(0).contains("Subject: Transient"));
+
+        List<QueuedMail> deadLetters = dao.listDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals(rejectedId, deadLetters.get(0).getId());
+        assertEquals(1, deadLetters.get(0).getAttempts());
+        assertTrue(deadLetters.get(0).getLastError().contains("550"));
+        assertEquals(2L, mailQueue.getStats().get("retries"));
+    }
+
+    private MailQueue createMailQueue(int numSenders, int batchSize) {
+        SmtpConnectionPool connectionPool = new SmtpConnectionPool("localhost", smtpServer.getPort(), false, null, null, numSenders, 60000);
+        return (new MailQueue(jdbi, connectionPool, "noreply@example.com", "Simple-CR", numSenders, batchSize, 5, 10, 100, 50));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the mail queue", System.currentTimeMillis() < timeout);
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * A minimal in-process SMTP server. Messages with the subject "Permanent" are rejected with a 550,
+     * and the first numTransientFailures messages are rejected with a 451.
+     */
+    private static class SmtpStandIn implements Runnable {
+
+        private final ServerSocket serverSocket;
+        private final List<String> messages = new CopyOnWriteArrayList<String>();
+        private final AtomicInteger numConnections = new AtomicInteger();
+        private final AtomicInteger numTransientFailures = new AtomicInteger();
+
+        SmtpStandIn() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread thread = new Thread(this, "smtp-stand-in");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return (serverSocket.getLocalPort());
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    numConnections.incrementAndGet();
+                    Thread thread = new Thread(() -> handle(socket), "smtp-stand-in-session");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException ioe) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+
+            try (Socket s = socket;
+                    BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                    PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+
+                reply(out, "220 localhost SMTP stand-in");
+                String line;
+                while ((line = in.readLine()) != null) {
+
+                    String command = line.toUpperCase();
+                    if (command.startsWith("DATA")) {
+
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder data = new StringBuilder();
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            data.append(line).append("\n");
+                        }
+
+                        String message = data.toString();
+                        if (message.contains("Subject: Permanent")) {
+                            reply(out, "550 Mailbox unavailable");
+                        } else if (numTransientFailures.getAndDecrement() > 0) {
+                            reply(out, "451 Try again later");
+                        } else {
+                            messages.add(message);
+                            reply(out, "250 OK");
+                        }
+
+                    } else if (command.startsWith("QUIT")) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                        reply(out, "250 localhost");
+                    } else {
+                        reply(out, "250 OK");
+                    }
+                }
+
+            } catch (IOException ignore) {
+            }
+        }
+
+        private static void reply(PrintWriter out, String reply) {
+            out.print(reply + "\r\n");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.messners.gitlab.codereview.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.codereview.metrics.Counter;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.utils.LatencyHistogram;
+import org.junit.Test;
+
+public class TestMetricsRegistry {
+
+    @Test
+    public void testCounters() throws Exception {
+
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter push = registry.counter("test_events_total", "Events", "kind", "push");
+        Counter mergeRequest = registry.counter("test_events_total", "Events", "kind", "merge_request");
+        assertSame(push, registry.counter("test_events_total", "Events", "kind", "push"));
+
+        push.increment();
+        push.add(2);
+        mergeRequest.increment();
+        registry.gauge("test_depth", "Depth with a \"quoted\" label", () -> 1.5, "queue", "a\"b");
+
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        assertEquals("# HELP test_events_total Events\n"
+                + "# TYPE test_events_total counter\n"
+                + "test_events_total{kind=\"push\"} 3\n"
+                + "test_events_total{kind=\"merge_request\"} 1\n"
+                + "# HELP test_depth Depth with a \"quoted\" label\n"
+                + "# TYPE test_depth gauge\n"
+                + "test_depth{queue=\"a\\\"b\"} 1.5\n", writer.toString());
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyHistogram histogram = new LatencyHistogram(new long[] { 1000, 10000 });
+        registry.histogram("test_seconds", "Latency", histogram, "stage", "load");
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5000));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50000));
+
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        String text = writer.toString();
+        assertTrue(text, text.contains("test_seconds_bucket{stage=\"load\",le=\"0.001\"} 1\n"));
+        assertTrue(text, text.contains("test_seconds_bucket{stage=\"load\",le=\"0.01\"} 2\n"));
+        assertTrue(text, text.contains("test_seconds_bucket{stage=\"load\",le=\"+Inf\"} 3\n"));
+        assertTrue(text, text.contains("test_seconds_sum{stage=\"load\"} 0.0555\n"));
+        assertTrue(text, text.contains("test_seconds_count{stage=\"load\"} 3\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_total", "Test");
+        registry.gauge("test_total", "Test", () -> 0);
+    }
+}
@@ -0,0 +1,54 @@
+package com.messners.gitlab.codereview.metrics;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+
+import org.gitlab4j.codereview.dao.PushDAO;
+import org.gitlab4j.codereview.metrics.MetricsRegistry;
+import org.gitlab4j.codereview.metrics.QueryTimingLogger;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.messners.gitlab.codereview.db.DatabaseRule;
+
+public class TestQueryTimingLogger {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("query-timing-test");
+
+    @Test
+    public void testQueriesAreTimedByDaoMethod() throws Exception {
+
+        // The logger is set after the migrations, which are not counted
+        Jdbi jdbi = database.getJdbi();
+        MetricsRegistry registry = new MetricsRegistry();
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(new QueryTimingLogger(registry));
+        try (Handle handle = jdbi.open()) {
+
+            PushDAO dao = handle.attach(PushDAO.class);
+            dao.insert(417, 123, "new-feature", "0000000000", "01234567890");
+            dao.find(417, 123, "new-feature");
+
+            handle.execute("CREATE TABLE timing_test (id INT PRIMARY KEY)");
+            handle.execute("INSERT INTO timing_test VALUES (1)");
+            try {
+                handle.execute("INSERT INTO timing_test VALUES (1)");
+                fail("Expected the query to fail");
+            } catch (UnableToExecuteStatementException expected) {
+            }
+
+            StringWriter writer = new StringWriter();
+            registry.write(writer);
+            String text = writer.toString();
+            assertTrue(text, text.contains("simplecr_db_query_seconds_count{dao=\"PushDAO\",method=\"insert\"} 1\n"));
+            assertTrue(text, text.contains("simplecr_db_query_seconds_count{dao=\"PushDAO\",method=\"find\"} 1\n"));
+            assertTrue(text, text.contains("simplecr_db_query_seconds_count{dao=\"none\",method=\"none\"} 3\n"));
+        }
+    }
+}
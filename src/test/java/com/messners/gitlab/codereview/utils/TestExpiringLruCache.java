@@ -0,0 +1,146 @@
+package com.messners.gitlab.codereview.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gitlab4j.codereview.utils.ExpiringLruCache;
+import org.junit.Test;
+
+public class TestExpiringLruCache {
+
+    @Test
+    public void testLruEviction() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        ExpiringLruCache<Integer, String> cache = new ExpiringLruCache<Integer, String>("test", 2, 60000, 0, null);
+        cache.get(1, key -> "v" + key + loads.incrementAndGet());
+        cache.get(2, key -> "v" + key + loads.incrementAndGet());
+
+        // Touch 1 so that 2 is the least recently used entry
+        cache.get(1, key -> "v" + key + loads.incrementAndGet());
+        cache.get(3, key -> "v" + key + loads.incrementAndGet());
+        assertEquals(3, loads.get());
+        assertEquals(2, cache.size());
+
+        cache.get(1, key -> "v" + key + loads.incrementAndGet());
+        assertEquals(3, loads.get());
+        cache.get(2, key -> "v" + key + loads.incrementAndGet());
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<Integer, Integer>("test", 10, 50, 0, null);
+        cache.get(1, key -> loads.incrementAndGet());
+        cache.get(1, key -> loads.incrementAndGet());
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+        cache.get(1, key -> loads.incrementAndGet());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        ExpiringLruCache<Integer, String> cache = new ExpiringLruCache<Integer, String>("test", 10, 60000, 60000,
+                e -> e instanceof IllegalStateException);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.get(1, key -> {
+                    loads.incrementAndGet();
+                    throw new IllegalStateException("not found");
+                });
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        assertEquals(1, loads.get());
+
+        // Failures that are not cacheable are retried every time
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.get(2, key -> {
+                    loads.incrementAndGet();
+                    throw new IllegalArgumentException("server error");
+                });
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        ExpiringLruCache<Integer, Object> cache = new ExpiringLruCache<Integer, Object>("test", 10, 60000, 0, null);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> cache.get(1, key -> {
+                loads.incrementAndGet();
+                release.await();
+                return (new Object());
+            })));
+        }
+
+        Thread.sleep(100);
+        release.countDown();
+
+        Object first = futures.get(0).get();
+        for (Future<Object> future : futures) {
+            assertSame(first, future.get());
+        }
+
+        executor.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws Exception {
+
+        ExpiringLruCache<Integer, String> cache = new ExpiringLruCache<Integer, String>("test", 10, 60000, 0, null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> stale = executor.submit(() -> cache.get(1, key -> {
+            loading.countDown();
+            release.await();
+            return ("stale");
+        }));
+
+        // The key is invalidated while the stale value is loading, the load finishes afterwards
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate(1);
+        release.countDown();
+        assertEquals("stale", stale.get());
+        executor.shutdown();
+
+        // The stale value was not cached, the next get loads the key again
+        assertEquals(0, cache.size());
+        assertEquals("fresh", cache.get(1, key -> "fresh"));
+        assertEquals("fresh", cache.get(1, key -> "unexpected"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.messners.gitlab.codereview.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+import org.gitlab4j.codereview.utils.RegexMatcher;
+import org.junit.Test;
+
+public class TestRegexMatcher {
+
+    @Test
+    public void testPatternsAreCompiledOnce() {
+
+        RegexMatcher regexMatcher = new RegexMatcher(50);
+        assertTrue(regexMatcher.matches("feature/.*", "feature/new-thing"));
+        assertFalse(regexMatcher.matches("feature/.*", "bugfix/old-thing"));
+        assertEquals(Arrays.asList("release/1.0", "release/2.0"),
+                regexMatcher.filter("release/.*", Arrays.asList("master", "release/1.0", "develop", "release/2.0")));
+
+        Map<String, Object> stats = regexMatcher.getStats();
+        assertEquals(2L, stats.get("compiles"));
+        assertEquals(4L, stats.get("cacheHits"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidRegexIsRejected() {
+        RegexMatcher.compile("feature/(.*");
+    }
+
+    @Test
+    public void testCatastrophicBacktrackingIsAbandoned() {
+
+        RegexMatcher regexMatcher = new RegexMatcher(50);
+        String input = String.join("", Collections.nCopies(40, "a")) + "!";
+
+        long startTime = System.currentTimeMillis();
+        assertFalse(regexMatcher.matches("(.*a){12}", input));
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+        assertEquals(1L, regexMatcher.getStats().get("timeouts"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.messners.gitlab.codereview.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.gitlab4j.codereview.utils.TemplateService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTemplateService {
+
+    @Rule
+    public TemporaryFolder templateDir = new TemporaryFolder();
+
+    @Test
+    public void testClasspathTemplate() throws Exception {
+
+        TemplateService templateService = new TemplateService();
+        String html = templateService.render("/templates/code-review.vm", getParams());
+        assertTrue(html, html.contains("<a href=\"http://simple-cr/app?p=1\">group / project / feature</a>"));
+        assertEquals(1L, templateService.getStats().get("renders"));
+    }
+
+    @Test
+    public void testTemplateDirOverridesClasspath() throws Exception {
+
+        writeTemplate("code-review.vm", "Override for $branch", 0);
+        TemplateService templateService = new TemplateService(templateDir.getRoot().getPath(), 10);
+        assertEquals("Override for feature", templateService.render("/templates/code-review.vm", getParams()));
+
+        // A template that is not in the template dir is still loaded from the classpath
+        String html = templateService.render("/templates/merge-request.vm", getParams());
+        assertTrue(html, html.startsWith("<!DOCTYPE html>"));
+    }
+
+    @Test
+    public void testChangedTemplateIsReloadedAfterTheCheckInterval() throws Exception {
+
+        File template = writeTemplate("code-review.vm", "First $branch", 0);
+        TemplateService templateService = new TemplateService(templateDir.getRoot().getPath(), 1);
+        assertEquals("First feature", templateService.render("/templates/code-review.vm", getParams()));
+
+        // The change is not seen until the check interval has passed
+        writeTemplate("code-review.vm", "Second $branch", template.lastModified() + 2000);
+        assertEquals("First feature", templateService.render("/templates/code-review.vm", getParams()));
+        Thread.sleep(1500);
+        assertEquals("Second feature", templateService.render("/templates/code-review.vm", getParams()));
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testMissingTemplate() throws Exception {
+        TemplateService templateService = new TemplateService(templateDir.getRoot().getPath(), 10);
+        templateService.render("/templates/no-such-template.vm", getParams());
+    }
+
+    private File writeTemplate(String name, String content, long lastModified) throws Exception {
+
+        File dir = new File(templateDir.getRoot(), "templates");
+        dir.mkdirs();
+        File template = new File(dir, name);
+        Files.write(template.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        if (lastModified > 0) {
+            template.setLastModified(lastModified);
+        }
+
+        return (template);
+    }
+
+    private static Map<String, Object> getParams() {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("codeReviewLink", "http://simple-cr/app?p=1");
+        params.put("group", "group");
+        params.put("projectName", "project");
+        params.put("branch", "feature");
+        return (params);
+    }
+}
@@ -0,0 +1,108 @@
+package com.messners.gitlab.codereview.webhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.codereview.webhook.EventJournal;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEventJournal {
+
+    private File journalDir;
+
+    @Before
+    public void setup() {
+
+        journalDir = new File("./dbdata/journal-test");
+        File[] files = journalDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testReplayUnfinished() throws Exception {
+
+        EventJournal journal = new EventJournal(journalDir, 4096, 0);
+        assertTrue(journal.open().isEmpty());
+
+        List<Long> positions = new ArrayList<Long>();
+        for (int i = 0; i < 20; i++) {
+            positions.add(journal.append(createPushEvent(i)));
+        }
+
+        // Finish all but the 3rd and 18th events, then "crash"
+        for (int i = 0; i < positions.size(); i++) {
+            if (i != 3 && i != 18) {
+                journal.markDone(positions.get(i));
+            }
+        }
+
+        journal.close();
+
+        journal = new EventJournal(journalDir, 4096, 0);
+        List<EventJournal.Entry> pending = journal.open();
+        assertEquals(2, pending.size());
+        assertEquals("branch-3", ((PushEvent) pending.get(0).getEvent()).getBranch());
+        assertEquals(Integer.valueOf(18), ((PushEvent) pending.get(1).getEvent()).getUserId());
+
+        for (EventJournal.Entry entry : pending) {
+            journal.markDone(entry.getPosition());
+        }
+
+        journal.close();
+
+        journal = new EventJournal(journalDir, 4096, 0);
+        assertTrue(journal.open().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+
+        EventJournal journal = new EventJournal(journalDir, 1024 * 1024, 1);
+        journal.open();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 200; i++) {
+            final int n = i;
+            futures.add(executor.submit(() -> journal.append(createPushEvent(n))));
+        }
+
+        for (Future<Long> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Concurrent appends should share forces
+        long commits = (Long) journal.getStats().get("commits");
+        assertTrue("commits=" + commits, commits < 200);
+        assertEquals(200, journal.getNumPending());
+        journal.close();
+    }
+
+    private PushEvent createPushEvent(int n) {
+        PushEvent event = new PushEvent();
+        event.setUserId(n);
+        event.setProjectId(100);
+        event.setRef("refs/heads/branch-" + n);
+        event.setBefore("0000000000000000000000000000000000000000");
+        event.setAfter("0123456789abcdef0123456789abcdef0123456" + (n % 10));
+        return (event);
+    }
+}
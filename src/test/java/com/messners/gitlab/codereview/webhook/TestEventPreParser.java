@@ -0,0 +1,80 @@
+package com.messners.gitlab.codereview.webhook;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.webhook.EventPreParser;
+import org.gitlab4j.codereview.webhook.EventPreParser.EventSummary;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.messners.gitlab.codereview.db.DatabaseRule;
+
+public class TestEventPreParser {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("pre-parser-test");
+
+    @Test
+    public void testEventsAreFilteredBeforeBinding() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        try (Handle handle = jdbi.open()) {
+
+            ProjectConfig projectConfig = new ProjectConfig();
+            projectConfig.setProjectId(1234);
+            projectConfig.setMailToType(MailToType.PROJECT);
+            projectConfig.setEnabled(true);
+            handle.attach(ProjectConfigDAO.class).insert(projectConfig);
+            ProjectConfigRegistry registry = new ProjectConfigRegistry(jdbi);
+            registry.reconcile();
+            EventPreParser preParser = new EventPreParser(registry);
+
+            // The scan stops at the project ID and never reads the commits
+            byte[] payload = pushPayload(5678, 1000);
+            EventSummary summary = preParser.preParse(payload);
+            assertEquals("push", summary.getObjectKind());
+            assertEquals(Integer.valueOf(5678), summary.getProjectId());
+            assertEquals(EventPreParser.IGNORED_NOT_ENROLLED, summary.getIgnoreReason());
+            assertTrue(summary.getBytesScanned() < 200);
+
+            payload = pushPayload(1234, 10);
+            summary = preParser.preParse(payload);
+            assertNull(summary.getIgnoreReason());
+            PushEvent event = (PushEvent) preParser.bind(payload);
+            assertEquals(Integer.valueOf(1234), event.getProjectId());
+            assertEquals("refs/heads/feature/pre-parse", event.getRef());
+
+            String mergeRequest = "{\"object_kind\":\"merge_request\",\"user\":{\"id\":10,\"name\":\"Joe\"}," +
+                    "\"object_attributes\":{\"id\":99,\"source\":{\"id\":1},\"target_project_id\":1234,\"state\":\"merged\"}}";
+            summary = preParser.preParse(mergeRequest.getBytes(StandardCharsets.UTF_8));
+            assertEquals(Integer.valueOf(1234), summary.getProjectId());
+            assertNull(summary.getIgnoreReason());
+
+            summary = preParser.preParse("{\"object_kind\":\"note\",\"project_id\":1234}".getBytes(StandardCharsets.UTF_8));
+            assertEquals(EventPreParser.IGNORED_UNHANDLED_KIND, summary.getIgnoreReason());
+        }
+    }
+
+    private static byte[] pushPayload(int projectId, int numCommits) {
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"object_kind\":\"push\",\"before\":\"95790bf891e76fee5e1747ab589903a6a1f80f22\"");
+        json.append(",\"after\":\"da1560886d4f094c3e6c9ef40349f7d38b5d27d7\",\"ref\":\"refs/heads/feature/pre-parse\"");
+        json.append(",\"user_id\":10,\"project_id\":").append(projectId).append(",\"commits\":[");
+        for (int i = 0; i < numCommits; i++) {
+            json.append(i > 0 ? "," : "").append("{\"id\":\"").append(i).append("\",\"message\":\"Commit number ").append(i).append("\"}");
+        }
+
+        json.append("]}");
+        return (json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
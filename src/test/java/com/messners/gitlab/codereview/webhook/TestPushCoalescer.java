@@ -0,0 +1,231 @@
+package com.messners.gitlab.codereview.webhook;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.api.webhook.WebHookListener;
+import org.gitlab4j.api.webhook.WebHookManager;
+import org.gitlab4j.codereview.cache.ProjectConfigRegistry;
+import org.gitlab4j.codereview.dao.ProjectConfig;
+import org.gitlab4j.codereview.dao.ProjectConfig.MailToType;
+import org.gitlab4j.codereview.dao.ProjectConfigDAO;
+import org.gitlab4j.codereview.webhook.EventJournal;
+import org.gitlab4j.codereview.webhook.PushCoalescer;
+import org.gitlab4j.codereview.webhook.WebHookDispatcher;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.messners.gitlab.codereview.db.DatabaseRule;
+
+public class TestPushCoalescer {
+
+    @Rule
+    public DatabaseRule database = new DatabaseRule("coalescer-test");
+
+    @Rule
+    public TemporaryFolder journalDir = new TemporaryFolder();
+
+    @Test
+    public void testPushesInsideTheWindowAreCoalesced() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        try (Handle handle = jdbi.open()) {
+
+            ProjectConfigDAO dao = handle.attach(ProjectConfigDAO.class);
+            dao.insert(newProjectConfig(1234, 1));
+            dao.insert(newProjectConfig(5678, 0));
+            ProjectConfigRegistry registry = new ProjectConfigRegistry(jdbi);
+            registry.reconcile();
+            assertEquals(Integer.valueOf(1), registry.get(1234).getPushCoalesceWindow());
+
+            List<PushEvent> handled = new CopyOnWriteArrayList<PushEvent>();
+            WebHookManager webHookManager = new WebHookManager();
+            webHookManager.addListener(new WebHookListener() {
+                @Override
+                public void onPushEvent(PushEvent event) {
+                    handled.add(event);
+                }
+            });
+
+            WebHookDispatcher dispatcher = new WebHookDispatcher(webHookManager, 1, 10);
+            PushCoalescer coalescer = new PushCoalescer(dispatcher, null, registry, 0);
+
+            // Five pushes to the same branch collapse into one covering all of them
+            for (int i = 0; i < 5; i++) {
+                assertTrue(coalescer.offer(newPushEvent(1234, 10, "sha" + i, "sha" + (i + 1)), -1));
+            }
+
+            // A push from another user opens its own window, a project with no window is passed through
+            assertTrue(coalescer.offer(newPushEvent(1234, 11, "abc", "def"), -1));
+            assertFalse(coalescer.offer(newPushEvent(5678, 10, "abc", "def"), -1));
+            assertEquals(2, coalescer.getPendingCount());
+            assertTrue(handled.isEmpty());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handled.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertEquals(2, handled.size());
+            PushEvent merged = (handled.get(0).getUserId() == 10 ? handled.get(0) : handled.get(1));
+            assertEquals("sha0", merged.getBefore());
+            assertEquals("sha5", merged.getAfter());
+            assertEquals(4L, coalescer.getStats().get("coalesced"));
+            assertEquals(0, coalescer.getPendingCount());
+
+            coalescer.shutdown();
+            dispatcher.shutdown(1000);
+        }
+    }
+
+    @Test
+    public void testPushIsRetriedWhileTheDispatcherIsSaturated() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        ProjectConfigRegistry registry = newProjectConfigRegistry(jdbi);
+        EventJournal journal = new EventJournal(journalDir.getRoot(), 4096, 0);
+        journal.open();
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<PushEvent> handled = new CopyOnWriteArrayList<PushEvent>();
+        WebHookDispatcher dispatcher = newSaturatedDispatcher(journal, release, handled);
+        PushCoalescer coalescer = new PushCoalescer(dispatcher, journal, registry, 0);
+        for (int i = 0; i < 2; i++) {
+            PushEvent event = newPushEvent(1234, 10, "sha" + i, "sha" + (i + 1));
+            assertTrue(coalescer.offer(event, journal.append(event)));
+        }
+
+        // The window closes while the queue is full, the push is kept and its journal entry stays pending
+        waitFor(() -> (Long) coalescer.getStats().get("retried") > 0);
+        assertEquals(1, coalescer.getPendingCount());
+        assertEquals(1, journal.getNumPending());
+
+        // Once the queue drains the retry gets the merged push through
+        release.countDown();
+        waitFor(() -> handled.size() == 3 && journal.getNumPending() == 0);
+        PushEvent merged = handled.get(2);
+        assertEquals(Integer.valueOf(1234), merged.getProjectId());
+        assertEquals("sha0", merged.getBefore());
+        assertEquals("sha2", merged.getAfter());
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.shutdown();
+        dispatcher.shutdown(1000);
+        journal.close();
+    }
+
+    @Test
+    public void testShutdownProcessesPushesTheDispatcherCannotQueue() throws Exception {
+
+        Jdbi jdbi = database.getJdbi();
+        ProjectConfigRegistry registry = newProjectConfigRegistry(jdbi);
+        EventJournal journal = new EventJournal(journalDir.getRoot(), 4096, 0);
+        journal.open();
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<PushEvent> handled = new CopyOnWriteArrayList<PushEvent>();
+        WebHookDispatcher dispatcher = newSaturatedDispatcher(journal, release, handled);
+        PushCoalescer coalescer = new PushCoalescer(dispatcher, journal, registry, 0);
+        PushEvent event = newPushEvent(1234, 10, "sha0", "sha1");
+        assertTrue(coalescer.offer(event, journal.append(event)));
+
+        // The push is processed on the calling thread, the worker and the queued event are released meanwhile
+        new Thread(() -> {
+            sleep(200);
+            release.countDown();
+        }).start();
+
+        coalescer.shutdown();
+        assertEquals(1L, coalescer.getStats().get("processedInline"));
+        assertTrue(handled.contains(event));
+        assertEquals(0, journal.getNumPending());
+
+        dispatcher.shutdown(1000);
+        journal.close();
+    }
+
+    private static ProjectConfigRegistry newProjectConfigRegistry(Jdbi jdbi) {
+
+        try (Handle handle = jdbi.open()) {
+            handle.attach(ProjectConfigDAO.class).insert(newProjectConfig(1234, 1));
+        }
+
+        ProjectConfigRegistry registry = new ProjectConfigRegistry(jdbi);
+        registry.reconcile();
+        return (registry);
+    }
+
+    /**
+     * Creates a dispatcher with a single worker and a queue of one, and fills both with events that are held
+     * until the latch is released.
+     */
+    private static WebHookDispatcher newSaturatedDispatcher(EventJournal journal, CountDownLatch release, List<PushEvent> handled) throws Exception {
+
+        WebHookManager webHookManager = new WebHookManager();
+        webHookManager.addListener(new WebHookListener() {
+            @Override
+            public void onPushEvent(PushEvent event) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+
+                handled.add(event);
+            }
+        });
+
+        WebHookDispatcher dispatcher = new WebHookDispatcher(webHookManager, journal, 1, 1);
+        assertTrue(dispatcher.submit(newPushEvent(5678, 20, "abc", "def")));
+        waitFor(() -> dispatcher.getQueueDepth() == 0);
+        assertTrue(dispatcher.submit(newPushEvent(5678, 21, "abc", "def")));
+        assertFalse(dispatcher.submit(newPushEvent(5678, 22, "abc", "def")));
+        return (dispatcher);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ProjectConfig newProjectConfig(int projectId, Integer pushCoalesceWindow) {
+        ProjectConfig projectConfig = new ProjectConfig();
+        projectConfig.setProjectId(projectId);
+        projectConfig.setMailToType(MailToType.PROJECT);
+        projectConfig.setEnabled(true);
+        projectConfig.setPushCoalesceWindow(pushCoalesceWindow);
+        return (projectConfig);
+    }
+
+    private static PushEvent newPushEvent(int projectId, int userId, String before, String after) {
+        PushEvent event = new PushEvent();
+        event.setProjectId(projectId);
+        event.setUserId(userId);
+        event.setRef("refs/heads/feature/coalesce");
+        event.setBefore(before);
+        event.setAfter(after);
+        return (event);
+    }
+}
@@ -0,0 +1,140 @@
+package com.messners.gitlab.codereview.webhook;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gitlab4j.api.webhook.PushEvent;
+import org.gitlab4j.api.webhook.WebHookListener;
+import org.gitlab4j.api.webhook.WebHookManager;
+import org.gitlab4j.codereview.webhook.WebHookDispatcher;
+import org.junit.Test;
+
+public class TestWebHookDispatcher {
+
+    @Test
+    public void testSubmitIsRejectedWhenTheQueueIsFull() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+        WebHookDispatcher dispatcher = new WebHookDispatcher(newWebHookManager(event -> {
+            started.countDown();
+            await(release);
+            handled.incrementAndGet();
+        }), 1, 1);
+
+        // The worker holds the first event, the second fills the queue and the third is rejected,
+        // which the webhook resource answers with a 503 and a Retry-After header
+        assertTrue(dispatcher.submit(createPushEvent(1)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.submit(createPushEvent(2)));
+        assertFalse(dispatcher.submit(createPushEvent(3)));
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        release.countDown();
+        dispatcher.shutdown(5000);
+
+        Map<String, Object> stats = dispatcher.getStats();
+        assertEquals(2L, stats.get("accepted"));
+        assertEquals(1L, stats.get("rejected"));
+        assertEquals(2L, stats.get("processed"));
+        assertEquals(2, handled.get());
+    }
+
+    @Test
+    public void testWorkersDrainTheQueue() throws Exception {
+
+        CountDownLatch done = new CountDownLatch(50);
+        WebHookDispatcher dispatcher = new WebHookDispatcher(newWebHookManager(event -> done.countDown()), 2, 100);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(dispatcher.submit(createPushEvent(i)));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        dispatcher.shutdown(5000);
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(50L, dispatcher.getStats().get("processed"));
+    }
+
+    @Test
+    public void testShutdownDrainsTheQueueWithinTheTimeout() throws Exception {
+
+        AtomicInteger handled = new AtomicInteger();
+        WebHookDispatcher dispatcher = new WebHookDispatcher(newWebHookManager(event -> {
+            sleep(20);
+            handled.incrementAndGet();
+        }), 1, 10);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(dispatcher.submit(createPushEvent(i)));
+        }
+
+        // The queued events are processed before shutdown returns, new events are turned away
+        dispatcher.shutdown(5000);
+        assertEquals(10, handled.get());
+        assertFalse(dispatcher.submit(createPushEvent(10)));
+    }
+
+    @Test
+    public void testShutdownGivesUpAtTheTimeout() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        WebHookDispatcher dispatcher = new WebHookDispatcher(newWebHookManager(event -> await(release)), 1, 10);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.submit(createPushEvent(i)));
+        }
+
+        long start = System.nanoTime();
+        dispatcher.shutdown(200);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+        assertTrue("elapsedMillis=" + elapsedMillis, elapsedMillis >= 200 && elapsedMillis < 2000);
+    }
+
+    private static WebHookManager newWebHookManager(PushHandler handler) {
+
+        WebHookManager webHookManager = new WebHookManager();
+        webHookManager.addListener(new WebHookListener() {
+            @Override
+            public void onPushEvent(PushEvent event) {
+                handler.handle(event);
+            }
+        });
+
+        return (webHookManager);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PushEvent createPushEvent(int n) {
+        PushEvent event = new PushEvent();
+        event.setUserId(n);
+        event.setProjectId(100);
+        event.setRef("refs/heads/branch-" + n);
+        event.setBefore("0000000000000000000000000000000000000000");
+        event.setAfter("0123456789abcdef0123456789abcdef0123456" + (n % 10));
+        return (event);
+    }
+
+    private interface PushHandler {
+        void handle(PushEvent event);
+    }
+}
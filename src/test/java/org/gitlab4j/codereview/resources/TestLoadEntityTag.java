@@ -0,0 +1,102 @@
+package org.gitlab4j.codereview.resources;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.gitlab4j.api.models.Namespace;
+import org.gitlab4j.api.models.Project;
+import org.gitlab4j.api.models.User;
+import org.gitlab4j.codereview.dao.Push;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.junit.Test;
+
+/**
+ * Tests the ETag of the review form data returned by {@link CodeReviewResource#load(int, String, int, String)}.
+ */
+public class TestLoadEntityTag {
+
+    private static final String GITLAB_WEB_URL = "https://gitlab.example.com";
+
+    @Test
+    public void testUnchangedStateIsNotModified() throws Exception {
+
+        EntityTag entityTag = getLoadEntityTag(createPush("pending"), createUser("user@example.com"), Arrays.asList("develop", "master"));
+        assertEquals(entityTag, getLoadEntityTag(createPush("pending"), createUser("user@example.com"), Arrays.asList("develop", "master")));
+
+        Response response = EntityTags.notModified(createRequest(entityTag), entityTag);
+        assertNotNull(response);
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals(entityTag, response.getEntityTag());
+    }
+
+    @Test
+    public void testChangedStateIsModified() throws Exception {
+
+        EntityTag entityTag = getLoadEntityTag(createPush("pending"), createUser("user@example.com"), Arrays.asList("develop", "master"));
+
+        // The Push records, the cached user and the cached target branch list each change the tag
+        EntityTag[] changed = {
+            getLoadEntityTag(createPush("merged"), createUser("user@example.com"), Arrays.asList("develop", "master")),
+            getLoadEntityTag(createPush("pending"), createUser("moved@example.com"), Arrays.asList("develop", "master")),
+            getLoadEntityTag(createPush("pending"), createUser("user@example.com"), Arrays.asList("develop", "master", "release")),
+            getLoadEntityTag(createPush("pending"), createUser("user@example.com"), null)
+        };
+
+        for (EntityTag current : changed) {
+            assertNotEquals(entityTag, current);
+            assertNull(EntityTags.notModified(createRequest(entityTag), current));
+        }
+    }
+
+    private static EntityTag getLoadEntityTag(Push push, User user, List<String> targetBranches) {
+        return (CodeReviewResource.getLoadEntityTag(Collections.singletonList(push), createProject(), user, "feature", targetBranches, GITLAB_WEB_URL));
+    }
+
+    private static ContainerRequest createRequest(EntityTag ifNoneMatch) {
+
+        ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"), URI.create("http://localhost/rest/load/1/feature/1/abc"),
+                "GET", null, new MapPropertiesDelegate());
+        request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch.toString());
+        return (request);
+    }
+
+    private static Project createProject() {
+
+        Namespace namespace = new Namespace();
+        namespace.setName("group");
+
+        Project project = new Project();
+        project.setId(1);
+        project.setName("project");
+        project.setNamespace(namespace);
+        project.setWebUrl(GITLAB_WEB_URL + "/group/project");
+        return (project);
+    }
+
+    private static User createUser(String email) {
+        User user = new User();
+        user.setId(1);
+        user.setName("User One");
+        user.setEmail(email);
+        return (user);
+    }
+
+    private static Push createPush(String mergeState) {
+        Push push = new Push();
+        push.setId(10);
+        push.setMergeRequestId(20);
+        push.setMergeState(mergeState);
+        push.setMergeStatus("can_be_merged");
+        return (push);
+    }
+}